@@ -1,10 +1,11 @@
 package io.github.jmurmel;
 
 import java.io.IOException;
-import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 final class JavaCompilerHelper {
-    JavaCompilerHelper(Path outPath) {
+    JavaCompilerHelper() {
         throw new UnsupportedOperationException("compiling to Java class is not supported");
     }
 
@@ -12,12 +13,17 @@ final class JavaCompilerHelper {
         return null;
     }
 
-    void cleanup() throws IOException {
+    Class<?> javaToClass(String className, String javaSource) throws Exception {
+        return null;
     }
 
-    Class<?> javaToClass(String className, String javaSource) throws Exception {
+    List<Class<?>> javaToClasses(List<String> classNames, List<String> javaSources) throws Exception {
         return null;
     }
+
+    static void writeJar(String jarFileName, String mainClass, Map<String, byte[]> classes) throws IOException {
+        throw new UnsupportedOperationException("writing jarfiles is not supported");
+    }
 }
 
 final class TurtleFrame {
@@ -20,6 +20,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.*;
@@ -28,12 +29,15 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -46,16 +50,20 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.tools.ToolProvider;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
-import javax.tools.StandardLocation;
 import javax.tools.SimpleJavaFileObject;
 
 import static io.github.jmurmel.LambdaJ.Names.*;
@@ -237,7 +245,9 @@ public class LambdaJ {
         private static final long serialVersionUID = 1L;
         final @NotNull String name;
         final @NotNull WellknownSymbol wellknownSymbol;
-        Closure macro;
+        /** index of this symbol's {@link GlobalSlot} in the slot arrays of interpreters, 0 if no interpreter has bound this symbol yet,
+         *  see {@link LambdaJ#slot}. Indices are counted per symbol table. Is assigned once and never changes, so it may be read without synchronization */
+        transient int slot;
 
         public LambdaJSymbol(@NotNull String symbolName) {
             this(symbolName, WellknownSymbol.notInterned);
@@ -753,12 +763,21 @@ public class LambdaJ {
         private static final long serialVersionUID = 1L;
         final Object params;
         final ConsCell body, closure; // todo es sollten nur macros serialisiert werden. beim serialisieren sollte fuer closure!=topEnv ein fehler geworfen werden, beim einlesen sollte closure=topEnv gesetzt werden
+        /** {@link #body} translated for the node interpreter, will be set on first use */
+        transient Node code;
+        /** number of invocations, used to decide whether the closure should be compiled, see {@link #countCall} */
+        transient int calls;
 
         private Closure(Object params, ConsCell body, ConsCell closure)    { this.params = params; this.body = body; this.closure = closure; }
         Object params() { return params; }
         ConsCell zip(@NotNull LambdaJ intp, ConsCell args, ConsCell env) { return intp.zip("function application", params, args, closure, true); }
         @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { out.print("#<interpreted closure>"); }
 
+        /** number of parameters if this closure can bind already evaluated arguments with {@link #bind}, -1 otherwise */
+        int arity() { return -1; }
+        /** return a new frame that binds the parameters to {@code a1..a3}, unused arguments are ignored */
+        ConsCell bind(@NotNull LambdaJ intp, Object a1, Object a2, Object a3) { throw errorInternal("bind is not implemented for %s", getClass().getSimpleName()); }
+
         static @NotNull Closure of(Object params, ConsCell body, ConsCell closure) {
             if (params == null) return new Closure0(body, closure);
             if (symbolp(params)) return new ClosureVararg(params, body, closure);
@@ -802,8 +821,11 @@ public class LambdaJ {
             if (args == null) notEnoughArgsLst(params);
             final Object cdrArgs = cdr(args);
             if (cdrArgs != null) tooManyArgs(cdrArgs);
-            return intp.acons(params, car(args), closure);
+            return intp.frame(params, car(args), closure);
         }
+
+        @Override int arity() { return 1; }
+        @Override ConsCell bind(@NotNull LambdaJ intp, Object a1, Object a2, Object a3) { return intp.frame(params, a1, closure); }
     }
 
     // two arguments
@@ -820,8 +842,11 @@ public class LambdaJ {
             if (cdrArgs == null) notEnoughArgsLst(p2);
             final Object cddrArgs = cdr(cdrArgs);
             if (cddrArgs != null) tooManyArgs(cddrArgs);
-            return intp.acons(p1, car(args), intp.acons(p2, car(cdrArgs), closure));
+            return intp.frame(p1, car(args), p2, car(cdrArgs), closure);
         }
+
+        @Override int arity() { return 2; }
+        @Override ConsCell bind(@NotNull LambdaJ intp, Object a1, Object a2, Object a3) { return intp.frame(p1, a1, p2, a2, closure); }
     }
 
     // three arguments
@@ -840,15 +865,18 @@ public class LambdaJ {
             if (cddrArgs == null) notEnoughArgs(cddr(params));
             final Object cdddrArgs = cdr(cddrArgs);
             if (cdddrArgs != null) tooManyArgs(cdddrArgs);
-            return intp.acons(p1, car(args), intp.acons(p2, car(cdrArgs), intp.acons(p3, car(cddrArgs), closure)));
+            return intp.frame(p1, car(args), p2, car(cdrArgs), p3, car(cddrArgs), closure);
         }
+
+        @Override int arity() { return 3; }
+        @Override ConsCell bind(@NotNull LambdaJ intp, Object a1, Object a2, Object a3) { return intp.frame(p1, a1, p2, a2, p3, a3, closure); }
     }
 
     // 0 or more arguments
     private static final class ClosureVararg extends Closure {
         ClosureVararg(Object param, ConsCell body, ConsCell closure) { super(param, body, closure); }
 
-        @Override ConsCell zip(@NotNull LambdaJ intp, ConsCell args, ConsCell env) { return intp.acons(params, args, closure); }
+        @Override ConsCell zip(@NotNull LambdaJ intp, ConsCell args, ConsCell env) { return intp.frame(params, args, closure); }
     }
 
     // one or more arguments
@@ -861,7 +889,7 @@ public class LambdaJ {
 
         @Override ConsCell zip(@NotNull LambdaJ intp, ConsCell args, ConsCell env) {
             if (args == null) notEnoughArgs(params);
-            return intp.acons(p, car(args), intp.acons(more, cdr(args), closure));
+            return intp.frame(p, car(args), more, cdr(args), closure);
         }
     }
 
@@ -877,7 +905,7 @@ public class LambdaJ {
             if (args == null) notEnoughArgs(params);
             final Object cdrArgs = cdr(args);
             if (cdrArgs == null) notEnoughArgs(cdr(params));
-            return intp.acons(p1, car(args), intp.acons(p2, car(cdrArgs), intp.acons(more, cdr(cdrArgs), closure)));
+            return intp.frame(p1, car(args), p2, car(cdrArgs), more, cdr(cdrArgs), closure);
         }
     }
 
@@ -887,6 +915,196 @@ public class LambdaJ {
         @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { out.print("#<interpreted " + LAMBDA_DYNAMIC + ">"); }
     }
 
+    /** Activation frame for the application of closures with one to three parameters: a frame holds the bindings (param . arg)
+     *  and is followed by the closure's environment, i.e. one Frame object replaces the (param . arg) conses
+     *  plus the list conses that {@link #zip} would create.
+     *
+     *  <p>Frames are ConsCells so that they can be used whereever an environment is expected. The interpreter's environment
+     *  lookups use the frame aware methods {@link #slot}, {@link #value} and {@link #setValue}, generic list operations
+     *  (such as printing an environment) see an equivalent alist made of views that don't copy the bindings. */
+    private abstract static class Frame extends ConsCell {
+        private static final long serialVersionUID = 1L;
+
+        final ConsCell parent;
+
+        Frame(ConsCell parent) { this.parent = parent; }
+
+        /** return the index of the binding of {@code sym} in this frame, or -1 if this frame doesn't bind {@code sym} */
+        abstract int slot(Object sym);
+        abstract int size();
+        abstract Object sym(int slot);
+        abstract Object value(int slot);
+        abstract void setValue(int slot, Object value);
+
+        /** return the value at {@code slot} if {@code sym} is bound at {@code slot}, else {@link #NOT_BOUND}, see {@link LocalRef} */
+        abstract Object value(int slot, Object sym);
+        static final Object NOT_BOUND = "not bound in this frame";
+
+        /** return a (sym . value) view of the binding at {@code slot}, modifying the view will modify the frame */
+        final @NotNull ConsCell entry(int slot) { return new FrameEntry(this, slot); }
+
+        /** the bindings from {@code slot} on followed by {@link #parent} */
+        final Object rest(int slot) { return slot < size() ? new FrameRest(this, slot) : parent; }
+
+        final Object elt(int start, long idx) {
+            final int n = size() - start;
+            if (idx >= 0 && idx < n) return entry(start + (int)idx);
+            if (parent == null) throw errorIndexTooLarge(idx, n);
+            return parent.elt(idx - n);
+        }
+
+        final Object eltset(int start, Object newVal, long idx) {
+            final int n = size() - start;
+            if (idx >= 0 && idx < n) throw new UnsupportedOperationException("eltset not supported on " + getClass().getSimpleName());
+            if (parent == null) throw errorIndexTooLarge(idx, n);
+            return parent.eltset(newVal, idx - n);
+        }
+
+        /** same as the hash of the equivalent alist, see {@link AbstractConsCell#sxhashSigned} */
+        final int sxhashSigned(int start, int rec) {
+            int ret = 0;
+            final int size = size();
+            for (int i = start; i < size; i++) {
+                if (--rec <= 0) return ret;
+                ret += 31 * FrameEntry.sxhashSigned(sym(i), value(i), rec);
+            }
+            return parent == null ? ret : ret + parent.sxhashSigned(rec);
+        }
+
+        @Override public Object car() { return entry(0); }
+        @Override public Object cdr() { return rest(1); }
+        @Override public Object elt(long idx) { return elt(0, idx); }
+        @Override public Object eltset(Object newVal, long idx) { return eltset(0, newVal, idx); }
+        @Override public @NotNull ConsIterator iterator() { return new FrameIterator(this, 0); }
+        @Override int sxhashSigned(int rec) { return sxhashSigned(0, rec); }
+        @Override public @NotNull String toString() { return LambdaJ.printSEx(this, false).toString(); }
+    }
+
+    /** the bindings of a {@link Frame} from slot {@code start} on followed by the frame's parent */
+    private static final class FrameRest extends ConsCell {
+        private static final long serialVersionUID = 1L;
+
+        private final @NotNull Frame frame;
+        private final int start;
+
+        FrameRest(@NotNull Frame frame, int start) { this.frame = frame; this.start = start; }
+
+        @Override public Object car() { return frame.entry(start); }
+        @Override public Object cdr() { return frame.rest(start + 1); }
+        @Override public Object elt(long idx) { return frame.elt(start, idx); }
+        @Override public Object eltset(Object newVal, long idx) { return frame.eltset(start, newVal, idx); }
+        @Override public @NotNull ConsIterator iterator() { return new FrameIterator(frame, start); }
+        @Override int sxhashSigned(int rec) { return frame.sxhashSigned(start, rec); }
+        @Override public @NotNull String toString() { return LambdaJ.printSEx(this, false).toString(); }
+    }
+
+    private static final class FrameIterator implements ConsIterator {
+        private final @NotNull Frame frame;
+        private int slot;
+        private ConsIterator parent;
+
+        FrameIterator(@NotNull Frame frame, int start) { this.frame = frame; this.slot = start; }
+
+        @Override public boolean hasNext() { return slot < frame.size() || parent() != null && parent.hasNext(); }
+
+        @Override public Object next() {
+            if (slot < frame.size()) return frame.entry(slot++);
+            if (parent() == null) throw new NoSuchElementException();
+            return parent.next();
+        }
+
+        @Override public boolean wasDotted() { return parent != null && parent.wasDotted(); }
+
+        private ConsIterator parent() {
+            if (parent == null && frame.parent != null) parent = frame.parent.iterator();
+            return parent;
+        }
+    }
+
+    private static final class Frame1 extends Frame {
+        private static final long serialVersionUID = 1L;
+
+        private final Object s1;
+        private Object v1;
+
+        Frame1(Object s1, Object v1, ConsCell parent) { super(parent); this.s1 = s1; this.v1 = v1; }
+
+        @Override int slot(Object sym) { return sym == s1 ? 0 : -1; }
+        @Override int size() { return 1; }
+        @Override Object sym(int slot) { return s1; }
+        @Override Object value(int slot) { return v1; }
+        @Override void setValue(int slot, Object value) { v1 = value; }
+        @Override Object value(int slot, Object sym) { return sym == s1 ? v1 : NOT_BOUND; }
+    }
+
+    private static final class Frame2 extends Frame {
+        private static final long serialVersionUID = 1L;
+
+        private final Object s1, s2;
+        private Object v1, v2;
+
+        Frame2(Object s1, Object v1, Object s2, Object v2, ConsCell parent) { super(parent); this.s1 = s1; this.v1 = v1; this.s2 = s2; this.v2 = v2; }
+
+        @Override int slot(Object sym) { return sym == s1 ? 0 : sym == s2 ? 1 : -1; }
+        @Override int size() { return 2; }
+        @Override Object sym(int slot) { return slot == 0 ? s1 : s2; }
+        @Override Object value(int slot) { return slot == 0 ? v1 : v2; }
+        @Override void setValue(int slot, Object value) { if (slot == 0) v1 = value; else v2 = value; }
+        @Override Object value(int slot, Object sym) { return slot == 0 ? (sym == s1 ? v1 : NOT_BOUND) : (sym == s2 ? v2 : NOT_BOUND); }
+    }
+
+    private static final class Frame3 extends Frame {
+        private static final long serialVersionUID = 1L;
+
+        private final Object s1, s2, s3;
+        private Object v1, v2, v3;
+
+        Frame3(Object s1, Object v1, Object s2, Object v2, Object s3, Object v3, ConsCell parent) {
+            super(parent);
+            this.s1 = s1; this.v1 = v1; this.s2 = s2; this.v2 = v2; this.s3 = s3; this.v3 = v3;
+        }
+
+        @Override int slot(Object sym) { return sym == s1 ? 0 : sym == s2 ? 1 : sym == s3 ? 2 : -1; }
+        @Override int size() { return 3; }
+        @Override Object sym(int slot) { return slot == 0 ? s1 : slot == 1 ? s2 : s3; }
+        @Override Object value(int slot) { return slot == 0 ? v1 : slot == 1 ? v2 : v3; }
+        @Override void setValue(int slot, Object value) { if (slot == 0) v1 = value; else if (slot == 1) v2 = value; else v3 = value; }
+        @Override Object value(int slot, Object sym) {
+            if (slot == 0) return sym == s1 ? v1 : NOT_BOUND;
+            if (slot == 1) return sym == s2 ? v2 : NOT_BOUND;
+            return sym == s3 ? v3 : NOT_BOUND;
+        }
+    }
+
+    /** a (sym . value) view of a binding in a {@link Frame}, used e.g. by setq */
+    private static final class FrameEntry extends ConsCell {
+        private static final long serialVersionUID = 1L;
+
+        private final @NotNull Frame frame;
+        private final int slot;
+
+        FrameEntry(@NotNull Frame frame, int slot) { this.frame = frame; this.slot = slot; }
+
+        @Override public Object car() { return frame.sym(slot); }
+        @Override public Object cdr() { return frame.value(slot); }
+        @Override public @NotNull ConsCell rplacd(Object cdr) { frame.setValue(slot, cdr); return this; }
+
+        @Override public Object elt(long idx) { return ConsCell.cons(car(), cdr()).elt(idx); }
+        @Override public Object eltset(Object newVal, long idx) { throw new UnsupportedOperationException("eltset not supported on " + getClass().getSimpleName()); }
+        @Override public @NotNull ConsIterator iterator() { return ConsCell.cons(car(), cdr()).iterator(); }
+        @Override int sxhashSigned(int rec) { return sxhashSigned(car(), cdr(), rec); }
+        @Override public @NotNull String toString() { return ConsCell.cons(car(), cdr()).toString(); }
+
+        /** same as the hash of {@code (sym . value)}, see {@link AbstractConsCell#sxhashSigned} */
+        static int sxhashSigned(Object sym, Object value, int rec) {
+            if (--rec <= 0) return 0;
+            final int ret = 31 * (sym instanceof ConsCell ? ((ConsCell)sym).sxhashSigned(rec) : LambdaJ.sxhashSigned(sym));
+            if (value instanceof ConsCell) return ret + ((ConsCell)value).sxhashSigned(rec);
+            if (value == null || --rec <= 0) return ret;
+            return ret + 31 * LambdaJ.sxhashSigned(value);
+        }
+    }
+
     private static final class ArraySlice extends ConsCell {
         private static final class ArraySliceIterator implements ConsIterator {
             private final Object @NotNull [] arry;
@@ -1112,6 +1330,7 @@ public class LambdaJ {
         this.tracer = tracer != null ? tracer : System.err::println;
         if (symtab == null) symtab = new ListSymbolTable();
         this.symtab = symtab;
+        lastSlot = symtab instanceof ListSymbolTable ? ((ListSymbolTable)symtab).lastSlot : new java.util.concurrent.atomic.AtomicInteger();
         if (libDir != null) this.libDir = libDir;
         else this.libDir = InstallDir.installDir;
         if (features != Features.HAVE_ALL_LEXC.bits()) speed = 0;
@@ -1158,6 +1377,7 @@ public class LambdaJ {
             internWellknown(PROVIDE);
 
             internWellknown(DECLAIM);
+            internWellknown(DECLARE);
         }
         else {
             sDynamic = null;
@@ -1286,21 +1506,39 @@ public class LambdaJ {
         @Override public CharSequence subSequence(int start, int end) { return sb.subSequence(start, end); }
     }
 
+    /** an ObjectWriter that lets several threads write to {@code wrapped}, each call is atomic */
+    private static final class SynchronizedWriter implements ObjectWriter {
+        private final @NotNull ObjectWriter wrapped;
+
+        SynchronizedWriter(@NotNull ObjectWriter wrapped) { this.wrapped = wrapped; }
+
+        @Override public synchronized void printObj(Object o, boolean printEscape) { wrapped.printObj(o, printEscape); }
+        @Override public synchronized void printObj(Object o) { wrapped.printObj(o); }
+        @Override public synchronized void printString(CharSequence s) { wrapped.printString(s); }
+        @Override public synchronized void printEol() { wrapped.printEol(); }
+        @Override public synchronized boolean freshLine() { return wrapped.freshLine(); }
+        @Override public synchronized void tabulate(boolean relative, int colnum, int colinc) { wrapped.tabulate(relative, colnum, colinc); }
+    }
+
 
 
     /// ## Scanner, symboltable and S-expression reader
 
+    /** symbol table that may be used by several threads, see {@link #newContext}. Looking up existing symbols doesn't lock */
     static class ListSymbolTable implements SymbolTable {
-        private final @NotNull Map<@NotNull String, @NotNull LambdaJSymbol> symbols = JavaUtil.newHashMap(WellknownSymbol.values().length + 10);
+        private final @NotNull java.util.concurrent.ConcurrentMap<@NotNull String, @NotNull LambdaJSymbol> symbols = new java.util.concurrent.ConcurrentHashMap<>(WellknownSymbol.values().length + 10);
+
+        /** the last {@link LambdaJSymbol#slot} index that was assigned by an interpreter that uses this symbol table */
+        final java.util.concurrent.atomic.AtomicInteger lastSlot = new java.util.concurrent.atomic.AtomicInteger();
 
         @Override public @NotNull LambdaJSymbol intern(@NotNull LambdaJSymbol sym) {
             final String symNameLC = sym.name.toLowerCase();
             final LambdaJSymbol existing = symbols.get(symNameLC);
             if (existing != null) return existing;
 
-            if (sym.wellknownSymbol == WellknownSymbol.notInterned) sym = new LambdaJSymbol(true, sym.name);
-            symbols.put(symNameLC, sym);
-            return sym;
+            final LambdaJSymbol newSym = sym.wellknownSymbol == WellknownSymbol.notInterned ? new LambdaJSymbol(true, sym.name) : sym;
+            final LambdaJSymbol raced = symbols.putIfAbsent(symNameLC, newSym);
+            return raced != null ? raced : newSym;
         }
 
         @Override public @NotNull LambdaJSymbol intern(@NotNull String symName) {
@@ -1308,9 +1546,9 @@ public class LambdaJ {
             final LambdaJSymbol existing = symbols.get(symNameLC);
             if (existing != null) return existing;
 
-            final LambdaJSymbol ret = new LambdaJSymbol(true, symName);
-            symbols.put(symNameLC, ret);
-            return ret;
+            final LambdaJSymbol newSym = new LambdaJSymbol(true, symName);
+            final LambdaJSymbol raced = symbols.putIfAbsent(symNameLC, newSym);
+            return raced != null ? raced : newSym;
         }
 
         @Override public @NotNull Iterator<LambdaJSymbol> iterator() { return symbols.values().iterator(); }
@@ -1592,16 +1830,16 @@ public class LambdaJ {
             // #\ ... character literal
             case '\\':
                 final String charOrCharactername = readerMacroToken();
-                if (charOrCharactername.length() == 1) return charOrCharactername.charAt(0);
+                if (charOrCharactername.length() == 1) return Boxes.box(charOrCharactername.charAt(0));
                 if (isLong(charOrCharactername)) {
                     try {
-                        return (char) Integer.parseInt(charOrCharactername);
+                        return Boxes.box((char) Integer.parseInt(charOrCharactername));
                     } catch (NumberFormatException e) {
                         throw new ParseError(posInfo(), "'%s' following #\\ is not a valid number", charOrCharactername);
                     }
                 }
                 for (int i = 0; i < CTRL.length; i++) {
-                    if (CTRL[i].equalsIgnoreCase(charOrCharactername)) return (char)i;
+                    if (CTRL[i].equalsIgnoreCase(charOrCharactername)) return Boxes.box((char)i);
                 }
                 errorReaderErrorFmt(posInfo(), "unrecognized character name %s", charOrCharactername);
                 //NOTREACHED
@@ -1867,7 +2105,7 @@ public class LambdaJ {
         // todo sollte wsl parseFixnum() solangs keine bignums gibt, sein sonst wird was gelesen was eig. ungueltig ist?!
         private Number parseLong(String s, int radix) {
             try {
-                return Long.valueOf(s, radix);
+                return Boxes.box(Long.parseLong(s, radix));
             } catch (NumberFormatException e) {
                 errorReaderErrorFmt(posInfo(), "'%s' is not a valid number", s);
                 return null; // notreached
@@ -2320,9 +2558,10 @@ public class LambdaJ {
         // special forms for system construction
         public static final String LOAD = "load", REQUIRE = "require", PROVIDE = "provide";
 
-        public static final String DECLAIM = "declaim";
-        // parameters to declaim
-        public static final String OPTIMIZE = "optimize", SPEED = "speed", DEBUG = "debug";
+        public static final String DECLAIM = "declaim", DECLARE = "declare";
+        // parameters to declaim and declare
+        public static final String OPTIMIZE = "optimize", SPEED = "speed", DEBUG = "debug", TYPE_DECL = "type";
+        public static final String FIXNUM = "fixnum", DOUBLE_FLOAT = "double-float";
 
         // predefined global variables
         // constants
@@ -2399,21 +2638,27 @@ public class LambdaJ {
         sMultipleValueBind(MULTIPLE_VALUE_BIND, WellknownSymbolKind.SF), sMultipleValueCall(MULTIPLE_VALUE_CALL, WellknownSymbolKind.SF),
         sUnwindProtect(UNWIND_PROTECT, WellknownSymbolKind.SF), sCatch(CATCH, WellknownSymbolKind.SF), sThrow(THROW, WellknownSymbolKind.SF), sTry(TRY, WellknownSymbolKind.SF),
         sLoad(LOAD, WellknownSymbolKind.SF), sRequire(REQUIRE, WellknownSymbolKind.SF), sProvide(PROVIDE, WellknownSymbolKind.SF),
-        sDeclaim(DECLAIM, WellknownSymbolKind.SF),
+        sDeclaim(DECLAIM, WellknownSymbolKind.SF), sDeclare(DECLARE, WellknownSymbolKind.SF),
 
         // predefined global variables. Java usage is indirectly through WellknownSymbol.of().
         sNil(NIL, WellknownSymbolKind.SYMBOL), sT(T, WellknownSymbolKind.SYMBOL),
 
         // logic, predicates
-        sEq(EQ, Features.HAVE_EQ, false, 2)                             { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(car(args) == cadr(args)); } },
+        sEq(EQ, Features.HAVE_EQ, false, 2)                             { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(car(args) == cadr(args)); }
+                                                                          @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(a == b); } },
         sEql(EQL, Features.HAVE_UTIL, 2)                                { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(eql(car(args), cadr(args))); } },
         sEqual(EQUAL, Features.HAVE_UTIL, 2)                            { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(equal(car(args), cadr(args))); } },
 
-        sConsp(CONSP, Features.HAVE_UTIL, 1)                            { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(consp(car(args))); } },
-        sAtom(ATOM, Features.HAVE_ATOM, 1)                              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(atom(car(args))); } },
-        sSymbolp(SYMBOLP, Features.HAVE_UTIL, 1)                        { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(symbolp(car(args))); } },
-        sNull(NULL, Features.HAVE_UTIL, false, 1)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(car(args) == null); } },
-        sNumberp(NUMBERP, Features.HAVE_NUMBERS, true, 1)               { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(numberp(car(args))); } },
+        sConsp(CONSP, Features.HAVE_UTIL, 1)                            { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(consp(car(args))); }
+                                                                          @Override Object apply1(LambdaJ intp, Object a) { return intp.boolResult(consp(a)); } },
+        sAtom(ATOM, Features.HAVE_ATOM, 1)                              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(atom(car(args))); }
+                                                                          @Override Object apply1(LambdaJ intp, Object a) { return intp.boolResult(atom(a)); } },
+        sSymbolp(SYMBOLP, Features.HAVE_UTIL, 1)                        { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(symbolp(car(args))); }
+                                                                          @Override Object apply1(LambdaJ intp, Object a) { return intp.boolResult(symbolp(a)); } },
+        sNull(NULL, Features.HAVE_UTIL, false, 1)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(car(args) == null); }
+                                                                          @Override Object apply1(LambdaJ intp, Object a) { return intp.boolResult(a == null); } },
+        sNumberp(NUMBERP, Features.HAVE_NUMBERS, true, 1)               { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(numberp(car(args))); }
+                                                                          @Override Object apply1(LambdaJ intp, Object a) { return intp.boolResult(numberp(a)); } },
         sFloatp(FLOATP, Features.HAVE_NUMBERS, true, 1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(floatp(car(args))); } },
         sIntegerp(INTEGERP, Features.HAVE_NUMBERS, true, 1)             { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(integerp(car(args))); } },
         sCharacterp(CHARACTERP, Features.HAVE_STRING, 1)                { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(characterp(car(args))); } },
@@ -2437,11 +2682,16 @@ public class LambdaJ {
         sAdjArrayp(ADJUSTABLE_ARRAY_P, Features.HAVE_VECTOR, 1)         { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(adjustableArrayP(car(args))); } },
 
         // conses and lists
-        sCar(CAR, Features.HAVE_CONS, 1)                     { @Override Object apply(LambdaJ intp, ConsCell args) { return caar(args); } },
-        sCdr(CDR, Features.HAVE_CONS, 1)                     { @Override Object apply(LambdaJ intp, ConsCell args) { return cdar(args); } },
-        sCons(CONS, Features.HAVE_CONS, 2)                   { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.cons(car(args), cadr(args)); } },
-        sRplaca(RPLACA, Features.HAVE_XTRA, 2)               { @Override Object apply(LambdaJ intp, ConsCell args) { return requireCons(RPLACA, car(args)).rplaca(cadr(args)); } },
-        sRplacd(RPLACD, Features.HAVE_XTRA, 2)               { @Override Object apply(LambdaJ intp, ConsCell args) { return requireCons(RPLACD, car(args)).rplacd(cadr(args)); } },
+        sCar(CAR, Features.HAVE_CONS, 1)                     { @Override Object apply(LambdaJ intp, ConsCell args) { return caar(args); }
+                                                               @Override Object apply1(LambdaJ intp, Object a) { return car(a); } },
+        sCdr(CDR, Features.HAVE_CONS, 1)                     { @Override Object apply(LambdaJ intp, ConsCell args) { return cdar(args); }
+                                                               @Override Object apply1(LambdaJ intp, Object a) { return cdr(a); } },
+        sCons(CONS, Features.HAVE_CONS, 2)                   { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.cons(car(args), cadr(args)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.cons(a, b); } },
+        sRplaca(RPLACA, Features.HAVE_XTRA, 2)               { @Override Object apply(LambdaJ intp, ConsCell args) { return requireCons(RPLACA, car(args)).rplaca(cadr(args)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return requireCons(RPLACA, a).rplaca(b); } },
+        sRplacd(RPLACD, Features.HAVE_XTRA, 2)               { @Override Object apply(LambdaJ intp, ConsCell args) { return requireCons(RPLACD, car(args)).rplacd(cadr(args)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return requireCons(RPLACD, a).rplacd(b); } },
 
         sList(LIST, Features.HAVE_UTIL, true, -1)            { @Override Object apply(LambdaJ intp, ConsCell args) { return args; } },
         sListStar(LISTSTAR, Features.HAVE_UTIL, false, 1,-1) { @Override Object apply(LambdaJ intp, ConsCell args) { return listStar(intp, args); } },
@@ -2450,20 +2700,31 @@ public class LambdaJ {
         sAssoc(ASSOC, Features.HAVE_UTIL, 2)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return assoc(car(args), cadr(args)); } },
 
         // numbers, characters
-        sAdd("+", Features.HAVE_NUMBERS, -1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return addOp(args, "+", 0.0, Double::sum); } },
-        sMul("*", Features.HAVE_NUMBERS, -1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return addOp(args, "*", 1.0, (lhs, rhs) -> lhs * rhs); } },
-        sSub("-", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return subOp(args, "-", 0.0, (lhs, rhs) -> lhs - rhs); } },
+        sAdd("+", Features.HAVE_NUMBERS, -1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return add(args); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return toDouble("+", a) + toDouble("+", b); } },
+        sMul("*", Features.HAVE_NUMBERS, -1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return mul(args); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return toDouble("*", a) * toDouble("*", b); } },
+        sSub("-", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return sub(args); }
+                                                               @Override Object apply1(LambdaJ intp, Object a) { return 0.0 - toDouble("-", a); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return toDouble("-", a) - toDouble("-", b); } },
         sDiv("/", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return subOp(args, "/", 1.0, (lhs, rhs) -> lhs / rhs); } },
 
-        sNeq("=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "=",  (d1, d2) -> d1 == d2)); } },
+        sNeq("=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "=",  (d1, d2) -> d1 == d2)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(toDouble("=",  a) == toDouble("=",  b)); } },
         sNe("/=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "/=", (d1, d2) -> d1 != d2)); } },
-        sLt("<",  Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "<",  (d1, d2) -> d1 <  d2)); } },
-        sLe("<=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "<=", (d1, d2) -> d1 <= d2)); } },
-        sGe(">=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, ">=", (d1, d2) -> d1 >= d2)); } },
-        sGt(">",  Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, ">",  (d1, d2) -> d1 >  d2)); } },
-
-        sInc("1+", Features.HAVE_NUMBERS, true, 1)           { @Override Object apply(LambdaJ intp, ConsCell args) { return inc(car(args)); } },
-        sDec("1-", Features.HAVE_NUMBERS, true, 1)           { @Override Object apply(LambdaJ intp, ConsCell args) { return dec(car(args)); } },
+        sLt("<",  Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "<",  (d1, d2) -> d1 <  d2)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(toDouble("<",  a) <  toDouble("<",  b)); } },
+        sLe("<=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, "<=", (d1, d2) -> d1 <= d2)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(toDouble("<=", a) <= toDouble("<=", b)); } },
+        sGe(">=", Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, ">=", (d1, d2) -> d1 >= d2)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(toDouble(">=", a) >= toDouble(">=", b)); } },
+        sGt(">",  Features.HAVE_NUMBERS, 1, -1)              { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(LambdaJ.Subr.compare(args, ">",  (d1, d2) -> d1 >  d2)); }
+                                                               @Override Object apply2(LambdaJ intp, Object a, Object b) { return intp.boolResult(toDouble(">",  a) >  toDouble(">",  b)); } },
+
+        sInc("1+", Features.HAVE_NUMBERS, true, 1)           { @Override Object apply(LambdaJ intp, ConsCell args) { return inc(car(args)); }
+                                                               @Override Object apply1(LambdaJ intp, Object a) { return inc(a); } },
+        sDec("1-", Features.HAVE_NUMBERS, true, 1)           { @Override Object apply(LambdaJ intp, ConsCell args) { return dec(car(args)); }
+                                                               @Override Object apply1(LambdaJ intp, Object a) { return dec(a); } },
 
         sSignum("signum", Features.HAVE_NUMBERS, true, 1)    { @Override Object apply(LambdaJ intp, ConsCell args) { return cl_signum(car(args));} },
 
@@ -2506,6 +2767,10 @@ public class LambdaJ {
         sVectorToList("vector->list", Features.HAVE_VECTOR, 1)         { @Override Object apply(LambdaJ intp, ConsCell args) { return vectorToList(intp, car(args)); } },
         sListToVector("list->vector", Features.HAVE_VECTOR, 1, 2)      { @Override Object apply(LambdaJ intp, ConsCell args) { return listToVector(car(args), cadr(args) != null); } },
 
+        sPmap("pmap", Features.HAVE_VECTOR, 2)                         { @Override Object apply(LambdaJ intp, ConsCell args) { return pmap(getFunction(intp, "pmap", car(args)), intp.workerFunction(car(args)), cadr(args)); } },
+        sPfilter("pfilter", Features.HAVE_VECTOR, 2)                   { @Override Object apply(LambdaJ intp, ConsCell args) { return pfilter(getFunction(intp, "pfilter", car(args)), intp.workerFunction(car(args)), cadr(args)); } },
+        sPreduce("preduce", Features.HAVE_VECTOR, 2, 3)                { @Override Object apply(LambdaJ intp, ConsCell args) { return preduce(getFunction(intp, "preduce", car(args)), intp.workerFunction(car(args)), cadr(args), cddr(args) != null, caddr(args)); } },
+
         sSvLength("svlength", Features.HAVE_VECTOR, 1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return svlength(car(args)); } },
         sSvRef("svref", Features.HAVE_VECTOR, 2)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return svref(car(args), toNonnegInt("svref", cadr(args))); } },
         sSvSet("svset", Features.HAVE_VECTOR, 3)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return svset(car(args), toNonnegInt("svset", cadr(args)), caddr(args)); } },
@@ -2516,14 +2781,14 @@ public class LambdaJ {
 
         sString("string", Features.HAVE_STRING, 1)                     { @Override Object apply(LambdaJ intp, ConsCell args) { return stringDesignatorToString(car(args)); } },
         sSLength("slength", Features.HAVE_STRING, 1)                   { @Override Object apply(LambdaJ intp, ConsCell args) { return slength(car(args)); } },
-        sSRef("sref", Features.HAVE_STRING, 2)                         { @Override Object apply(LambdaJ intp, ConsCell args) { return sref(car(args), toNonnegInt("sref", cadr(args))); } },
+        sSRef("sref", Features.HAVE_STRING, 2)                         { @Override Object apply(LambdaJ intp, ConsCell args) { return Boxes.box(sref(car(args), toNonnegInt("sref", cadr(args)))); } },
         sSSet("sset", Features.HAVE_STRING, 3)                         { @Override Object apply(LambdaJ intp, ConsCell args) { return sset(car(args), toNonnegInt("sset", cadr(args)), requireChar("sset", caddr(args))); } },
         sSEq("string=", Features.HAVE_STRING, 2)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(stringEq(car(args), cadr(args))); } },
         sStringToList("string->list", Features.HAVE_STRING, 1)         { @Override Object apply(LambdaJ intp, ConsCell args) { return stringToList(intp, car(args)); } },
         sListToString("list->string", Features.HAVE_STRING, 1, 2)      { @Override Object apply(LambdaJ intp, ConsCell args) { return listToString(car(args), cadr(args) != null); } },
 
-        sCharCode("char-code", Features.HAVE_STRING, 1)                { @Override Object apply(LambdaJ intp, ConsCell args) { return (long) requireChar("char-code", car(args)); } },
-        sCodeChar("code-char", Features.HAVE_STRING, 1)                { @Override Object apply(LambdaJ intp, ConsCell args) { return (char) toInt("code-char", car(args)); } },
+        sCharCode("char-code", Features.HAVE_STRING, 1)                { @Override Object apply(LambdaJ intp, ConsCell args) { return Boxes.box((long) requireChar("char-code", car(args))); } },
+        sCodeChar("code-char", Features.HAVE_STRING, 1)                { @Override Object apply(LambdaJ intp, ConsCell args) { return Boxes.box((char) toInt("code-char", car(args))); } },
 
         sBvLength("bvlength", Features.HAVE_VECTOR, 1)                 { @Override Object apply(LambdaJ intp, ConsCell args) { return bvlength(car(args)); } },
         sBvRef("bvref", Features.HAVE_VECTOR, 2)                       { @Override Object apply(LambdaJ intp, ConsCell args) { return bvref(car(args), toNonnegInt("bvref", cadr(args))); } },
@@ -2584,6 +2849,12 @@ public class LambdaJ {
         sSleep("sleep", Features.HAVE_UTIL, 1)                         { @Override Object apply(LambdaJ intp, ConsCell args) { return sleep(car(args)); } },
         sDecodedTime("get-decoded-time", Features.HAVE_UTIL, 0)        { @Override Object apply(LambdaJ intp, ConsCell args) { return getDecodedTime(intp.new CountingListBuilder(), intp::boolResult); } },
 
+        // profiler
+        sProfileStart("profile-start", Features.HAVE_UTIL, 0, 1)       { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(intp.startProfiler(profileInterval(car(args))) != null); } },
+        sProfileStop("profile-stop", Features.HAVE_UTIL, 0, 1)         { @Override Object apply(LambdaJ intp, ConsCell args) { return profileResult(intp.stopProfiler(), car(args)); } },
+        sCallStatsStart("call-stats-start", Features.HAVE_UTIL, 0, 0)  { @Override Object apply(LambdaJ intp, ConsCell args) { return intp.boolResult(intp.startCallStats() != null); } },
+        sCallStatsStop("call-stats-stop", Features.HAVE_UTIL, 0, 1)    { @Override Object apply(LambdaJ intp, ConsCell args) { return callStatsResult(intp.stopCallStats(), intp.getSymbolTable(), car(args)); } },
+
         // Java FFI
         sJmethod(JMETHOD,   Features.HAVE_FFI, false, 2, -1)     { @Override Object apply(LambdaJ intp, ConsCell args) { return JFFI.findMethod(requireString(JMETHOD, car(args)), requireString(JMETHOD, cadr(args)), requireList(JMETHOD, cddr(args))); } },
         sJproxy("jproxy",   Features.HAVE_FFI, 3, -1)            { @Override Object apply(LambdaJ intp, ConsCell args) { return JFFI.makeProxy(intp, intp.compiledProgram, args); } },
@@ -2685,6 +2956,11 @@ public class LambdaJ {
         }
 
         Object apply(LambdaJ intp, ConsCell args) { throw errorInternal("apply is not implemented for %s", sym); }
+
+        /** apply to one resp. two already evaluated arguments, see {@link PrimitiveRef}. Primitives that are called often
+         *  override these so that no argument list will be consed up. */
+        Object apply1(LambdaJ intp, Object a) { return apply(intp, intp.cons(a, null)); }
+        Object apply2(LambdaJ intp, Object a, Object b) { return apply(intp, intp.cons(a, intp.cons(b, null))); }
         Object applyPrimitive(LambdaJ intp, ConsCell args) { argCheck(args); return apply(intp, args); }
 
         void argCheck(ConsCell args) {
@@ -2763,24 +3039,151 @@ public class LambdaJ {
 
     /// ### Global environment - define'd symbols go into this map
 
+    /** all global env entries of this interpreter. Additionally the env entries of symbols are kept in {@link #slots} so that
+     *  lookups don't need the map, the map is used for enumerating globals and for keys that are not symbols */
     final Map<Object, ConsCell> globals = new IdentityHashMap<>(200);
 
+    /** the global state of a symbol in one interpreter */
+    private static final class GlobalSlot {
+        final @NotNull LambdaJSymbol symbol;
+
+        /** the global env entry, {@code null} if the symbol is not bound in this interpreter */
+        ConsCell envEntry;
+
+        /** the macro that was defined for the symbol in this interpreter or {@code null} */
+        Closure macro;
+
+        /** inline cache for call sites: the function that was called most recently through the symbol and its {@link #funcKind}.
+         *  The cache is invalid if the global binding has changed, i.e. if the global's value is not {@code cachedFunc} */
+        Object cachedFunc;
+        int cachedKind;
+
+        GlobalSlot(@NotNull LambdaJSymbol symbol) { this.symbol = symbol; }
+    }
+
+    /** this interpreter's {@link GlobalSlot}s indexed by {@link LambdaJSymbol#slot}. Each interpreter has its own array,
+     *  so that interpreters that share the symbol table don't write into the shared symbols, see {@link #newContext} */
+    private GlobalSlot[] slots = new GlobalSlot[512];
+
+    /** {@link GlobalSlot}s of symbols whose index is already used by another symbol in {@link #slots}. This happens for symbols
+     *  that got their index from another symbol table, e.g. gensyms of another interpreter or symbols that were interned in several tables */
+    private Map<LambdaJSymbol, GlobalSlot> slotCollisions;
+
+    /** the last slot index that was assigned to a symbol, shared by all interpreters that use the same {@link ListSymbolTable}
+     *  so that their {@link #slots} arrays don't grow beyond the number of symbols in the table */
+    private final java.util.concurrent.atomic.AtomicInteger lastSlot;
+
+    /** return the slot index of {@code sym}, a new index will be assigned from {@code lastSlot} if {@code sym} doesn't have one yet */
+    private static synchronized int slotIndex(@NotNull LambdaJSymbol sym, @NotNull java.util.concurrent.atomic.AtomicInteger lastSlot) {
+        if (sym.slot == 0) sym.slot = lastSlot.incrementAndGet();
+        return sym.slot;
+    }
+
+    /** return the {@link GlobalSlot} of {@code sym} in this interpreter or {@code null} if {@code sym} is not bound in this interpreter */
+    private GlobalSlot slot(@NotNull LambdaJSymbol sym) {
+        final int idx = sym.slot;
+        final GlobalSlot[] slots = this.slots;
+        if (idx < slots.length) {
+            final GlobalSlot slot = slots[idx];
+            if (slot != null && slot.symbol == sym) return slot;
+            if (slot == null && snapshot == null) return null;
+        }
+        if (idx == 0) return null;
+        if (slotCollisions != null) {
+            final GlobalSlot slot = slotCollisions.get(sym);
+            if (slot != null) return slot;
+        }
+        if (snapshot == null) return null;
+
+        // first use of sym in an interpreter that was forked from a snapshot: copy sym's binding and macro from the snapshot
+        final GlobalSlot slot = newSlot(sym, idx);
+        slot.envEntry = copyFromSnapshot(sym);
+        slot.macro = snapshot.macro(sym);
+        return slot;
+    }
+
+    /** same as {@link #slot} but will create a slot if needed */
+    private @NotNull GlobalSlot slotFor(@NotNull LambdaJSymbol sym) {
+        final GlobalSlot slot = slot(sym);
+        if (slot != null) return slot;
+        return newSlot(sym, slotIndex(sym, lastSlot));
+    }
+
+    private @NotNull GlobalSlot newSlot(@NotNull LambdaJSymbol sym, int idx) {
+        if (idx >= slots.length) slots = Arrays.copyOf(slots, Math.max(idx + 1, slots.length * 2));
+        final GlobalSlot slot = new GlobalSlot(sym);
+        if (slots[idx] == null) return slots[idx] = slot;
+
+        if (slotCollisions == null) slotCollisions = new IdentityHashMap<>();
+        slotCollisions.put(sym, slot);
+        return slot;
+    }
+
+    /** all {@link GlobalSlot}s of this interpreter */
+    private @NotNull Iterable<GlobalSlot> allSlots() {
+        final List<GlobalSlot> ret = new ArrayList<>();
+        for (GlobalSlot slot: slots) if (slot != null) ret.add(slot);
+        if (slotCollisions != null) ret.addAll(slotCollisions.values());
+        return ret;
+    }
+
+    /** return the global macro that is named by {@code sym} or {@code null} */
+    final Closure macroOf(@NotNull LambdaJSymbol sym) {
+        final GlobalSlot slot = slot(sym);
+        return slot == null ? null : slot.macro;
+    }
+
+    /** define the global macro {@code sym}, a {@code macro} of {@code null} will remove the macro.
+     *  Macros are per interpreter: a {@code defmacro} in a context won't change the macros of other contexts */
+    final void defineMacro(@NotNull LambdaJSymbol sym, Closure macro) {
+        if (macro == null && slot(sym) == null) return;
+        slotFor(sym).macro = macro;
+        globalsChanged();
+    }
+
+    /** the snapshot that {@link #newContext} will fork from, will be reset to {@code null} when globals, macros or declarations change */
+    private Snapshot contextImage;
+
+    /** forget {@link #contextImage}, must be called when a global binding, a macro, a declaration or the set of loaded modules changes */
+    final void globalsChanged() { contextImage = null; }
+
     private ConsCell lookupEnvEntry(@NotNull Object symbol, ConsCell lexenv) {
         final ConsCell lexEntry = fastassq(symbol, lexenv);
         if (lexEntry != null) return lexEntry;
         return lookupGlobalEntry(symbol);
     }
 
+    /** same as {@link #lookupEnvEntry} but records that a global will be changed */
+    private ConsCell lookupEnvEntryForSetq(@NotNull Object symbol, ConsCell lexenv) {
+        final ConsCell lexEntry = fastassq(symbol, lexenv);
+        if (lexEntry != null) return lexEntry;
+        globalsChanged();
+        return lookupGlobalEntry(symbol);
+    }
+
     private ConsCell lookupGlobalEntry(@NotNull Object symbol) {
-        return globals.get(symbol);
+        if (symbol instanceof LambdaJSymbol) {
+            final GlobalSlot slot = slot((LambdaJSymbol)symbol);
+            return slot == null ? null : slot.envEntry;
+        }
+        final ConsCell envEntry = globals.get(symbol);
+        if (envEntry == null && snapshot != null) return copyFromSnapshot(symbol);
+        return envEntry;
     }
 
+    /** create a new global binding or change the value of an existing global binding.
+     *  Existing global env entries are modified in place because closures may hold on to them, see {@link GlobalRef} */
     final void extendGlobal(@NotNull Object sym, Object value) {
-        globals.put(sym, cons(sym, value));
+        final ConsCell envEntry = lookupGlobalEntry(sym);
+        if (envEntry != null) { envEntry.rplacd(value);  globalsChanged(); }
+        else extendGlobal(cons(sym, value));
     }
 
     final void extendGlobal(@NotNull ConsCell envEntry) {
-        globals.put(car(envEntry), envEntry);
+        globalsChanged();
+        final Object sym = car(envEntry);
+        globals.put(sym, envEntry);
+        if (sym instanceof LambdaJSymbol) slotFor((LambdaJSymbol)sym).envEntry = envEntry;
     }
 
     final void extendGlobal(@NotNull String sym, Object value) {
@@ -2798,14 +3201,20 @@ public class LambdaJ {
 
     public ObjectReader init(ObjectReader inReader, ObjectWriter outWriter, ConsCell customEnv) {
         speed = 1;  debug = 3;
+        declaimedTypes.clear();
         resetCounters();
-        clearMacros();
+        globalsChanged();
         modules.clear();
         handlers = null;
+        jitPrograms = null;
         setReaderPrinter(inReader, outWriter);
         globals.clear();
+        snapshot = null;
+        Arrays.fill(slots, null); // this also removes all macros
+        slotCollisions = null;
         if (customEnv != null) for (Object o: customEnv) {
-            globals.put(car(o), (ConsCell)o);
+            // copy the entry: setq and defines will rplacd the global's entry and must not modify the caller's customEnv
+            extendGlobal(cons(car(o), cdr(o)));
         }
         featuresEnvEntry.rplacd(makeFeatureList(symtab));
         if (have(Features.HAVE_XTRA)) {
@@ -2821,143 +3230,1123 @@ public class LambdaJ {
     }
 
     void clearMacros() {
-        for (LambdaJSymbol entry: symtab) {
-            if (entry != null) entry.macro = null;
-        }
+        if (snapshot != null) for (LambdaJSymbol sym: snapshot.allMacros().keySet()) slotFor(sym); // shadow the snapshot's macros
+        for (GlobalSlot slot: allSlots()) slot.macro = null;
+        globalsChanged();
     }
 
-    final Set<Object> modules = new HashSet<>();
-    /** will be set to 1 by {@link #init}, changed by (declaim (optimize (speed... */
-    short speed = -1, debug = -1;
-
+    /** <p>embed API: return a new interpreter that starts out with this interpreter's program image, i.e. its global definitions,
+     *  macros, loaded modules and declarations, and that can run on another thread concurrently with this interpreter
+     *  and with other contexts. Same as {@code snapshot().fork()}, see {@link Snapshot#fork}.
+     *
+     *  <p>Typical use is {@code ThreadLocal.withInitial(image::newContext)} after the image has loaded its library code,
+     *  and then evaluate forms with e.g. {@code context.evalString(forms, false, in, out)}.
+     *
+     *  <p>The snapshot is reused by subsequent calls until this interpreter changes a global binding, a macro, a declaration
+     *  or loads a module, so that creating a context e.g. per request doesn't copy the global environment. */
+    public LambdaJ newContext() {
+        Snapshot image = contextImage;
+        if (image == null) contextImage = image = snapshot(); // Snapshot is immutable, racing threads will at worst create a snapshot each
+        return image.fork();
+    }
 
-    /// ###  eval - the heart of most if not all Lisp interpreters
+    /** embed API: capture this interpreter's program image, i.e. the current values of its global variables and functions,
+     *  its macros, loaded modules and declarations, see {@link Snapshot}. */
+    public Snapshot snapshot() {
+        if (globals.isEmpty() && snapshot == null) throw new LambdaJError(true, "snapshot: the interpreter was not initialized");
+        return new Snapshot(this);
+    }
 
-    private Object eval(Object form, ConsCell env, int stack, int level, int traceLvl) {
-        final boolean doOpencode = speed >= 1;
-        Object func = null;
-        Object result = null;  /* should be assigned even if followed by a "return" because it will be used in the "finally" clause */
-        Deque<Object> traceStack = null;
-        ConsCell restore = null;
-        ConsCell localCatchTags = null;
-        boolean isTc = false;
-        try {
-            stack++;
+    /** <p>An immutable capture of an interpreter's program image that was created by {@link #snapshot}.
+     *
+     *  <p>Any number of interpreters can be forked from a snapshot, also by several threads at once. Forking doesn't copy the global
+     *  environment: a fork copies a global binding from the snapshot on first use, so that forking takes microseconds
+     *  regardless of the size of the image.
+     *
+     *  <p>Each fork has its own global bindings, multiple values, condition handlers, dynamic bindings and tail call state,
+     *  and primitives are bound to the fork. A fork has no reader/ printer unless they are passed to {@link #fork(ObjectReader, ObjectWriter)},
+     *  readers and printers are not thread-safe and must not be shared by forks that run concurrently. The values of the global bindings and the symbol table
+     *  are shared: e.g. a hash table that was defined by the image is the same object in all forks,
+     *  and a {@code setq} of a global variable only changes the global variable of the fork that did the {@code setq}.
+     *  Macros are per fork as well, a {@code defmacro} in a fork won't change the macros of other forks.
+     *  If the image was created with a custom {@link SymbolTable} then the symbol table must be thread-safe.
+     *
+     *  <p>A snapshot of a fork only contains the globals and macros that the fork has used or changed,
+     *  everything else is looked up in the snapshot the fork was forked from. */
+    public static final class Snapshot {
+        private final int features;
+        private final @NotNull TraceLevel trace;
+        private final @NotNull TraceConsumer tracer;
+        private final @NotNull SymbolTable symtab;
+        private final Path libDir;
+        private final short speed, debug;
+        private final @NotNull Engine engine;
+        /** all snapshots of a chain of forks use the same opencoded primitives */
+        private final OpenCodedPrimitive ocApply, ocEval;
+
+        /** the snapshot that the interpreter was forked from, globals and macros that are not in this snapshot are looked up in {@code parent} */
+        private final Snapshot parent;
+
+        /** symbol -> value, builtin primitives are stored as their {@link WellknownSymbol} */
+        private final Map<Object, Object> globals;
+        /** symbol -> macro, a value of {@code null} means that a macro of {@link #parent} was removed */
+        private final Map<LambdaJSymbol, Closure> macros = new IdentityHashMap<>();
+        private final Set<Object> modules;
+        private final Map<Object, Object> declaimedTypes;
+
+        private Snapshot(LambdaJ intp) {
+            features = intp.features;  trace = intp.trace;  tracer = intp.tracer;  symtab = intp.symtab;  libDir = intp.libDir;
+            speed = intp.speed;  debug = intp.debug;  engine = intp.engine;
+            parent = intp.snapshot;
+            ocApply = parent != null ? parent.ocApply : intp.ocApply;
+            ocEval = parent != null ? parent.ocEval : intp.ocEval;
+
+            globals = new IdentityHashMap<>(intp.globals.size() * 2);
+            for (ConsCell envEntry: intp.globals.values()) {
+                if (envEntry == intp.conditionHandlerEnvEntry || envEntry == intp.randomStateEnvEntry) continue;
+                final Object value = cdr(envEntry);
+                if (value instanceof BoundPrimitive) globals.put(car(envEntry), ((BoundPrimitive)value).w);
+                else if (value != null && value == intp.ocApply) globals.put(car(envEntry), ocApply);
+                else if (value != null && value == intp.ocEval) globals.put(car(envEntry), ocEval);
+                else globals.put(car(envEntry), value);
+            }
+            for (GlobalSlot slot: intp.allSlots()) {
+                if (parent == null ? slot.macro != null : slot.macro != parent.macro(slot.symbol)) macros.put(slot.symbol, slot.macro);
+            }
+            modules = new HashSet<>(intp.modules);
+            declaimedTypes = new IdentityHashMap<>(intp.declaimedTypes);
+        }
+
+        /** return a new interpreter that starts out with the program image of this snapshot and has no reader/ printer */
+        public LambdaJ fork() {
+            return fork(null, null);
+        }
+
+        /** return a new interpreter that starts out with the program image of this snapshot and uses {@code lispStdin}
+         *  and {@code lispStdout} for {@code read} and {@code write} */
+        public LambdaJ fork(ObjectReader lispStdin, ObjectWriter lispStdout) {
+            final LambdaJ intp = new LambdaJ(features, trace, tracer, symtab, null, null, null, libDir);
+            intp.snapshot = this;
+            intp.speed = speed;  intp.debug = debug;  intp.engine = engine;
+            intp.setReaderPrinter(lispStdin, lispStdout);
+            intp.modules.addAll(modules);
+            intp.declaimedTypes.putAll(declaimedTypes);
+            if (ocApply != null) intp.ocApply = new OpenCodedPrimitive(ocApply.symbol);
+            if (ocEval != null) intp.ocEval = new OpenCodedPrimitive(ocEval.symbol);
+
+            // env entries that are used by the interpreter itself are created right away, all others on first use
+            final Object sFeatures = intp.featuresEnvEntry.car();
+            final Snapshot features = globalLevel(sFeatures);
+            if (features != null) { intp.featuresEnvEntry.rplacd(features.globals.get(sFeatures));  intp.extendGlobal(intp.featuresEnvEntry); }
+            if (intp.conditionHandlerEnvEntry != null) intp.extendGlobal(intp.conditionHandlerEnvEntry);
+            if (intp.randomStateEnvEntry != null) intp.extendGlobal(intp.randomStateEnvEntry);
+            return intp;
+        }
 
-            tailcall:
-            while (true) {
-                /// eval - lookup symbols in the current environment
-                if (symbolp(form)) { result = evalSymbol(form, env); break tailcall; }
+        /** return the snapshot of the chain of parents that contains the global {@code sym} or {@code null} */
+        private Snapshot globalLevel(Object sym) {
+            for (Snapshot s = this; s != null; s = s.parent) if (s.globals.containsKey(sym)) return s;
+            return null;
+        }
 
-                /// eval - atoms that are not symbols eval to themselves
-                if (atom(form)) { result = form; break tailcall; }
+        private Closure macro(LambdaJSymbol sym) {
+            for (Snapshot s = this; s != null; s = s.parent) {
+                final Closure macro = s.macros.get(sym);
+                if (macro != null || s.macros.containsKey(sym)) return macro;
+            }
+            return null;
+        }
 
-                if (Thread.interrupted()) throw new InterruptedException("got interrupted");
+        /** all globals of this snapshot including those of the chain of parents */
+        private Map<Object, Object> allGlobals() {
+            if (parent == null) return globals;
+            final Map<Object, Object> ret = new IdentityHashMap<>(parent.allGlobals());
+            ret.putAll(globals);
+            return ret;
+        }
 
-                level++;
-                if (traceOn) dbgEvalStart(isTc ? "eval TC" : EVAL, form, env, stack, level);
+        /** all macros of this snapshot including those of the chain of parents */
+        private Map<LambdaJSymbol, Closure> allMacros() {
+            if (parent == null) return macros;
+            final Map<LambdaJSymbol, Closure> ret = new IdentityHashMap<>(parent.allMacros());
+            for (Map.Entry<LambdaJSymbol, Closure> macro: macros.entrySet()) {
+                if (macro.getValue() == null) ret.remove(macro.getKey());
+                else ret.put(macro.getKey(), macro.getValue());
+            }
+            return ret;
+        }
 
-                /// eval - form is not an atom - must be a cons (nonempty list) containing either a special form or a function application
-                final ConsCell ccForm = (ConsCell)form;
 
-                // first element of the of the form should be a symbol that evals to a funtion or lambda
-                // or an expression that evals to a funtion or lambda
-                final Object operator = car(ccForm);
-                assert !isNil(operator) : "not a function: nil - should have been caught by expandForm()";
+        /// Image files - a snapshot saved to a file, loading an image is much faster than loading and macroexpanding the source files
 
-                final ConsCell ccArguments = (ConsCell)cdr(ccForm);   // list with remaining atoms/ expressions
+        private static final String IMAGE_MAGIC = "JMurmel image";
 
-                final boolean funcall;
-                ConsCell ccForms = null;
+        /* An image file is a gzipped stream of tagged values. Conses, symbols, strings, closures etc. get an id in the order they are written
+           so that shared structure and cycles can be written as a REF to an object that was already written.
+           A list is written as a sequence of conses followed by the last cdr, so that long lists don't need deep recursion. */
+        private static final int T_NULL = 0, T_REF = 1, T_SYMBOL = 2, T_GENSYM = 3, T_LONG = 4, T_DOUBLE = 5, T_CHAR = 6, T_STRING = 7,
+                                 T_CONS = 8, T_SEXPCONS = 9, T_VECTOR = 10, T_CLOSURE = 11, T_FRAME = 12, T_GLOBALREF = 13, T_PRIMITIVEREF = 14,
+                                 T_PRIMITIVE = 15, T_APPLY = 16, T_EVAL = 17, T_HASH = 18, T_JAVA = 19, T_LOCALREF = 20;
 
-                ConsCell argList = null;
+        /** the kinds of hash tables in image files, indexed by the byte that follows {@link #T_HASH} */
+        private static final Class<?>[] HASH_CLASSES = { HashMap.class, Subr.EqlMap.class, Subr.EqlTreeMap.class, Subr.EqualMap.class, Subr.EqualTreeMap.class, IdentityHashMap.class };
 
-                final LambdaJSymbol symOperator; // will be the car of the form as a LambdaJSymbol if it is a symbol, null otherwise
-                if (symbolp(operator)) special_forms: switch ((symOperator = (LambdaJSymbol)operator).wellknownSymbol) {
-                /// eval - special forms
+        /** writes a graph of Murmel objects, objects that are written more than once by one ImageWriter will be written as references */
+        private static final class ImageWriter {
+            private @NotNull DataOutputStream out;
+            private final @NotNull Snapshot snapshot;
+            private final Map<Object, Integer> ids = new IdentityHashMap<>();
+            private final Map<Path, Integer> paths = new HashMap<>();
 
-                /// eval - (quote exp) -> exp
-                case sQuote:
-                case sDefmacro: {
-                    result = car(ccArguments);  break tailcall;
-                }
+            ImageWriter(@NotNull OutputStream out, @NotNull Snapshot snapshot) { this.out = new DataOutputStream(out); this.snapshot = snapshot; }
 
-                /// eval - (lambda dynamic? (params...) forms...) -> lambda or closure
-                case sLambda: {
-                    final ConsCell ccParamsAndForms = (ConsCell)cdr(ccForm);
-                    nCells++;
-                    result = Closure.of(car(ccParamsAndForms), (ConsCell)cdr(ccParamsAndForms), env);  break tailcall;
-                }
+            void writeString(@NotNull String s) throws IOException {
+                final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
 
-                case sLambdaDynamic: {
-                    final ConsCell ccParamsAndForms = (ConsCell)cdr(ccForm);
-                    nCells++;
-                    result = new DynamicLambda(car(ccParamsAndForms), (ConsCell)cdr(ccParamsAndForms));  break tailcall;
-                }
+            private void register(Object o) { ids.put(o, ids.size()); }
 
-                case sSetQ: {
-                    result = evalSetq(ccArguments, env, stack, level, traceLvl);  break tailcall;
+            void write(Object o) throws IOException {
+                while (o instanceof ListConsCell || o instanceof SExpConsCell) {
+                    if (ids.containsKey(o)) break;
+                    if (o instanceof SExpConsCell) {
+                        final SExpConsCell cell = (SExpConsCell)o;
+                        out.writeByte(T_SEXPCONS);
+                        writePath(cell.path);
+                        out.writeInt(cell.startLineNo);  out.writeInt(cell.startCharNo);  out.writeInt(cell.lineNo);  out.writeInt(cell.charNo);
+                    }
+                    else out.writeByte(T_CONS);
+                    register(o);
+                    final ConsCell cell = (ConsCell)o;
+                    write(cell.car());
+                    o = cell.cdr();
                 }
+                writeAtom(o);
+            }
 
-                case sDeclaim: {
-                    evalDeclaim(level, ccArguments);  result = null;  break tailcall;
-                }
+            private void writePath(Path path) throws IOException {
+                if (path == null) { out.writeInt(-1); return; }
+                final Integer id = paths.get(path);
+                if (id != null) { out.writeInt(id); return; }
+                out.writeInt(paths.size());
+                paths.put(path, paths.size());
+                writeString(path.toString());
+            }
 
+            private void writeAtom(Object o) throws IOException {
+                if (o == null) { out.writeByte(T_NULL); return; }
+                if (o instanceof Long)      { out.writeByte(T_LONG);  out.writeLong((Long)o);  return; }
+                if (o instanceof Double)    { out.writeByte(T_DOUBLE);  out.writeDouble((Double)o);  return; }
+                if (o instanceof Character) { out.writeByte(T_CHAR);  out.writeChar((Character)o);  return; }
+                if (o instanceof WellknownSymbol) { out.writeByte(T_PRIMITIVE);  writeString(((WellknownSymbol)o).name());  return; }
 
-                /// eval - special forms that change the global environment
+                final Integer id = ids.get(o);
+                if (id != null) { out.writeByte(T_REF);  out.writeInt(id);  return; }
 
-                /// eval - (define symbol exp) -> symbol with a side of global environment extension
-                case sDefine: {
-                    result = evalDefine(ccArguments, env, stack, level, traceLvl);  break tailcall;
+                if (o instanceof LambdaJSymbol) {
+                    final LambdaJSymbol sym = (LambdaJSymbol)o;
+                    out.writeByte(sym.wellknownSymbol == WellknownSymbol.notInterned ? T_GENSYM : T_SYMBOL);
+                    register(o);
+                    writeString(sym.name);
                 }
+                else if (o instanceof String) { out.writeByte(T_STRING);  register(o);  writeString((String)o); }
+                else if (o instanceof BoundPrimitive) { out.writeByte(T_PRIMITIVE);  writeString(((BoundPrimitive)o).w.name()); }
+                else if (o == snapshot.ocApply) out.writeByte(T_APPLY);
+                else if (o == snapshot.ocEval) out.writeByte(T_EVAL);
+                else if (o.getClass() == Object[].class) {
+                    final Object[] vector = (Object[])o;
+                    out.writeByte(T_VECTOR);
+                    register(o);
+                    out.writeInt(vector.length);
+                    for (Object elem: vector) write(elem);
+                }
+                else if (o instanceof Closure && !(o instanceof DynamicLambda)) {
+                    final Closure closure = (Closure)o;
+                    out.writeByte(T_CLOSURE);
+                    register(o);
+                    write(closure.params());
+                    write(closure.body);
+                    write(closure.closure);
+                }
+                else if (o instanceof Frame1 || o instanceof Frame2 || o instanceof Frame3) {
+                    final Frame frame = (Frame)o;
+                    out.writeByte(T_FRAME);
+                    register(o);
+                    out.writeByte(frame.size());
+                    for (int slot = 0; slot < frame.size(); slot++) { write(frame.sym(slot));  write(frame.value(slot)); }
+                    write(frame.parent);
+                }
+                else if (hashKind(o) >= 0) {
+                    final Map<?, ?> map = (Map<?, ?>)o;
+                    out.writeByte(T_HASH);
+                    register(o);
+                    out.writeByte(hashKind(o));
+                    out.writeInt(map.size());
+                    for (Map.Entry<?, ?> entry: map.entrySet()) {
+                        write(o instanceof Subr.MurmelMap ? ((Subr.MurmelMap)o).getKey(entry) : entry.getKey());
+                        write(entry.getValue());
+                    }
+                }
+                else if (o instanceof GlobalRef) { out.writeByte(T_GLOBALREF);  register(o);  write(((GlobalRef)o).symbol); }
+                else if (o instanceof PrimitiveRef) { out.writeByte(T_PRIMITIVEREF);  register(o);  write(((PrimitiveRef)o).symbol); }
+                else if (o instanceof LocalRef) {
+                    final LocalRef ref = (LocalRef)o;
+                    out.writeByte(T_LOCALREF);
+                    register(o);
+                    out.writeInt(ref.hops);
+                    out.writeByte(ref.slot);
+                    write(ref.symbol);
+                }
+                else if (o instanceof Serializable) {
+                    // other objects such as arrays, bignums or Java methods are written using Java serialization
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream objOut = new ImageOutputStream(bytes)) { objOut.writeObject(o); }
+                    out.writeByte(T_JAVA);
+                    register(o);
+                    out.writeInt(bytes.size());
+                    bytes.writeTo(out);
+                }
+                else throw new NotSerializableException(o.getClass().getName());
+            }
 
-                /// eval - (defun symbol (params...) forms...) -> symbol with a side of global environment extension
-                // shortcut for (define symbol (lambda (params...) forms...)) with one difference: defun will early bind recursive invocations
-                case sDefun: {
-                    result = evalDefun(ccArguments, env);  break tailcall;
+            /** write the number of entries of {@code map} whose key and value can be written followed by these entries,
+             *  return the keys of the entries that were skipped. Each entry is written to a buffer first so that nothing
+             *  of an entry that can't be written ends up in the image. */
+            @NotNull List<Object> writeEntries(@NotNull Map<?, ?> map) throws IOException {
+                final DataOutputStream target = out;
+                final ByteArrayOutputStream entries = new ByteArrayOutputStream(), entry = new ByteArrayOutputStream();
+                final List<Object> skipped = new ArrayList<>();
+                int n = 0;
+                try {
+                    out = new DataOutputStream(entry);
+                    for (Map.Entry<?, ?> e: map.entrySet()) {
+                        final int ids = this.ids.size(), paths = this.paths.size();
+                        entry.reset();
+                        try {
+                            write(e.getKey());  write(e.getValue());
+                            out.flush();
+                            entry.writeTo(entries);
+                            n++;
+                        }
+                        catch (IOException ex) {
+                            // forget the objects of the failed entry, they are not in the image
+                            this.ids.values().removeIf(id -> id >= ids);
+                            this.paths.values().removeIf(id -> id >= paths);
+                            skipped.add(e.getKey());
+                        }
+                    }
                 }
+                finally { out = target; }
+                out.writeInt(n);
+                entries.writeTo(out);
+                return skipped;
+            }
 
+            void flush() throws IOException { out.flush(); }
 
-                /// eval - special forms that run expressions
+            private static int hashKind(Object o) {
+                for (int kind = 0; kind < HASH_CLASSES.length; kind++) if (o.getClass() == HASH_CLASSES[kind]) return kind;
+                return -1;
+            }
+        }
 
-                /// eval - (load filespec) -> object
-                case sLoad: {
-                    result = loadFile(LOAD, car(ccArguments));  break tailcall;
-                }
+        /** reads a graph of Murmel objects that was written by {@link ImageWriter} */
+        private static final class ImageReader {
+            /** placeholder for an object whose construction needs its contents, e.g. a closure, and that is referenced from its contents */
+            private static final class Pending {
+                final List<Consumer<Object>> fixups = new ArrayList<>();
+            }
 
-                /// eval - (require modulename optfilespec) -> object
-                case sRequire: {
-                    result = evalRequire(ccArguments);  break tailcall;
-                }
+            private final @NotNull DataInputStream in;
+            private final @NotNull LambdaJ intp;
+            private final List<Object> objects = new ArrayList<>();
+            private final List<Path> paths = new ArrayList<>();
 
-                /// eval - (provide modulename) -> nil
-                case sProvide: {
-                    evalProvide(ccArguments);  result = null;  break tailcall;
-                }
+            ImageReader(@NotNull InputStream in, @NotNull LambdaJ intp) { this.in = new DataInputStream(in); this.intp = intp; }
 
+            @NotNull String readString() throws IOException {
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
 
+            private int reserve() { objects.add(new Pending());  return objects.size() - 1; }
 
-                // the case clauses below will set "funcall" to false and set up "ccForms" depending on the special form.
-                // "ccForms" will then be used in "eval a list of forms" below
+            private <T> T define(int id, T o) {
+                final Pending pending = (Pending)objects.set(id, o);
+                for (Consumer<Object> fixup: pending.fixups) fixup.accept(o);
+                return o;
+            }
 
-                /// eval - (progn forms...) -> object
-                case sProgn: {
-                    ccForms = ccArguments;
-                    funcall = false;
-                    break; // fall through to "eval a list of forms"
-                }
+            /** return {@code o}, or {@code null} if {@code o} is not constructed yet, {@code setter} will be invoked when it is */
+            private static Object resolve(Object o, Consumer<Object> setter) {
+                if (o instanceof Pending) { ((Pending)o).fixups.add(setter);  return null; }
+                return o;
+            }
 
-                /// eval - (catch tagform forms...) -> object
-                case sCatch: {
-                    final Object tag = eval(car(ccArguments), env, stack, level, traceLvl);
-                    localCatchTags = cons(tag, localCatchTags);
-                    ccForms = (ConsCell)cdr(ccArguments);
-                    funcall = false;
-                    break; // fall through to "eval a list of forms"
-                }
+            private static Object requireDone(Object o) throws IOException {
+                if (o instanceof Pending) throw new InvalidObjectException("unsupported reference cycle");
+                return o;
+            }
 
-                /// eval - (throw tagform resultform) -> |
-                case sThrow: {
+            /** read a value, the result may be a {@link Pending} if the value is a reference to an object that is not yet constructed */
+            Object read() throws IOException {
+                int tag = in.readByte();
+                AbstractConsCell first = null, prev = null;
+                while (tag == T_CONS || tag == T_SEXPCONS) {
+                    final AbstractConsCell cell;
+                    if (tag == T_SEXPCONS) {
+                        final Path path = readPath();
+                        cell = new SExpConsCell(path, in.readInt(), in.readInt(), in.readInt(), in.readInt(), null, null);
+                    }
+                    else cell = new ListConsCell(null, null);
+                    objects.add(cell);
+                    if (prev == null) first = cell;
+                    else prev.rplacd(cell);
+                    cell.rplaca(resolve(read(), cell::rplaca));
+                    prev = cell;
+                    tag = in.readByte();
+                }
+                final Object atom = readAtom(tag);
+                if (prev == null) return atom;
+                prev.rplacd(resolve(atom, prev::rplacd));
+                return first;
+            }
+
+            /** read a value that must not be a reference to an object that is not yet constructed */
+            Object readValue() throws IOException { return requireDone(read()); }
+
+            private Path readPath() throws IOException {
+                final int id = in.readInt();
+                if (id == -1) return null;
+                if (id < paths.size()) return paths.get(id);
+                final Path path = Paths.get(readString());
+                paths.add(path);
+                return path;
+            }
+
+            private Object readAtom(int tag) throws IOException {
+                switch (tag) {
+                case T_NULL: return null;
+                case T_REF: return objects.get(in.readInt());
+                case T_LONG: return Boxes.box(in.readLong());
+                case T_DOUBLE: return in.readDouble();
+                case T_CHAR: return Boxes.box(in.readChar());
+                case T_SYMBOL: { final int id = reserve();  return define(id, intp.symtab.intern(readString())); }
+                case T_GENSYM: { final int id = reserve();  return define(id, new LambdaJSymbol(readString())); }
+                case T_STRING: { final int id = reserve();  return define(id, readString()); }
+                case T_PRIMITIVE: return intp.boundPrimitive(WellknownSymbol.valueOf(readString()));
+                case T_APPLY: return intp.ocApply;
+                case T_EVAL: return intp.ocEval;
+                case T_VECTOR: {
+                    final Object[] vector = new Object[in.readInt()];
+                    objects.add(vector);
+                    for (int i = 0; i < vector.length; i++) {
+                        final int idx = i;
+                        vector[i] = resolve(read(), o -> vector[idx] = o);
+                    }
+                    return vector;
+                }
+                case T_CLOSURE: {
+                    final int id = reserve();
+                    final Object params = readValue(), body = readValue(), env = readValue();
+                    return define(id, Closure.of(params, (ConsCell)body, (ConsCell)env));
+                }
+                case T_FRAME: {
+                    final int id = reserve();
+                    final int size = in.readByte();
+                    final Object[] syms = new Object[size], values = new Object[size];
+                    for (int slot = 0; slot < size; slot++) { syms[slot] = readValue();  values[slot] = read(); }
+                    final ConsCell parent = (ConsCell)readValue();
+                    final Frame frame;
+                    switch (size) {
+                    case 1: frame = new Frame1(syms[0], null, parent);  break;
+                    case 2: frame = new Frame2(syms[0], null, syms[1], null, parent);  break;
+                    case 3: frame = new Frame3(syms[0], null, syms[1], null, syms[2], null, parent);  break;
+                    default: throw new InvalidObjectException("invalid frame size " + size);
+                    }
+                    for (int slot = 0; slot < size; slot++) {
+                        final int s = slot;
+                        frame.setValue(slot, resolve(values[slot], o -> frame.setValue(s, o)));
+                    }
+                    return define(id, frame);
+                }
+                case T_HASH: {
+                    final int kind = in.readByte(), size = in.readInt();
+                    final Map<Object, Object> map;
+                    switch (kind) {
+                    case 0: map = JavaUtil.newHashMap(size);  break;
+                    case 1: map = new Subr.EqlMap(size);  break;
+                    case 2: map = new Subr.EqlTreeMap();  break;
+                    case 3: map = new Subr.EqualMap(size);  break;
+                    case 4: map = new Subr.EqualTreeMap();  break;
+                    case 5: map = new IdentityHashMap<>(size);  break;
+                    default: throw new InvalidObjectException("invalid hash table kind " + kind);
+                    }
+                    objects.add(map);
+                    for (int n = size; n > 0; n--) {
+                        final Object key = readValue();
+                        map.put(key, resolve(read(), o -> map.put(key, o)));
+                    }
+                    return map;
+                }
+                case T_GLOBALREF: { final int id = reserve();  return define(id, new GlobalRef((LambdaJSymbol)readValue())); }
+                case T_PRIMITIVEREF: { final int id = reserve();  return define(id, new PrimitiveRef((LambdaJSymbol)readValue())); }
+                case T_LOCALREF: {
+                    final int id = reserve();
+                    final int hops = in.readInt(), slot = in.readByte();
+                    return define(id, new LocalRef((LambdaJSymbol)readValue(), hops, slot));
+                }
+                case T_JAVA: {
+                    final byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    try (ImageInputStream objIn = new ImageInputStream(new ByteArrayInputStream(bytes), intp.symtab)) {
+                        final Object o = objIn.readObject();
+                        objects.add(o);
+                        return o;
+                    }
+                    catch (ClassNotFoundException e) { throw new InvalidClassException(e.getMessage()); }
+                }
+                default: throw new StreamCorruptedException("invalid tag " + tag);
+                }
+            }
+        }
+
+        /** an interned symbol inside of Java serialized objects in an image file, it will be interned into the symbol table of the interpreter that loads the image */
+        private static final class ImageSymbol implements Serializable {
+            private static final long serialVersionUID = 1L;
+            final @NotNull String name;
+            ImageSymbol(@NotNull String name) { this.name = name; }
+        }
+
+        /** JDK classes that may be contained in Java serialized objects in an image file in addition to JMurmel's classes and primitive types */
+        private static final Set<String> IMAGE_JDK_CLASSES = new HashSet<>(Arrays.asList(
+                Object.class.getName(), String.class.getName(), StringBuilder.class.getName(), Enum.class.getName(), Number.class.getName(),
+                Long.class.getName(), Double.class.getName(), Integer.class.getName(), Short.class.getName(), Byte.class.getName(), Float.class.getName(),
+                Character.class.getName(), Boolean.class.getName(), BigInteger.class.getName(), BigDecimal.class.getName(), Random.class.getName(),
+                ArrayList.class.getName(), HashMap.class.getName(), LinkedHashMap.class.getName(), IdentityHashMap.class.getName(), TreeMap.class.getName()));
+
+        /** return true if objects of the class {@code name} may be Java serialized into an image file */
+        private static boolean imageClass(String name) {
+            if (name.startsWith("[")) {
+                name = name.substring(name.lastIndexOf('[') + 1);
+                if (name.length() == 1) return true; // array of a primitive type
+                name = name.substring(1, name.length() - 1); // strip 'L' and ';'
+            }
+            return name.startsWith(LambdaJ.class.getName() + '$') || IMAGE_JDK_CLASSES.contains(name);
+        }
+
+        private static final class ImageOutputStream extends ObjectOutputStream {
+            ImageOutputStream(OutputStream out) throws IOException { super(out); enableReplaceObject(true); }
+
+            /** objects that contain classes that {@link ImageInputStream} won't read are not written */
+            @Override protected void annotateClass(Class<?> cl) throws IOException {
+                if (!imageClass(cl.getName())) throw new NotSerializableException(cl.getName());
+            }
+            @Override protected void annotateProxyClass(Class<?> cl) throws IOException { throw new NotSerializableException(cl.getName()); }
+
+            @Override protected Object replaceObject(Object obj) {
+                if (obj instanceof LambdaJSymbol && ((LambdaJSymbol)obj).wellknownSymbol != WellknownSymbol.notInterned) return new ImageSymbol(((LambdaJSymbol)obj).name);
+                return obj;
+            }
+        }
+
+        private static final class ImageInputStream extends ObjectInputStream {
+            private final @NotNull SymbolTable symtab;
+
+            ImageInputStream(InputStream in, @NotNull SymbolTable symtab) throws IOException { super(in); this.symtab = symtab; enableResolveObject(true); }
+
+            /** only classes that are written by {@link ImageOutputStream} are loaded, other classes could be used to run arbitrary code.
+             *  (ObjectInputFilter would need Java 9+) */
+            @Override protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                if (!imageClass(desc.getName())) throw new InvalidClassException(desc.getName(), "class is not allowed in a JMurmel image");
+                return super.resolveClass(desc);
+            }
+            @Override protected Class<?> resolveProxyClass(String[] interfaces) throws IOException { throw new InvalidClassException("proxy classes are not allowed in a JMurmel image"); }
+
+            @Override protected Object resolveObject(Object obj) {
+                if (obj instanceof ImageSymbol) return symtab.intern(((ImageSymbol)obj).name);
+                if (obj instanceof Long && Boxes.isCached((Long)obj)) return Boxes.box((long)(Long)obj);
+                if (obj instanceof Character) return Boxes.box((char)(Character)obj);
+                return obj;
+            }
+        }
+
+        /** <p>Write this snapshot to the file {@code imageFile}, it can be read back with {@link #load}.
+         *
+         *  <p>Global variables whose values can't be saved such as Java objects that are not serializable or compiled functions are not saved,
+         *  their symbols are returned. */
+        public List<Object> save(@NotNull Path imageFile) throws IOException {
+            final Map<LambdaJSymbol, Closure> macros = allMacros();
+            final List<Object> skipped;
+            try (OutputStream os = new BufferedOutputStream(new java.util.zip.GZIPOutputStream(Files.newOutputStream(imageFile), 65536), 65536)) {
+                final ImageWriter out = new ImageWriter(os, this);
+                out.writeString(IMAGE_MAGIC);
+                out.writeString(ENGINE_VERSION);
+                out.out.writeInt(features);
+                out.out.writeShort(speed);  out.out.writeShort(debug);
+                out.writeString(engine.name());
+
+                skipped = out.writeEntries(allGlobals());
+
+                out.out.writeInt(macros.size());
+                for (Map.Entry<LambdaJSymbol, Closure> macro: macros.entrySet()) { out.write(macro.getKey());  out.write(macro.getValue()); }
+
+                out.out.writeInt(modules.size());
+                for (Object module: modules) out.write(module);
+
+                out.writeEntries(declaimedTypes);
+                out.flush();
+            }
+            return skipped;
+        }
+
+        /** read an image file that was written by {@link #save}, the image will use a new symbol table */
+        public static Snapshot load(@NotNull Path imageFile) throws IOException {
+            return load(imageFile, TraceLevel.TRC_NONE, null, null);
+        }
+
+        /** read an image file that was written by {@link #save}, the image will use a new symbol table.
+         *  Forks of the image will use {@code trace}, {@code tracer} and will load files from {@code libDir} */
+        public static Snapshot load(@NotNull Path imageFile, @NotNull TraceLevel trace, TraceConsumer tracer, Path libDir) throws IOException {
+            final LambdaJ intp;
+            try (InputStream is = new BufferedInputStream(new java.util.zip.GZIPInputStream(Files.newInputStream(imageFile), 65536), 65536)) {
+                final DataInputStream header = new DataInputStream(is);
+                if (!IMAGE_MAGIC.equals(readHeaderString(header))) throw new IOException(imageFile + " is not a JMurmel image");
+                final String version = readHeaderString(header);
+                if (!ENGINE_VERSION.equals(version)) throw new IOException(imageFile + " was written by JMurmel " + version + ", this is JMurmel " + ENGINE_VERSION);
+
+                intp = new LambdaJ(header.readInt(), trace, tracer, new ListSymbolTable(), null, null, null, libDir);
+                intp.init((ObjectReader)null, null, null);
+                intp.speed = header.readShort();  intp.debug = header.readShort();
+                intp.engine = Engine.valueOf(readHeaderString(header));
+
+                final ImageReader in = new ImageReader(is, intp);
+                for (int n = header.readInt(); n > 0; n--) {
+                    final Object sym = in.readValue();
+                    intp.extendGlobal(sym, in.readValue());
+                }
+                for (int n = header.readInt(); n > 0; n--) intp.defineMacro((LambdaJSymbol)in.readValue(), (Closure)in.readValue());
+                for (int n = header.readInt(); n > 0; n--) intp.modules.add(in.readValue());
+                for (int n = header.readInt(); n > 0; n--) {
+                    final Object sym = in.readValue();
+                    intp.declaimedTypes.put(sym, in.readValue());
+                }
+            }
+            catch (ClassCastException | IllegalArgumentException | IndexOutOfBoundsException | LambdaJError e) { throw new IOException(imageFile + " is not a valid JMurmel image", e); }
+            return new Snapshot(intp);
+        }
+
+        private static String readHeaderString(DataInputStream in) throws IOException {
+            final int len = in.readInt();
+            if (len < 0 || len > 256) throw new IOException("not a JMurmel image");
+            final byte[] bytes = new byte[len];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** the image this interpreter was forked from, global bindings that are not in {@link #globals} will be copied from the snapshot on first use */
+    private Snapshot snapshot;
+
+    /** create an env entry for {@code sym} from the snapshot this interpreter was forked from, return {@code null} if the snapshot doesn't have {@code sym} */
+    private ConsCell copyFromSnapshot(@NotNull Object sym) {
+        final Snapshot snapshot = this.snapshot.globalLevel(sym);
+        if (snapshot == null) return null;
+        final Object value = snapshot.globals.get(sym);
+
+        final Object ownValue;
+        if (value instanceof WellknownSymbol) ownValue = boundPrimitive((WellknownSymbol)value);
+        else if (value != null && value == snapshot.ocApply) ownValue = ocApply;
+        else if (value != null && value == snapshot.ocEval) ownValue = ocEval;
+        else ownValue = value;
+        final ConsCell envEntry = cons(sym, ownValue);
+        globals.put(sym, envEntry);
+        return envEntry;
+    }
+
+    final Set<Object> modules = new HashSet<>();
+    /** will be set to 1 by {@link #init}, changed by (declaim (optimize (speed... */
+    short speed = -1, debug = -1;
+
+
+    /// ### Resolve references to global variables, global functions and local variables at closure creation time
+
+    /** A reference to a global variable or function that was resolved at closure creation time, see {@link #resolveGlobals}.
+     *  If the global symbol was not yet bound when the closure was created then it will be looked up on first use. */
+    private static final class GlobalRef implements Serializable, Writeable {
+        private static final long serialVersionUID = 1L;
+
+        final @NotNull LambdaJSymbol symbol;
+
+        GlobalRef(@NotNull LambdaJSymbol symbol) { this.symbol = symbol; }
+
+        @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { symbol.printSEx(out, escapeAtoms); }
+        @Override public String toString() { return symbol.toString(); }
+    }
+
+    /** A reference to a local variable that was resolved at closure creation time, see {@link #resolveGlobals}. The variable's binding is
+     *  {@code hops} environment links (i.e. {@link Frame}s or alist conses) away from the environment in which the reference is evaluated,
+     *  at index {@code slot} if that link is a Frame. */
+    private static final class LocalRef implements Serializable, Writeable {
+        private static final long serialVersionUID = 1L;
+
+        final @NotNull LambdaJSymbol symbol;
+        final int hops, slot;
+
+        LocalRef(@NotNull LambdaJSymbol symbol, int hops, int slot) { this.symbol = symbol; this.hops = hops; this.slot = slot; }
+
+        @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { symbol.printSEx(out, escapeAtoms); }
+        @Override public String toString() { return symbol.toString(); }
+    }
+
+    /** The operator of a call site of a primitive that was found to be not shadowed by a local binding at closure creation time,
+     *  see {@link #resolveGlobals}. The primitive will be applied to the evaluated arguments without consing up an argument list. */
+    private static final class PrimitiveRef implements Serializable, Writeable {
+        private static final long serialVersionUID = 1L;
+
+        final @NotNull LambdaJSymbol symbol;
+        final @NotNull WellknownSymbol primitive;
+
+        PrimitiveRef(@NotNull LambdaJSymbol symbol) { this.symbol = symbol; this.primitive = symbol.wellknownSymbol; }
+
+        @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { symbol.printSEx(out, escapeAtoms); }
+        @Override public String toString() { return symbol.toString(); }
+    }
+
+    private Object evalGlobalRef(GlobalRef ref) {
+        return globalValue(globalSlot(ref), ref);
+    }
+
+    /** return the value of the local variable that is referenced by {@code ref} without searching the environment by symbol.
+     *  If the environment doesn't have the shape that {@link #resolveGlobals} expected then {@link #evalSymbol} will be used */
+    private Object evalLocalRef(LocalRef ref, ConsCell env) {
+        ConsCell link = env;
+        for (int n = ref.hops; n > 0 && link != null; n--) link = link instanceof Frame ? ((Frame)link).parent : (ConsCell)link.cdr();
+        if (link instanceof Frame) {
+            final Object value = ((Frame)link).value(ref.slot, ref.symbol);
+            if (value != Frame.NOT_BOUND) return value; // frames contain arguments, no need to check for UNASSIGNED
+        }
+        else if (link != null) {
+            final ConsCell envEntry = (ConsCell)link.car();
+            if (envEntry.car() == ref.symbol) {
+                final Object value = envEntry.cdr();
+                if (value == UNASSIGNED) errorUnassigned(EVAL, ref.symbol);
+                return value;
+            }
+        }
+        return evalSymbol(ref.symbol, env);
+    }
+
+    /** return the slot of the global that is referenced by {@code ref}, throw an error if it's unbound */
+    private @NotNull GlobalSlot globalSlot(GlobalRef ref) {
+        final GlobalSlot slot = slot(ref.symbol);
+        if (slot == null || slot.envEntry == null) throw errorUnbound(EVAL, ref.symbol);
+        return slot;
+    }
+
+    /** return the slot of the global function that is called through {@code ref}, throw an error if it's a macro or unbound */
+    private @NotNull GlobalSlot globalFunctionSlot(GlobalRef ref) {
+        final GlobalSlot slot = slot(ref.symbol);
+        if (slot != null && slot.macro != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", ref.symbol.toString());
+        if (slot == null || slot.envEntry == null) throw errorUnbound(EVAL, ref.symbol);
+        return slot;
+    }
+
+    private static Object globalValue(GlobalSlot slot, GlobalRef ref) {
+        final Object value = slot.envEntry.cdr();
+        if (value == UNASSIGNED) errorUnassigned(EVAL, ref.symbol);
+        return value;
+    }
+
+    /** kinds of function objects as used by the function dispatch in {@link #eval} */
+    private static final int FK_NOT_A_FUNCTION = 0, FK_PRIMITIVE = 1, FK_CLOSURE = 2, FK_OPENCODED = 3, FK_COMPILER_PRIMITIVE = 4, FK_COMPILED = 5, FK_OLD_LAMBDA = 6;
+
+    private int funcKind(Object func) {
+        if (func instanceof Primitive) return FK_PRIMITIVE;
+        if (func instanceof Closure) return FK_CLOSURE;
+        if (func instanceof OpenCodedPrimitive) return FK_OPENCODED;
+        if (func instanceof MurmelJavaProgram.CompilerPrimitive) return FK_COMPILER_PRIMITIVE;
+        if (func instanceof MurmelFunction) return FK_COMPILED;
+        if (func instanceof ConsCell && car(func) == sLambda && have(Features.HAVE_OLDLAMBDA)) return FK_OLD_LAMBDA;
+        return FK_NOT_A_FUNCTION;
+    }
+
+    /** return the kind of the global function {@code func} that was looked up through {@code slot},
+     *  the kind is computed only if {@code func} is not the function that was called previously through {@code slot} */
+    private int cachedFuncKind(GlobalSlot slot, Object func) {
+        if (func == slot.cachedFunc) return slot.cachedKind;
+        final int kind = funcKind(func);
+        if (kind == FK_OLD_LAMBDA || kind == FK_NOT_A_FUNCTION) return kind; // lists may be modified, don't cache them
+        slot.cachedFunc = func;  slot.cachedKind = kind;
+        return kind;
+    }
+
+    /** Return {@code body} where references to global variables and global functions are replaced by {@link GlobalRef}s
+     *  and references to local variables are replaced by {@link LocalRef}s so that evaluating them later won't need to search the environment.
+     *
+     *  <p>Symbols that are bound by {@code env} or by a binding form within {@code body} whose environment layout isn't known
+     *  as well as primitives and special forms are left alone, ditto for quoted data and dynamic lambdas.
+     *  Calls with one or two arguments to primitives that are not shadowed get a {@link PrimitiveRef} as their operator.
+     *  {@code body} itself is not modified, conses will be copied as needed.
+     *
+     *  @param self the symbol that {@link #evalDefun} has bound in front of {@code env}, or {@code null} */
+    private ConsCell resolveGlobals(Object params, ConsCell body, ConsCell env, Object self) {
+        if (speed < 1 || !have(Features.HAVE_LEXC)) return body;
+        final ArrayList<Object> bound = new ArrayList<>();
+        addParams(bound, params);
+        final ArrayList<Object> scope = new ArrayList<>();
+        scope.add(UNKNOWN_LINKS);
+        if (self != null) scope.add(self);
+        addFrame(scope, params);
+        return (ConsCell)mapList(body, (i, form) -> resolveForm(form, bound, scope, env));
+    }
+
+    /** marks environment links of unknown number and layout in the model of the environment that is used by {@link #resolveForm} */
+    private static final Object UNKNOWN_LINKS = "unknown environment links";
+
+    /** {@code scope} models the environment in which {@code form} will be evaluated, see {@link #localRef} */
+    private Object resolveForm(Object form, ArrayList<Object> bound, ArrayList<Object> scope, ConsCell env) {
+        if (form instanceof LambdaJSymbol) {
+            final LambdaJSymbol sym = (LambdaJSymbol)form;
+            if (reserved(sym)) return form;
+            final LocalRef local = localRef(sym, scope);
+            if (local != null) return local;
+            if (isBound(sym, bound, env)) return form;
+            return new GlobalRef(sym);
+        }
+        if (!consp(form)) return form;
+
+        final ConsCell ccForm = (ConsCell)form;
+        final Object op = car(ccForm);
+        if (!(op instanceof LambdaJSymbol)) return mapList(ccForm, (i, f) -> resolveForm(f, bound, scope, env));
+
+        final LambdaJSymbol symOp = (LambdaJSymbol)op;
+        final int mark = bound.size(), scopeMark = scope.size();
+        final Object ret;
+        switch (symOp.wellknownSymbol) {
+        case sQuote:
+        case sLambdaDynamic:
+        case sDefmacro:
+        case sDeclaim:
+        case sDeclare:
+        case sLoad:
+        case sRequire:
+        case sProvide:
+            return form;
+
+        case sLambda:
+            addParams(bound, cadr(ccForm));
+            addFrame(scope, cadr(ccForm));
+            ret = mapList(ccForm, (i, f) -> i < 2 ? f : resolveForm(f, bound, scope, env));
+            break;
+
+        case sDefun:
+            bound.add(cadr(ccForm));
+            addParams(bound, caddr(ccForm));
+            scope.add(cadr(ccForm));
+            addFrame(scope, caddr(ccForm));
+            ret = mapList(ccForm, (i, f) -> i < 3 ? f : resolveForm(f, bound, scope, env));
+            break;
+
+        case sLabels:
+            // same environment as evalLabels() creates: a pseudo entry followed by the local functions, the last one in front
+            scope.add(PSEUDO_SYMBOL);
+            for (Object localFunc: (ConsCell)cadr(ccForm)) { bound.add(car(localFunc));  scope.add(car(localFunc)); }
+            ret = mapList(ccForm, (i, f) -> i == 0 ? f
+                                            : i == 1 ? mapList(f, (j, localFunc) -> {
+                                                           final int localMark = bound.size(), localScopeMark = scope.size();
+                                                           addParams(bound, cadr(localFunc));
+                                                           addFrame(scope, cadr(localFunc));
+                                                           final Object resolved = mapList(localFunc, (k, lf) -> k < 2 ? lf : resolveForm(lf, bound, scope, env));
+                                                           truncate(bound, localMark);
+                                                           truncate(scope, localScopeMark);
+                                                           return resolved; })
+                                            : resolveForm(f, bound, scope, env));
+            break;
+
+        case sLet:
+        case sLetStar:
+        case sLetrec: {
+            // all variables and a possible named let label are considered bound for all init forms and the body.
+            // This may leave a few symbols unresolved but it is always safe.
+            final Object maybeTag = cadr(ccForm);
+            final int bindingsIdx = maybeTag instanceof LambdaJSymbol ? 2 : 1;
+            if (bindingsIdx == 2) bound.add(maybeTag);
+            final Object bindings = bindingsIdx == 2 ? caddr(ccForm) : maybeTag;
+            if (bindings != null) for (Object binding: (ConsCell)bindings) bound.add(car(binding));
+            if (symOp.wellknownSymbol == WellknownSymbol.sLet && bindingsIdx == 1) {
+                // the init forms are evaluated in the enclosing environment, the body in front of which evalLet() has pushed one entry per variable
+                final ArrayList<Object> bodyScope = new ArrayList<>(scope);
+                if (bindings != null) for (Object binding: (ConsCell)bindings) bodyScope.add(car(binding));
+                ret = mapList(ccForm, (i, f) -> i < 1 ? f
+                                                : i == 1 ? mapList(f, (j, binding) -> mapList(binding, (k, b) -> k == 0 ? b : resolveForm(b, bound, scope, env)))
+                                                : resolveForm(f, bound, bodyScope, env));
+            }
+            else {
+                // let*, letrec, named let and let dynamic: the layout of the environment depends on runtime values or differs between iterations
+                scope.add(UNKNOWN_LINKS);
+                ret = mapList(ccForm, (i, f) -> i < bindingsIdx ? f
+                                                : i == bindingsIdx ? mapList(f, (j, binding) -> mapList(binding, (k, b) -> k == 0 ? b : resolveForm(b, bound, scope, env)))
+                                                : resolveForm(f, bound, scope, env));
+            }
+            break;
+        }
+
+        case sMultipleValueBind:
+            addParams(bound, cadr(ccForm));
+            scope.add(UNKNOWN_LINKS);
+            ret = mapList(ccForm, (i, f) -> i < 2 ? f : resolveForm(f, bound, scope, env));
+            break;
+
+        case sSetQ:
+            ret = mapList(ccForm, (i, f) -> i > 0 && i % 2 == 0 ? resolveForm(f, bound, scope, env) : f);
+            break;
+
+        case sDefine:
+            ret = mapList(ccForm, (i, f) -> i < 2 ? f : resolveForm(f, bound, scope, env));
+            break;
+
+        case sCond:
+            ret = mapList(ccForm, (i, clause) -> i == 0 ? clause : mapList(clause, (j, f) -> resolveForm(f, bound, scope, env)));
+            break;
+
+        default:
+            if (symOp.specialForm()) {
+                // if, progn, catch, throw, unwind-protect, try, multiple-value-call
+                ret = mapList(ccForm, (i, f) -> i == 0 ? f : resolveForm(f, bound, scope, env));
+            }
+            else {
+                // function call. Primitives are opencoded by eval(), macros that were defined after the enclosing form
+                // was expanded are left alone, eval() will complain about them
+                final Object newOp;
+                final LocalRef local;
+                if (macroOf(symOp) != null) newOp = symOp;
+                else if ((local = localRef(symOp, scope)) != null) newOp = local;
+                else if (isBound(symOp, bound, env)) newOp = symOp;
+                else if (symOp.primitive()) newOp = primitiveRef(symOp, ccForm);
+                else newOp = new GlobalRef(symOp);
+                ret = mapList(ccForm, (i, f) -> i == 0 ? newOp : resolveForm(f, bound, scope, env));
+            }
+        }
+        truncate(bound, mark);
+        truncate(scope, scopeMark);
+        return ret;
+    }
+
+    /** return the address of the binding of {@code sym} in {@code scope} or {@code null} if the binding is not in the known part of {@code scope}.
+     *  Each element of {@code scope} models one link of the environment, the last element is the innermost link:
+     *  a symbol for an alist entry, an array of the symbols of a {@link Frame} or {@link #UNKNOWN_LINKS} */
+    private static LocalRef localRef(LambdaJSymbol sym, ArrayList<Object> scope) {
+        for (int i = scope.size() - 1, hops = 0; i >= 0; i--, hops++) {
+            final Object link = scope.get(i);
+            if (link == sym) return new LocalRef(sym, hops, 0);
+            if (link == UNKNOWN_LINKS) return null;
+            if (link instanceof Object[]) {
+                final Object[] frame = (Object[])link;
+                for (int slot = 0; slot < frame.length; slot++) if (frame[slot] == sym) return new LocalRef(sym, hops, slot);
+            }
+        }
+        return null;
+    }
+
+    /** add the links that applying a closure with the parameter list {@code params} puts in front of the closure's environment,
+     *  see {@link Closure#of} */
+    private static void addFrame(ArrayList<Object> scope, Object params) {
+        final ArrayList<Object> syms = new ArrayList<>();
+        addParams(syms, params);
+        if (syms.isEmpty()) return; // Closure0 doesn't extend the environment
+        if (syms.size() <= 3) { scope.add(syms.toArray());  return; }
+
+        // zip() conses up an alist and may peel off an entry of the closure's environment
+        scope.add(UNKNOWN_LINKS);
+        for (int i = syms.size() - 1; i >= 0; i--) scope.add(syms.get(i));
+    }
+
+    /** return a {@link PrimitiveRef} if {@code ccForm} is a valid call with one or two arguments, else {@code symOp} */
+    private static Object primitiveRef(LambdaJSymbol symOp, ConsCell ccForm) {
+        final WellknownSymbol prim = symOp.wellknownSymbol;
+        final Object args = cdr(ccForm);
+        if (!consp(args)) return symOp;
+        final int n = cdr(args) == null ? 1 : consp(cdr(args)) && cddr(args) == null ? 2 : 0;
+        if (n == 0 || n < prim.min || prim.max != -1 && n > prim.max) return symOp;
+        return new PrimitiveRef(symOp);
+    }
+
+    private static boolean isBound(LambdaJSymbol sym, ArrayList<Object> bound, ConsCell env) {
+        return bound.contains(sym) || fastassq(sym, env) != null;
+    }
+
+    private static void addParams(ArrayList<Object> bound, Object params) {
+        for (; consp(params); params = cdr(params)) bound.add(car(params));
+        if (params != null) bound.add(params);
+    }
+
+    private static void truncate(ArrayList<Object> bound, int size) {
+        while (bound.size() > size) bound.remove(bound.size() - 1);
+    }
+
+    @FunctionalInterface private interface ListMapper { Object map(int idx, Object elem); }
+
+    /** Return a list that contains the results of applying {@code mapper} to the elements of {@code list}.
+     *  Conses of {@code list} will be reused if possible, i.e. if {@code mapper} doesn't change anything then {@code list} will be returned. */
+    private static Object mapList(Object list, ListMapper mapper) {
+        return mapList(list, 0, mapper);
+    }
+
+    private static Object mapList(Object list, int idx, ListMapper mapper) {
+        if (!consp(list)) return list;
+        final ConsCell ccList = (ConsCell)list;
+        final Object car = ccList.car(), cdr = ccList.cdr();
+        final Object newCar = mapper.map(idx, car);
+        final Object newCdr = mapList(cdr, idx + 1, mapper);
+        if (newCar == car && newCdr == cdr) return ccList;
+        final ConsCell ret = ccList instanceof AbstractConsCell ? ccList.copy() : ConsCell.cons(null, null);
+        return ret.rplaca(newCar).rplacd(newCdr);
+    }
+
+
+    /// ###  eval - the heart of most if not all Lisp interpreters
+
+    private Object eval(Object form, ConsCell env, int stack, int level, int traceLvl) {
+        final boolean doOpencode = speed >= 1;
+        Object func = null;
+        Object result = null;  /* should be assigned even if followed by a "return" because it will be used in the "finally" clause */
+        Deque<Object> traceStack = null;
+        ConsCell restore = null;
+        ConsCell localCatchTags = null;
+        boolean isTc = false;
+        int profDepth = -1;
+        CallStats calls = null;  int callsDepth = -1;
+        try {
+            stack++;
+
+            tailcall:
+            while (true) {
+                /// eval - lookup symbols in the current environment
+                if (symbolp(form)) { result = evalSymbol(form, env); break tailcall; }
+
+                /// eval - local and global symbols that were resolved when the enclosing closure was created
+                if (form instanceof LocalRef) { result = evalLocalRef((LocalRef)form, env); break tailcall; }
+                if (form instanceof GlobalRef) { result = evalGlobalRef((GlobalRef)form); break tailcall; }
+
+                /// eval - atoms that are not symbols eval to themselves
+                if (atom(form)) { result = form; break tailcall; }
+
+                if (Thread.interrupted()) throw new InterruptedException("got interrupted");
+
+                level++;
+                if (traceOn) dbgEvalStart(isTc ? "eval TC" : EVAL, form, env, stack, level);
+
+                /// eval - form is not an atom - must be a cons (nonempty list) containing either a special form or a function application
+                final ConsCell ccForm = (ConsCell)form;
+
+                // first element of the of the form should be a symbol that evals to a funtion or lambda
+                // or an expression that evals to a funtion or lambda
+                final Object operator = car(ccForm);
+                assert !isNil(operator) : "not a function: nil - should have been caught by expandForm()";
+
+                final ConsCell ccArguments = (ConsCell)cdr(ccForm);   // list with remaining atoms/ expressions
+
+                final boolean funcall;
+                int funcKind = -1;  // will be set if the kind of the function was taken from an inline cache
+                ConsCell ccForms = null;
+
+                ConsCell argList = null;
+                ConsCell frame = null;  // will be set instead of argList if the arguments were evaluated straight into a new frame
+
+                final LambdaJSymbol symOperator; // will be the car of the form as a LambdaJSymbol if it is a symbol, null otherwise
+                if (symbolp(operator)) special_forms: switch ((symOperator = (LambdaJSymbol)operator).wellknownSymbol) {
+                /// eval - special forms
+
+                /// eval - (quote exp) -> exp
+                case sQuote:
+                case sDefmacro: {
+                    result = car(ccArguments);  break tailcall;
+                }
+
+                /// eval - (lambda dynamic? (params...) forms...) -> lambda or closure
+                case sLambda: {
+                    final ConsCell ccParamsAndForms = (ConsCell)cdr(ccForm);
+                    nCells++;
+                    result = Closure.of(car(ccParamsAndForms), (ConsCell)cdr(ccParamsAndForms), env);  break tailcall;
+                }
+
+                case sLambdaDynamic: {
+                    final ConsCell ccParamsAndForms = (ConsCell)cdr(ccForm);
+                    nCells++;
+                    result = new DynamicLambda(car(ccParamsAndForms), (ConsCell)cdr(ccParamsAndForms));  break tailcall;
+                }
+
+                case sSetQ: {
+                    result = evalSetq(ccArguments, env, stack, level, traceLvl);  break tailcall;
+                }
+
+                case sDeclaim: {
+                    evalDeclaim(level, ccArguments);  result = null;  break tailcall;
+                }
+
+                case sDeclare: {
+                    evalDeclare(ccArguments, env);  result = null;  break tailcall;
+                }
+
+
+                /// eval - special forms that change the global environment
+
+                /// eval - (define symbol exp) -> symbol with a side of global environment extension
+                case sDefine: {
+                    result = evalDefine(ccArguments, env, stack, level, traceLvl);  break tailcall;
+                }
+
+                /// eval - (defun symbol (params...) forms...) -> symbol with a side of global environment extension
+                // shortcut for (define symbol (lambda (params...) forms...)) with one difference: defun will early bind recursive invocations
+                case sDefun: {
+                    result = evalDefun(ccArguments, env);  break tailcall;
+                }
+
+
+                /// eval - special forms that run expressions
+
+                /// eval - (load filespec) -> object
+                case sLoad: {
+                    result = loadFile(LOAD, car(ccArguments));  break tailcall;
+                }
+
+                /// eval - (require modulename optfilespec) -> object
+                case sRequire: {
+                    result = evalRequire(ccArguments);  break tailcall;
+                }
+
+                /// eval - (provide modulename) -> nil
+                case sProvide: {
+                    evalProvide(ccArguments);  result = null;  break tailcall;
+                }
+
+
+
+                // the case clauses below will set "funcall" to false and set up "ccForms" depending on the special form.
+                // "ccForms" will then be used in "eval a list of forms" below
+
+                /// eval - (progn forms...) -> object
+                case sProgn: {
+                    ccForms = ccArguments;
+                    funcall = false;
+                    break; // fall through to "eval a list of forms"
+                }
+
+                /// eval - (catch tagform forms...) -> object
+                case sCatch: {
+                    final Object tag = eval(car(ccArguments), env, stack, level, traceLvl);
+                    localCatchTags = cons(tag, localCatchTags);
+                    ccForms = (ConsCell)cdr(ccArguments);
+                    funcall = false;
+                    break; // fall through to "eval a list of forms"
+                }
+
+                /// eval - (throw tagform resultform) -> |
+                case sThrow: {
                     final Object throwTag = eval(car(ccArguments), env, stack, level, traceLvl);
                     final Object throwResult = eval(cadr(ccArguments), env, stack, level, traceLvl);
                     // todo checken obs tag gibt, sonst (jerror 'control-error)
@@ -3030,6 +4419,11 @@ public class LambdaJ {
                 case sLetrec: {
                     final LetRetVal formsAndEnv = evalLet(symOperator.wellknownSymbol, ccArguments, env, restore, stack, level, traceLvl);
                     ccForms = formsAndEnv.body;  env = formsAndEnv.env;  restore = formsAndEnv.restore;
+                    if (callStats != null && car(ccArguments) instanceof LambdaJSymbol && car(ccArguments) != sDynamic) {
+                        // the first iteration of a named let counts as a call
+                        if (calls == null) { calls = callStats;  callsDepth = calls.depth(); }
+                        calls.enter((Closure)cdr(car(env)));
+                    }
                     funcall = false;
                     break; // fall through to "eval a list of forms"
                 }
@@ -3062,7 +4456,7 @@ public class LambdaJ {
 
                     // check if expandForm() has expanded all macros and make sure that expandForm() is used prior to any eval() call with a form that may contain macro calls
                     // macros can be unexpanded if the macro was defined after the defun
-                    if (symOperator.macro != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symOperator.toString());
+                    if (macroOf(symOperator) != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symOperator.toString());
 
                     if (doOpencode && symOperator.primitive()) {
                         result = symOperator.wellknownSymbol.apply(this, evlis(ccArguments, env, stack, level, traceLvl));  break tailcall;
@@ -3071,7 +4465,8 @@ public class LambdaJ {
                     // respect evaluation order: the operator could be an undefined symbol, and we want that to fail before evaluation the arguments.
                     // E.g. if "when" was not defined as a macro then "(when (< i 10) (loop (1+ i)))" should fail and not make an endless recursion.
                     func = evalSymbol(symOperator, env);
-                    argList = evlis(ccArguments, env, stack, level, traceLvl);
+                    if (func instanceof Closure) frame = evalFrame((Closure)func, ccArguments, env, stack, level, traceLvl);
+                    if (frame == null) argList = evlis(ccArguments, env, stack, level, traceLvl);
 
                     funcall = true;
                     // fall through to "actually perform..."
@@ -3101,12 +4496,43 @@ public class LambdaJ {
                             if (!listp(additionalEnv)) errorMalformed(EVAL, "'env' to be a list", additionalEnv);
                             env = (ConsCell)additionalEnv;
                         }
-                        isTc = true; continue tailcall;
+                        isTc = true; continue tailcall;
+                    }
+
+                    /// eval - call of a primitive that was found to be not shadowed when the enclosing closure was created
+                    else if (operator instanceof PrimitiveRef) {
+                        final PrimitiveRef ref = (PrimitiveRef)operator;
+                        if (macroOf(ref.symbol) != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", ref.symbol.toString());
+                        if (doOpencode) {
+                            final Object arg1 = eval(car(ccArguments), env, stack, level, traceLvl);
+                            final ConsCell rest = (ConsCell)cdr(ccArguments);
+                            if (rest == null) { values = NO_VALUES;  result = ref.primitive.apply1(this, arg1); }
+                            else {
+                                final Object arg2 = eval(car(rest), env, stack, level, traceLvl);
+                                values = NO_VALUES;  result = ref.primitive.apply2(this, arg1, arg2);
+                            }
+                            break tailcall;
+                        }
+                        func = evalSymbol(ref.symbol, env);
+                        argList = evlis(ccArguments, env, stack, level, traceLvl);
+                        // fall through to "actually perform..."
+                    }
+
+                    /// eval - function call of a global function that was resolved when the enclosing closure was created
+                    else if (operator instanceof GlobalRef) {
+                        final GlobalRef ref = (GlobalRef)operator;
+                        final GlobalSlot slot = globalFunctionSlot(ref);
+                        func = globalValue(slot, ref);
+                        funcKind = cachedFuncKind(slot, func);
+                        if (funcKind == FK_CLOSURE) frame = evalFrame((Closure)func, ccArguments, env, stack, level, traceLvl);
+                        if (frame == null) argList = evlis(ccArguments, env, stack, level, traceLvl);
+                        // fall through to "actually perform..."
                     }
 
                     else {
-                        func = eval(operator, env, stack, level, traceLvl);
-                        argList = evlis(ccArguments, env, stack, level, traceLvl);
+                        func = operator instanceof LocalRef ? evalLocalRef((LocalRef)operator, env) : eval(operator, env, stack, level, traceLvl);
+                        if (func instanceof Closure) frame = evalFrame((Closure)func, ccArguments, env, stack, level, traceLvl);
+                        if (frame == null) argList = evlis(ccArguments, env, stack, level, traceLvl);
                         // fall through to "actually perform..."
                     }
 
@@ -3120,35 +4546,41 @@ public class LambdaJ {
                     /// eval - actually perform the function call that was set up by "apply" or "multiple-value-call" or "function call" above. "set up" means: func and argList were assigned
                     if (traced != null) traceLvl = traceEnter(func, argList, traceLvl);
                     values = NO_VALUES;
-                    if (func instanceof Primitive) {
+                    if (funcKind < 0) funcKind = funcKind(func);
+                    switch (funcKind) {
+                    case FK_PRIMITIVE:
                         result = applyPrimitive((Primitive) func, argList, stack, level);  break tailcall;
-                    }
 
-                    else if (func instanceof Closure) {
+                    case FK_CLOSURE: {
                         final Closure ccFunc = (Closure)func;
-                        env = ccFunc.zip(this, argList, env);
+                        if (jitThreshold > 0) countCall(ccFunc);
+                        if (engine == Engine.NODES) { result = runClosure(ccFunc, argList, env);  break tailcall; }
+                        if (profiling) { if (profDepth < 0) profDepth = profSp;  profPush(ccFunc, profDepth); } // a tailcall replaces the caller's entry
+                        if (callStats != null) {
+                            if (calls == null) { calls = callStats;  callsDepth = calls.depth(); }
+                            else calls.exitTo(callsDepth); // a tailcall ends the caller's invocation
+                            calls.enter(ccFunc);
+                        }
+                        env = frame != null ? frame : ccFunc.zip(this, argList, env);
 
                         if (traceFunc)  tracer.println(pfx(stack, level) + " #<" + LAMBDA + " " + ccFunc.params() + "> " + printSEx(argList));
                         ccForms = ccFunc.body;
-                        // fall through to "eval a list of forms"
+                        break; // fall through to "eval a list of forms"
                     }
 
-                    else if (func instanceof OpenCodedPrimitive) {
+                    case FK_OPENCODED:
                         form = cons(func, argList);
                         if (traced != null) traceStack = push(func, traceStack);
                         func = null;
                         isTc = true; continue tailcall;
-                    }
 
-                    else if (func instanceof MurmelJavaProgram.CompilerPrimitive) {
+                    case FK_COMPILER_PRIMITIVE:
                         // compiler runtime func
                         result = applyCompilerPrimitive((MurmelJavaProgram.CompilerPrimitive) func, argList, stack, level);  break tailcall;
-                    }
 
-                    else if (func instanceof MurmelFunction) {
+                    case FK_COMPILED:
                         // compiled function
                         result = applyCompiledFunction((MurmelFunction) func, argList, stack, level);  break tailcall;
-                    }
 
                     /* something like
                          (define l '(lambda () 'hello))
@@ -3156,16 +4588,16 @@ public class LambdaJ {
                        would end up here. That was legal in CLtL1 and was made illegal in Common Lisp, and wouldn't work in compiled Murmel,
                        nor would something similar work in Common Lisp (see "Issue FUNCTION-TYPE Writeup" http://www.lispworks.com/documentation/lw71/CLHS/Issues/iss175_w.htm).
                      */
-                    else if (func instanceof ConsCell && car(func) == sLambda && have(Features.HAVE_OLDLAMBDA)) {
+                    case FK_OLD_LAMBDA: {
                         final Object paramsAndBody = cdr(func);
                         env = zip("old " + LAMBDA + " application", car(paramsAndBody), argList, env, true);
 
                         if (traceFunc)  tracer.println(pfx(stack, level) + " #<list " + LAMBDA + " " + paramsAndBody + "> " + printSEx(argList));
                         ccForms = (ConsCell) cdr(paramsAndBody);
-                        // fall through to "eval a list of forms"
+                        break; // fall through to "eval a list of forms"
                     }
 
-                    else {
+                    default:
                         errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s", printSEx(func));
                     }
                 }
@@ -3200,6 +4632,8 @@ public class LambdaJ {
             throw new LambdaJError(e, false, e.getMessage(), form);
         }
         finally {
+            if (profDepth >= 0) profSp = profDepth;
+            if (calls != null) calls.exitTo(callsDepth);
             if (traceOn) dbgEvalDone(isTc ? "eval TC" : EVAL, form, env, stack, level);
             traceLvl = cleanupTrace(traceLvl, func, result, traceStack);
             final ReturnException e = cleanup(env, stack, level, traceLvl, restore);
@@ -3220,7 +4654,7 @@ public class LambdaJ {
         LambdaJError e = null;
         for (ConsCell c = restore; c != null; c = (ConsCell) cdr(c)) {
             final Object o = car(c);
-            if (o instanceof RestoreDynamic) ((RestoreDynamic)o).restore();
+            if (o instanceof RestoreDynamic) { ((RestoreDynamic)o).restore();  globalsChanged(); }
             else {
                 try { eval(o, env, stack, level, traceLvl); }
                 catch (LambdaJError le) { e = le; }
@@ -3258,6 +4692,11 @@ public class LambdaJ {
             values = NO_VALUES;
             return expandAndEval(car(rest), env);
         }
+        if (engine == Engine.NODES) {
+            try { return runNodes(translate(expansion), env, null); }
+            catch (LambdaJError e) { throw e; }
+            catch (Exception e) { throw nodesError(e, expansion, env); }
+        }
         return eval(expansion, env);
     }
 
@@ -3277,6 +4716,7 @@ public class LambdaJ {
         private MacroEnvEntry[] entries = new MacroEnvEntry[16];
         private int size = 0;
         private int defmacroForbidden = 0;
+        int expansions = 0; // number of macro calls, used by the bytecode backend
 
         void addMacro(LambdaJSymbol sym, Closure macroFun) {
             adjust(size+1);
@@ -3344,7 +4784,7 @@ public class LambdaJ {
                 // not a special form, must be a function or macro application
 
                 final MacroEnvEntry e = macroEnv.getMacro(symOp);
-                if (e != null || symOp.macro != null) {
+                if (e != null || macroOf(symOp) != null) {
                     final Object expansion = macroexpandImpl(this, ccForm, macroEnv);
                     assert cadr(values) != null : ccForm.lineInfo() + "macro " + symOp + " was not expanded - secondary value is " + NIL + ", form was " + form;
                     assert expansion != ccForm : ccForm.lineInfo() + "macro " + symOp + " was not expanded - expansion == ccForm, form was " + form;
@@ -3420,7 +4860,7 @@ public class LambdaJ {
                     final ConsCell localFunc = carShallowCopyList(LABELS, i);
                     varargsMin(LABELS, localFunc, 2);
                     final LambdaJSymbol funcSymbol = symbolOrMalformed(LABELS, car(localFunc));
-                    if (funcSymbol.macro != null) throw new ProgramError("local function %s is also a macro which would shadow the local function", funcSymbol, localFunc);
+                    if (macroOf(funcSymbol) != null) throw new ProgramError("local function %s is also a macro which would shadow the local function", funcSymbol, localFunc);
                     if (macroEnv.getMacro(funcSymbol) != null) throw new ProgramError("local function %s is also a local macro which would shadow the local function", funcSymbol, localFunc);
                     final Object params = cadr(localFunc);
                     checkLambdaList(funcSymbol.toString(), params);
@@ -3452,13 +4892,13 @@ public class LambdaJ {
                 if (macroEnv.defmacroForbidden()) errorMalformed(DEFMACRO, DEFMACRO + " must be toplevel or in a " + PROGN + ", " + MACROLET + " or " + LABELS + "  form");
                 varargs1(DEFMACRO, ccArgs);
                 final LambdaJSymbol sym1 = symbolOrMalformed(DEFMACRO, car(ccArgs));
-                if (cdr(ccArgs) == null) sym1.macro = null;
+                if (cdr(ccArgs) == null) defineMacro(sym1, null);
                 else {
                     if (cdddr(ccArgs) != null && stringp(caddr(ccArgs))) cdrShallowCopyList(DEFMACRO, ccArgs).rplacd(cdddr(ccArgs)); // remove (ignore) docstring
                     if (cddr(ccArgs) != null) { macroEnv.inc(); expandForms(DEFMACRO, cddrShallowCopyList(DEFMACRO, ccArgs), macroEnv); macroEnv.dec(); }
                     final Object params = cadr(ccArgs);
                     checkLambdaList(DEFMACRO, params);
-                    sym1.macro = makeClosure(params, (ConsCell)cddr(ccArgs), macroEnv.toEnv());
+                    defineMacro(sym1, makeClosure(params, (ConsCell)cddr(ccArgs), macroEnv.toEnv()));
                 }
                 return ccForm;
 
@@ -3482,7 +4922,7 @@ public class LambdaJ {
                     else {
                         final LambdaJSymbol sTag = (LambdaJSymbol)tag;
                         notReserved(sfName, sTag);
-                        if (sTag.macro != null) throw new ProgramError("named-let label %s is also a macro which would shadow the local function", sTag);
+                        if (macroOf(sTag) != null) throw new ProgramError("named-let label %s is also a macro which would shadow the local function", sTag);
                         if (macroEnv.getMacro(sTag) != null) throw new ProgramError("named-let label %s is also a local macro which would shadow the local function", sTag);
                         letDynamic = false;
                         namedLet = true;
@@ -3607,8 +5047,9 @@ public class LambdaJ {
                 macroEnv.dec();
                 return ccForm;
 
-            // no macroexpansion in declaim, load, require, provide forms
+            // no macroexpansion in declaim, declare, load, require, provide forms
             case sDeclaim:
+            case sDeclare:
                 return form;
             case sLoad:
                 oneArg(LOAD, ccArgs);
@@ -3672,7 +5113,26 @@ public class LambdaJ {
     private Object evalSymbol(Object form, ConsCell env) {
         if (isNil(form)) return null;
         if (form == sT) return form;
-        final ConsCell envEntry = lookupEnvEntry(form, env);
+        // same as lookupEnvEntry() but w/o creating FrameEntry objects
+        ConsCell lexenv = env;
+        while (lexenv != null) {
+            if (lexenv instanceof Frame) {
+                final Frame frame = (Frame)lexenv;
+                final int slot = frame.slot(form);
+                if (slot >= 0) return frame.value(slot); // frames contain arguments, no need to check for UNASSIGNED
+                lexenv = frame.parent;
+            }
+            else {
+                final ConsCell envEntry = (ConsCell)lexenv.car();
+                if (form == envEntry.car()) {
+                    final Object value = envEntry.cdr();
+                    if (value == UNASSIGNED) errorUnassigned(EVAL, form);
+                    return value;
+                }
+                lexenv = (ConsCell)lexenv.cdr();
+            }
+        }
+        final ConsCell envEntry = lookupGlobalEntry(form);
         if (envEntry != null) {
             final Object value = cdr(envEntry);
             if (value == UNASSIGNED) errorUnassigned(EVAL, form);
@@ -3685,7 +5145,7 @@ public class LambdaJ {
         Object res = null;
         while (pairs != null) {
             final LambdaJSymbol symbol = (LambdaJSymbol)car(pairs);
-            final ConsCell envEntry = lookupEnvEntry(symbol, env);
+            final ConsCell envEntry = lookupEnvEntryForSetq(symbol, env);
 
             pairs = (ConsCell) cdr(pairs);
             final Object value = eval(car(pairs), env, stack, level, traceLvl);
@@ -3699,8 +5159,17 @@ public class LambdaJ {
     }
 
     private @NotNull Object evalDefine(ConsCell ccArguments, ConsCell env, int stack, int level, int traceLvl) {
-        final Object symbol;
-        extendGlobal(symbol = car(ccArguments), eval(cadr(ccArguments), env, stack, level, traceLvl));
+        final Object symbol = car(ccArguments);
+        final Object valueForm = cadr(ccArguments);
+        final Object value;
+        if (consp(valueForm) && car(valueForm) == sLambda) {
+            // (define symbol (lambda (params...) forms...)): resolve references to globals once
+            final ConsCell ccParamsAndForms = (ConsCell)cdr(valueForm);
+            final Object params = car(ccParamsAndForms);
+            value = makeClosure(params, resolveGlobals(params, (ConsCell)cdr(ccParamsAndForms), env, null), env);
+        }
+        else value = eval(valueForm, env, stack, level, traceLvl);
+        extendGlobal(symbol, value);
         values = NO_VALUES;
         return symbol;
     }
@@ -3708,9 +5177,11 @@ public class LambdaJ {
     private @NotNull Object evalDefun(ConsCell ccArguments, ConsCell env) {
         final Object symbol = car(ccArguments);
         final AbstractConsCell selfEnvEntry = new ListConsCell(symbol, null);
-        final Object closure = makeClosure(cadr(ccArguments), (ConsCell)cddr(ccArguments), cons(selfEnvEntry, env));
+        final ConsCell closureEnv = cons(selfEnvEntry, env);
+        final Object params = cadr(ccArguments);
+        final Object closure = makeClosure(params, resolveGlobals(params, (ConsCell)cddr(ccArguments), closureEnv, symbol), closureEnv);
         selfEnvEntry.rplacd(closure);
-        extendGlobal(symbol, closure); // this will create a new env entry in the global environment, changing the global value won't change early bound recursive invocations
+        extendGlobal(symbol, closure); // early bound recursive invocations use selfEnvEntry, changing the global value won't change them
         return symbol;
     }
 
@@ -3730,28 +5201,63 @@ public class LambdaJ {
     private void evalProvide(ConsCell arguments) {
         if (!stringp(car(arguments))) errorMalformed(PROVIDE, "a string argument", arguments);
         modules.add(car(arguments));
+        globalsChanged();
     }
 
     void evalDeclaim(int level, ConsCell arguments) {
         if (level != 1) errorMalformed(DECLAIM, "must be a toplevel form");
-        if (caar(arguments) == intern(OPTIMIZE)) {
-            final Object rest = cdar(arguments);
-            final Object speedCons = assq(intern(SPEED), rest);
-            if (speedCons != null) {
-                final Object speed = cadr(speedCons);
-                if (!numberp(speed)) throw new ProgramError(DECLAIM + ": argument to " + SPEED + " must be a number, found %s", speed);
-                this.speed = ((Number)speed).shortValue();
+        globalsChanged();
+        if (arguments != null) for (Object declSpec: arguments) {
+            if (!consp(declSpec)) errorMalformed(DECLAIM, "a declaration specifier", declSpec);
+            if (car(declSpec) == intern(OPTIMIZE)) {
+                final Object rest = cdr(declSpec);
+                final Object speedCons = assq(intern(SPEED), rest);
+                if (speedCons != null) {
+                    final Object speed = cadr(speedCons);
+                    if (!numberp(speed)) throw new ProgramError(DECLAIM + ": argument to " + SPEED + " must be a number, found %s", speed);
+                    this.speed = ((Number)speed).shortValue();
+                }
+
+                final Object debugCons = assq(intern(DEBUG), rest);
+                if (debugCons != null) {
+                    final Object debug = cadr(debugCons);
+                    if (!numberp(debug)) throw new ProgramError(DECLAIM + ": argument to " + DEBUG + " must be a number, found %s", debug);
+                    this.debug = ((Number)debug).shortValue();
+                }
+            }
+            else if (car(declSpec) == intern(TYPE_DECL)) {
+                final Object typeSpec = cadr(declSpec);
+                for (Object var: listOrMalformed(DECLAIM, cddr(declSpec))) declaimedTypes.put(symbolOrMalformed(DECLAIM, var), typeSpec);
             }
+        }
+    }
 
-            final Object debugCons = assq(intern(DEBUG), rest);
-            if (debugCons != null) {
-                final Object debug = cadr(debugCons);
-                if (!numberp(debug)) throw new ProgramError(DECLAIM + ": argument to " + DEBUG + " must be a number, found %s", debug);
-                this.debug = ((Number)debug).shortValue();
+    /** check the local variables that are declared as fixnum or double-float by {@code (declare ...)} when the declare form is evaluated,
+     *  i.e. after the variables were bound. Same as the compiler: a fixnum variable may be bound to an integral number in the fixnum range
+     *  e.g. the result of {@code (+ i 1)}, and will hold a fixnum, see {@link MurmelJavaProgram#requireFixnum(Object)}. */
+    private void evalDeclare(ConsCell declSpecs, ConsCell env) {
+        if (declSpecs != null) for (Object declSpec: declSpecs) {
+            if (!consp(declSpec)) errorMalformed(DECLARE, "a declaration specifier", declSpec);
+            Object type = car(declSpec), vars = cdr(declSpec);
+            if (type == intern(TYPE_DECL)) { type = cadr(declSpec);  vars = cddr(declSpec); }
+            final boolean fixnum = type == intern(FIXNUM);
+            if (!fixnum && type != intern(DOUBLE_FLOAT)) continue;
+            for (Object var: listOrMalformed(DECLARE, vars)) {
+                final ConsCell envEntry = fastassq(var, env);
+                if (envEntry == null) continue;
+                final Object value = cdr(envEntry);
+                if (value == UNASSIGNED) continue;
+                if (!fixnum) MurmelJavaProgram.requireDouble(value);
+                else if (!(value instanceof Long)) envEntry.rplacd(Boxes.box(MurmelJavaProgram.requireFixnum(value)));
+                else MurmelJavaProgram.requireFixnum(value);
             }
         }
     }
 
+    /** type proclamations from {@code (declaim (type typespec var...))}, symbol -> typespec. These are about global variables,
+     *  they are recorded but currently neither the interpreter nor the compiler use them. */
+    final Map<Object, Object> declaimedTypes = new IdentityHashMap<>();
+
     private ConsCell evalLabels(ConsCell localFunctions, ConsCell env) {
         final ListConsCell extEnv = acons(PSEUDO_SYMBOL, UNASSIGNED, env);
         for (Object localFunction : localFunctions) {
@@ -3820,6 +5326,7 @@ public class LambdaJ {
                 final Object val = eval(cadr(ccBinding), letStar || letRec ? extenv : env, stack, level, traceLvl);
 
                 if (letDynamic && newBinding != null) {
+                    globalsChanged();
                     if (!seen.contains(sym)) {
                         seen.add(sym);
                         // todo wenn die let dynamic form in der tailposition ist koennte man einen allenfalls existierenden restore eintrag ersetzen (nur die letzte aenderung einer dynamic variablen muss rueckgaengig gemacht werden)
@@ -3911,13 +5418,29 @@ public class LambdaJ {
      *  parameters in the current dynamic environment will be peeled off before adding them.
      *  Not too useful for lexical closures except when the closure's parameters hide closed over variables (as is the case in recursion). */
     private static ConsCell peel(Object sym, ConsCell env) {
-        return env != null && sym == car(env.car()) ? (ConsCell)env.cdr() : env;
+        return env != null && !(env instanceof Frame) && sym == car(env.car()) ? (ConsCell)env.cdr() : env;
     }
 
     static void errorApplicationArgCount(String msg, String func, Object params) {
         throw new ProgramError(msg, func, printSEx(params));
     }
 
+    /** evaluate {@code forms} straight into a new frame for {@code closure} without consing up an argument list.
+     *  Returns null if that's not possible, e.g. because the number of arguments doesn't match or because tracing needs the argument list. */
+    private ConsCell evalFrame(Closure closure, ConsCell forms, ConsCell env, int stack, int level, int traceLvl) {
+        final int arity = closure.arity();
+        if (arity < 0 || traced != null || trace.ge(TraceLevel.TRC_EVAL) || engine != Engine.EVAL) return null;
+        int n = 0;
+        for (Object rest = forms; consp(rest) && n <= arity; rest = cdr(rest)) n++;
+        if (n != arity) return null;
+
+        final Object a1 = eval(car(forms), env, stack, level, traceLvl);
+        final Object a2 = arity > 1 ? eval(cadr(forms), env, stack, level, traceLvl) : null;
+        final Object a3 = arity > 2 ? eval(caddr(forms), env, stack, level, traceLvl) : null;
+        values = NO_VALUES;
+        return closure.bind(this, a1, a2, a3);
+    }
+
     /** eval a list of forms and return a list of results */
     private ConsCell evlis(ConsCell forms, ConsCell env, int stack, int level, int traceLvl) {
         if (traceOn) dbgEvalStart("evlis", forms, env, stack, level);
@@ -4024,6 +5547,12 @@ public class LambdaJ {
 
     private Object applyCompiledFunction(MurmelFunction fn, ConsCell args, int stack, int level) {
         if (traceFunc) tracer.println(pfx(stack, level) + " #<compiled function> " + printSEx(args));
+        if (fn instanceof JitFunction) {
+            final MurmelJavaProgram program = ((JitFunction)fn).program;
+            final Object ret = ((JitFunction)fn).apply(listToArray(args));
+            if (program.values != null) values = list(program.values);
+            return ret;
+        }
         assert compiledProgram != null;
         assert values == NO_VALUES;
         try {
@@ -4080,6 +5609,716 @@ public class LambdaJ {
     }
 
 
+    /// ### Node interpreter - an alternative to eval() that runs forms that were translated once into a tree of Node objects
+    ///
+    /// Forms are translated after macroexpansion, bodies of closures are translated when the closure is created
+    /// by a lambda form or on first invocation. The node interpreter uses the same environment representation as eval(),
+    /// special forms that are not translated (e.g. catch, try, multiple-value-bind, let dynamic) are delegated to eval().
+
+    /** Engines that can be selected with {@link #setEngine}: {@link #EVAL} runs forms with {@link #eval},
+     *  {@link #NODES} translates forms into a tree of Java objects first and runs these. */
+    public enum Engine { EVAL, NODES }
+
+    private @NotNull Engine engine = Engine.EVAL;
+
+    /** embed API: select the engine that will run forms, see {@link Engine} */
+    public void setEngine(@NotNull Engine engine) { this.engine = engine; }
+    public @NotNull Engine getEngine() { return engine; }
+
+    /** a translated form */
+    private abstract class Node {
+        abstract Object exec(ConsCell env);
+
+        /** the interpreter whose state this node uses */
+        final LambdaJ owner() { return LambdaJ.this; }
+
+        /** same as {@link #exec} but may return {@link #TAILCALL} if this node is in tail position and ends with a call to a closure */
+        Object execTail(ConsCell env) { return exec(env); }
+    }
+
+    /** marker that is returned by {@link Node#execTail} for a pending call of {@link #tcClosure} */
+    private static final Object TAILCALL = new Object();
+    private Closure tcClosure;
+    /** if {@link #tcFrame} is not null then it's the already bound frame for the pending tail call, else {@link #tcArgs} will be bound */
+    private ConsCell tcArgs, tcEnv, tcFrame;
+
+    /** run {@code node} which is the code of {@code closure} or of a toplevel form if {@code closure} is null, and perform pending tail calls */
+    private Object runNodes(Node node, ConsCell env, Closure closure) {
+        final int profDepth = profiling ? profSp : -1;
+        if (profDepth >= 0 && closure != null) profPush(closure, profDepth);
+        final CallStats calls = callStats;
+        final int callsDepth = calls != null ? calls.depth() : -1;
+        if (calls != null && closure != null) calls.enter(closure);
+        try {
+            for (;;) {
+                final Object result = node.execTail(env);
+                if (result != TAILCALL) return result;
+                closure = tcClosure;
+                if (jitThreshold > 0) countCall(closure);
+                if (profDepth >= 0) profPush(closure, profDepth);
+                if (calls != null) { calls.exitTo(callsDepth);  calls.enter(closure); }
+                if (tcFrame != null) { env = tcFrame; tcFrame = null; }
+                else env = closure.zip(this, tcArgs, tcEnv);
+                node = code(closure);
+            }
+        }
+        finally {
+            if (profDepth >= 0) profSp = profDepth;
+            if (calls != null) calls.exitTo(callsDepth);
+        }
+    }
+
+    /** apply {@code closure} to {@code args}, calls from eval() have been counted by eval() already */
+    private Object runClosure(Closure closure, ConsCell args, ConsCell env) {
+        if (Thread.interrupted()) { Thread.currentThread().interrupt(); throw new LambdaJError("got interrupted"); }
+        return runNodes(code(closure), closure.zip(this, args, env), closure);
+    }
+
+    private Node code(Closure closure) {
+        final Node code = closure.code;
+        if (code != null && code.owner() == this) return code;
+        if (code == null) return closure.code = translateBody(closure.body);
+
+        // closure was created by or first run in another interpreter that shares this interpreter's image, see newContext()
+        if (foreignCode == null) foreignCode = new IdentityHashMap<>();
+        return foreignCode.computeIfAbsent(closure, c -> translateBody(c.body));
+    }
+
+    /** translated bodies of closures whose {@link Closure#code} belongs to another interpreter */
+    private Map<Closure, Node> foreignCode;
+
+    private Node translate(Object form) {
+        if (form == null || form == sT) return new Const(form);
+        if (form instanceof LambdaJSymbol) return new LexRef((LambdaJSymbol)form);
+        if (form instanceof LocalRef) return new LocalValue((LocalRef)form);
+        if (form instanceof GlobalRef) return new GlobalValue((GlobalRef)form);
+        if (atom(form)) return new Const(form);
+
+        final ConsCell ccForm = (ConsCell)form;
+        final Object operator = car(ccForm);
+        final ConsCell ccArguments = (ConsCell)cdr(ccForm);
+        if (operator instanceof LambdaJSymbol) {
+            final LambdaJSymbol symOperator = (LambdaJSymbol)operator;
+            switch (symOperator.wellknownSymbol) {
+            case sQuote:
+            case sDefmacro:   return new Const(car(ccArguments));
+            case sDeclare:    return new Eval(form);
+            case sLambda:     return new Lambda(car(ccArguments), (ConsCell)cdr(ccArguments));
+            case sSetQ:       return new Setq(ccArguments);
+            case sProgn:      return translateBody(ccArguments);
+            case sIf:         return new If(translate(car(ccArguments)), translate(cadr(ccArguments)), translate(caddr(ccArguments)));
+            case sCond:       return new Cond(ccArguments);
+            case sLabels:     return new Labels((ConsCell)car(ccArguments), translateBody((ConsCell)cdr(ccArguments)));
+            case sLet:
+            case sLetStar:
+            case sLetrec:     if (car(ccArguments) == sDynamic) return new Eval(form);
+                              return new Let(symOperator.wellknownSymbol, ccArguments);
+            default:
+                if (symOperator.specialForm()) return new Eval(form);
+                if (symOperator.primitive()) return new PrimitiveCall(ccForm, symOperator, translateArgs(ccArguments));
+                return new Call(ccForm, new LexRef(symOperator), translateArgs(ccArguments));
+            }
+        }
+        if (operator instanceof GlobalRef) return new GlobalCall(ccForm, (GlobalRef)operator, translateArgs(ccArguments));
+        if (operator instanceof PrimitiveRef) return new PrimitiveRefCall(ccForm, (PrimitiveRef)operator, translateArgs(ccArguments));
+        if (operator instanceof OpenCodedPrimitive) return new Eval(form);
+        return new Call(ccForm, translate(operator), translateArgs(ccArguments));
+    }
+
+    private Node translateBody(ConsCell forms) {
+        if (forms == null) return new Const(null);
+        if (cdr(forms) == null) return translate(car(forms));
+        return new Progn(translateArgs(forms));
+    }
+
+    private Node[] translateArgs(ConsCell forms) {
+        final ArrayList<Node> ret = new ArrayList<>();
+        if (forms != null) for (Object form: forms) ret.add(translate(form));
+        return ret.toArray(new Node[0]);
+    }
+
+    /** eval the argument nodes and return a list of results */
+    private ConsCell execArgs(Node[] args, ConsCell env) {
+        ListConsCell head = null, insertPos = null;
+        for (Node arg: args) {
+            final ListConsCell currentArg = cons(arg.exec(env), null);
+            if (head == null) insertPos = head = currentArg;
+            else { insertPos.rplacd(currentArg); insertPos = currentArg; }
+        }
+        values = NO_VALUES;
+        return head;
+    }
+
+    /** whether the argument nodes can be evaluated straight into a new frame for {@code closure}, see {@link #callDirect} */
+    private boolean directCall(Closure closure, Node[] args) {
+        return closure.arity() == args.length && traced == null;
+    }
+
+    /** call {@code closure} without consing up an argument list, same as {@link #applyNodes} otherwise */
+    private Object callDirect(Closure closure, Node[] args, ConsCell env, boolean tail) {
+        final int n = args.length;
+        final Object a1 = args[0].exec(env);
+        final Object a2 = n > 1 ? args[1].exec(env) : null;
+        final Object a3 = n > 2 ? args[2].exec(env) : null;
+        values = NO_VALUES;
+        final ConsCell frame = closure.bind(this, a1, a2, a3);
+        if (tail) { tcClosure = closure; tcFrame = frame; return TAILCALL; }
+        if (jitThreshold > 0) countCall(closure);
+        if (Thread.interrupted()) { Thread.currentThread().interrupt(); throw new LambdaJError("got interrupted"); }
+        return runNodes(code(closure), frame, closure);
+    }
+
+    /** apply {@code func} (whose {@link #funcKind} is {@code kind}) to {@code args},
+     *  if {@code tail} is true then a call to a closure will be returned as {@link #TAILCALL} */
+    private Object applyNodes(Object func, int kind, ConsCell args, ConsCell env, boolean tail) {
+        if (traced != null) {
+            final int traceLvl = traceEnter(func, args, nodesTraceLvl);
+            Object result = null;
+            nodesTraceLvl = traceLvl;
+            try { return result = dispatch(func, kind, args, env, false); }
+            finally { nodesTraceLvl = traceExit(func, result, traceLvl); }
+        }
+        return dispatch(func, kind, args, env, tail);
+    }
+    private int nodesTraceLvl;
+
+    private Object dispatch(Object func, int kind, ConsCell args, ConsCell env, boolean tail) {
+        values = NO_VALUES;
+        for (;;) {
+            switch (kind) {
+            case FK_PRIMITIVE:
+                return applyPrimitive((Primitive)func, args, 0, 0);
+
+            case FK_CLOSURE:
+                if (tail) { tcClosure = (Closure)func; tcArgs = args; tcEnv = env; return TAILCALL; }
+                if (jitThreshold > 0) countCall((Closure)func);
+                return runClosure((Closure)func, args, env);
+
+            case FK_OPENCODED:
+                if (func != ocApply) return eval(cons(func, args), env);
+                twoArgs(APPLY, args);
+                final Object funcOrSymbol = car(args);
+                func = symbolp(funcOrSymbol) ? evalSymbol(funcOrSymbol, env) : funcOrSymbol;
+                args = listOrMalformed(APPLY, cadr(args));
+                if (speed >= 1 && funcOrSymbol instanceof LambdaJSymbol && ((LambdaJSymbol)funcOrSymbol).primitive()) {
+                    return ((LambdaJSymbol)funcOrSymbol).wellknownSymbol.apply(this, args);
+                }
+                kind = funcKind(func);
+                continue;
+
+            case FK_COMPILER_PRIMITIVE:
+                return applyCompilerPrimitive((MurmelJavaProgram.CompilerPrimitive)func, args, 0, 0);
+
+            case FK_COMPILED:
+                return applyCompiledFunction((MurmelFunction)func, args, 0, 0);
+
+            case FK_OLD_LAMBDA: {
+                final Object paramsAndBody = cdr(func);
+                return eval(cons(sProgn, cdr(paramsAndBody)), zip("old " + LAMBDA + " application", car(paramsAndBody), args, env, true));
+            }
+
+            default:
+                throw errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s", printSEx(func));
+            }
+        }
+    }
+
+    /** handle an exception that happened while running {@code form} the same way as {@link #eval} does */
+    private RuntimeException nodesError(Exception e, Object form, ConsCell env) {
+        if (e instanceof ReturnException) return (ReturnException)e;
+        if (have(Features.HAVE_UTIL)) {
+            final Object handler = cdr(conditionHandlerEnvEntry);
+            if (functionp(handler)) {
+                conditionHandlerEnvEntry.rplacd(prev());
+                try { eval(list(handler, e), env); }
+                finally { conditionHandlerEnvEntry.rplacd(handler); }
+            }
+        }
+        return new LambdaJError(e, false, e.getMessage(), form);
+    }
+
+    private final class Const extends Node {
+        private final Object value;
+        Const(Object value) { this.value = value; }
+        @Override Object exec(ConsCell env) { return value; }
+    }
+
+    private final class LexRef extends Node {
+        private final LambdaJSymbol symbol;
+        LexRef(LambdaJSymbol symbol) { this.symbol = symbol; }
+        @Override Object exec(ConsCell env) { return evalSymbol(symbol, env); }
+    }
+
+    /** a local variable whose binding is at a known position in the environment, see {@link LocalRef} */
+    private final class LocalValue extends Node {
+        private final LocalRef ref;
+        LocalValue(LocalRef ref) { this.ref = ref; }
+        @Override Object exec(ConsCell env) { return evalLocalRef(ref, env); }
+    }
+
+    private final class GlobalValue extends Node {
+        private final GlobalRef ref;
+        GlobalValue(GlobalRef ref) { this.ref = ref; }
+        @Override Object exec(ConsCell env) { return evalGlobalRef(ref); }
+    }
+
+    /** same as {@link #eval} */
+    private final class Eval extends Node {
+        private final Object form;
+        Eval(Object form) { this.form = form; }
+        @Override Object exec(ConsCell env) { return eval(form, env); }
+    }
+
+    private final class Lambda extends Node {
+        private final Object params;
+        private final ConsCell body;
+        private final Node code;
+        Lambda(Object params, ConsCell body) { this.params = params; this.body = body; code = translateBody(body); }
+        @Override Object exec(ConsCell env) {
+            nCells++;
+            final Closure ret = Closure.of(params, body, env);
+            ret.code = code;
+            return ret;
+        }
+    }
+
+    private final class Setq extends Node {
+        private final LambdaJSymbol[] symbols;
+        private final Node[] valueForms;
+        Setq(ConsCell pairs) {
+            final ArrayList<LambdaJSymbol> symbols = new ArrayList<>();
+            final ArrayList<Node> valueForms = new ArrayList<>();
+            for (; pairs != null; pairs = (ConsCell)cddr(pairs)) {
+                symbols.add((LambdaJSymbol)car(pairs));
+                valueForms.add(translate(cadr(pairs)));
+            }
+            this.symbols = symbols.toArray(new LambdaJSymbol[0]);
+            this.valueForms = valueForms.toArray(new Node[0]);
+        }
+        @Override Object exec(ConsCell env) {
+            Object res = null;
+            for (int i = 0; i < symbols.length; i++) {
+                final ConsCell envEntry = lookupEnvEntryForSetq(symbols[i], env);
+                final Object value = valueForms[i].exec(env);
+                values = NO_VALUES;
+                if (envEntry == null) extendGlobal(symbols[i], value);
+                else envEntry.rplacd(value);
+                res = value;
+            }
+            return res;
+        }
+    }
+
+    private final class Progn extends Node {
+        private final Node[] body;
+        Progn(Node[] body) { this.body = body; }
+        @Override Object exec(ConsCell env) {
+            final Node[] body = this.body;
+            final int last = body.length - 1;
+            for (int i = 0; i < last; i++) body[i].exec(env);
+            values = NO_VALUES;
+            return body[last].exec(env);
+        }
+        @Override Object execTail(ConsCell env) {
+            final Node[] body = this.body;
+            final int last = body.length - 1;
+            for (int i = 0; i < last; i++) body[i].exec(env);
+            values = NO_VALUES;
+            return body[last].execTail(env);
+        }
+    }
+
+    private final class If extends Node {
+        private final Node condForm, thenForm, elseForm;
+        If(Node condForm, Node thenForm, Node elseForm) { this.condForm = condForm; this.thenForm = thenForm; this.elseForm = elseForm; }
+        @Override Object exec(ConsCell env) {
+            final Object cond = condForm.exec(env);
+            values = NO_VALUES;
+            return (cond != null ? thenForm : elseForm).exec(env);
+        }
+        @Override Object execTail(ConsCell env) {
+            final Object cond = condForm.exec(env);
+            values = NO_VALUES;
+            return (cond != null ? thenForm : elseForm).execTail(env);
+        }
+    }
+
+    private final class Cond extends Node {
+        private final Node[] condForms, bodies;
+        Cond(ConsCell clauses) {
+            final ArrayList<Node> condForms = new ArrayList<>(), bodies = new ArrayList<>();
+            if (clauses != null) for (Object clause: clauses) {
+                condForms.add(translate(car(clause)));
+                final ConsCell body = (ConsCell)cdr(clause);
+                bodies.add(body == null ? null : translateBody(body));
+            }
+            this.condForms = condForms.toArray(new Node[0]);
+            this.bodies = bodies.toArray(new Node[0]);
+        }
+        @Override Object exec(ConsCell env) { return exec(env, false); }
+        @Override Object execTail(ConsCell env) { return exec(env, true); }
+        private Object exec(ConsCell env, boolean tail) {
+            for (int i = 0; i < condForms.length; i++) {
+                final Object res = condForms[i].exec(env);
+                if (res != null) {
+                    final Node body = bodies[i];
+                    values = NO_VALUES;
+                    if (body == null) return res;
+                    return tail ? body.execTail(env) : body.exec(env);
+                }
+            }
+            return null;
+        }
+    }
+
+    private final class Labels extends Node {
+        private final LambdaJSymbol[] names;
+        private final Object[] params;
+        private final ConsCell[] bodies;
+        private final Node[] codes;
+        private final Node body;
+        Labels(ConsCell localFunctions, Node body) {
+            final int n = listLength(localFunctions);
+            names = new LambdaJSymbol[n];  params = new Object[n];  bodies = new ConsCell[n];  codes = new Node[n];
+            int i = 0;
+            if (localFunctions != null) for (Object localFunction: localFunctions) {
+                names[i] = (LambdaJSymbol)car(localFunction);
+                params[i] = cadr(localFunction);
+                bodies[i] = (ConsCell)cddr(localFunction);
+                codes[i] = translateBody(bodies[i]);
+                i++;
+            }
+            this.body = body;
+        }
+        @Override Object exec(ConsCell env) { return body.exec(extend(env)); }
+        @Override Object execTail(ConsCell env) { return body.execTail(extend(env)); }
+        private ConsCell extend(ConsCell env) {
+            final ListConsCell extEnv = acons(PSEUDO_SYMBOL, UNASSIGNED, env);
+            for (int i = 0; i < names.length; i++) {
+                final Closure closure = makeClosure(params[i], bodies[i], extEnv);
+                closure.code = codes[i];
+                insertFront(extEnv, new ListConsCell(names[i], closure));
+            }
+            return extEnv;
+        }
+    }
+
+    /** let, let* and letrec, optionally named. Same as {@link #evalLet} except that let dynamic is not supported */
+    private final class Let extends Node {
+        private final boolean letStar, letRec;
+        private final LambdaJSymbol loopSymbol;
+        private final LambdaJSymbol[] symbols;
+        private final Node[] valueForms;
+        private final ConsCell loopParams, bodyForms;
+        private final Node body;
+
+        Let(WellknownSymbol operator, ConsCell arguments) {
+            letStar = operator == WellknownSymbol.sLetStar;
+            letRec = operator == WellknownSymbol.sLetrec;
+            final Object maybeLoopSymbol = car(arguments);
+            final ConsCell bindingsAndBodyForms;
+            if (maybeLoopSymbol instanceof LambdaJSymbol) { loopSymbol = (LambdaJSymbol)maybeLoopSymbol; bindingsAndBodyForms = (ConsCell)cdr(arguments); }
+            else                                         { loopSymbol = null;                           bindingsAndBodyForms = arguments; }
+
+            final ArrayList<LambdaJSymbol> symbols = new ArrayList<>();
+            final ArrayList<Node> valueForms = new ArrayList<>();
+            final ConsCell bindings = (ConsCell)car(bindingsAndBodyForms);
+            if (bindings != null) for (Object binding: bindings) {
+                symbols.add((LambdaJSymbol)car(binding));
+                valueForms.add(translate(cadr(binding)));
+            }
+            this.symbols = symbols.toArray(new LambdaJSymbol[0]);
+            this.valueForms = valueForms.toArray(new Node[0]);
+            loopParams = loopSymbol == null ? null : ConsCell.list((Object[])this.symbols);
+            bodyForms = (ConsCell)cdr(bindingsAndBodyForms);
+            body = translateBody(bodyForms);
+        }
+
+        @Override Object exec(ConsCell env) {
+            final ConsCell extenv = extend(env);
+            final CallStats calls = callStats;
+            if (calls == null || loopSymbol == null) return body.exec(extenv);
+            final int depth = calls.depth();
+            calls.enter((Closure)cdr(car(extenv))); // the first iteration of a named let counts as a call
+            try { return body.exec(extenv); }
+            finally { calls.exitTo(depth); }
+        }
+
+        @Override Object execTail(ConsCell env) {
+            final ConsCell extenv = extend(env);
+            if (callStats != null && loopSymbol != null) callStats.enter((Closure)cdr(car(extenv))); // ended by runNodes() as eval() does
+            return body.execTail(extenv);
+        }
+
+        private ConsCell extend(ConsCell env) {
+            ConsCell extenv = env;
+            if (letRec) extenv = acons(PSEUDO_SYMBOL, UNASSIGNED, env);
+            for (int i = 0; i < symbols.length; i++) {
+                final LambdaJSymbol sym = symbols[i];
+                final ConsCell newBinding;
+                if (letStar) newBinding = fastassq(sym, extenv);
+                else if (letRec) newBinding = insertFront(extenv, cons(sym, UNASSIGNED));
+                else newBinding = null;
+
+                final Object val = valueForms[i].exec(letStar || letRec ? extenv : env);
+
+                if (newBinding != null) newBinding.rplacd(val);
+                else extenv = acons(sym, val, extenv);
+            }
+            if (loopSymbol != null) {
+                final ListConsCell c;
+                extenv = cons(c = cons(loopSymbol, null), extenv);
+                final Closure closure = makeClosure(loopParams, bodyForms, extenv);
+                closure.code = body;
+                c.rplacd(closure);
+            }
+            return extenv;
+        }
+    }
+
+    /** function call of a primitive, will use the primitive's value in the environment if speed is < 1 */
+    private final class PrimitiveCall extends Node {
+        private final ConsCell form;
+        private final LambdaJSymbol symbol;
+        private final Node[] args;
+        PrimitiveCall(ConsCell form, LambdaJSymbol symbol, Node[] args) { this.form = form; this.symbol = symbol; this.args = args; }
+        @Override Object exec(ConsCell env) {
+            try {
+                if (macroOf(symbol) != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symbol.toString());
+                if (speed >= 1) return symbol.wellknownSymbol.apply(LambdaJ.this, execArgs(args, env));
+                final Object func = evalSymbol(symbol, env);
+                return applyNodes(func, funcKind(func), execArgs(args, env), env, false);
+            }
+            catch (Exception e) { throw nodesError(e, form, env); }
+        }
+    }
+
+    /** call of a primitive with one or two arguments that is not shadowed, see {@link PrimitiveRef} */
+    private final class PrimitiveRefCall extends Node {
+        private final ConsCell form;
+        private final PrimitiveRef ref;
+        private final Node[] args;
+        private final Node arg1, arg2;
+        PrimitiveRefCall(ConsCell form, PrimitiveRef ref, Node[] args) { this.form = form; this.ref = ref; this.args = args; arg1 = args[0]; arg2 = args.length > 1 ? args[1] : null; }
+        @Override Object exec(ConsCell env) {
+            try {
+                final LambdaJSymbol symbol = ref.symbol;
+                if (macroOf(symbol) != null) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symbol.toString());
+                if (speed < 1) {
+                    final Object func = evalSymbol(symbol, env);
+                    return applyNodes(func, funcKind(func), execArgs(args, env), env, false);
+                }
+                final Object a = arg1.exec(env);
+                if (arg2 == null) { values = NO_VALUES;  return ref.primitive.apply1(LambdaJ.this, a); }
+                final Object b = arg2.exec(env);
+                values = NO_VALUES;  return ref.primitive.apply2(LambdaJ.this, a, b);
+            }
+            catch (Exception e) { throw nodesError(e, form, env); }
+        }
+    }
+
+    /** function call of a global function that was resolved when the enclosing closure was created, uses the inline cache of {@link GlobalRef} */
+    private final class GlobalCall extends Node {
+        private final ConsCell form;
+        private final GlobalRef ref;
+        private final Node[] args;
+        GlobalCall(ConsCell form, GlobalRef ref, Node[] args) { this.form = form; this.ref = ref; this.args = args; }
+        @Override Object exec(ConsCell env) { return exec(env, false); }
+        @Override Object execTail(ConsCell env) { return exec(env, true); }
+        private Object exec(ConsCell env, boolean tail) {
+            try {
+                final GlobalSlot slot = globalFunctionSlot(ref);
+                final Object func = globalValue(slot, ref);
+                final int kind = cachedFuncKind(slot, func);
+                if (kind == FK_CLOSURE && directCall((Closure)func, args)) return callDirect((Closure)func, args, env, tail);
+                return applyNodes(func, kind, execArgs(args, env), env, tail);
+            }
+            catch (Exception e) { throw nodesError(e, form, env); }
+        }
+    }
+
+    private final class Call extends Node {
+        private final ConsCell form;
+        private final Node operator;
+        private final Node[] args;
+        Call(ConsCell form, Node operator, Node[] args) { this.form = form; this.operator = operator; this.args = args; }
+        @Override Object exec(ConsCell env) { return exec(env, false); }
+        @Override Object execTail(ConsCell env) { return exec(env, true); }
+        private Object exec(ConsCell env, boolean tail) {
+            try {
+                if (operator instanceof LexRef && macroOf(((LexRef)operator).symbol) != null)
+                    errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", ((LexRef)operator).symbol.toString());
+                final Object func = operator.exec(env);
+                if (func instanceof Closure && directCall((Closure)func, args)) return callDirect((Closure)func, args, env, tail);
+                return applyNodes(func, funcKind(func), execArgs(args, env), env, tail);
+            }
+            catch (Exception e) { throw nodesError(e, form, env); }
+        }
+    }
+
+
+    /// ### Tiered execution - global functions that are called often are compiled with MurmelJavaCompiler in the background
+    ///
+    /// Only functions that were created by a toplevel defun and that reference nothing but their parameters, local variables,
+    /// primitives and themselves are compiled because the compiled code will run in a separate MurmelJavaProgram
+    /// that doesn't see the interpreter's global environment. If compilation fails the function stays interpreted.
+
+    /** default value for {@link #setJitThreshold} that is used by the commandline flag {@code --jit} */
+    static final int JIT_THRESHOLD = 1000;
+
+    private int jitThreshold;
+    private final Queue<Runnable> jitted = new java.util.concurrent.ConcurrentLinkedQueue<>();
+    private java.util.concurrent.ExecutorService jitExecutor;
+    private Set<Object> jitUnsafe;
+    /** programs of installed JitFunctions, they get the interpreter's stdin/stdout, see {@link #setReaderPrinter} */
+    private List<MurmelJavaProgram> jitPrograms;
+
+    /** embed API: global functions that are invoked {@code threshold} times will be compiled in the background
+     *  and replaced by the compiled function, 0 will turn off background compilation.
+     *
+     *  <p>Only functions created by a toplevel defun that reference no global variables or functions except primitives
+     *  and themselves are compiled, functions that use other globals always stay interpreted. */
+    public void setJitThreshold(int threshold) { jitThreshold = Math.max(threshold, 0); }
+
+    /** count an invocation of {@code closure}, start compiling {@code closure} if it has become hot */
+    private void countCall(Closure closure) {
+        if (!jitted.isEmpty()) {
+            Runnable install;
+            while ((install = jitted.poll()) != null) install.run();
+        }
+        if (closure.calls < jitThreshold && ++closure.calls == jitThreshold) jit(closure); // calls saturates at jitThreshold
+    }
+
+    private void jit(Closure closure) {
+        // only closures created by a toplevel defun: their environment is the self reference that was created by defun
+        final ConsCell closureEnv = closure.closure;
+        if (speed < 1 || closureEnv == null || cdr(closureEnv) != null) return;
+        final ConsCell selfEntry = (ConsCell)car(closureEnv);
+        final Object symbol = car(selfEntry);
+        final ConsCell globalEntry = lookupGlobalEntry(symbol);
+        if (cdr(selfEntry) != closure || globalEntry == null || cdr(globalEntry) != closure) return;
+        if (!jitCompilable(closure.params(), closure.body, closureEnv)) return;
+
+        final Object defun = cons(intern(DEFUN), cons(symbol, cons(closure.params(), closure.body)));
+        if (jitExecutor == null) jitExecutor = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+            final Thread t = new Thread(r, "JMurmel JIT");
+            t.setDaemon(true);
+            return t;
+        });
+        jitExecutor.execute(() -> {
+            try {
+                // the compiler gets it's own symboltable because it will define and clear macros
+                final MurmelJavaCompiler compiler = new MurmelJavaCompiler(new ListSymbolTable(), libDir);
+                compiler.setBackend(MurmelJavaCompiler.Backend.BYTECODE);
+                final Iterator<Object> forms = Collections.singletonList(copySymbols(defun, compiler, new IdentityHashMap<>())).iterator();
+                final Class<MurmelProgram> cls = compiler.formsToJavaClass("MurmelJit", eof -> forms.hasNext() ? forms.next() : eof, null);
+                final MurmelJavaProgram program = (MurmelJavaProgram)cls.getDeclaredConstructor().newInstance();
+                program.body();
+                final Object fn = program.getValue(symbol.toString());
+                if (fn instanceof MurmelFunction) jitted.add(() -> {
+                    // install only if the global function wasn't redefined in the meantime
+                    if (cdr(globalEntry) != closure) return;
+                    program.setReaderPrinter(lispReader, lispPrinter);
+                    if (jitPrograms == null) jitPrograms = new ArrayList<>();
+                    jitPrograms.add(program);
+                    globalEntry.rplacd(new JitFunction(program, (MurmelFunction)fn));
+                });
+            }
+            catch (Throwable e) {
+                if (traceFunc) tracer.println("jit: " + symbol + " stays interpreted: " + e.getMessage());
+            }
+        });
+    }
+
+    /** return a copy of {@code form} with symbols replaced by the compiler's symbols */
+    private static Object copySymbols(Object form, MurmelJavaCompiler compiler, Map<Object, Object> uninterned) {
+        if (form instanceof PrimitiveRef) form = ((PrimitiveRef)form).symbol;
+        else if (form instanceof LocalRef) form = ((LocalRef)form).symbol;
+        if (form instanceof LambdaJSymbol) {
+            final LambdaJSymbol sym = (LambdaJSymbol)form;
+            if (sym.wellknownSymbol == WellknownSymbol.notInterned) return uninterned.computeIfAbsent(sym, s -> new LambdaJSymbol(sym.name));
+            return compiler.intern(sym.name);
+        }
+        if (!consp(form)) return form;
+        return ConsCell.cons(copySymbols(car(form), compiler, uninterned), copySymbols(cdr(form), compiler, uninterned));
+    }
+
+    /** return true if the compiled {@code body} would behave the same as the interpreted {@code body} */
+    private boolean jitCompilable(Object params, ConsCell body, ConsCell env) {
+        if (jitUnsafe == null) {
+            jitUnsafe = new HashSet<>();
+            for (String s: new String[] { EVAL, VALUES, "random", "macroexpand-1", "gensym", "trace", "untrace", "profile-start", "profile-stop", "call-stats-start", "call-stats-stop" }) jitUnsafe.add(intern(s));
+        }
+        final ArrayList<Object> bound = new ArrayList<>();
+        addParams(bound, params);
+        bound.add(car(car(env)));
+        final ConsCell resolved = resolveGlobals(params, body, env, null);
+        if (resolved != null) for (Object form: resolved) if (!jitCompilableForm(form, bound)) return false;
+        return true;
+    }
+
+    private boolean jitCompilableForm(Object form, ArrayList<Object> bound) {
+        if (form instanceof GlobalRef) return false; // globals of the interpreter are not visible to compiled code
+        if (!consp(form)) return true;
+
+        final ConsCell ccForm = (ConsCell)form;
+        final Object op = car(ccForm) instanceof PrimitiveRef ? ((PrimitiveRef)car(ccForm)).symbol : car(ccForm);
+        final int mark = bound.size();
+        if (op instanceof LambdaJSymbol) {
+            if (jitUnsafe.contains(op)) return false;
+            switch (((LambdaJSymbol)op).wellknownSymbol) {
+            case sQuote:
+            case sDeclare:
+                return true;
+
+            case sDefine: case sDefun: case sDefmacro: case sLambdaDynamic: case sDeclaim: case sLoad: case sRequire: case sProvide:
+            case sCatch: case sThrow:
+                return false;
+
+            case sSetQ:
+                for (Object pairs = cdr(ccForm); consp(pairs); pairs = cddr(pairs)) if (!bound.contains(car(pairs))) return false;
+                break;
+
+            case sLambda:
+            case sMultipleValueBind:
+                addParams(bound, cadr(ccForm));
+                break;
+
+            case sLabels:
+                for (Object localFunc: (ConsCell)cadr(ccForm)) { bound.add(car(localFunc)); addParams(bound, cadr(localFunc)); }
+                break;
+
+            case sLet: case sLetStar: case sLetrec: {
+                final Object maybeTag = cadr(ccForm);
+                if (maybeTag == sDynamic) return false;
+                final Object bindings = maybeTag instanceof LambdaJSymbol ? caddr(ccForm) : maybeTag;
+                if (maybeTag instanceof LambdaJSymbol) bound.add(maybeTag);
+                if (bindings != null) for (Object binding: (ConsCell)bindings) bound.add(car(binding));
+                break;
+            }
+
+            default:
+            }
+        }
+        boolean ret = true;
+        for (Object f = ccForm; ret && consp(f); f = cdr(f)) ret = jitCompilableForm(car(f), bound);
+        truncate(bound, mark);
+        return ret;
+    }
+
+    /** a function that was compiled by {@link #jit} */
+    private final class JitFunction implements MurmelFunction, Writeable {
+        private final @NotNull MurmelJavaProgram program;
+        private final @NotNull MurmelFunction fn;
+
+        JitFunction(@NotNull MurmelJavaProgram program, @NotNull MurmelFunction fn) { this.program = program; this.fn = fn; }
+
+        @Override public Object apply(Object... args) { return program.funcall(fn, args); }
+
+        @Override public void printSEx(WriteConsumer out, boolean escapeAtoms) { out.print("#<compiled closure>"); }
+    }
+
+
     /// ### debug support - trace and untrace
     private Map<Object, LambdaJSymbol> traced;
 
@@ -4119,6 +6358,9 @@ public class LambdaJ {
     /** stack of tco'd function calls */
     private Deque<Object> push(Object op, Deque<Object> traceStack) {
         assert traced != null;
+        if (op instanceof GlobalRef) op = ((GlobalRef)op).symbol;
+        else if (op instanceof LocalRef) op = ((LocalRef)op).symbol;
+        else if (op instanceof PrimitiveRef) op = ((PrimitiveRef)op).symbol;
         if (op instanceof LambdaJSymbol) {
             if (((LambdaJSymbol)op).specialForm()) return traceStack;
             final ConsCell entry = lookupGlobalEntry(op);
@@ -4179,10 +6421,74 @@ public class LambdaJ {
         tracer.println(sb);
     }
 
-    private static void tracePfx(StringBuilder sb, int level) {
-        final char[] cpfx = new char[level * 2];
-        Arrays.fill(cpfx, ' ');
-        sb.append(cpfx);
+    private static void tracePfx(StringBuilder sb, int level) {
+        final char[] cpfx = new char[level * 2];
+        Arrays.fill(cpfx, ' ');
+        sb.append(cpfx);
+    }
+
+
+
+    /// ###  Sampling profiler
+
+    private Profiler profiler;
+    /** true while {@link #profiler} is sampling: closure applications are recorded in {@link #profStack} */
+    private boolean profiling;
+    /** the closures that are currently running, {@link #profSp} is the number of entries. Written by eval() and runNodes() while profiling,
+     *  read by the profiler's sampler thread without synchronization, a sample may be slightly off. */
+    private Closure[] profStack = new Closure[0];
+    private int profSp;
+
+    private static final int MAX_PROFILE_DEPTH = 10_000;
+
+    private void profPush(Closure closure, int depth) {
+        Closure[] stack = profStack;
+        if (depth >= stack.length) {
+            if (depth >= MAX_PROFILE_DEPTH) { profSp = depth + 1;  return; } // the sampler will truncate the stack at stack.length
+            profStack = stack = Arrays.copyOf(stack, Math.min(Math.max(64, stack.length * 2), MAX_PROFILE_DEPTH));
+        }
+        stack[depth] = closure;
+        profSp = depth + 1;
+    }
+
+    /** embed API: start sampling the Murmel call stack of the current thread every {@code intervalMillis} milliseconds,
+     *  return the new profiler or null if a profiler is already running. See {@link Profiler}. */
+    public Profiler startProfiler(long intervalMillis) {
+        if (profiler != null) return null;
+        profSp = 0;
+        profiling = true;
+        return profiler = Profiler.start(Thread.currentThread(), this, null, intervalMillis);
+    }
+
+    /** embed API: stop the profiler that was started by {@link #startProfiler}, return it or null if no profiler was running */
+    public Profiler stopProfiler() {
+        final Profiler ret = profiler;
+        if (ret == null) return null;
+        profiling = false;
+        profiler = null;
+        ret.stop();
+        return ret;
+    }
+
+
+
+    /// ###  Call statistics
+
+    /** non-null while call statistics are recorded: applications of named closures are recorded by eval() and runNodes() */
+    private CallStats callStats;
+
+    /** embed API: start recording per-function call statistics of the current thread,
+     *  return the new call statistics or null if call statistics are already recorded. See {@link CallStats}. */
+    public CallStats startCallStats() {
+        if (callStats != null) return null;
+        return callStats = new CallStats(this);
+    }
+
+    /** embed API: stop recording the call statistics that were started by {@link #startCallStats}, return them or null if none were recorded */
+    public CallStats stopCallStats() {
+        final CallStats ret = callStats;
+        callStats = null;
+        return ret;
     }
 
 
@@ -4198,6 +6504,9 @@ public class LambdaJ {
         nCells = maxEnvLen = maxEvalStack = maxEvalLevel = 0;
     }
 
+    /** number of cons cells and frames that the interpreter has allocated since the last {@link #resetCounters}, the counter may wrap around */
+    int cellCount() { return nCells; }
+
     /** spaces printed to the left indicate java stack usage, spaces+asterisks indicate Lisp call hierarchy depth.
      *  due to tail call optimization Java stack usage should be less than Lisp call hierarchy depth. */
     private void dbgEvalStart(String evFunc, Object exp, ConsCell env, int stack, int level) {
@@ -4250,6 +6559,10 @@ public class LambdaJ {
 
     final   ListConsCell acons(Object key, Object datum, ConsCell alist) { return cons(cons(key, datum), alist); }
 
+    final   Frame        frame(Object s1, Object v1, ConsCell parent) { nCells++; return new Frame1(s1, v1, parent); }
+    final   Frame        frame(Object s1, Object v1, Object s2, Object v2, ConsCell parent) { nCells++; return new Frame2(s1, v1, s2, v2, parent); }
+    final   Frame        frame(Object s1, Object v1, Object s2, Object v2, Object s3, Object v3, ConsCell parent) { nCells++; return new Frame3(s1, v1, s2, v2, s3, v3, parent); }
+
     private static Object carCdrError(@NotNull String func, @NotNull Object o) { throw errorArgTypeError("list", func, o); }
 
     static Object   car(ConsCell c)    { return c == null ? null : c.car(); }
@@ -4351,7 +6664,10 @@ public class LambdaJ {
 
     new TypeSpec("number", LambdaJ::numberp, null),
     new TypeSpec("float", LambdaJ::floatp, null),
+    new TypeSpec(DOUBLE_FLOAT, o -> o instanceof Double, null),
     new TypeSpec("integer", LambdaJ::integerp, null),
+    new TypeSpec(FIXNUM, o -> (o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Byte)
+                              && ((Number)o).longValue() >= MOST_NEGATIVE_FIXNUM_VAL && ((Number)o).longValue() <= MOST_POSITIVE_FIXNUM_VAL, null),
     new TypeSpec("bit", o -> {
         if (!integerp(o)) return false;
         if (o instanceof BigInteger) return false;
@@ -4470,12 +6786,22 @@ public class LambdaJ {
         return null;
     }
 
-    /** faster assq w/o checks for internal use for environment lookup. ccList must be a proper list that only contains cons cells. */
+    /** faster assq w/o checks for internal use for environment lookup. ccList must be a proper list that only contains cons cells
+     *  and/ or {@link Frame}s. */
     static ConsCell fastassq(Object atom, ConsCell ccList) {
-        for (; ccList != null; ccList = (ConsCell)ccList.cdr()) {
-            final ConsCell ccEntry = (ConsCell)ccList.car();
-            if (atom == ccEntry.car()) {
-                return ccEntry;
+        while (ccList != null) {
+            if (ccList instanceof Frame) {
+                final Frame frame = (Frame)ccList;
+                final int slot = frame.slot(atom);
+                if (slot >= 0) return frame.entry(slot);
+                ccList = frame.parent;
+            }
+            else {
+                final ConsCell ccEntry = (ConsCell)ccList.car();
+                if (atom == ccEntry.car()) {
+                    return ccEntry;
+                }
+                ccList = (ConsCell)ccList.cdr();
             }
         }
         return null;
@@ -4599,12 +6925,13 @@ public class LambdaJ {
         final Closure macroClosure;
         final MacroEnvEntry e;
         if (macroEnv != null && (e = macroEnv.getMacro(macroSymbol)) != null) macroClosure = e.macroFun;
-        else macroClosure = macroSymbol.macro;
+        else macroClosure = intp.macroOf(macroSymbol);
         if (macroClosure == null) {
             intp.values = intp.cons(form, intp.cons(null, null));
             return form;
         }
         final ConsCell arguments = (ConsCell) cdr(form);
+        if (macroEnv != null) macroEnv.expansions++;
         final Object expansion = intp.evalMacro(macroSymbol, macroClosure, arguments);
         intp.values = intp.cons(expansion, intp.cons(sT, null));
         return expansion;
@@ -4878,6 +7205,39 @@ public class LambdaJ {
     /// ## Murmel runtime
     ///
 
+    /// Boxes - cached Long and Character objects shared by the reader, interpreter and compiled code.
+    /// Java's own caches only cover -128..127, counting loops and string processing would allocate a new box per value.
+    /// The range of cached fixnums can be changed with the system properties jmurmel.boxCacheLow and jmurmel.boxCacheHigh.
+    /// Boxes are created on first use so that loading this class doesn't slow down startup.
+    public static final class Boxes {
+        private Boxes() {}
+
+        static final int LONG_LOW = Integer.getInteger("jmurmel.boxCacheLow", -1024);
+        static final int LONG_HIGH = Integer.getInteger("jmurmel.boxCacheHigh", 65535);
+
+        private static final Long[] longs = new Long[LONG_HIGH >= LONG_LOW ? LONG_HIGH - LONG_LOW + 1 : 0];
+        private static final Character[] chars = new Character[Character.MAX_VALUE + 1];
+
+        public static Long box(long l) {
+            if (l >= LONG_LOW && l <= LONG_HIGH) {
+                final int idx = (int)(l - LONG_LOW);
+                final Long ret = longs[idx];
+                if (ret != null) return ret;
+                return longs[idx] = l;  // will reuse Java's cached boxes for -128..127. Racing threads may create a box each, Long is immutable
+            }
+            return l;
+        }
+
+        public static Character box(char c) {
+            final Character ret = chars[c];
+            if (ret != null) return ret;
+            return chars[c] = c;
+        }
+
+        /** whether {@link #box(long)} will return a preallocated Long */
+        static boolean isCached(long l) { return l >= LONG_LOW && l <= LONG_HIGH; }
+    }
+
     static final class Chk {
         private Chk() {}
 
@@ -5003,6 +7363,8 @@ public class LambdaJ {
         /** convert {@code a} to a double, error if {@code a} is not a number and/ or cannot be represented as a double (reducing precision is allowed). */
         static double toDouble(Object a) { return toDouble("?", a); }
         static double toDouble(String func, Object a) {
+            if (a instanceof Double) return (Double)a;
+            if (a instanceof Long) return (Long)a;
             final Number n = requireNumber(func, a);
 
             final double ret = n.doubleValue();
@@ -5147,19 +7509,79 @@ public class LambdaJ {
             return true;
         }
 
-        /** operator for zero or more args */
-        static double addOp(ConsCell _args, String opName, double startVal, DoubleBinaryOperator op) {
-            if (_args == null) return startVal;
-            ConsCell args = _args;
-            double result = toDouble(opName, car(args));
+        /// fixnum fast paths for +, - and *
+        // As long as all arguments and intermediate results are fixnums the double arithmetic would be exact,
+        // so the computation is done in long and the identical double result is converted once at the end.
+        // When an argument is not a fixnum or an intermediate result leaves the fixnum range
+        // the remaining arguments are processed in double as usual.
 
-            for (;;) {
-                final Object next = cdr(args);
-                if (next == null) break;
-                if (!consp(next) || next == _args) // missing nested loop check
-                    throw new ProgramError("%s: expected a proper list of numbers but got %s", opName, printSEx(_args));
-                args = (ConsCell) next;
-                result = op.applyAsDouble(result, toDouble(opName, car(args)));
+        static double add(ConsCell args) {
+            long result = 0;
+            for (ConsCell rest = args; rest != null; rest = nextArg("+", args, rest)) {
+                final Object n = rest.car();
+                if (!isFixnum(n)) return continueOp(rest, '+', result);
+                final long next = result + (Long)n; // can't overflow: both are fixnums
+                if (!isFixnum(next)) return continueOp(rest, '+', result);
+                result = next;
+            }
+            return result;
+        }
+
+        static double sub(ConsCell args) {
+            final Object first = car(args);
+            if (!isFixnum(first)) return subOp(args, "-", 0.0, (lhs, rhs) -> lhs - rhs);
+            long result = (Long)first;
+            if (cdr(args) == null) return -result;
+            for (ConsCell rest = nextArg("-", args, args); rest != null; rest = nextArg("-", args, rest)) {
+                final Object n = rest.car();
+                if (!isFixnum(n)) return continueOp(rest, '-', result);
+                final long next = result - (Long)n;
+                if (!isFixnum(next)) return continueOp(rest, '-', result);
+                result = next;
+            }
+            return result;
+        }
+
+        static double mul(ConsCell args) {
+            long result = 1;
+            for (ConsCell rest = args; rest != null; rest = nextArg("*", args, rest)) {
+                final Object n = rest.car();
+                if (!isFixnum(n)) return continueOp(rest, '*', result);
+                final long next;
+                try { next = Math.multiplyExact(result, (long)(Long)n); }
+                catch (ArithmeticException e) { return continueOp(rest, '*', result); }
+                if (!isFixnum(next)) return continueOp(rest, '*', result);
+                result = next;
+            }
+            return result;
+        }
+
+        private static boolean isFixnum(Object n) {
+            return n instanceof Long && isFixnum((long)(Long)n);
+        }
+
+        private static boolean isFixnum(long l) {
+            return l >= MOST_NEGATIVE_FIXNUM_VAL && l <= MOST_POSITIVE_FIXNUM_VAL;
+        }
+
+        private static ConsCell nextArg(String opName, ConsCell args, ConsCell current) {
+            final Object next = current.cdr();
+            if (next == null) return null;
+            if (!consp(next) || next == args) // missing nested loop check
+                throw new ProgramError("%s: expected a proper list of numbers but got %s", opName, printSEx(args));
+            return (ConsCell)next;
+        }
+
+        /** apply the operator {@code op} to the intermediate result {@code result} and the remaining arguments {@code rest} */
+        private static double continueOp(ConsCell rest, char op, double result) {
+            final String opName = op == '+' ? "+" : op == '-' ? "-" : "*";
+            for (; rest != null; rest = nextArg(opName, rest, rest)) {
+                final double rhs = toDouble(opName, rest.car());
+                switch (op) {
+                case '+': result += rhs; break;
+                case '-': result -= rhs; break;
+                default:  result *= rhs; break;
+                }
             }
             return result;
         }
@@ -5215,7 +7637,7 @@ public class LambdaJ {
             if (n instanceof Long) {
                 final long l;
                 if ((l = (Long)n) == MOST_POSITIVE_FIXNUM_VAL) errorNotAFixnum("1+: overflow, integer result does not fit in a fixnum");
-                return l + 1;
+                return Boxes.box(l + 1);
             }
             if (n instanceof Double) return ((Double)n) + 1;
             return incNumber(n);
@@ -5225,7 +7647,7 @@ public class LambdaJ {
             if (n instanceof Long) {
                 final long l;
                 if ((l = (Long)n) >= MOST_POSITIVE_FIXNUM_VAL-1) errorNotAFixnum("1+: overflow, integer result does not fit in a fixnum");
-                return l + 2;
+                return Boxes.box(l + 2);
             }
             if (n instanceof Double) return ((Double)n) + 2;
             incNumber(n);
@@ -5235,7 +7657,7 @@ public class LambdaJ {
         private static Number incNumber(Object n) {
             if (n instanceof Byte) return ((Byte)n).intValue() + 1;
             if (n instanceof Short) return ((Short)n).intValue() + 1;
-            if (n instanceof Integer) return ((Integer)n).longValue() + 1;
+            if (n instanceof Integer) return Boxes.box(((Integer)n).longValue() + 1);
             if (n instanceof BigInteger) {
                 final long l;
                 try {
@@ -5246,7 +7668,7 @@ public class LambdaJ {
                     /*notreached*/ throw null;
                 }
                 if (l == MOST_POSITIVE_FIXNUM_VAL) errorNotAFixnum("1+: overflow, integer result does not fit in a fixnum");
-                return l + 1;
+                return Boxes.box(l + 1);
             }
             return toDouble("1+", n) + 1;
         }
@@ -5256,7 +7678,7 @@ public class LambdaJ {
             if (n instanceof Long) {
                 final long l;
                 if ((l = (Long)n) == MOST_NEGATIVE_FIXNUM_VAL) errorNotAFixnum("1-: underflow, integer result does not fit in a fixnum");
-                return l - 1;
+                return Boxes.box(l - 1);
             }
             return decNumber(n);
         }
@@ -5264,7 +7686,7 @@ public class LambdaJ {
         static Number decNumber(Object n) {
             if (n instanceof Byte) return ((Byte)n).intValue() - 1;
             if (n instanceof Short) return ((Short)n).intValue() - 1;
-            if (n instanceof Integer) return ((Integer)n).longValue() - 1;
+            if (n instanceof Integer) return Boxes.box(((Integer)n).longValue() - 1);
             if (n instanceof BigInteger) {
                 final long l;
                 try {
@@ -5275,7 +7697,7 @@ public class LambdaJ {
                     /*notreached*/ throw null;
                 }
                 if (l == MOST_NEGATIVE_FIXNUM_VAL) errorNotAFixnum("1-: underflow, integer result does not fit in a fixnum");
-                return l - 1;
+                return Boxes.box(l - 1);
             }
             return toDouble("1-", n) - 1;
         }
@@ -5606,6 +8028,167 @@ public class LambdaJ {
         }
 
 
+        /// pmap, pfilter, preduce - the elements of a list or vector are split into chunks that are processed by the calling thread
+        /// and the common ForkJoinPool.
+        /// {@code workerFn} supplies the function that a worker thread applies, it is invoked at most once per worker thread and call,
+        /// e.g. to fork an interpreter per worker. If {@code workerFn} is {@code null} then {@code fn} is applied in the calling thread.
+        /// Either way results are in the order of the elements.
+
+        /** return the elements of the list or vector {@code seq}, the returned array may be {@code seq} itself and must not be modified */
+        static Object[] seqElements(String func, Object seq) {
+            if (seq == null) return new Object[0];
+            if (seq instanceof Object[]) return (Object[])seq;
+            if (seq instanceof List) return ((List<?>)seq).toArray();
+            if (seq instanceof ArraySlice) { final ArraySlice slice = (ArraySlice)seq;  return Arrays.copyOfRange(slice.arry, slice.offset, slice.arry.length); }
+            if (seq instanceof ConsCell) {
+                final ArrayList<Object> ret = new ArrayList<>();
+                for (Object o = seq; o != null; o = cdr(o)) {
+                    if (!consp(o)) errorNotAList(func, seq);
+                    ret.add(car(o));
+                }
+                return ret.toArray();
+            }
+            errorNotASequence(func, seq);
+            return null; // notreached
+        }
+
+        /** apply {@code fn} to each element of the list or vector {@code seq}, return a list if {@code seq} is a list else a simple vector */
+        static Object pmap(MurmelFunction fn, Supplier<MurmelFunction> workerFn, Object seq) {
+            final Object[] results = mapElements(fn, workerFn, seqElements("pmap", seq));
+            return seqResult(seq, results, results.length);
+        }
+
+        /** return the elements of the list or vector {@code seq} that satisfy {@code pred}, as a list if {@code seq} is a list else as a simple vector */
+        static Object pfilter(MurmelFunction pred, Supplier<MurmelFunction> workerPred, Object seq) {
+            final Object[] elems = seqElements("pfilter", seq);
+            final Object[] keep = mapElements(pred, workerPred, elems);
+            int n = 0;
+            for (int i = 0; i < elems.length; i++) if (keep[i] != null) keep[n++] = elems[i];
+            return seqResult(seq, keep, n);
+        }
+
+        /** reduce the elements of the list or vector {@code seq} using the associative function {@code fn}.
+         *  Chunks are reduced from left to right and the chunk results are combined in order.
+         *  An empty sequence reduces to {@code initialValue} or if there is none to the result of calling {@code fn} with no arguments. */
+        static Object preduce(MurmelFunction fn, Supplier<MurmelFunction> workerFn, Object seq, boolean haveInitialValue, Object initialValue) {
+            final Object[] elems = seqElements("preduce", seq);
+            if (elems.length == 0) return haveInitialValue ? initialValue : applyElem(fn);
+            final Object ret;
+            if (workerFn == null || elems.length < 2) ret = reduceRange(fn, elems, 0, elems.length);
+            else {
+                final ParallelReduce task = new ParallelReduce(ThreadLocal.withInitial(workerFn), elems, 0, elems.length, chunkSize(elems.length), new FirstError());
+                final Object result = task.invoke();
+                task.error.rethrow();
+                ret = result;
+            }
+            return haveInitialValue ? applyElem(fn, initialValue, ret) : ret;
+        }
+
+        private static Object seqResult(Object seq, Object[] results, int n) {
+            if (!listp(seq)) return n == results.length ? results : Arrays.copyOf(results, n);
+            final ListBuilder ret = new ListBuilder();
+            for (int i = 0; i < n; i++) ret.append(results[i]);
+            return ret.first();
+        }
+
+        private static Object reduceRange(MurmelFunction fn, Object[] elems, int from, int to) {
+            Object ret = elems[from];
+            for (int i = from + 1; i < to; i++) ret = applyElem(fn, ret, elems[i]);
+            return ret;
+        }
+
+        private static Object[] mapElements(MurmelFunction fn, Supplier<MurmelFunction> workerFn, Object[] elems) {
+            final Object[] results = new Object[elems.length];
+            if (workerFn == null || elems.length < 2) {
+                for (int i = 0; i < elems.length; i++) results[i] = applyElem(fn, elems[i]);
+                return results;
+            }
+            final ParallelMap task = new ParallelMap(ThreadLocal.withInitial(workerFn), elems, results, 0, elems.length, chunkSize(elems.length), new FirstError());
+            task.invoke();
+            task.error.rethrow();
+            return results;
+        }
+
+        private static int chunkSize(int n) {
+            return Math.max(1, n / (java.util.concurrent.ForkJoinPool.getCommonPoolParallelism() * 4));
+        }
+
+        private static Object applyElem(MurmelFunction fn, Object... args) {
+            try { return fn.apply(args); }
+            catch (RuntimeException e) { throw e; }
+            catch (Exception e) { throw new LambdaJError(e); }
+        }
+
+        /** the exception of the leftmost element or chunk that failed, so that the same error is thrown as if the elements were processed in order */
+        private static final class FirstError {
+            private volatile int index = Integer.MAX_VALUE;
+            private RuntimeException error;
+
+            /** return true if an element left of {@code i} failed, i.e. {@code i} doesn't need to be processed */
+            boolean before(int i) { return index < i; }
+            synchronized void set(int i, RuntimeException e) { if (i < index) { error = e;  index = i; } }
+            synchronized void rethrow() { if (error != null) throw error; }
+        }
+
+        private static final class ParallelMap extends java.util.concurrent.RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            /** the function of the current worker thread */
+            private final ThreadLocal<MurmelFunction> fn;
+            private final Object[] elems, results;
+            private final int from, to, chunk;
+            /** the exception of the leftmost element that failed, elements right of it won't be processed */
+            final FirstError error;
+
+            ParallelMap(ThreadLocal<MurmelFunction> fn, Object[] elems, Object[] results, int from, int to, int chunk, FirstError error) {
+                this.fn = fn; this.elems = elems; this.results = results; this.from = from; this.to = to; this.chunk = chunk; this.error = error;
+            }
+
+            @Override protected void compute() {
+                if (to - from > chunk) {
+                    final int mid = (from + to) >>> 1;
+                    invokeAll(new ParallelMap(fn, elems, results, from, mid, chunk, error), new ParallelMap(fn, elems, results, mid, to, chunk, error));
+                    return;
+                }
+                int i = from;
+                try {
+                    final MurmelFunction f = fn.get();
+                    for (; i < to && !error.before(i); i++) results[i] = applyElem(f, elems[i]);
+                }
+                catch (RuntimeException e) { error.set(i, e); }
+            }
+        }
+
+        private static final class ParallelReduce extends java.util.concurrent.RecursiveTask<Object> {
+            private static final long serialVersionUID = 1L;
+
+            /** the function of the current worker thread */
+            private final ThreadLocal<MurmelFunction> fn;
+            private final Object[] elems;
+            private final int from, to, chunk;
+            /** the exception of the leftmost chunk that failed */
+            final FirstError error;
+
+            ParallelReduce(ThreadLocal<MurmelFunction> fn, Object[] elems, int from, int to, int chunk, FirstError error) {
+                this.fn = fn; this.elems = elems; this.from = from; this.to = to; this.chunk = chunk; this.error = error;
+            }
+
+            @Override protected Object compute() {
+                if (to - from > chunk) {
+                    final int mid = (from + to) >>> 1;
+                    final ParallelReduce left = new ParallelReduce(fn, elems, from, mid, chunk, error), right = new ParallelReduce(fn, elems, mid, to, chunk, error);
+                    invokeAll(left, right);
+                    if (error.before(to)) return null;
+                    try { return applyElem(fn.get(), left.join(), right.join()); }
+                    catch (RuntimeException e) { error.set(mid, e);  return null; }
+                }
+                if (error.before(from)) return null;
+                try { return reduceRange(fn.get(), elems, from, to); }
+                catch (RuntimeException e) { error.set(from, e);  return null; }
+            }
+        }
+
+
         static long slength(Object maybeVector) {
             if (maybeVector instanceof char[])       return ((char[])maybeVector).length;
             if (!(maybeVector instanceof CharSequence)) errorNotAString("slength", maybeVector);
@@ -5634,12 +8217,12 @@ public class LambdaJ {
             if (maybeString instanceof char[]) {
                 final char[] carry = (char[])maybeString;
                 final int len = carry.length;
-                for (int i = 0; i < len; i++) ret.append(carry[i]);
+                for (int i = 0; i < len; i++) ret.append(Boxes.box(carry[i]));
                 return ret.first();
             }
             final CharSequence s = requireCharsequence("string->list", maybeString);
             final int len = s.length();
-            for (int i = 0; i < len; i++) ret.append(s.charAt(i));
+            for (int i = 0; i < len; i++) ret.append(Boxes.box(s.charAt(i)));
             return ret.first();
         }
 
@@ -6324,6 +8907,38 @@ public class LambdaJ {
             }
         }
 
+        /// profiler
+
+        static long profileInterval(Object millis) {
+            return millis == null ? Profiler.DEFAULT_INTERVAL_MILLIS : toNonnegInt("profile-start", millis);
+        }
+
+        /** return the samples of {@code profiler} as a string, or write them to the file {@code filespec} and return the number of samples */
+        static Object profileResult(Profiler profiler, Object filespec) {
+            if (profiler == null) return null;
+            try {
+                if (filespec == null) {
+                    final StringBuilder sb = new StringBuilder();
+                    profiler.writeCollapsed(sb);
+                    return sb.toString();
+                }
+                profiler.writeCollapsed(Paths.get(requireString("profile-stop", filespec)));
+                return profiler.sampleCount();
+            }
+            catch (IOException e) { throw wrap(e); }
+        }
+
+        /// call statistics
+
+        /** return {@code callStats} as a hash-table, or write them to the file {@code filespec} and return the number of functions */
+        static Object callStatsResult(CallStats callStats, SymbolTable st, Object filespec) {
+            if (callStats == null) return null;
+            if (filespec == null) return callStats.toHashTable(st);
+            try { callStats.write(Paths.get(requireString("call-stats-stop", filespec))); }
+            catch (IOException e) { throw wrap(e); }
+            return (long)callStats.entries().size();
+        }
+
         static long getUniversalTime() {
             final ZoneId utc = ZoneId.of("UTC");
             final ZonedDateTime ld1900 = ZonedDateTime.of(1900, 1, 1, 0, 0, 0, 0, utc);
@@ -6386,18 +9001,40 @@ public class LambdaJ {
     static final class JFFI {
         private JFFI() {}
 
-        private static class JavaConstructor implements Primitive, MurmelJavaProgram.CompilerPrimitive {
+        /** The arguments of {@link #findMethod} that created a Java method or constructor. This is the serialized form of Java methods and constructors,
+         *  the method will be looked up again when it is deserialized, e.g. when an image is loaded. */
+        private static final class Signature implements Serializable {
+            private static final long serialVersionUID = 1L;
+            final @NotNull String className, methodName;
+            final @NotNull ArrayList<String> paramClassNames;
+
+            Signature(@NotNull String className, @NotNull String methodName, Iterable<?> paramClassNames) {
+                this.className = className;  this.methodName = methodName;
+                this.paramClassNames = new ArrayList<>();
+                if (paramClassNames != null) for (Object paramClassName: paramClassNames) this.paramClassNames.add((String)paramClassName);
+            }
+
+            private Object readResolve() { return findMethod(className, methodName, paramClassNames); }
+        }
+
+        private static class JavaConstructor implements Primitive, MurmelJavaProgram.CompilerPrimitive, Serializable {
+            private static final long serialVersionUID = 1L;
             private final Constructor<?> constructor;
             private final UnaryOperator<Object>[] argConv;
+            private final @NotNull Signature signature;
 
-            private JavaConstructor(Constructor<?> constructor, Iterable<?> paramClassNames) {
+            private JavaConstructor(Constructor<?> constructor, @NotNull Signature signature) {
                 this.constructor = constructor;
+                this.signature = signature;
+                final Iterable<?> paramClassNames = signature.paramClassNames;
                 this.argConv = makeArgConv(paramClassNames, constructor.getParameterCount(), 0);
             }
 
             @Override public void printSEx(WriteConsumer out, boolean ignored) { out.print(toString()); }
             @Override public String toString() { return "#<Java constructor: " + constructor.getName() + '>'; }
 
+            private Object writeReplace() { return signature; }
+
             @Override public Object applyPrimitive(ConsCell x) { return applyCompilerPrimitive(listToArray(x)); }
 
             @Override public Object applyCompilerPrimitive(Object... args) {
@@ -6422,16 +9059,20 @@ public class LambdaJ {
             return argConv;
         }
 
-        private static final class JavaMethod implements Primitive, MurmelJavaProgram.CompilerPrimitive {
+        private static final class JavaMethod implements Primitive, MurmelJavaProgram.CompilerPrimitive, Serializable {
+            private static final long serialVersionUID = 1L;
             @FunctionalInterface private interface Invoker { Object invoke(Object... args) throws Throwable; }
 
             private final Method method;
             private final Invoker invoke;
             private final UnaryOperator<Object>[] argConv;
+            private final @NotNull Signature signature;
 
             @SuppressWarnings("unchecked")
-            private JavaMethod(Method method, Iterable<?> paramClassNames) {
+            private JavaMethod(Method method, @NotNull Signature signature) {
                 this.method = method;
+                this.signature = signature;
+                final Iterable<?> paramClassNames = signature.paramClassNames;
                 int paramCount = method.getParameterCount();
                 final boolean isStatic = Modifier.isStatic(method.getModifiers());
                 if (!isStatic) paramCount++; // this + parameters
@@ -6464,6 +9105,8 @@ public class LambdaJ {
             @Override public void printSEx(WriteConsumer out, boolean ignored) { out.print(toString()); }
             @Override public String toString() { return "#<Java method: " + method.getDeclaringClass().getName() + '.' + method.getName() + '>'; }
 
+            private Object writeReplace() { return signature; }
+
             @Override public Object applyPrimitive(ConsCell x) { return applyCompilerPrimitive(listToArray(x)); }
 
             @Override public Object applyCompilerPrimitive(Object... args) {
@@ -6506,9 +9149,10 @@ public class LambdaJ {
             final Class<?>[] params = paramClasses.isEmpty() ? null : paramClasses.toArray(EMPTY_CLASS_ARRAY);
             try {
                 final Class<?> clazz = findClass(className);
+                final Signature signature = new Signature(className, methodName, paramClassNames);
                 return "new".equals(methodName)
-                       ? new JavaConstructor(clazz.getDeclaredConstructor(params), paramClassNames)
-                       : new JavaMethod(clazz.getMethod(methodName, params), paramClassNames);
+                       ? new JavaConstructor(clazz.getDeclaredConstructor(params), signature)
+                       : new JavaMethod(clazz.getMethod(methodName, params), signature);
             }
             catch (LambdaJError le) { throw le; }
             catch (Exception e) { throw new LambdaJError(true, JMETHOD + ": exception finding method %s.%s: %s", className, methodName, e.getMessage()); }
@@ -6749,13 +9393,31 @@ public class LambdaJ {
     public void setReaderPrinter(ObjectReader lispStdin, ObjectWriter lispStdout) {
         this.lispReader = lispStdin;
         this.lispPrinter = lispStdout;
+        if (jitPrograms != null) for (MurmelJavaProgram program: jitPrograms) program.setReaderPrinter(lispStdin, lispStdout);
+    }
+
+
+    /** a builtin primitive that is applied by this interpreter */
+    private final class BoundPrimitive implements Primitive {
+        final @NotNull WellknownSymbol w;
+
+        BoundPrimitive(@NotNull WellknownSymbol w) { this.w = w; }
+
+        @Override public Object applyPrimitive(ConsCell args) { return w.applyPrimitive(LambdaJ.this, args); }
     }
 
+    /** builtin primitives of this interpreter, there is one instance per primitive so that e.g. {@code (eq car (car (list car)))} holds */
+    private EnumMap<WellknownSymbol, BoundPrimitive> boundPrimitives;
+
+    private @NotNull BoundPrimitive boundPrimitive(@NotNull WellknownSymbol w) {
+        if (boundPrimitives == null) boundPrimitives = new EnumMap<>(WellknownSymbol.class);
+        return boundPrimitives.computeIfAbsent(w, BoundPrimitive::new);
+    }
 
     /** build an environment by prepending the previous environment {@code env} with the primitive functions,
      *  generating symbols in the {@link SymbolTable} {@link #symtab} on the fly */
     private void environment() {
-        WellknownSymbol.forAllPrimitives(features, w -> extendGlobal(internWellknown(w.sym), (Primitive)a -> w.applyPrimitive(this, a)));
+        WellknownSymbol.forAllPrimitives(features, w -> extendGlobal(internWellknown(w.sym), boundPrimitive(w)));
 
         if (have(Features.HAVE_T)) extendGlobal(sT, sT);
         if (have(Features.HAVE_NIL)) extendGlobal(sNil, null);
@@ -6845,10 +9507,46 @@ public class LambdaJ {
         return getFunction(this, funcName, getValue(funcName));
     }
 
+    /** pure primitives that don't use an interpreter's state and may be applied by several threads at once, e.g. by pmap */
+    static final Set<WellknownSymbol> PARALLEL_PRIMITIVES = EnumSet.of(
+        WellknownSymbol.sEq, WellknownSymbol.sEql, WellknownSymbol.sEqual,
+        WellknownSymbol.sConsp, WellknownSymbol.sAtom, WellknownSymbol.sSymbolp, WellknownSymbol.sNull, WellknownSymbol.sNumberp,
+        WellknownSymbol.sFloatp, WellknownSymbol.sIntegerp, WellknownSymbol.sCharacterp, WellknownSymbol.sVectorp, WellknownSymbol.sSimpleVectorP,
+        WellknownSymbol.sStringp, WellknownSymbol.sSimpleStringP, WellknownSymbol.sBitVectorP, WellknownSymbol.sSimpleBitVectorP,
+        WellknownSymbol.sHashtableP, WellknownSymbol.sListp,
+        WellknownSymbol.sCar, WellknownSymbol.sCdr, WellknownSymbol.sAssq, WellknownSymbol.sAssoc,
+        WellknownSymbol.sAdd, WellknownSymbol.sMul, WellknownSymbol.sSub, WellknownSymbol.sDiv,
+        WellknownSymbol.sNeq, WellknownSymbol.sNe, WellknownSymbol.sLt, WellknownSymbol.sLe, WellknownSymbol.sGe, WellknownSymbol.sGt,
+        WellknownSymbol.sInc, WellknownSymbol.sDec, WellknownSymbol.sSignum,
+        WellknownSymbol.sRound, WellknownSymbol.sFloor, WellknownSymbol.sCeiling, WellknownSymbol.sTruncate,
+        WellknownSymbol.sFRound, WellknownSymbol.sFFloor, WellknownSymbol.sFCeiling, WellknownSymbol.sFTruncate,
+        WellknownSymbol.sSqrt, WellknownSymbol.sLog, WellknownSymbol.sLog10, WellknownSymbol.sExp, WellknownSymbol.sExpt, WellknownSymbol.sMod, WellknownSymbol.sRem,
+        WellknownSymbol.sVectorLength, WellknownSymbol.sSvLength, WellknownSymbol.sSvRef, WellknownSymbol.sSLength, WellknownSymbol.sSRef, WellknownSymbol.sSEq,
+        WellknownSymbol.sCharCode, WellknownSymbol.sCodeChar, WellknownSymbol.sBvLength, WellknownSymbol.sBvRef, WellknownSymbol.sBvEq, WellknownSymbol.sSxHash);
+
+    /** return the supplier of the function that a pmap worker thread applies or {@code null} if {@code function} must be applied
+     *  in the calling thread. Pure primitives are applied as is and compiled functions use a TCO trampoline per thread.
+     *  A closure is applied by a fork of this interpreter per worker thread, see {@link #newContext}:
+     *  a worker sees the global bindings at the time of the call, and changes of global bindings by the closure are local to the worker.
+     *  The workers have no reader and share a synchronized printer that writes to this interpreter's printer. */
+    private Supplier<MurmelFunction> workerFunction(Object function) {
+        if (function instanceof BoundPrimitive && PARALLEL_PRIMITIVES.contains(((BoundPrimitive)function).w)) { final MurmelFunction f = ((Primitive)function)::applyPrimitiveVarargs;  return () -> f; }
+        if (function instanceof JitFunction) return () -> (JitFunction)function;
+        if (function instanceof Closure) {
+            Snapshot image = contextImage;
+            if (image == null) contextImage = image = snapshot();
+            final Snapshot workerImage = image;
+            final ObjectWriter workerPrinter = lispPrinter == null ? null : new SynchronizedWriter(lispPrinter);
+            return () -> workerImage.fork(null, workerPrinter).new CallLambda((Closure)function);
+        }
+        return null;
+    }
+
     private static @NotNull MurmelFunction getFunction(LambdaJ intp, String funcName, Object function) {
         if (function instanceof MurmelJavaProgram.CompilerPrimitive)  { return ((MurmelJavaProgram.CompilerPrimitive)function)::applyCompilerPrimitive; }
         if (function instanceof Primitive)                            { return ((Primitive)function)::applyPrimitiveVarargs; }
         if (function instanceof Closure)                              { return intp.new CallLambda((Closure)function); }
+        if (function instanceof JitFunction)                          { return (JitFunction)function; }
         if (function instanceof MurmelFunction)                       { return args -> intp.compiledProgram.funcall((MurmelFunction)function, args); /* must use the TCO trampoline */ }
 
         throw errorNotAFunction("getFunction: not a primitive or " + LAMBDA + ": %s", funcName);
@@ -6975,7 +9673,7 @@ public class LambdaJ {
 
     public Object interpretExpressions(ObjectReader program, ObjectReader inReader, ObjectWriter outWriter, CustomEnvironmentSupplier customEnv, boolean reset) {
         final ConsCell customEnvironment = customEnv == null ? null : customEnv.customEnvironment(symtab);
-        if (reset || globals.isEmpty()) init(inReader, outWriter, customEnvironment);
+        if (reset || globals.isEmpty() && snapshot == null) init(inReader, outWriter, customEnvironment);
         else setReaderPrinter(null, outWriter);
         currentSource = program.getInput();
         final boolean traceStats = trace.ge(TraceLevel.TRC_STATS);
@@ -7069,19 +9767,47 @@ public class LambdaJ {
                 final boolean echo = hasFlag("--echo", args);    // used only in repl
                 final boolean printResult = hasFlag("--result", args);  // print individual results of toplevel forms, used only when interpreting files given on the commandline or interpreting piped input
                 final boolean verbose = hasFlag("--verbose", args);
+                final boolean nodes = hasFlag("--nodes", args);
+                final boolean jit = hasFlag("--jit", args);
+                final MurmelJavaCompiler.Backend backend = hasFlag("--bytecode", args) ? MurmelJavaCompiler.Backend.BYTECODE : MurmelJavaCompiler.Backend.JAVAC;
                 final String clsName = flagValue("--class", args);
                 final String outDir = flagValue("--outdir", args);
                 final String libDir = flagValue("--libdir", args);
+                final String cacheDir = flagValue("--cachedir", args);
+                final String imageFile = flagValue("--image", args);
+                final String saveImageFile = flagValue("--save-image", args);
+                final String profileFile = flagValue("--profile", args);
+                final String profileInterval = flagValue("--profile-interval", args);
+                final String callStatsFile = flagValue("--call-stats", args);
                 final String immediateForms = flagValues("--eval", args);
 
-                if (argError(args) || error || scriptFlagError) {
+                final boolean imageFlagError = (imageFile != null || saveImageFile != null) && action != Action.INTERPRET;
+                if (imageFlagError) REPL_ERR.println("LambdaJ: --image and --save-image can only be used when interpreting");
+
+                final long profileMillis = profileInterval == null ? Profiler.DEFAULT_INTERVAL_MILLIS : parseMillis(profileInterval);
+                final boolean profileFlagError = profileFile == null ? profileInterval != null : action == Action.TO_JAVA || action == Action.TO_JAR || profileMillis < 1;
+                if (profileFlagError) REPL_ERR.println("LambdaJ: --profile can only be used when interpreting or with --run, --profile-interval needs --profile and a number of milliseconds");
+
+                final boolean callStatsFlagError = callStatsFile != null && (action == Action.TO_JAVA || action == Action.TO_JAR);
+                if (callStatsFlagError) REPL_ERR.println("LambdaJ: --call-stats can only be used when interpreting or with --run");
+
+                if (argError(args) || error || scriptFlagError || imageFlagError || profileFlagError || callStatsFlagError) {
                     REPL_ERR.println("LambdaJ: exiting because of previous errors.");
                     throw EXIT_CMDLINE_ERROR;
                 }
 
                 final Path libPath = getLibPath(libDir);
 
-                final LambdaJ interpreter = new LambdaJ(features, trace, null, null, null, null, null, libPath);
+                final LambdaJ interpreter;
+                if (imageFile != null) {
+                    try { interpreter = Snapshot.load(Paths.get(imageFile), trace, null, libPath).fork(); }
+                    catch (IOException e) { REPL_ERR.println("LambdaJ: cannot load image: " + e.getMessage());  throw EXIT_IO_ERROR; }
+                }
+                else interpreter = new LambdaJ(features, trace, null, null, null, null, null, libPath);
+                if (nodes) interpreter.setEngine(Engine.NODES);
+                if (jit) interpreter.setJitThreshold(JIT_THRESHOLD);
+                if (profileFile != null) startProfiler(interpreter, action == Action.INTERPRET, profileFile, profileMillis);
+                if (callStatsFile != null) startCallStats(interpreter, action == Action.INTERPRET, callStatsFile);
 
                 final List<Object> history = repl ? new ArrayList<>() : null;
 
@@ -7091,7 +9817,7 @@ public class LambdaJ {
                     if (!files.isEmpty() || immediateForms != null) {
                         switch (action) {
                         case INTERPRET:
-                            interpreter.init(NULL_READCHARS, NULL_WRITECHARS, null);
+                            initInterpreter(interpreter, imageFile != null);
                             injectCommandlineArgs(interpreter, args);
                             Object result = null;
                             for (String fileName : files) {
@@ -7103,6 +9829,7 @@ public class LambdaJ {
                             if (immediateForms != null) {
                                 result = interpretStream(interpreter, new StringReadSupplier(immediateForms), null, printResult, history);
                             }
+                            if (saveImageFile != null) saveImage(interpreter, saveImageFile);
                             if (finalResult && !printResult && result != null) {
                                 REPL_OUT.println();
                                 REPL_OUT.println("==> " + printSEx(result));
@@ -7110,15 +9837,15 @@ public class LambdaJ {
                             if (script) exit(result);
                             break;
                         case TO_JAVA:
-                            final boolean javaSuccess = compileFiles(files, immediateForms, false, clsName, libPath, outDir);
+                            final boolean javaSuccess = compileFiles(files, immediateForms, false, clsName, libPath, outDir, backend);
                             if (!istty && !javaSuccess) throw EXIT_RUNTIME_ERROR;
                             break;
                         case TO_JAR:
-                            final boolean jarSuccess = compileFiles(files, immediateForms, true, clsName, libPath, outDir);
+                            final boolean jarSuccess = compileFiles(files, immediateForms, true, clsName, libPath, outDir, backend);
                             if (!istty && !jarSuccess) throw EXIT_RUNTIME_ERROR;
                             break;
                         case COMPILE_AND_RUN:
-                            final Object res = compileAndRunFiles(files, immediateForms, interpreter, args, verbose, finalResult);
+                            final Object res = compileAndRunFiles(files, immediateForms, interpreter, args, verbose, finalResult, cacheDir, backend);
                             if (script) exit(res);
                             break;
                         }
@@ -7131,7 +9858,11 @@ public class LambdaJ {
                 interpreter.currentSource = null;
 
                 // repl() doesn't return
-                if (files.isEmpty() && immediateForms == null && istty || repl) repl(interpreter, (immediateForms != null || !files.isEmpty()) && action == Action.INTERPRET, istty, echo, history, args);
+                if (files.isEmpty() && immediateForms == null && istty || repl) {
+                    final boolean isInit = (immediateForms != null || !files.isEmpty()) && action == Action.INTERPRET;
+                    if (!isInit && imageFile != null) { initInterpreter(interpreter, true);  interpreter.setReaderPrinter(null, makeWriter(REPL_OUT::print));  injectCommandlineArgs(interpreter, args); }
+                    repl(interpreter, isInit || imageFile != null, istty, echo, history, args);
+                }
 
                 if (files.isEmpty() && immediateForms == null) {
                     final String consoleCharsetName = System.getProperty("sun.stdout.encoding");
@@ -7139,9 +9870,10 @@ public class LambdaJ {
 
                     try (InputStreamReader inputStreamReader = new InputStreamReader(REPL_IN, consoleCharset)) {
                         if (action == Action.INTERPRET) {
-                            interpreter.init(NULL_READCHARS, NULL_WRITECHARS, null);
+                            initInterpreter(interpreter, imageFile != null);
                             injectCommandlineArgs(interpreter, args);
                             final Object result = interpretStream(interpreter, inputStreamReader::read, null, printResult, null);
+                            if (saveImageFile != null) saveImage(interpreter, saveImageFile);
                             if (finalResult && !printResult && result != null) {
                                 REPL_OUT.println();
                                 REPL_OUT.print("==> ");
@@ -7158,11 +9890,13 @@ public class LambdaJ {
                                 break;
                             case TO_JAR:
                                 final String outFile = outDir != null ? outDir + "/a.jar" : "a.jar";
-                                final boolean successJar = compileToJar(interpreter.getSymbolTable(), libPath, parser, clsName, outFile);
+                                final MurmelJavaCompiler c = new MurmelJavaCompiler(interpreter.getSymbolTable(), libPath);
+                                c.setBackend(backend);
+                                final boolean successJar = compileToJar(c, parser, clsName, outFile);
                                 if (successJar) REPL_OUT.println("compiled stdin to " + outFile);
                                 break;
                             case COMPILE_AND_RUN:
-                                compileAndRunForms(parser, args, interpreter, false, finalResult);
+                                compileAndRunForms(parser, args, interpreter, false, finalResult, null, backend);
                                 break;
                             default:
                                 assert false : "can't happen";
@@ -7177,9 +9911,73 @@ public class LambdaJ {
             catch (Exit e) {
                 return e.rc;
             }
+            finally {
+                writeProfile();
+                writeCallStats();
+            }
             return 0;
         }
 
+        /** the profiler that was started by the commandline flag --profile */
+        private static Profiler cliProfiler;
+        private static Path cliProfileFile;
+
+        private static long parseMillis(String millis) {
+            try { return Long.parseLong(millis); }
+            catch (NumberFormatException e) { return -1; }
+        }
+
+        /** start sampling the interpreter or (if {@code interpret} is false) the program that will be compiled and run by {@link #compileAndRunForms} */
+        private static void startProfiler(LambdaJ interpreter, boolean interpret, String file, long intervalMillis) {
+            cliProfileFile = Paths.get(file);
+            cliProfiler = interpret ? interpreter.startProfiler(intervalMillis) : Profiler.start(Thread.currentThread(), null, null, intervalMillis);
+        }
+
+        /** stop the profiler that was started by --profile and write its samples */
+        private static void writeProfile() {
+            final Profiler profiler = cliProfiler;
+            if (profiler == null) return;
+            cliProfiler = null;
+            profiler.stop();
+            try { profiler.writeCollapsed(cliProfileFile); }
+            catch (IOException e) { REPL_ERR.println("LambdaJ: cannot write profile: " + e); }
+        }
+
+        /** the call statistics that were started by the commandline flag --call-stats */
+        private static CallStats cliCallStats;
+        private static Path cliCallStatsFile;
+
+        /** start recording the calls of the interpreter or (if {@code interpret} is false) of the program that will be compiled and run by {@link #compileAndRunForms} */
+        private static void startCallStats(LambdaJ interpreter, boolean interpret, String file) {
+            cliCallStatsFile = Paths.get(file);
+            cliCallStats = interpret ? interpreter.startCallStats() : new CallStats(null);
+        }
+
+        /** return the call statistics that were started by --call-stats together with --run, or null */
+        private static CallStats compiledCallStats() {
+            return cliCallStats != null && cliCallStats.intp == null ? cliCallStats : null;
+        }
+
+        /** write the call statistics that were started by --call-stats */
+        private static void writeCallStats() {
+            final CallStats callStats = cliCallStats;
+            if (callStats == null) return;
+            cliCallStats = null;
+            try { callStats.write(cliCallStatsFile); }
+            catch (IOException e) { REPL_ERR.println("LambdaJ: cannot write call statistics: " + e); }
+        }
+
+        /** prepare {@code interpreter} for interpreting files, an interpreter that was forked from an image keeps its global environment */
+        private static void initInterpreter(LambdaJ interpreter, boolean fromImage) {
+            if (fromImage) interpreter.setReaderPrinter(interpreter.makeReader(NULL_READCHARS, null), makeWriter(NULL_WRITECHARS));
+            else interpreter.init(NULL_READCHARS, NULL_WRITECHARS, null);
+        }
+
+        private static void saveImage(LambdaJ interpreter, String imageFile) throws IOException {
+            final List<Object> skipped = interpreter.snapshot().save(Paths.get(imageFile));
+            if (!skipped.isEmpty()) REPL_ERR.println("LambdaJ: these globals were not saved to the image because their values can't be serialized: " + skipped);
+        }
+
         /** exit by throwing an {@link Exit} exception, doesn't return. The last form of the program will determine the exitlevel:
          *  nil will result in 0, a number will result in an exitlevel of number&127, any other non-nil value will result in an exitlevel of 1. */
         private static void exit(Object murmelResult) {
@@ -7221,9 +10019,10 @@ public class LambdaJ {
             finally { interpreter.currentSource = prev; }
         }
 
-        private static boolean compileFiles(final List<String> files, String forms, boolean toJar, String clsName, Path libPath, String outDir) throws IOException {
+        private static boolean compileFiles(final List<String> files, String forms, boolean toJar, String clsName, Path libPath, String outDir, MurmelJavaCompiler.Backend backend) throws IOException {
             final SymbolTable symtab = new ListSymbolTable();
-            final MurmelJavaCompiler c = new MurmelJavaCompiler(symtab, libPath, getTmpDir());
+            final MurmelJavaCompiler c = new MurmelJavaCompiler(symtab, libPath);
+            c.setBackend(backend);
 
             final ObjectReader program = parseFiles(files, forms, c.intp, true);
             final String outFile;
@@ -7242,27 +10041,37 @@ public class LambdaJ {
             return success;
         }
 
-        private static Object compileAndRunFiles(List<String> files, String forms, LambdaJ interpreter, String[] args, boolean verbose, boolean finalResult) throws IOException {
+        private static Object compileAndRunFiles(List<String> files, String forms, LambdaJ interpreter, String[] args, boolean verbose, boolean finalResult, String cacheDir,
+                                                 MurmelJavaCompiler.Backend backend) throws IOException {
+            final ProgramCache cache = cacheDir == null || compiledCallStats() != null ? null : new ProgramCache(Paths.get(cacheDir), files, forms, interpreter.libDir, backend);
             final ObjectReader program = parseFiles(files, forms, interpreter, verbose);
-            return compileAndRunForms(program, args, interpreter, false, finalResult);
+            return compileAndRunForms(program, args, interpreter, false, finalResult, cache, backend);
         }
 
         /** compile history to a class and run compiled class */
         static Object compileAndRunForms(ObjectReader history, String[] cmdlineArgs, LambdaJ interpreter, boolean repl, boolean finalResult) {
-            final Path tmpDir;
-            try { tmpDir = getTmpDir(); }
-            catch (IOException e) {
-                REPL_OUT.println("history NOT run as Java - cannot get/ create tmp directory: " + e.getMessage());
-                if (!repl) throw EXIT_IO_ERROR;
-                return null;
-            }
+            return compileAndRunForms(history, cmdlineArgs, interpreter, repl, finalResult, null, MurmelJavaCompiler.Backend.JAVAC);
+        }
 
+        /** compile history to a class and run compiled class, if {@code cache} is non-null then a previously compiled class will be reused */
+        private static Object compileAndRunForms(ObjectReader history, String[] cmdlineArgs, LambdaJ interpreter, boolean repl, boolean finalResult, ProgramCache cache,
+                                                 MurmelJavaCompiler.Backend backend) {
             MurmelProgram prg = null;
             try {
-                final MurmelJavaCompiler c = new MurmelJavaCompiler(interpreter.getSymbolTable(), interpreter.libDir, tmpDir);
-                final Class<MurmelProgram> murmelClass = c.formsToJavaClass("MurmelProgram", history, null);
+                Class<MurmelProgram> murmelClass = cache == null ? null : cache.load();
+                if (murmelClass == null) {
+                    final MurmelJavaCompiler c = new MurmelJavaCompiler(interpreter.getSymbolTable(), interpreter.libDir);
+                    c.setBackend(backend);
+                    c.setInstrumentCalls(compiledCallStats() != null);
+                    murmelClass = cache == null ? c.formsToJavaClass("MurmelProgram", history, null) : cache.store(c, history);
+                }
                 prg = murmelClass.getDeclaredConstructor().newInstance();
                 injectCommandlineArgs(prg, cmdlineArgs);
+                if (cliProfiler != null && prg instanceof MurmelJavaProgram) {
+                    ((MurmelJavaProgram)prg).profiler = cliProfiler;
+                    cliProfiler.setProgram((MurmelJavaProgram)prg);
+                }
+                if (compiledCallStats() != null && prg instanceof MurmelJavaProgram) ((MurmelJavaProgram)prg).callStats = cliCallStats;
                 final long tStart = System.nanoTime();
                 final Object result = prg.body();
 
@@ -7305,10 +10114,137 @@ public class LambdaJ {
                 }
                 else REPL_ERR.println("Caught Throwable" + loc + ": " + t);
             }
+            finally {
+                if (cache != null) try { cache.close(); } catch (IOException ignored) { }
+            }
             if (!repl) throw EXIT_RUNTIME_ERROR;
             return null;
         }
 
+        /** A content-addressed cache of compiled programs: each entry is a jarfile named after a hash of
+         *  the JMurmel version and jarfile contents, the Java version, the library directory, the compiler backend and the names and contents of the source files and forms.
+         *  Next to the jarfile a list of all files that were loaded or required during compilation is stored along with their hashes,
+         *  an entry is only used if none of these files have changed. */
+        static final class ProgramCache implements Closeable {
+            private static final String CLASS_NAME = "MurmelProgram";
+
+            private final Path cacheDir;
+            private final String key;
+            private URLClassLoader loader;
+
+            ProgramCache(Path cacheDir, List<String> files, String forms, Path libDir, MurmelJavaCompiler.Backend backend) {
+                this.cacheDir = cacheDir;
+                String key;
+                try {
+                    final MessageDigest md = newDigest();
+                    update(md, ENGINE_VERSION);
+                    update(md, EngineId.ID);
+                    update(md, System.getProperty("java.specification.version"));
+                    update(md, libDir == null ? "" : libDir.toAbsolutePath().toString());
+                    update(md, backend.name());
+                    for (String fileName : files) {
+                        if ("--".equals(fileName)) break;
+                        final Path p = Paths.get(fileName).toAbsolutePath();
+                        update(md, p.toString());
+                        md.update(Files.readAllBytes(p));
+                    }
+                    update(md, forms == null ? "" : forms);
+                    key = hex(md.digest());
+                }
+                catch (IOException e) {
+                    key = null; // missing or unreadable source files will be reported by the compiler
+                }
+                this.key = key;
+            }
+
+            /** return the cached class or {@code null} if there is no valid cache entry */
+            Class<MurmelProgram> load() throws Exception {
+                if (key == null) return null;
+                final Path jar = cacheDir.resolve(key + ".jar"), deps = cacheDir.resolve(key + ".deps");
+                if (!Files.isRegularFile(jar) || !Files.isRegularFile(deps)) return null;
+                for (String line: Files.readAllLines(deps, StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) continue;
+                    final int sep = line.indexOf(' ');
+                    final Path p = Paths.get(line.substring(sep + 1));
+                    if (!Files.isRegularFile(p) || !line.substring(0, sep).equals(hash(p))) return null;
+                }
+                close();
+                loader = new URLClassLoader(new URL[] { jar.toUri().toURL() }, LambdaJ.class.getClassLoader());
+                @SuppressWarnings("unchecked")
+                final Class<MurmelProgram> ret = (Class<MurmelProgram>)Class.forName(CLASS_NAME, true, loader);
+                return ret;
+            }
+
+            /** compile {@code forms} and add the resulting jarfile to the cache */
+            Class<MurmelProgram> store(MurmelJavaCompiler c, ObjectReader forms) throws Exception {
+                if (key == null) return c.formsToJavaClass(CLASS_NAME, forms, null);
+                Files.createDirectories(cacheDir);
+                final Path tmpJar = Files.createTempFile(cacheDir, key, ".jar"), tmpDeps = Files.createTempFile(cacheDir, key, ".deps");
+                try {
+                    final Class<MurmelProgram> ret = c.formsToJavaClass(CLASS_NAME, forms, tmpJar.toString());
+                    final StringBuilder sb = new StringBuilder();
+                    for (Path p: c.getLoadedFiles()) {
+                        final Path abs = p.toAbsolutePath();
+                        sb.append(hash(abs)).append(' ').append(abs).append('\n');
+                    }
+                    Files.write(tmpDeps, sb.toString().getBytes(StandardCharsets.UTF_8));
+                    // move deps first so that a jarfile never exists without its deps
+                    Files.move(tmpDeps, cacheDir.resolve(key + ".deps"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(tmpJar, cacheDir.resolve(key + ".jar"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return ret;
+                }
+                finally {
+                    Files.deleteIfExists(tmpJar);
+                    Files.deleteIfExists(tmpDeps);
+                }
+            }
+
+            /** close the classloader of a class returned by {@link #load}, must not be called while the program is still running */
+            @Override public void close() throws IOException {
+                if (loader != null) { loader.close(); loader = null; }
+            }
+
+            /** identifies the JMurmel build: a hash of the jarfile that contains LambdaJ or - when running from a classes directory -
+             *  the size and modification time of LambdaJ.class, so that a rebuilt SNAPSHOT jar won't reuse stale cache entries */
+            private static final class EngineId {
+                static final String ID = engineId();
+
+                private static String engineId() {
+                    try {
+                        final java.security.CodeSource cs = LambdaJ.class.getProtectionDomain().getCodeSource();
+                        if (cs == null || cs.getLocation() == null) return "";
+                        final Path p = Paths.get(cs.getLocation().toURI());
+                        if (Files.isRegularFile(p)) return hash(p);
+                        final Path cls = p.resolve(LambdaJ.class.getName().replace('.', '/') + ".class");
+                        return Files.size(cls) + " " + Files.getLastModifiedTime(cls).toMillis();
+                    }
+                    catch (Exception e) {
+                        return "";
+                    }
+                }
+            }
+
+            private static MessageDigest newDigest() {
+                try { return MessageDigest.getInstance("SHA-256"); }
+                catch (NoSuchAlgorithmException e) { throw new LambdaJError(e, "cannot create program cache key"); }
+            }
+
+            private static void update(MessageDigest md, String s) {
+                md.update(s.getBytes(StandardCharsets.UTF_8));
+                md.update((byte)0);
+            }
+
+            private static String hash(Path p) throws IOException {
+                return hex(newDigest().digest(Files.readAllBytes(p)));
+            }
+
+            private static String hex(byte[] bytes) {
+                final StringBuilder sb = new StringBuilder(bytes.length * 2);
+                for (byte b: bytes) sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                return sb.toString();
+            }
+        }
+
         private static String location(MurmelProgram prg) {
             return prg instanceof MurmelJavaProgram ? " at " + ((MurmelJavaProgram) prg).loc : "";
         }
@@ -7364,11 +10300,7 @@ public class LambdaJ {
         }
 
         static boolean compileToJar(SymbolTable st, Path libDir, ObjectReader history, Object className, Object jarFile) {
-            final Path tmpDir;
-            try { tmpDir = getTmpDir(); }
-            catch (IOException e) { REPL_OUT.println("NOT compiled to .jar - cannot get/ create tmp directory: " + e.getMessage()); return false; }
-
-            return compileToJar(new MurmelJavaCompiler(st, libDir, tmpDir), history, className, jarFile);
+            return compileToJar(new MurmelJavaCompiler(st, libDir), history, className, jarFile);
         }
 
         private static boolean compileToJar(MurmelJavaCompiler c, ObjectReader history, Object className, Object jarFile) {
@@ -7538,12 +10470,13 @@ public class LambdaJ {
                                                 if (!symbolp(name)) { stdout.print(name + " is not a symbol" + nl); return; }
                                                 final LambdaJSymbol symbol = (LambdaJSymbol)name;
                                                 final ConsCell envEntry = interpreter.globals.get(name);
-                                                if (envEntry == null && symbol.macro == null) {
+                                                final Closure macro = interpreter.macroOf(symbol);
+                                                if (envEntry == null && macro == null) {
                                                     stdout.print(name + " is not bound" + nl); return;
                                                 }
-                                                if (symbol.macro != null) {
+                                                if (macro != null) {
                                                     stdout.print("macro " + symbol + ":" + nl);
-                                                    printClosureInfo(symbol.macro, nl);
+                                                    printClosureInfo(macro, nl);
                                                 }
                                                 if (cdr(envEntry) instanceof LambdaJ.Closure) {
                                                     stdout.print("function " + symbol + ":" + nl);
@@ -7570,10 +10503,10 @@ public class LambdaJ {
                         if (exp == cmdMacros) {
                             final ArrayList<LambdaJSymbol> names = new ArrayList<>();
                             for (LambdaJSymbol entry: interpreter.getSymbolTable()) {
-                                if (entry != null && entry.macro != null) names.add(entry);
+                                if (entry != null && interpreter.macroOf(entry) != null) names.add(entry);
                             }
                             names.sort(Comparator.comparing(Object::toString));
-                            for (LambdaJSymbol name: names) stdout.print(name + ": " + printSEx(ConsCell.cons(name.macro.params(), name.macro.body)) + nl);
+                            for (LambdaJSymbol name: names) { final Closure macro = interpreter.macroOf(name);  stdout.print(name + ": " + printSEx(ConsCell.cons(macro.params(), macro.body)) + nl); }
                             stdout.print("number of macros: " + names.size() + nl + nl);
                             return;
                         }
@@ -7987,6 +10920,20 @@ public class LambdaJ {
                                + "--libdir <dir> ...  (load filespec) also searches in this directory,\n"
                                + "                    default is the directory containing jmurmel.jar.\n"
                                + "--verbose ........  List files given on the commandline as they are interpreted.\n"
+                               + "--nodes ..........  Interpret forms by translating them into a tree of nodes first\n"
+                               + "                    instead of evaluating S-expressions directly.\n"
+                               + "--jit ............  Compile global functions that are called often in the background.\n"
+                               + "--save-image <file> After interpreting files or stdin save the global environment,\n"
+                               + "                    macros and loaded modules to the image file 'file'.\n"
+                               + "--image <file> ...  Start with the global environment of the image file 'file'\n"
+                               + "                    instead of an empty environment.\n"
+                               + "--profile <file> .  Sample the Murmel call stack while interpreting or with --run\n"
+                               + "                    and write the samples as collapsed stacks for flamegraph tools\n"
+                               + "                    to 'file' on exit.\n"
+                               + "--profile-interval <ms> Sampling interval in milliseconds, default is 10.\n"
+                               + "--call-stats <file> Record calls, self and total time and allocation per function\n"
+                               + "                    while interpreting or with --run and write them to 'file'\n"
+                               + "                    on exit, as JSON if 'file' ends with .json, else as text.\n"
                                + "\n"
                                + "--java ...........  Compile input files to Java source 'MurmelProgram.java'\n"
                                + "--jar ............  Compile input files to jarfile 'a.jar' containing\n"
@@ -7996,6 +10943,10 @@ public class LambdaJ {
                                + "--class <name> ...  Use 'name' instead of 'MurmelProgram' as the classname\n"
                                + "                    in generated .java- or .jar files\n"
                                + "--outdir <dir> ...  Save .java or .jar files to 'dir' instead of current dir\n"
+                               + "--cachedir <dir> .  Used with --run: keep compiled programs in 'dir' and reuse them\n"
+                               + "                    as long as the program and the files it loads are unchanged\n"
+                               + "--bytecode .......  Used with --run or --jar: generate JVM bytecode directly instead of\n"
+                               + "                    using javac, programs that use unsupported forms are compiled by javac\n"
                                + "\n"
                                + "--result .........  Print the results of each toplevel form when interpreting\n"
                                + "                    files or stdin.\n"
@@ -8122,12 +11073,6 @@ public class LambdaJ {
             }
         }
 
-        private static Path getTmpDir() throws IOException {
-            final Path tmpDir = Files.createTempDirectory("JMurmel");
-            tmpDir.toFile().deleteOnExit();
-            return tmpDir;
-        }
-
         private static class MultiFileReadSupplier implements ReadSupplier {
             private final boolean verbose;
             private final Iterator<Path> paths;
@@ -8286,9 +11231,25 @@ public class LambdaJ {
             Object applyCompilerPrimitive(Object... args);
             @Override default void printSEx(WriteConsumer out, boolean ignored) { out.print("#<compiler primitive>"); }
         }
+        /** marker interface for pure primitives that may be applied by several threads at once, e.g. by pmap */
+        public interface ParallelCompilerPrimitive extends CompilerPrimitive { }
         /** marker interface that the TCO trampoline need not be used, instead at runtime {@link MurmelJavaProgram#funcall(MurmelLeafFunction, Object...)} will be used */
         public interface MurmelLeafFunction extends MurmelFunction { }
 
+        /** compiled functions with a fixed number of parameters also implement one of these, calls with a matching number of arguments
+         *  will use the arity specific entry point and won't allocate an argument array */
+        public interface MurmelFunction0 extends MurmelFunction { Object apply0() throws Exception; }
+        public interface MurmelFunction1 extends MurmelFunction { Object apply1(Object arg1) throws Exception; }
+        public interface MurmelFunction2 extends MurmelFunction { Object apply2(Object arg1, Object arg2) throws Exception; }
+        public interface MurmelFunction3 extends MurmelFunction { Object apply3(Object arg1, Object arg2, Object arg3) throws Exception; }
+        public interface MurmelFunction4 extends MurmelFunction { Object apply4(Object arg1, Object arg2, Object arg3, Object arg4) throws Exception; }
+
+        public interface MurmelLeafFunction0 extends MurmelLeafFunction, MurmelFunction0 { }
+        public interface MurmelLeafFunction1 extends MurmelLeafFunction, MurmelFunction1 { }
+        public interface MurmelLeafFunction2 extends MurmelLeafFunction, MurmelFunction2 { }
+        public interface MurmelLeafFunction3 extends MurmelLeafFunction, MurmelFunction3 { }
+        public interface MurmelLeafFunction4 extends MurmelLeafFunction, MurmelFunction4 { }
+
         private final SymbolTable symtab = new ListSymbolTable();
         private static final LambdaJSymbol sBit = new LambdaJSymbol(true, "bit"), sCharacter = new LambdaJSymbol(true, "character"), sDynamic = new LambdaJSymbol(true, DYNAMIC);
 
@@ -8473,6 +11434,7 @@ public class LambdaJ {
         private Object bool(boolean result) { clrValues(); return result ? _t : null; }
 
         public final Object _eq        (Object... args) { twoArgs(EQ, args);     return bool(args[0] == args[1]); }
+        public final Object _eq        (Object a, Object b) {                 return bool(a == b); }
 
         public final Object _eql       (Object... args) { twoArgs(EQL, args);    return bool(LambdaJ.Subr.eql(args[0], args[1])); }
         public final Object _eql(Object o1, Object o2)  {                        return bool(LambdaJ.Subr.eql(o1, o2)); }
@@ -8487,6 +11449,7 @@ public class LambdaJ {
         public final Object _symbolp   (Object... args) { oneArg(SYMBOLP, args);               return bool(symbolp(args[0])); }
         public final Object _symbolp   (Object    arg)  {                                      return bool(symbolp(arg)); }
         public final Object _null      (Object... args) { oneArg(NULL, args);                  return bool(args[0] == null); }
+        public final Object _null      (Object    arg)  {                                      return bool(arg == null); }
         public final Object _numberp   (Object... args) { oneArg(NUMBERP, args);               return bool(numberp(args[0])); }
         public final Object _numberp   (Object    arg)  {                                      return bool(numberp(arg)); }
         public final Object _floatp    (Object... args) { oneArg(FLOATP, args);                return bool(floatp(args[0])); }
@@ -8494,6 +11457,7 @@ public class LambdaJ {
         public final Object _integerp  (Object... args) { oneArg(INTEGERP, args);              return bool(integerp(args[0])); }
         public final Object _integerp  (Object    arg)  {                                      return bool(integerp(arg)); }
         public final Object _characterp(Object... args) { oneArg(CHARACTERP, args);            return bool(characterp(args[0])); }
+        public final Object _characterp(Object    arg)  {                                      return bool(characterp(arg)); }
         public final Object _randomstatep(Object... args){oneArg(RANDOM_STATE_P, args);        return bool(randomstatep(args[0])); }
 
         public final Object _vectorp   (Object... args) { oneArg(VECTORP, args);               return bool(vectorp(args[0])); }
@@ -8512,6 +11476,7 @@ public class LambdaJ {
         public final Object hashtablep (Object    arg)  {                                      return bool(LambdaJ.hashtablep(arg)); }
 
         public final Object _functionp (Object... args) { oneArg(FUNCTIONP, args);             return bool(LambdaJ.functionp0(args[0])); }
+        public final Object _functionp (Object    arg)  {                                      return bool(LambdaJ.functionp0(arg)); }
 
         public final Object _listp     (Object... args) { oneArg(LISTP, args);                 return bool(listp(args[0])); }
         public final Object _listp     (Object    arg)  {                                      return bool(listp(arg)); }
@@ -8606,7 +11571,9 @@ public class LambdaJ {
             return ret.cdr();
         }
         public final ConsCell _assq    (Object... args) { clrValues(); twoArgs(ASSQ, args); return assq(args[0], args[1]); }
+        public final ConsCell _assq    (Object key, Object alist) { clrValues(); return assq(key, alist); }
         public final ConsCell _assoc   (Object... args) { clrValues(); twoArgs(ASSOC, args); return assoc(args[0], args[1]); }
+        public final ConsCell _assoc   (Object key, Object alist) { clrValues(); return assoc(key, alist); }
 
 
         // numbers, characters
@@ -8642,11 +11609,14 @@ public class LambdaJ {
 
         public final Number   inc      (Object... args) { clrValues(); oneArg("1+", args); return LambdaJ.Subr.inc(args[0]); }
         public final Number   inc      (Object arg)     { clrValues();                     return LambdaJ.Subr.inc(arg); }
+        public final Number   inc      (long arg)       { clrValues();                     return Boxes.box(incFixnum(arg)); }
         public final Number   incinc   (Object arg)     { clrValues();                     return LambdaJ.Subr.incinc(arg); }
         public final Number   dec      (Object... args) { clrValues(); oneArg("1-", args); return LambdaJ.Subr.dec(args[0]); }
         public final Number   dec      (Object arg)     { clrValues();                     return LambdaJ.Subr.dec(arg); }
+        public final Number   dec      (long arg)       { clrValues();                     return Boxes.box(decFixnum(arg)); }
 
         public final Number   _signum  (Object... args) { clrValues(); oneArg("signum", args); return cl_signum (args[0]); }
+        public final Number   _signum  (Object n)       { clrValues(); return cl_signum(n); }
 
         public final long     _round   (Object... args) { varargs1_2("round",     args); return toFixnum(cl_round   (quot12(args))); }
         public final long     _floor   (Object... args) { varargs1_2("floor",     args); return toFixnum(Math.floor (quot12(args))); }
@@ -8664,6 +11634,7 @@ public class LambdaJ {
         private double quot12(Object[] args) { clrValues(); return args.length == 2 ? toDouble(args[0]) / toDouble(args[1]) : toDouble(args[0]); }
 
         public final double   _sqrt    (Object... args) { clrValues(); oneArg("sqrt",          args); return Math.sqrt (toDouble(args[0])); }
+        public final double   _sqrt    (Object n)       { clrValues(); return Math.sqrt(toDouble(n)); }
         public final double   _log     (Object... args) { clrValues(); varargs1_2("log",       args); return args.length == 1 ? Math.log(toDouble(args[0])) : Math.log(toDouble(args[0])) / Math.log(toDouble(args[1])); }
         public final double   _log10   (Object... args) { clrValues(); oneArg("log10",         args); return Math.log10(toDouble(args[0])); }
         public final double   _exp     (Object... args) { clrValues(); oneArg("exp",           args); return Math.exp  (toDouble(args[0])); }
@@ -8699,6 +11670,7 @@ public class LambdaJ {
         public final Object   makeArray2(Object size, Object type) { clrValues(); return LambdaJ.Subr.makeArray(sBit, sCharacter, size, type); }
         public final Object   makeArray3(Object size, Object type, Object cap) { clrValues(); return LambdaJ.Subr.makeArray(sBit, sCharacter, ConsCell.list(size, type, cap)); }
         public final long     vectorLength(Object... args) { clrValues(); oneArg("vector-length", args); return LambdaJ.Subr.vectorLength(args[0]); }
+        public final long     vectorLength(Object v)       { clrValues(); return LambdaJ.Subr.vectorLength(v); }
         public final Object   vectorCopy  (Object... args) { clrValues(); varargs1_2("vector-copy", args);   return LambdaJ.Subr.vectorCopy(args[0], secondArgNotNull(args)); }
         public final Object   vectorFill  (Object... args) { clrValues(); varargsMinMax(VECTOR_FILL, args, 2, 4);
                                                              return LambdaJ.Subr.vectorFill(args[0], args[1], nth(2, args), nth(3, args)); }
@@ -8727,11 +11699,32 @@ public class LambdaJ {
         }
         public final Object   listToVector(Object... args) { clrValues(); varargs1_2("list->vector", args); return LambdaJ.Subr.listToVector(args[0], secondArgNotNull(args)); }
 
+        public final Object   pmap        (Object... args) { clrValues(); twoArgs("pmap", args);    return LambdaJ.Subr.pmap(function(args[0]), workerFunction(args[0]), args[1]); }
+        public final Object   pfilter     (Object... args) { clrValues(); twoArgs("pfilter", args); return LambdaJ.Subr.pfilter(function(args[0]), workerFunction(args[0]), args[1]); }
+        public final Object   preduce     (Object... args) { clrValues(); varargsMinMax("preduce", args, 2, 3);
+                                                             return LambdaJ.Subr.preduce(function(args[0]), workerFunction(args[0]), args[1], args.length == 3, nth(2, args)); }
+
+        private MurmelFunction function(Object fn) {
+            if (fn instanceof CompilerPrimitive) return ((CompilerPrimitive)fn)::applyCompilerPrimitive;
+            if (fn instanceof MurmelLeafFunction) return args -> funcall((MurmelLeafFunction)fn, args);
+            return args -> funcall(fn, args);
+        }
+
+        /** pure compiler primitives may be applied by several threads at once. Compiled functions share this program's globals,
+         *  multiple values and dynamic bindings, they and all other functions are applied in the calling thread. */
+        private Supplier<MurmelFunction> workerFunction(Object fn) {
+            if (fn instanceof ParallelCompilerPrimitive) { final MurmelFunction f = function(fn);  return () -> f; }
+            return null;
+        }
+
         public final long     _svlength   (Object... args) { clrValues(); oneArg("svlength", args); return svlength(args[0]); }
+        public final long     _svlength   (Object v)       { clrValues(); return svlength(v); }
         public final Object   _svref      (Object... args) { twoArgs("svref",   args); return _svref(args[0], args[1]); }
         public final Object   _svref(Object v, Object idx) { clrValues(); return LambdaJ.Subr.svref(v, toArrayIndex(idx)); }
+        public final Object   _svref(Object v, long idx)   { clrValues(); return LambdaJ.Subr.svref(v, toArrayIndex(idx)); }
         public final Object   _svset      (Object... args) { threeArgs("svref", args); return _svset(args[0], args[1], args[2]); }
         public final Object   _svset(Object v, Object idx, Object val) { clrValues(); return LambdaJ.Subr.svset(v, toArrayIndex(idx), val); }
+        public final Object   _svset(Object v, long idx, Object val)   { clrValues(); return LambdaJ.Subr.svset(v, toArrayIndex(idx), val); }
         public final Object   simpleVectorToList (Object... args) {
             clrValues(); oneArg("simple-vector->list", args);
             final Object maybeVector = args[0];
@@ -8747,9 +11740,10 @@ public class LambdaJ {
 
         public final Object    _string (Object... args) { clrValues(); oneArg("string", args); return stringDesignatorToString(args[0]); }
         public final long      _slength(Object... args) { clrValues(); oneArg("slength", args); return slength(args[0]); }
-        public final char      _sref   (Object... args) { clrValues(); twoArgs("sref", args);   return LambdaJ.Subr.sref(args[0], toArrayIndex(args[1])); }
+        public final Character _sref   (Object... args) { clrValues(); twoArgs("sref", args);   return Boxes.box(LambdaJ.Subr.sref(args[0], toArrayIndex(args[1]))); }
         public final char      _sset   (Object... args) { clrValues(); threeArgs("sset", args); return LambdaJ.Subr.sset(args[0], toArrayIndex(args[1]), requireChar(args[2])); }
         public final Object   stringeq (Object... args) { twoArgs("string=", args); return bool(LambdaJ.Subr.stringEq(args[0], args[1])); }
+        public final Object   stringeq (Object a, Object b) { return bool(LambdaJ.Subr.stringEq(a, b)); }
         public final Object   stringToList (Object... args) {
             clrValues(); oneArg("string->list", args);
             final Object maybeString = args[0];
@@ -8757,20 +11751,20 @@ public class LambdaJ {
             if (maybeString instanceof char[]) {
                 final char[] carry = (char[])maybeString;
                 final int len = carry.length;
-                for (int i = 0; i < len; i++) ret.append(carry[i]);
+                for (int i = 0; i < len; i++) ret.append(Boxes.box(carry[i]));
                 return ret.first();
             }
             final CharSequence s = requireCharsequence("string->list", maybeString);
             final int len = s.length();
-            for (int i = 0; i < len; i++) ret.append(s.charAt(i));
+            for (int i = 0; i < len; i++) ret.append(Boxes.box(s.charAt(i)));
             return ret.first();
         }
         public final Object listToString(Object... args) { clrValues(); varargs1_2("list->string", args); return LambdaJ.Subr.listToString(args[0], secondArgNotNull(args)); }
 
-        public final long   charInt     (Object... args) { clrValues(); oneArg("char-code",     args); return (long) LambdaJ.Chk.requireChar("char-code", args[0]); }
-        public final long   charInt     (Object arg)     { clrValues();                                       return (long) LambdaJ.Chk.requireChar("char-code", arg); }
-        public final char   intChar     (Object... args) { clrValues(); oneArg("code-char",     args); return (char) toInt(args[0]); }
-        public final char   intChar     (Object arg)     { clrValues();                                       return (char) toInt(arg); }
+        public final Long      charInt  (Object... args) { clrValues(); oneArg("char-code",     args); return Boxes.box((long) LambdaJ.Chk.requireChar("char-code", args[0])); }
+        public final Long      charInt  (Object arg)     { clrValues();                                       return Boxes.box((long) LambdaJ.Chk.requireChar("char-code", arg)); }
+        public final Character intChar  (Object... args) { clrValues(); oneArg("code-char",     args); return Boxes.box((char) toInt(args[0])); }
+        public final Character intChar  (Object arg)     { clrValues();                                       return Boxes.box((char) toInt(arg)); }
 
         public final long   _bvlength   (Object... args)             { clrValues(); oneArg("bvlength", args);      return bvlength(args[0]); }
         public final long   _bvref      (Object... args)             { twoArgs("bvref", args);        return _bvref(args[0], args[1]); }
@@ -8780,6 +11774,7 @@ public class LambdaJ {
         public final long   _bvset(Object v, Object idx, Object val) { clrValues(); return LambdaJ.Subr.bvset(v, toArrayIndex(idx), toBit(val)); }
         public final long   _bvset(Object v, Object idx, long val)   { clrValues(); return LambdaJ.Subr.bvset(v, toArrayIndex(idx), toBit(val)); }
         public final long   _bvset(Object v, long idx, long val)     { clrValues(); return LambdaJ.Subr.bvset(v, toArrayIndex(idx), toBit(val)); }
+        public final long   _bvset(Object v, long idx, Object val)   { clrValues(); return LambdaJ.Subr.bvset(v, toArrayIndex(idx), toBit(val)); }
         public final Object bvEq        (Object... args)             { twoArgs("bv=", args); return bool(LambdaJ.Subr.bvEq(args[0], args[1])); }
         public final Object bitVectorToList(Object... args) {
             clrValues(); oneArg("bit-vector->list", args);
@@ -8806,6 +11801,8 @@ public class LambdaJ {
         }
 
         public final Object _seqref       (Object... args)      { clrValues(); twoArgs("seqref",   args); return LambdaJ.Subr.seqref(args[0], toArrayIndex(args[1])); }
+        public final Object _seqref       (Object seq, Object idx) { clrValues(); return LambdaJ.Subr.seqref(seq, toArrayIndex(idx)); }
+        public final Object _seqref       (Object seq, long idx)   { clrValues(); return LambdaJ.Subr.seqref(seq, toArrayIndex(idx)); }
         public final Object _seqset       (Object... args)      { clrValues(); threeArgs(SEQSET, args); return LambdaJ.Subr.seqset(args[0], toArrayIndex(args[1]), args[2]); }
 
 
@@ -8815,6 +11812,7 @@ public class LambdaJ {
                                                                   return makeHashTable(symtab, nth(0, args), args.length > 1 ? toNonnegInt(MAKE_HASH_TABLE, args[1]) : DEFAULT_HASH_SIZE); }
 
         public final Object _hashref      (Object... args)      { varargsMinMax("hashref", args, 2, 3);               return retn(hashref(args[0], args[1], args.length > 2 ? args[2] : NO_DEFAULT_VALUE)); }
+        public final Object _hashref      (Object hash, Object key) { return retn(hashref(hash, key, NO_DEFAULT_VALUE)); }
         public final Object _hashset      (Object... args)      { clrValues(); varargsMinMax("hashset", args, 2, 3);  return hashset(arraySlice(args)); }
         public final Object hashTableCount(Object... args)      { clrValues(); oneArg("hash-table-count", args);      return LambdaJ.Subr.hashTableCount(args[0]); }
         public final Object _clrhash      (Object... args)      { clrValues(); oneArg("clrhash", args);               return LambdaJ.Subr.clrhash(args[0]); }
@@ -8913,6 +11911,60 @@ public class LambdaJ {
         public final Object getDecodedTime     (Object... args) { clrValues(); noArgs("get-decoded-time",       args); return LambdaJ.Subr.getDecodedTime(new ListBuilder(), this::bool); }
 
 
+        // profiler
+        /** the profiler started by {@code profile-start} or by the commandline flag {@code --profile} */
+        Profiler profiler;
+
+        public final Object profileStart(Object... args) {
+            clrValues(); varargs0_1("profile-start", args);
+            if (profiler != null) return null;
+            profiler = Profiler.start(Thread.currentThread(), null, this, LambdaJ.Subr.profileInterval(nth(0, args)));
+            return _t;
+        }
+
+        public final Object profileStop(Object... args) {
+            clrValues(); varargs0_1("profile-stop", args);
+            final Profiler ret = profiler;
+            profiler = null;
+            if (ret != null) ret.stop();
+            return LambdaJ.Subr.profileResult(ret, nth(0, args));
+        }
+
+
+        // call statistics
+        /** the call statistics started by {@code call-stats-start}, {@link #startCallStats} or by the commandline flag {@code --call-stats} */
+        CallStats callStats;
+
+        /** embed API: start recording the calls of functions that were compiled with {@link MurmelJavaCompiler#setInstrumentCalls},
+         *  return the new call statistics or null if call statistics are already recorded */
+        public final CallStats startCallStats() {
+            if (callStats != null) return null;
+            return callStats = new CallStats(null);
+        }
+
+        /** embed API: stop recording call statistics, return them or null if none were recorded */
+        public final CallStats stopCallStats() {
+            final CallStats ret = callStats;
+            callStats = null;
+            return ret;
+        }
+
+        public final Object callStatsStart(Object... args) { clrValues(); noArgs("call-stats-start", args); return bool(startCallStats() != null); }
+        public final Object callStatsStop (Object... args) { clrValues(); varargs0_1("call-stats-stop", args); return LambdaJ.Subr.callStatsResult(stopCallStats(), symtab, nth(0, args)); }
+
+        /** used by instrumented code: record the start of an invocation of the function {@code label}, return the argument for {@link #callExit} */
+        public final int callEnter(String label) {
+            final CallStats cs = callStats;
+            return cs != null ? cs.enter(label) : -1;
+        }
+
+        /** used by instrumented code: record the end of the invocation that was started by {@link #callEnter} */
+        public final void callExit(int depth) {
+            final CallStats cs = callStats;
+            if (cs != null && depth >= 0) cs.exitTo(depth);
+        }
+
+
         // Java FFI
         public final Object _jmethod   (Object... args) {
             clrValues(); varargs2(JMETHOD, args);
@@ -9049,6 +12101,13 @@ public class LambdaJ {
             throw errorNotABit(l);
         }
 
+        /** true if {@code n} is a Long that converts to a double without loss of precision, used by compiled comparisons */
+        public static boolean isExactLong(Object n) {
+            if (!(n instanceof Long)) return false;
+            final long l = (Long)n;
+            return l >= MOST_NEGATIVE_FIXNUM_VAL && l <= MOST_POSITIVE_FIXNUM_VAL;
+        }
+
         public static double toDouble(Object n) {
             // the redundant checks are faster than instanceof Number and will succeed most of the time
             if (n instanceof Long)    return ((Long)n).doubleValue();
@@ -9074,6 +12133,51 @@ public class LambdaJ {
         public static long  toLong(Long n) { if (n != null) return n;  throw errorNotANumber(null); }
         public static long  toLong(long n) { return n; }
 
+        /// used by generated code for variables that were declared as double-float or fixnum
+        public static double requireDouble(Object o) {
+            if (o instanceof Double) return (Double)o;
+            throw new SimpleTypeError("not a " + DOUBLE_FLOAT + ": %s", printSEx(o));
+        }
+        public static double requireDouble(double d) { return d; }
+        public static double requireDouble(long l)   { return requireDouble((Object)l); }
+
+        /** used by generated code for a {@code declare} form that is used as a value, the arguments are the checks of the declared variables */
+        public static Object declared(Object... checks) { return null; }
+
+        /** a variable that was declared as fixnum accepts integral numbers in the fixnum range, e.g. the result of {@code (+ i 1)}
+         *  which is a double-float, see also {@link LambdaJ#evalDeclare} */
+        public static long requireFixnum(Object o) {
+            if (o instanceof Long) return requireFixnum((long)(Long)o);
+            if (o instanceof Integer || o instanceof Short || o instanceof Byte) return ((Number)o).longValue();
+            if (o instanceof Double) return requireFixnum((double)(Double)o);
+            throw new SimpleTypeError("not a " + FIXNUM + ": %s", printSEx(o));
+        }
+        public static long requireFixnum(long l) {
+            if (l >= MOST_NEGATIVE_FIXNUM_VAL && l <= MOST_POSITIVE_FIXNUM_VAL) return l;
+            throw new SimpleTypeError("not a " + FIXNUM + ": %s", l);
+        }
+        public static long requireFixnum(double d) {
+            if (d >= MOST_NEGATIVE_FIXNUM_VAL && d <= MOST_POSITIVE_FIXNUM_VAL && d == Math.rint(d)) return (long)d;
+            throw new SimpleTypeError("not a " + FIXNUM + ": %s", printSEx(d));
+        }
+
+        /** used for {@code (* a b)} with fixnum arguments whose result is stored in a fixnum variable */
+        public static long mulFixnum(long a, long b) {
+            // if the approximate product is below 2^54 then the product of the fixnums a and b can't overflow a long
+            final double d = (double)a * (double)b;
+            if (Math.abs(d) < 2.0 * MOST_POSITIVE_FIXNUM_VAL) return requireFixnum(a * b);
+            throw new SimpleTypeError("not a " + FIXNUM + ": %s", printSEx(d));
+        }
+
+        public static long incFixnum(long l) {
+            if (l == MOST_POSITIVE_FIXNUM_VAL) errorNotAFixnum("1+: overflow, integer result does not fit in a fixnum");
+            return l + 1;
+        }
+        public static long decFixnum(long l) {
+            if (l == MOST_NEGATIVE_FIXNUM_VAL) errorNotAFixnum("1-: underflow, integer result does not fit in a fixnum");
+            return l - 1;
+        }
+
         public static int   toInt(Object n)       { return requireIntegralNumber("toInt", n, Integer.MIN_VALUE, Integer.MAX_VALUE).intValue(); }
         public static float toFloat(Object o) {
             final Number n = LambdaJ.Chk.requireNumber("toFloat", o);
@@ -9111,6 +12215,10 @@ public class LambdaJ {
             if (!consp(lst)) errorNotACons(lst);
             return (ConsCell)lst;
         }
+        public static ConsCell requireCons(ConsCell lst) {
+            if (lst == null) errorNotACons(null);
+            return lst;
+        }
 
         /** used by JFFI and generated inline JFFI */
         public static Character requireChar(Object o) {
@@ -9258,20 +12366,22 @@ public class LambdaJ {
 
         /** TCO trampoline, used for function calls, and also for let, labels, progn */
         public final Object funcall(@NotNull MurmelFunction fn, Object... args) {
+            return trampoline(tailcall().set(fn, null, args));
+        }
+
+        /** invoke {@code call} and keep invoking as long as the result is a tailcall. All tailcalls share one Tailcall object,
+         *  and calls to fixed arity functions pass their arguments in that object, so that a loop of tailcalls doesn't allocate */
+        private Object trampoline(Tailcall call) {
             ConsCell cleanups = null;
-            try {
-                while (true) {
-                    final Object r = fn.apply(args);
-                    if (r instanceof Tailcall) {
-                        final Tailcall functionCall = (Tailcall)r;
-                        if (functionCall.cleanup != null) cleanups = ConsCell.cons(functionCall.cleanup, cleanups);
-                        if (Thread.interrupted()) throw new InterruptedException("got interrupted");
-                        fn = functionCall.fn;
-                        args = functionCall.args;
-                        continue;
-                    }
-                    return r;
-                }
+            try {
+                Object r = call;
+                do {
+                    final Tailcall functionCall = (Tailcall)r;
+                    if (functionCall.cleanup != null) cleanups = ConsCell.cons(functionCall.cleanup, cleanups);
+                    if (Thread.interrupted()) throw new InterruptedException("got interrupted");
+                    r = functionCall.call();
+                } while (r instanceof Tailcall);
+                return r;
             }
             catch (ReturnException re) { throw re; }
             catch (Exception e) {
@@ -9294,6 +12404,32 @@ public class LambdaJ {
             if (ex != null) throw ex;
         }
 
+        /// fixed arity versions of funcall(Object, Object...), these use the arity specific entry point if fn has one
+        public final Object funcall(Object fn) {
+            if (fn instanceof MurmelFunction0) return trampoline(tailcall().set((MurmelFunction)fn, 0, null, null, null, null));
+            return funcall(fn, NOARGS);
+        }
+
+        public final Object funcall(Object fn, Object arg1) {
+            if (fn instanceof MurmelFunction1) return trampoline(tailcall().set((MurmelFunction)fn, 1, arg1, null, null, null));
+            return funcall(fn, new Object[] { arg1 });
+        }
+
+        public final Object funcall(Object fn, Object arg1, Object arg2) {
+            if (fn instanceof MurmelFunction2) return trampoline(tailcall().set((MurmelFunction)fn, 2, arg1, arg2, null, null));
+            return funcall(fn, new Object[] { arg1, arg2 });
+        }
+
+        public final Object funcall(Object fn, Object arg1, Object arg2, Object arg3) {
+            if (fn instanceof MurmelFunction3) return trampoline(tailcall().set((MurmelFunction)fn, 3, arg1, arg2, arg3, null));
+            return funcall(fn, new Object[] { arg1, arg2, arg3 });
+        }
+
+        public final Object funcall(Object fn, Object arg1, Object arg2, Object arg3, Object arg4) {
+            if (fn instanceof MurmelFunction4) return trampoline(tailcall().set((MurmelFunction)fn, 4, arg1, arg2, arg3, arg4));
+            return funcall(fn, new Object[] { arg1, arg2, arg3, arg4 });
+        }
+
         public final Object funcall(Object fn, Object... args) {
             if (fn instanceof MurmelLeafFunction)  return funcall((MurmelLeafFunction)fn, args);
             if (fn instanceof MurmelFunction)      return funcall((MurmelFunction)fn, args);
@@ -9324,10 +12460,49 @@ public class LambdaJ {
         private static final class Tailcall {
             MurmelFunction fn;
             MurmelFunction cleanup;
+            /** number of arguments in arg1..arg4 for a call to an arity specific entry point, or -1 if the arguments are in args */
+            int nArgs;
             Object[] args;
+            Object arg1, arg2, arg3, arg4;
+
+            Tailcall set(MurmelFunction fn, MurmelFunction cleanup, Object[] args) {
+                this.fn = fn;  this.cleanup = cleanup;  nArgs = -1;  this.args = args;
+                return this;
+            }
+
+            Tailcall set(MurmelFunction fn, int nArgs, Object arg1, Object arg2, Object arg3, Object arg4) {
+                this.fn = fn;  cleanup = null;  this.nArgs = nArgs;
+                this.arg1 = arg1;  this.arg2 = arg2;  this.arg3 = arg3;  this.arg4 = arg4;
+                return this;
+            }
+
+            /** the callee may reuse this object for its own tailcall, the arguments are read before it is invoked */
+            Object call() throws Exception {
+                switch (nArgs) {
+                case 0:  return ((MurmelFunction0)fn).apply0();
+                case 1:  return ((MurmelFunction1)fn).apply1(arg1);
+                case 2:  return ((MurmelFunction2)fn).apply2(arg1, arg2);
+                case 3:  return ((MurmelFunction3)fn).apply3(arg1, arg2, arg3);
+                case 4:  return ((MurmelFunction4)fn).apply4(arg1, arg2, arg3, arg4);
+                default: return fn.apply(args);
+                }
+            }
         }
 
         private final Tailcall tailcall = new Tailcall();
+        /** the thread that uses {@link #tailcall}, see {@link #tailcall()} */
+        private final java.util.concurrent.atomic.AtomicReference<Thread> tailcallOwner = new java.util.concurrent.atomic.AtomicReference<>();
+        private final ThreadLocal<Tailcall> threadTailcall = ThreadLocal.withInitial(Tailcall::new);
+
+        /** return the Tailcall object of the current thread: the first thread that calls a function uses {@link #tailcall}
+         *  until it terminates, other threads use their own Tailcall object */
+        private Tailcall tailcall() {
+            final Thread current = Thread.currentThread(), owner = tailcallOwner.get();
+            if (owner == current) return tailcall;
+            if ((owner == null || !owner.isAlive()) && tailcallOwner.compareAndSet(owner, current)) return tailcall;
+            return threadTailcall.get();
+        }
+
         /** used for function calls */
         public final Tailcall tailcall(MurmelFunction fn, Object... args) { return tailcallWithCleanup(fn, null, args); }
 
@@ -9347,11 +12522,38 @@ public class LambdaJ {
         }
 
         public final Tailcall tailcallWithCleanup(MurmelFunction fn, MurmelFunction cleanup, Object... args) {
-            final Tailcall tailcall = this.tailcall;
-            tailcall.fn = fn;
-            tailcall.cleanup = cleanup;
-            tailcall.args = args;
-            return tailcall;
+            return tailcall().set(fn, cleanup, args);
+        }
+
+        /// fixed arity versions of tailcall(Object, Object...), these don't allocate an argument array if fn has an arity specific entry point
+        public final Object tailcall(Object fn) {
+            if (fn instanceof MurmelLeafFunction) return funcall(fn);
+            if (fn instanceof MurmelFunction0) return tailcall().set((MurmelFunction)fn, 0, null, null, null, null);
+            return tailcall(fn, NOARGS);
+        }
+
+        public final Object tailcall(Object fn, Object arg1) {
+            if (fn instanceof MurmelLeafFunction) return funcall(fn, arg1);
+            if (fn instanceof MurmelFunction1) return tailcall().set((MurmelFunction)fn, 1, arg1, null, null, null);
+            return tailcall(fn, new Object[] { arg1 });
+        }
+
+        public final Object tailcall(Object fn, Object arg1, Object arg2) {
+            if (fn instanceof MurmelLeafFunction) return funcall(fn, arg1, arg2);
+            if (fn instanceof MurmelFunction2) return tailcall().set((MurmelFunction)fn, 2, arg1, arg2, null, null);
+            return tailcall(fn, new Object[] { arg1, arg2 });
+        }
+
+        public final Object tailcall(Object fn, Object arg1, Object arg2, Object arg3) {
+            if (fn instanceof MurmelLeafFunction) return funcall(fn, arg1, arg2, arg3);
+            if (fn instanceof MurmelFunction3) return tailcall().set((MurmelFunction)fn, 3, arg1, arg2, arg3, null);
+            return tailcall(fn, new Object[] { arg1, arg2, arg3 });
+        }
+
+        public final Object tailcall(Object fn, Object arg1, Object arg2, Object arg3, Object arg4) {
+            if (fn instanceof MurmelLeafFunction) return funcall(fn, arg1, arg2, arg3, arg4);
+            if (fn instanceof MurmelFunction4) return tailcall().set((MurmelFunction)fn, 4, arg1, arg2, arg3, arg4);
+            return tailcall(fn, new Object[] { arg1, arg2, arg3, arg4 });
         }
 
         public final Object tailcall(Object fn, Object... args) { return tailcallWithCleanup(fn, null, args); }
@@ -9659,6 +12861,9 @@ public class LambdaJ {
             case "vector-remove": return (CompilerPrimitive)this::vectorRemove;
             case "vector->list": return (CompilerPrimitive)this::vectorToList;
             case "list->vector": return (CompilerPrimitive)this::listToVector;
+            case "pmap": return (CompilerPrimitive)this::pmap;
+            case "pfilter": return (CompilerPrimitive)this::pfilter;
+            case "preduce": return (CompilerPrimitive)this::preduce;
 
             case "svlength": return (CompilerPrimitive)this::_svlength;
             case "svref": return (CompilerPrimitive)this::_svref;
@@ -9734,6 +12939,11 @@ public class LambdaJ {
             case "get-universal-time": return (CompilerPrimitive)this::getUniversalTime;
             case "get-decoded-time": return (CompilerPrimitive)this::getDecodedTime;
 
+            case "profile-start": return (CompilerPrimitive)this::profileStart;
+            case "profile-stop": return (CompilerPrimitive)this::profileStop;
+            case "call-stats-start": return (CompilerPrimitive)this::callStatsStart;
+            case "call-stats-stop": return (CompilerPrimitive)this::callStatsStop;
+
             // Java FFI
             case JMETHOD: return (CompilerPrimitive)this::_jmethod;
             case "jproxy": return (CompilerPrimitive)this::_jproxy;
@@ -9792,7 +13002,18 @@ public class LambdaJ {
 
         private final LambdaJSymbol sQuote, sDefine, sApply, sEval, sLambda, sList, sCar, sCdr, sJmethod, sValues;
 
+        /** Create a compiler that can compile Murmel to Java source and to in-memory classes */
+        public MurmelJavaCompiler(SymbolTable st, Path libDir) {
+            this(st, libDir, true);
+        }
+
+        /** Create a compiler that can compile Murmel to Java source, and if {@code outPath} is non-null to in-memory classes as well.
+         *  {@code outPath} is no longer used for compiled classes, the parameter is kept for compatibility. */
         public MurmelJavaCompiler(SymbolTable st, Path libDir, Path outPath) {
+            this(st, libDir, outPath != null);
+        }
+
+        private MurmelJavaCompiler(SymbolTable st, Path libDir, boolean toClass) {
             final LambdaJ intp = new LambdaJ(Features.HAVE_ALL_LEXC.bits(), TraceLevel.TRC_NONE, null, st, null, null, null, libDir);
             intp.init(NULL_READCHARS, System.out::print, null);
             this.intp = intp;
@@ -9808,13 +13029,17 @@ public class LambdaJ {
             sJmethod = intern(JMETHOD);
             sValues = intern(VALUES);
 
-            this.javaCompiler = outPath == null ? null : new JavaCompilerHelper(outPath);
+            this.javaCompiler = toClass ? new JavaCompilerHelper() : null;
 
             primitivesBySymbol = makePrimitivesBySymbol();
         }
 
         public @NotNull SymbolTable getSymbolTable() { return intp.getSymbolTable(); }
 
+        private final List<Path> loadedFiles = new ArrayList<>();
+        /** files that were read by {@code load} or {@code require} forms during compilation */
+        List<Path> getLoadedFiles() { return loadedFiles; }
+
         private void note(String msg) { System.err.println("; Note - " + (containingForm == null ? "" : containingForm.lineInfo()) + msg); }
         private void noteDead(Object form) { note("removing dead code " + (form == null ? "" : printSEx(form, true))); }
 
@@ -9863,7 +13088,8 @@ public class LambdaJ {
         }
 
         private static @NotNull ConsCell extenvprim(LambdaJSymbol sym, String javaName, ConsCell env) {
-            return extenvIntern(sym, "((CompilerPrimitive)rt()::" + javaName + ')', env);
+            final String type = PARALLEL_PRIMITIVES.contains(sym.wellknownSymbol) ? "ParallelCompilerPrimitive" : "CompilerPrimitive";
+            return extenvIntern(sym, "((" + type + ")rt()::" + javaName + ')', env);
         }
 
 
@@ -9906,88 +13132,947 @@ public class LambdaJ {
             if (symentry == null) errorMalformedFmt(func, "undefined symbol %s", sym.toString());
         }
 
-        private static void notAPrimitive(String func, Object symbol, String javaName) {
-            if (javaName.startsWith("((CompilerPrimitive")) errorNotImplemented("%s: assigning primitives is not implemented: %s", func, symbol.toString());
-        }
+        private static void notAPrimitive(String func, Object symbol, String javaName) {
+            if (javaName.startsWith("((CompilerPrimitive")) errorNotImplemented("%s: assigning primitives is not implemented: %s", func, symbol.toString());
+        }
+
+
+
+        /// Environment for compiled Murmel
+        private static final String[] globalvars = {NIL, T, PI};
+        private static final String[][] aliasedGlobals = {
+        { MOST_POSITIVE_FIXNUM, "mostPositiveFixnum" }, { MOST_NEGATIVE_FIXNUM, "mostNegativeFixnum" }, { ARRAY_DIMENSION_LIMIT, "arrayDimensionLimit" },
+        { INTERNAL_TIME_UNITS_PER_SECOND, "itups" },
+        { COMMAND_LINE_ARGUMENT_LIST, "commandlineArgumentList.get()" },
+        { FEATURES, "features.get()" }, { CONDITION_HANDLER, "conditionHandler.get()" }, { RANDOM_STATE, "randomState.get()" },
+        };
+
+        private static final String primitives =
+        CAR + "\n" +CDR + "\n" +CONS + "\n" +RPLACA + "\n" +RPLACD + "\n"
+        + /*"apply",*/ EVAL + "\n" +EQ + "\n" +EQL + "\n" +EQUAL + "\n" +NULL + "\n" +"read" + "\n" +"write" + "\n" +"writeln" + "\n" +"lnwrite" + "\n"
+        + ATOM + "\n" +CONSP + "\n" +FUNCTIONP + "\n" +LISTP + "\n" +SYMBOLP + "\n" +NUMBERP + "\n" +STRINGP + "\n" +CHARACTERP + "\n" +INTEGERP + "\n" +FLOATP + "\n" +VECTORP + "\n" +TYPEP + "\n"
+        + ASSOC + "\n" +ASSQ + "\n" +LIST + "\n" +VECT + "\n" +VECTOR + "\n" +"seqref" + "\n" + SEQSET + "\n" +"svref" + "\n" +"svset" + "\n" +"svlength" + "\n" +"string" + "\n" +"slength" + "\n" +"sref" + "\n" +"sset" + "\n" +"bvref" + "\n" +"bvset" + "\n" +"bvlength" + "\n"
+        + APPEND + "\n" +VALUES + "\n"
+        + "round" + "\n" +"floor" + "\n" +"ceiling" + "\n" +"truncate" + "\n"
+        + "fround" + "\n" +"ffloor" + "\n" +"fceiling" + "\n" +"ftruncate" + "\n"
+        + "sqrt" + "\n" +"log" + "\n" +"log10" + "\n" +"exp" + "\n" +"expt" + "\n" +"mod" + "\n" +"rem" + "\n" +"signum" + "\n" +"random" + "\n" + "tabulate" + "\n"
+        + "gensym" + "\n" +"trace" + "\n" +"untrace" + "\n"
+        + JERROR + "\n" +JMETHOD + "\n" +"jproxy";
+
+        private static final String aliasedPrimitives =
+        "+@add" + "\n" + "*@mul" + "\n" + "-@sub" + "\n" + "/@quot" + "\n"
+        + "=@numbereq" + "\n" + "<=@le" + "\n" + "<@lt" + "\n" + ">=@ge" + "\n" + ">@gt" + "\n" + "/=@ne" + "\n"
+        + "1+@inc" + "\n" + "1-@dec" + "\n"
+        + "read-from-string@readFromStr" + "\n" + "read-textfile-lines@readTextfileLines" + "\n" + "read-textfile@readTextfile" + "\n"
+        + "fresh-line@freshLine" + "\n" + "make-string-writer@makeStringWriter" + "\n"
+        + "write-textfile-lines@writeTextfileLines" + "\n" + "write-textfile@writeTextfile" + "\n" + "write-to-string@writeToString" + "\n" + "jformat@jformat" + "\n" + "jformat-locale@jformatLocale" + "\n" + "char-code@charInt" + "\n" + "code-char@intChar" + "\n"
+        + "string=@stringeq" + "\n" + "string->list@stringToList" + "\n" + "list->string@listToString" + "\n"
+        + ADJUSTABLE_ARRAY_P+"@adjustableArrayP" + "\n" + "vector-add@vectorAdd" + "\n" + "vector-remove@vectorRemove" + "\n"
+        + "vector->list@vectorToList" + "\n" + "list->vector@listToVector" + "\n" + "simple-vector->list@simpleVectorToList" + "\n" + "list->simple-vector@listToSimpleVector" + "\n"
+        + "bit-vector->list@bitVectorToList" + "\n" + "list->bit-vector@listToBitVector" + "\n"
+        + "pmap@pmap" + "\n" + "pfilter@pfilter" + "\n" + "preduce@preduce" + "\n"
+        + "vector-length@vectorLength" + "\n" + "vector-copy@vectorCopy" + "\n" + VECTOR_FILL+"@vectorFill" + "\n"
+        + SIMPLE_VECTOR_P+"@svectorp" + "\n" + SIMPLE_STRING_P+"@sstringp" + "\n" + RANDOM_STATE_P+"@_randomstatep" + "\n" + "make-random-state@makeRandomState" + "\n"
+        + BIT_VECTOR_P+"@bitvectorp" + "\n" + "bv=@bvEq" + "\n" + SIMPLE_BIT_VECTOR_P+"@sbitvectorp" + "\n" + HASH_TABLE_P+"@hashtablep" + "\n" + MAKE_ARRAY+"@makeArray" + "\n"
+        + HASH+"@_hash" + "\n" + MAKE_HASH_TABLE+"@makeHash" + "\n" + "hashref@_hashref" + "\n" + "hashset@_hashset" + "\n"
+        + "hash-table-count@hashTableCount" + "\n" + "clrhash@_clrhash" + "\n" + "hash-table-remove@hashRemove" + "\n" + "sxhash@_sxhash" + "\n" + "scan-hash-table@scanHash" + "\n"
+
+        + LISTSTAR+"@listStar" + "\n"
+        //+ "macroexpand-1@macroexpand1" + "\n"
+        + "lisp-implementation-type@implType" + "\n" + "lisp-implementation-version@implVersion" + "\n"
+        + "get-internal-real-time@getInternalRealTime" + "\n" + "get-internal-run-time@getInternalRunTime" + "\n"
+        + "sleep@sleep" + "\n" + "get-universal-time@getUniversalTime" + "\n" + "get-decoded-time@getDecodedTime" + "\n"
+        + "profile-start@profileStart" + "\n" + "profile-stop@profileStop" + "\n"
+        + "call-stats-start@callStatsStart" + "\n" + "call-stats-stop@callStatsStop" + "\n"
+
+        + "make-frame@makeFrame" + "\n" + "open-frame@openFrame" + "\n" + "close-frame@closeFrame" + "\n"
+        + "reset-frame@resetFrame" + "\n" + "clear-frame@clearFrame" + "\n" + "repaint-frame@repaintFrame" + "\n" + "flush-frame@flushFrame" + "\n"
+        + "current-frame@currentFrame" + "\n"
+        + "push-pos@pushPos" + "\n" + "pop-pos@popPos" + "\n" + "pen-up@penUp" + "\n" + "pen-down@penDown" + "\n"
+        + "color@color" + "\n" + "bgcolor@bgColor" + "\n" + "text@text" + "\n"
+        + "right@right" + "\n" + "left@left" + "\n" + "forward@forward" + "\n"
+        + "move-to@moveTo" + "\n" + "line-to@lineTo" + "\n" + "move-rel@moveRel" + "\n" + "line-rel@lineRel" + "\n"
+        + "make-bitmap@makeBitmap" + "\n" + "discard-bitmap@discardBitmap" + "\n"
+        + "set-pixel@setPixel" + "\n"
+        + "rgb-to-pixel@rgbToPixel" + "\n" + "hsb-to-pixel@hsbToPixel";
+
+        /** maps symbol -> javaNameAsString */
+        private final @NotNull Map<LambdaJSymbol, String> primitivesBySymbol;
+
+        private Map<LambdaJSymbol, String>  makePrimitivesBySymbol() {
+            final String[] primitives = MurmelJavaCompiler.primitives.split("\n");
+            final String[][] aliasedPrimitives = Arrays.stream(MurmelJavaCompiler.aliasedPrimitives.split("\n"))
+                                                                   .map(s -> s.split("@"))
+                                                                   .collect(Collectors.toList())
+                                                       .toArray(new String[0][2]);
+
+            final Map<LambdaJSymbol, String> map = new IdentityHashMap<>(JavaUtil.hashMapCapacity(primitives.length + aliasedPrimitives.length));
+
+            for (String prim: primitives) map.put(intern(prim), mangle(prim, 0));
+            for (String[] alias:  aliasedPrimitives) map.put(intern(alias[0]), alias[1]);
+
+            return map;
+        }
+
+        private ConsCell customEnvironment;
+        /** {@code customEnvironment} must be an alist (symbol . CompilerPrimitive) or (symbol . Primitive) */
+        public void setCustomEnvironment(ConsCell customEnvironment) { this.customEnvironment = customEnvironment; }
+
+
+
+        /// Bytecode backend: compile a subset of Murmel directly to JVM bytecode without using javac
+
+        public enum Backend { JAVAC, BYTECODE }
+
+        private Backend backend = Backend.JAVAC;
+
+        /** Select whether {@link #formsToJavaClass} generates Java source and compiles it with javac, or generates JVM bytecode directly.
+         *  The bytecode backend supports toplevel define and defun, quote, if, cond, progn, let, let*, setq and calls to functions and primitives.
+         *  Compilation units that contain other forms are compiled by javac. */
+        public void setBackend(Backend backend) { this.backend = backend; }
+
+        private boolean instrumentCalls;
+
+        /** If {@code instrumentCalls} is true then functions that are defined by defun, define, labels or named let will record their calls
+         *  in the program's {@link CallStats} while call statistics are recorded. Instrumented programs are always compiled by javac. */
+        public void setInstrumentCalls(boolean instrumentCalls) { this.instrumentCalls = instrumentCalls; }
+
+        /** Base class for programs that were compiled by the bytecode backend */
+        public abstract static class BytecodeProgram extends MurmelJavaProgram {
+            private final String[] globalNames;
+            public final CompilerGlobal[] globals;
+            /** Murmel function names by method name, used by {@link Profiler} */
+            final Map<String, String> methodNames = new java.util.concurrent.ConcurrentHashMap<>();
+
+            protected BytecodeProgram(String[] globalNames) {
+                this.globalNames = globalNames;
+                globals = new CompilerGlobal[globalNames.length];
+                Arrays.fill(globals, UNASSIGNED_GLOBAL);
+            }
+
+            public final void defineGlobal(int global, Object value) {
+                if (globals[global] == UNASSIGNED_GLOBAL) globals[global] = new CompilerGlobal(value);
+                else globals[global].set(value);
+            }
+
+            public final Object setGlobal(int global, Object value) {
+                if (globals[global] == UNASSIGNED_GLOBAL) throw new UnboundVariable("%s: '%s' is not bound", SETQ, globalNames[global]);
+                return globals[global].set(value);
+            }
+
+            /** return a function object that invokes the public method {@code method} which takes {@code arity} Object arguments */
+            public final MurmelFunction function(String method, String name, int arity, boolean leaf) {
+                final MethodHandle mh;
+                try { mh = MethodHandles.publicLookup().findVirtual(getClass(), method, MethodType.genericMethodType(arity)).bindTo(this).asSpreader(Object[].class, arity); }
+                catch (ReflectiveOperationException e) { throw new LambdaJError(e, "cannot create function " + name); }
+                methodNames.put(method, name);
+                return leaf ? new BytecodeLeafFunction(name, arity, mh) : new BytecodeFunction(name, arity, mh);
+            }
+
+            @Override public Object getValue(String symbol) {
+                for (int i = 0; i < globalNames.length; i++) if (globalNames[i].equals(symbol)) return globals[i].get();
+                return super.getValue(symbol);
+            }
+
+            private static class BytecodeFunction implements MurmelFunction {
+                private final String name;
+                private final int arity;
+                private final MethodHandle mh;
+
+                BytecodeFunction(String name, int arity, MethodHandle mh) { this.name = name; this.arity = arity; this.mh = mh; }
+
+                @Override public Object apply(Object... args) throws Exception {
+                    argCheck(name, arity, args);
+                    try { return (Object)mh.invokeExact(args); }
+                    catch (Exception | Error e) { throw e; }
+                    catch (Throwable t) { throw new LambdaJError(t); }
+                }
+            }
+
+            private static final class BytecodeLeafFunction extends BytecodeFunction implements MurmelLeafFunction {
+                BytecodeLeafFunction(String name, int arity, MethodHandle mh) { super(name, arity, mh); }
+            }
+        }
+
+        /** thrown by the bytecode backend if a form is not supported */
+        private static final class UnsupportedForm extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+
+            UnsupportedForm(String msg) { super(msg, null, false, false); }
+        }
+
+        private static final class Defun {
+            final String name, method;
+            final int global, arity;
+            final ConsCell params, body;
+            boolean leaf = true;
+
+            Defun(String name, int global, int index, ConsCell params, ConsCell body) {
+                this.name = name; this.global = global; this.params = params; this.body = body;
+                this.arity = listLength(params);
+                this.method = "f" + index;
+            }
+        }
+
+        /** Generates a subclass of {@link BytecodeProgram} */
+        private static final class BytecodeBackend {
+            private static final String RT = "io/github/jmurmel/LambdaJ$MurmelJavaProgram", BOXES = "io/github/jmurmel/LambdaJ$Boxes", BASE = "io/github/jmurmel/LambdaJ$MurmelJavaCompiler$BytecodeProgram",
+                                        GLOBAL = RT + "$CompilerGlobal", FUNCTION = "io/github/jmurmel/LambdaJ$MurmelFunction", SYMBOL = "io/github/jmurmel/LambdaJ$LambdaJSymbol",
+                                        OBJ = "Ljava/lang/Object;", OBJS = "[Ljava/lang/Object;";
+
+            private final MurmelJavaCompiler c;
+            private final String className;
+            private final ClassFileWriter cw;
+
+            private final Map<Object, Integer> globals = new IdentityHashMap<>();
+            private final List<String> globalNames = new ArrayList<>();
+            private final Map<Object, Defun> defuns = new IdentityHashMap<>();
+            private final List<Defun> defunList = new ArrayList<>();
+            private final List<Object> constants = new ArrayList<>();
+            /** defines whose value form may have side effects and all defines and defuns following them, evaluated in order
+             *  only after the whole program was compiled so that nothing is evaluated twice if the program is handed to javac instead */
+            private final List<ConsCell> deferred = new ArrayList<>();
+
+            /** per method state */
+            private ClassFileWriter.Method m;
+            private Defun fn;
+            private ClassFileWriter.Label fnStart;
+            private boolean directSelfCalls, usedDirectSelfCall, usedTailcall;
+            private final List<Object> envSyms = new ArrayList<>();
+            private final List<Integer> envSlots = new ArrayList<>();
+
+            BytecodeBackend(MurmelJavaCompiler c, String unitName) {
+                this.c = c;
+                this.className = unitName.replace('.', '/');
+                cw = new ClassFileWriter(className, BASE);
+            }
+
+            byte[] compile(List<Object> forms) {
+                final LambdaJ intp = c.intp;
+                final List<Object> bodyForms = new ArrayList<>();
+                for (Object form: forms) toplevel(expand(form), bodyForms);
+
+                for (Defun defun: defunList) {
+                    cw.field(ClassFileWriter.ACC_PUBLIC, defun.method, "L" + FUNCTION + ';');
+                    emitDefun(defun, true);
+                    if (!defun.leaf && usedDirectSelfCall) emitDefun(defun, false);
+                    cw.method(m);
+                }
+                emitRunbody(bodyForms);
+                emitConstructor();
+                emitMain();
+                return cw.toByteArray();
+            }
+
+            /** evaluate the forms that were deferred by {@link #toplevel}, called after the program was successfully compiled */
+            void evalDeferred() {
+                for (ConsCell define: deferred) c.intp.eval(define, null);
+            }
+
+            /** macroexpand a toplevel form. Macros may depend on deferred forms, so a macro call after a deferred form
+             *  hands the program to javac whose compiletime evaluation isn't deferred. */
+            private Object expand(Object form) {
+                final int expansions = c.macroEnv.expansions;
+                try {
+                    final Object ret = c.intp.expandForm(form, c.macroEnv);
+                    if (deferred.isEmpty() || c.macroEnv.expansions == expansions) return ret;
+                }
+                catch (LambdaJError e) {
+                    if (deferred.isEmpty() || c.macroEnv.expansions == expansions) throw e;
+                }
+                throw new UnsupportedForm("macro call after define of " + cadr(deferred.get(0)));
+            }
+
+            private void toplevel(Object form, List<Object> bodyForms) {
+                final LambdaJ intp = c.intp;
+                if (consp(form) && car(form) instanceof LambdaJSymbol) {
+                    final ConsCell ccForm = (ConsCell)form;
+                    final LambdaJSymbol op = (LambdaJSymbol)car(ccForm);
+                    switch (op.wellknownSymbol) {
+                    case sDefmacro:
+                        intp.eval(ccForm, null);
+                        return;
+                    case sDeclaim:
+                        intp.eval(ccForm, null);
+                        bodyForms.add(null);
+                        return;
+                    case sProgn:
+                        for (Object prognForm: listOrMalformed(PROGN, cdr(ccForm))) toplevel(expand(prognForm), bodyForms);
+                        return;
+                    case sDefine:
+                        if (defuns.containsKey(cadr(ccForm))) throw new UnsupportedForm("redefinition of " + cadr(ccForm));
+                        global(cadr(ccForm));
+                        final Object value = caddr(ccForm);
+                        final WellknownSymbol valueOp = consp(value) && car(value) instanceof LambdaJSymbol ? ((LambdaJSymbol)car(value)).wellknownSymbol : null;
+                        if (deferred.isEmpty() && (atom(value) || valueOp == WellknownSymbol.sQuote || valueOp == WellknownSymbol.sLambda)) intp.eval(ccForm, null);
+                        else deferred.add(ccForm);
+                        break;
+                    case sDefun: {
+                        final Object sym = cadr(ccForm);
+                        if (globals.containsKey(sym)) throw new UnsupportedForm("redefinition of " + sym);
+                        final Object params = caddr(ccForm);
+                        if (params != null && (!consp(params) || dottedList(params))) throw new UnsupportedForm("varargs");
+                        if (params != null) for (Object p: (ConsCell)params) if (!(p instanceof LambdaJSymbol)) throw new UnsupportedForm("parameter " + p);
+                        final Defun defun = new Defun(sym.toString(), global(sym), defunList.size(), (ConsCell)params, (ConsCell)cdddr(ccForm));
+                        defuns.put(sym, defun);
+                        defunList.add(defun);
+                        if (deferred.isEmpty()) intp.eval(ccForm, null);
+                        else deferred.add(ccForm);
+                        break;
+                    }
+                    case sLoad: case sRequire: case sProvide:
+                        throw new UnsupportedForm(op.toString());
+                    default:
+                    }
+                }
+                bodyForms.add(form);
+            }
+
+            private int global(Object sym) {
+                final Integer ret = globals.get(sym);
+                if (ret != null) return ret;
+                globals.put(sym, globalNames.size());
+                globalNames.add(sym.toString());
+                return globalNames.size() - 1;
+            }
+
+
+            /// methods
+            private void emitDefun(Defun defun, boolean directSelfCalls) {
+                final StringBuilder desc = new StringBuilder("(");
+                for (int i = 0; i < defun.arity; i++) desc.append(OBJ);
+                desc.append(')').append(OBJ);
+                m = new ClassFileWriter.Method(cw, ClassFileWriter.ACC_PUBLIC, defun.method, desc.toString(), defun.arity + 1);
+                fn = defun;
+                this.directSelfCalls = directSelfCalls;
+                usedDirectSelfCall = usedTailcall = false;
+                envSyms.clear(); envSlots.clear();
+                int slot = 1;
+                if (defun.params != null) for (Object p: defun.params) { envSyms.add(p); envSlots.add(slot++); }
+
+                fnStart = new ClassFileWriter.Label();
+                m.mark(fnStart);
+                if (defun.body == null) { m.insn(ClassFileWriter.ACONST_NULL, 1); m.ret(ClassFileWriter.ARETURN); }
+                else {
+                    emitLoc(defun.body);
+                    tailBody(defun.body);
+                }
+                defun.leaf = !usedTailcall;
+                fn = null;
+            }
+
+            private void emitRunbody(List<Object> bodyForms) {
+                m = new ClassFileWriter.Method(cw, ClassFileWriter.ACC_PUBLIC, "runbody", "()" + OBJ, 1);
+                envSyms.clear(); envSlots.clear();
+                if (bodyForms.isEmpty()) m.insn(ClassFileWriter.ACONST_NULL, 1);
+                for (Iterator<Object> it = bodyForms.iterator(); it.hasNext(); ) {
+                    final Object form = it.next();
+                    if (consp(form)) emitLoc(form);
+                    toplevelValue(form);
+                    if (it.hasNext()) m.insn(ClassFileWriter.POP, -1);
+                }
+                m.ret(ClassFileWriter.ARETURN);
+                cw.method(m);
+            }
+
+            private void toplevelValue(Object form) {
+                if (consp(form) && car(form) instanceof LambdaJSymbol) {
+                    final LambdaJSymbol op = (LambdaJSymbol)car(form);
+                    if (op.wellknownSymbol == WellknownSymbol.sDefine || op.wellknownSymbol == WellknownSymbol.sDefun) {
+                        final Object sym = cadr(form);
+                        m.varInsn(ClassFileWriter.ALOAD, 0);
+                        m.intConst(globals.get(sym));
+                        if (op.wellknownSymbol == WellknownSymbol.sDefine) value(caddr(form));
+                        else { m.varInsn(ClassFileWriter.ALOAD, 0); m.fieldInsn(ClassFileWriter.GETFIELD, className, defuns.get(sym).method, "L" + FUNCTION + ';'); }
+                        m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, BASE, "defineGlobal", "(I" + OBJ + ")V");
+                        constant(sym);
+                        return;
+                    }
+                }
+                value(form);
+            }
+
+            private void emitConstructor() {
+                m = new ClassFileWriter.Method(cw, ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1);
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                m.intConst(globalNames.size());
+                m.typeInsn(ClassFileWriter.ANEWARRAY, "java/lang/String");
+                for (int i = 0; i < globalNames.size(); i++) {
+                    m.insn(ClassFileWriter.DUP, 1); m.intConst(i); m.stringConst(globalNames.get(i)); m.insn(ClassFileWriter.AASTORE, -3);
+                }
+                m.methodInsn(ClassFileWriter.INVOKESPECIAL, BASE, "<init>", "([Ljava/lang/String;)V");
+
+                for (Defun defun: defunList) {
+                    m.varInsn(ClassFileWriter.ALOAD, 0);
+                    m.varInsn(ClassFileWriter.ALOAD, 0);
+                    m.stringConst(defun.method); m.stringConst(defun.name); m.intConst(defun.arity); m.intConst(defun.leaf ? 1 : 0);
+                    m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, BASE, "function", "(Ljava/lang/String;Ljava/lang/String;IZ)L" + FUNCTION + ';');
+                    m.fieldInsn(ClassFileWriter.PUTFIELD, className, defun.method, "L" + FUNCTION + ';');
+                }
+
+                // constants may reference other constants that are added while emitting
+                for (int i = 0; i < constants.size(); i++) {
+                    cw.field(ClassFileWriter.ACC_PUBLIC, "q" + i, OBJ);
+                    m.varInsn(ClassFileWriter.ALOAD, 0);
+                    constantValue(constants.get(i), 0);
+                    m.fieldInsn(ClassFileWriter.PUTFIELD, className, "q" + i, OBJ);
+                }
+                m.ret(ClassFileWriter.RETURN);
+                cw.method(m);
+            }
+
+            private void emitMain() {
+                m = new ClassFileWriter.Method(cw, ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, "main", "([Ljava/lang/String;)V", 2);
+                m.typeInsn(ClassFileWriter.NEW, className);
+                m.insn(ClassFileWriter.DUP, 1);
+                m.methodInsn(ClassFileWriter.INVOKESPECIAL, className, "<init>", "()V");
+                m.varInsn(ClassFileWriter.ASTORE, 1);
+                m.varInsn(ClassFileWriter.ALOAD, 1);
+                m.fieldInsn(ClassFileWriter.GETFIELD, RT, "commandlineArgumentList", "L" + GLOBAL + ';');
+                m.varInsn(ClassFileWriter.ALOAD, 1);
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                m.intConst(0);
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, "arrayToList", "(" + OBJS + "I)" + OBJ);
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, GLOBAL, "set", "(" + OBJ + ')' + OBJ);
+                m.insn(ClassFileWriter.POP, -1);
+                m.varInsn(ClassFileWriter.ALOAD, 1);
+                m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "main", "(L" + RT + ";)V");
+                m.ret(ClassFileWriter.RETURN);
+                cw.method(m);
+            }
+
+            private void emitLoc(Object form) {
+                if (c.intp.debug == 0 || !(form instanceof ConsCell)) return;
+                final ConsCell ccForm = (ConsCell)form;
+                String loc = printSEx(ccForm).toString();
+                if (loc.length() > 100) loc = loc.substring(0, 100) + "...";
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                m.stringConst(ccForm.lineInfo() + loc);
+                m.fieldInsn(ClassFileWriter.PUTFIELD, RT, "loc", "Ljava/lang/String;");
+            }
+
+
+            /// forms in tail position: emit code that returns the value of the form from the current method
+            private void tail(Object form) {
+                if (fn != null && consp(form)) {
+                    final ConsCell ccForm = (ConsCell)form;
+                    final Object op = car(ccForm);
+                    if (op instanceof LambdaJSymbol) {
+                        switch (((LambdaJSymbol)op).wellknownSymbol) {
+                        case sIf: {
+                            final ClassFileWriter.Label no = new ClassFileWriter.Label();
+                            test(cadr(ccForm), no);
+                            tail(caddr(ccForm));
+                            m.mark(no);
+                            tail(cadddr(ccForm));
+                            return;
+                        }
+                        case sCond:
+                            if (!condIsSimple(ccForm)) break; // a clause without forms returns the value of the test, handled by value()
+                            for (Object clause: listOrMalformed(COND, cdr(ccForm))) {
+                                final ClassFileWriter.Label no = new ClassFileWriter.Label();
+                                test(car(clause), no);
+                                tailBody((ConsCell)cdr(clause));
+                                m.mark(no);
+                            }
+                            m.insn(ClassFileWriter.ACONST_NULL, 1);
+                            m.ret(ClassFileWriter.ARETURN);
+                            return;
+                        case sProgn:
+                            tailBody((ConsCell)cdr(ccForm));
+                            return;
+                        case sLet: case sLetStar: {
+                            final int mark = bindLet(ccForm);
+                            tailBody((ConsCell)cddr(ccForm));
+                            unbind(mark);
+                            return;
+                        }
+                        default:
+                            if (local(op) < 0 && defuns.get(op) == fn && !globalsShadowed(op)) { selfTailcall(ccForm); return; }
+                            if (isFuncall(op)) {
+                                funcall(ccForm, "tailcall");
+                                usedTailcall = true;
+                                m.ret(ClassFileWriter.ARETURN);
+                                return;
+                            }
+                        }
+                    }
+                }
+                value(form);
+                m.ret(ClassFileWriter.ARETURN);
+            }
+
+            private boolean condIsSimple(ConsCell condForm) {
+                final ConsCell clauses = listOrMalformed(COND, cdr(condForm));
+            if (clauses != null) for (Object clause: clauses) if (!consp(clause) || cdr(clause) == null) return false;
+                return true;
+            }
+
+            private void tailBody(ConsCell body) {
+                if (body == null) { m.insn(ClassFileWriter.ACONST_NULL, 1); m.ret(ClassFileWriter.ARETURN); return; }
+                for (; cdr(body) != null; body = (ConsCell)cdr(body)) { value(car(body)); m.insn(ClassFileWriter.POP, -1); }
+                tail(car(body));
+            }
+
+            /** a self call in tail position: assign the arguments to the parameters and jump to the start of the method */
+            private void selfTailcall(ConsCell form) {
+                final ConsCell args = (ConsCell)cdr(form);
+                if ((listLength(args)) != fn.arity) throw new UnsupportedForm("wrong number of arguments: " + form);
+                if (args != null) for (Object arg: args) value(arg);
+                for (int slot = fn.arity; slot > 0; slot--) m.varInsn(ClassFileWriter.ASTORE, slot);
+                m.jump(ClassFileWriter.GOTO, fnStart);
+            }
+
+
+            /// forms as a test: emit code that jumps to {@code no} if the form evaluates to nil
+            private void test(Object form, ClassFileWriter.Label no) {
+                if (form == sT) return;
+                if (consp(form) && car(form) instanceof LambdaJSymbol && isPrimitive(car(form))) {
+                    final ConsCell args = (ConsCell)cdr(form);
+                    final int nArgs = listLength(args);
+                    final String prim = c.primitivesBySymbol.get(car(form));
+                    if (nArgs == 2) {
+                        final int cmp, jump;
+                        switch (prim) {
+                        case "numbereq": cmp = ClassFileWriter.DCMPL; jump = ClassFileWriter.IFNE; break;
+                        case "lt":       cmp = ClassFileWriter.DCMPG; jump = ClassFileWriter.IFGE; break;
+                        case "le":       cmp = ClassFileWriter.DCMPG; jump = ClassFileWriter.IFGT; break;
+                        case "gt":       cmp = ClassFileWriter.DCMPL; jump = ClassFileWriter.IFLE; break;
+                        case "ge":       cmp = ClassFileWriter.DCMPL; jump = ClassFileWriter.IFLT; break;
+                        case "_eq":      cmp = -1;                    jump = ClassFileWriter.IF_ACMPNE; break;
+                        default:         cmp = 0;                     jump = 0;
+                        }
+                        if (cmp > 0) { compare(car(args), cadr(args), cmp, jump, no); return; }
+                        if (cmp < 0) { value(car(args)); value(cadr(args)); m.jump(jump, no); return; }
+                    }
+                    if (nArgs == 1 && "_null".equals(prim)) { value(car(args)); m.jump(ClassFileWriter.IFNONNULL, no); return; }
+                }
+                value(form);
+                m.jump(ClassFileWriter.IFNULL, no);
+            }
+
+
+            /// forms as a value: emit code that pushes the value of the form
+            private void value(Object form) {
+                if (form == null || form == sNil) { m.insn(ClassFileWriter.ACONST_NULL, 1); return; }
+                if (form == sT) { m.fieldInsn(ClassFileWriter.GETSTATIC, RT, "_t", "L" + SYMBOL + ';'); return; }
+                if (form instanceof LambdaJSymbol) { variable(form); return; }
+                if (atom(form)) { literal(form); return; }
+
+                final ConsCell ccForm = (ConsCell)form;
+                final Object op = car(ccForm);
+                if (!(op instanceof LambdaJSymbol)) throw new UnsupportedForm("function application: " + op);
+                final LambdaJSymbol symOp = (LambdaJSymbol)op;
+                switch (symOp.wellknownSymbol) {
+                case sQuote:
+                    constant(cadr(ccForm));
+                    return;
+
+                case sDeclare:
+                    declare((ConsCell)cdr(ccForm));
+                    m.insn(ClassFileWriter.ACONST_NULL, 1);
+                    return;
+
+                case sIf: {
+                    final ClassFileWriter.Label no = new ClassFileWriter.Label(), end = new ClassFileWriter.Label();
+                    test(cadr(ccForm), no);
+                    value(caddr(ccForm));
+                    m.jump(ClassFileWriter.GOTO, end);
+                    m.mark(no);
+                    value(cadddr(ccForm));
+                    m.mark(end);
+                    return;
+                }
+
+                case sCond: {
+                    final ClassFileWriter.Label end = new ClassFileWriter.Label();
+                    for (Object clause: listOrMalformed(COND, cdr(ccForm))) {
+                        final ClassFileWriter.Label no = new ClassFileWriter.Label();
+                        if (cdr(clause) == null) {
+                            value(car(clause));
+                            m.insn(ClassFileWriter.DUP, 1);
+                            m.jump(ClassFileWriter.IFNONNULL, end);
+                            m.insn(ClassFileWriter.POP, -1);
+                            continue;
+                        }
+                        test(car(clause), no);
+                        body((ConsCell)cdr(clause));
+                        m.jump(ClassFileWriter.GOTO, end);
+                        m.mark(no);
+                    }
+                    m.insn(ClassFileWriter.ACONST_NULL, 1);
+                    m.mark(end);
+                    return;
+                }
+
+                case sProgn:
+                    body((ConsCell)cdr(ccForm));
+                    return;
+
+                case sLet: case sLetStar: {
+                    final int mark = bindLet(ccForm);
+                    body((ConsCell)cddr(ccForm));
+                    unbind(mark);
+                    return;
+                }
+
+                case sSetQ: {
+                    ConsCell pairs = (ConsCell)cdr(ccForm);
+                    if (pairs == null) { m.insn(ClassFileWriter.ACONST_NULL, 1); return; }
+                    for (; pairs != null; pairs = (ConsCell)cddr(pairs)) {
+                        final Object sym = car(pairs);
+                        final int slot = local(sym);
+                        if (slot >= 0) {
+                            value(cadr(pairs));
+                            m.insn(ClassFileWriter.DUP, 1);
+                            m.varInsn(ClassFileWriter.ASTORE, slot);
+                        }
+                        else if (globals.containsKey(sym)) {
+                            m.varInsn(ClassFileWriter.ALOAD, 0);
+                            m.intConst(globals.get(sym));
+                            value(cadr(pairs));
+                            m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, BASE, "setGlobal", "(I" + OBJ + ')' + OBJ);
+                        }
+                        else throw new UnsupportedForm("setq of " + sym);
+                        if (cddr(pairs) != null) m.insn(ClassFileWriter.POP, -1);
+                    }
+                    return;
+                }
+
+                default:
+                    if (symOp.specialForm()) throw new UnsupportedForm(symOp.toString());
+                }
+
+                if (local(op) < 0 && defuns.get(op) == fn && fn != null && directSelfCalls && !globalsShadowed(op)) {
+                    final ConsCell args = (ConsCell)cdr(ccForm);
+                    if ((listLength(args)) != fn.arity) throw new UnsupportedForm("wrong number of arguments: " + form);
+                    m.varInsn(ClassFileWriter.ALOAD, 0);
+                    if (args != null) for (Object arg: args) value(arg);
+                    m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, className, fn.method, methodDesc(fn.arity));
+                    usedDirectSelfCall = true;
+                    return;
+                }
+                if (isFuncall(op)) { funcall(ccForm, "funcall"); return; }
+                if (isPrimitive(op)) { primitive(ccForm); return; }
+                throw new UnsupportedForm("undefined function " + op);
+            }
+
+            private void body(ConsCell body) {
+                if (body == null) { m.insn(ClassFileWriter.ACONST_NULL, 1); return; }
+                for (; cdr(body) != null; body = (ConsCell)cdr(body)) { value(car(body)); m.insn(ClassFileWriter.POP, -1); }
+                value(car(body));
+            }
+
+            /** bind the variables of a let or let* form to new local variable slots, return the previous size of the environment */
+            private int bindLet(ConsCell form) {
+                final boolean star = ((LambdaJSymbol)car(form)).wellknownSymbol == WellknownSymbol.sLetStar;
+                if (cadr(form) != null && !consp(cadr(form))) throw new UnsupportedForm("named let");
+                final int mark = envSyms.size();
+                final List<Object> syms = new ArrayList<>();
+                final List<Integer> slots = new ArrayList<>();
+                if (cadr(form) != null) for (Object binding: (ConsCell)cadr(form)) {
+                    final Object sym = consp(binding) ? car(binding) : binding;
+                    if (!(sym instanceof LambdaJSymbol)) throw new UnsupportedForm("binding " + binding);
+                    value(consp(binding) ? cadr(binding) : null);
+                    final int slot = m.newLocal();
+                    m.varInsn(ClassFileWriter.ASTORE, slot);
+                    if (star) { envSyms.add(sym); envSlots.add(slot); }
+                    else { syms.add(sym); slots.add(slot); }
+                }
+                envSyms.addAll(syms); envSlots.addAll(slots);
+                return mark;
+            }
+
+            private void unbind(int mark) {
+                while (envSyms.size() > mark) { envSyms.remove(envSyms.size() - 1); envSlots.remove(envSlots.size() - 1); }
+            }
+
+            private int local(Object sym) {
+                for (int i = envSyms.size() - 1; i >= 0; i--) if (envSyms.get(i) == sym) return envSlots.get(i);
+                return -1;
+            }
+
+            /** emit code that checks and converts the local variables that are declared as fixnum or double-float, same as {@link LambdaJ#evalDeclare} */
+            private void declare(ConsCell declSpecs) {
+                if (declSpecs != null) for (Object declSpec: declSpecs) {
+                    if (!consp(declSpec)) errorMalformed(DECLARE, "a declaration specifier", declSpec);
+                    Object type = car(declSpec), vars = cdr(declSpec);
+                    if (type == c.intp.intern(TYPE_DECL)) { type = cadr(declSpec);  vars = cddr(declSpec); }
+                    final boolean fixnum = type == c.intp.intern(FIXNUM);
+                    if (!fixnum && type != c.intp.intern(DOUBLE_FLOAT)) continue;
+                    for (Object var: listOrMalformed(DECLARE, vars)) {
+                        final int slot = local(var);
+                        if (slot < 0) continue;
+                        m.varInsn(ClassFileWriter.ALOAD, slot);
+                        if (fixnum) {
+                            m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "requireFixnum", "(" + OBJ + ")J");
+                            m.methodInsn(ClassFileWriter.INVOKESTATIC, BOXES, "box", "(J)Ljava/lang/Long;");
+                            m.varInsn(ClassFileWriter.ASTORE, slot);
+                        }
+                        else {
+                            m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "requireDouble", "(" + OBJ + ")D");
+                            m.insn(ClassFileWriter.POP2, -2);
+                        }
+                    }
+                }
+            }
+
+            /** the self reference of a defun is lexical, it only refers to a global if a local variable shadows it */
+            private boolean globalsShadowed(Object sym) { return local(sym) >= 0; }
+
+            private boolean isFuncall(Object op) { return local(op) >= 0 || globals.containsKey(op); }
+
+            private boolean isPrimitive(Object op) { return local(op) < 0 && !globals.containsKey(op) && c.primitivesBySymbol.containsKey(op); }
 
+            private void variable(Object sym) {
+                final int slot = local(sym);
+                if (slot >= 0) { m.varInsn(ClassFileWriter.ALOAD, slot); return; }
+                final Integer global = globals.get(sym);
+                if (global == null) throw new UnsupportedForm("variable " + sym);
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                m.fieldInsn(ClassFileWriter.GETFIELD, BASE, "globals", "[L" + GLOBAL + ';');
+                m.intConst(global);
+                m.insn(ClassFileWriter.AALOAD, -1);
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, GLOBAL, "get", "()" + OBJ);
+            }
 
+            private void literal(Object form) {
+                if (form instanceof Long)           { m.longConst((Long)form);     m.methodInsn(ClassFileWriter.INVOKESTATIC, BOXES, "box", "(J)Ljava/lang/Long;"); }
+                else if (form instanceof Double)    { m.doubleConst((Double)form); m.methodInsn(ClassFileWriter.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"); }
+                else if (form instanceof String)    { m.stringConst((String)form); }
+                else if (form instanceof Character) { m.intConst((Character)form); m.methodInsn(ClassFileWriter.INVOKESTATIC, BOXES, "box", "(C)Ljava/lang/Character;"); }
+                else throw new UnsupportedForm("literal " + form);
+            }
 
-        /// Environment for compiled Murmel
-        private static final String[] globalvars = {NIL, T, PI};
-        private static final String[][] aliasedGlobals = {
-        { MOST_POSITIVE_FIXNUM, "mostPositiveFixnum" }, { MOST_NEGATIVE_FIXNUM, "mostNegativeFixnum" }, { ARRAY_DIMENSION_LIMIT, "arrayDimensionLimit" },
-        { INTERNAL_TIME_UNITS_PER_SECOND, "itups" },
-        { COMMAND_LINE_ARGUMENT_LIST, "commandlineArgumentList.get()" },
-        { FEATURES, "features.get()" }, { CONDITION_HANDLER, "conditionHandler.get()" }, { RANDOM_STATE, "randomState.get()" },
-        };
+            /** push a quoted object. Symbols and lists are created once in the constructor */
+            private void constant(Object o) {
+                if (o == null || o == sNil) { m.insn(ClassFileWriter.ACONST_NULL, 1); return; }
+                if (!(o instanceof LambdaJSymbol) && !consp(o)) { literal(o); return; }
+                if (o instanceof LambdaJSymbol && ((LambdaJSymbol)o).wellknownSymbol == WellknownSymbol.notInterned) throw new UnsupportedForm("uninterned symbol " + o);
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                m.fieldInsn(ClassFileWriter.GETFIELD, className, "q" + constants.size(), OBJ);
+                constants.add(o);
+            }
 
-        private static final String primitives =
-        CAR + "\n" +CDR + "\n" +CONS + "\n" +RPLACA + "\n" +RPLACD + "\n"
-        + /*"apply",*/ EVAL + "\n" +EQ + "\n" +EQL + "\n" +EQUAL + "\n" +NULL + "\n" +"read" + "\n" +"write" + "\n" +"writeln" + "\n" +"lnwrite" + "\n"
-        + ATOM + "\n" +CONSP + "\n" +FUNCTIONP + "\n" +LISTP + "\n" +SYMBOLP + "\n" +NUMBERP + "\n" +STRINGP + "\n" +CHARACTERP + "\n" +INTEGERP + "\n" +FLOATP + "\n" +VECTORP + "\n" +TYPEP + "\n"
-        + ASSOC + "\n" +ASSQ + "\n" +LIST + "\n" +VECT + "\n" +VECTOR + "\n" +"seqref" + "\n" + SEQSET + "\n" +"svref" + "\n" +"svset" + "\n" +"svlength" + "\n" +"string" + "\n" +"slength" + "\n" +"sref" + "\n" +"sset" + "\n" +"bvref" + "\n" +"bvset" + "\n" +"bvlength" + "\n"
-        + APPEND + "\n" +VALUES + "\n"
-        + "round" + "\n" +"floor" + "\n" +"ceiling" + "\n" +"truncate" + "\n"
-        + "fround" + "\n" +"ffloor" + "\n" +"fceiling" + "\n" +"ftruncate" + "\n"
-        + "sqrt" + "\n" +"log" + "\n" +"log10" + "\n" +"exp" + "\n" +"expt" + "\n" +"mod" + "\n" +"rem" + "\n" +"signum" + "\n" +"random" + "\n" + "tabulate" + "\n"
-        + "gensym" + "\n" +"trace" + "\n" +"untrace" + "\n"
-        + JERROR + "\n" +JMETHOD + "\n" +"jproxy";
+            private void constantValue(Object o, int depth) {
+                if (depth > 1000) throw new UnsupportedForm("quoted form is too deep");
+                if (o == null) m.insn(ClassFileWriter.ACONST_NULL, 1);
+                else if (o instanceof LambdaJSymbol) {
+                    if (((LambdaJSymbol)o).wellknownSymbol == WellknownSymbol.notInterned) throw new UnsupportedForm("uninterned symbol " + o);
+                    m.varInsn(ClassFileWriter.ALOAD, 0); m.stringConst(o.toString());
+                    m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, "intern", "(Ljava/lang/String;)L" + SYMBOL + ';');
+                }
+                else if (consp(o)) {
+                    m.varInsn(ClassFileWriter.ALOAD, 0);
+                    constantValue(car(o), depth + 1);
+                    constantValue(cdr(o), depth + 1);
+                    m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, "_cons", "(" + OBJ + OBJ + ")Lio/github/jmurmel/LambdaJ$ConsCell;");
+                }
+                else literal(o);
+            }
 
-        private static final String aliasedPrimitives =
-        "+@add" + "\n" + "*@mul" + "\n" + "-@sub" + "\n" + "/@quot" + "\n"
-        + "=@numbereq" + "\n" + "<=@le" + "\n" + "<@lt" + "\n" + ">=@ge" + "\n" + ">@gt" + "\n" + "/=@ne" + "\n"
-        + "1+@inc" + "\n" + "1-@dec" + "\n"
-        + "read-from-string@readFromStr" + "\n" + "read-textfile-lines@readTextfileLines" + "\n" + "read-textfile@readTextfile" + "\n"
-        + "fresh-line@freshLine" + "\n" + "make-string-writer@makeStringWriter" + "\n"
-        + "write-textfile-lines@writeTextfileLines" + "\n" + "write-textfile@writeTextfile" + "\n" + "write-to-string@writeToString" + "\n" + "jformat@jformat" + "\n" + "jformat-locale@jformatLocale" + "\n" + "char-code@charInt" + "\n" + "code-char@intChar" + "\n"
-        + "string=@stringeq" + "\n" + "string->list@stringToList" + "\n" + "list->string@listToString" + "\n"
-        + ADJUSTABLE_ARRAY_P+"@adjustableArrayP" + "\n" + "vector-add@vectorAdd" + "\n" + "vector-remove@vectorRemove" + "\n"
-        + "vector->list@vectorToList" + "\n" + "list->vector@listToVector" + "\n" + "simple-vector->list@simpleVectorToList" + "\n" + "list->simple-vector@listToSimpleVector" + "\n"
-        + "bit-vector->list@bitVectorToList" + "\n" + "list->bit-vector@listToBitVector" + "\n"
-        + "vector-length@vectorLength" + "\n" + "vector-copy@vectorCopy" + "\n" + VECTOR_FILL+"@vectorFill" + "\n"
-        + SIMPLE_VECTOR_P+"@svectorp" + "\n" + SIMPLE_STRING_P+"@sstringp" + "\n" + RANDOM_STATE_P+"@_randomstatep" + "\n" + "make-random-state@makeRandomState" + "\n"
-        + BIT_VECTOR_P+"@bitvectorp" + "\n" + "bv=@bvEq" + "\n" + SIMPLE_BIT_VECTOR_P+"@sbitvectorp" + "\n" + HASH_TABLE_P+"@hashtablep" + "\n" + MAKE_ARRAY+"@makeArray" + "\n"
-        + HASH+"@_hash" + "\n" + MAKE_HASH_TABLE+"@makeHash" + "\n" + "hashref@_hashref" + "\n" + "hashset@_hashset" + "\n"
-        + "hash-table-count@hashTableCount" + "\n" + "clrhash@_clrhash" + "\n" + "hash-table-remove@hashRemove" + "\n" + "sxhash@_sxhash" + "\n" + "scan-hash-table@scanHash" + "\n"
+            /** call a function that is the value of a local or global variable */
+            private void funcall(ConsCell form, String how) {
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                variable(car(form));
+                args((ConsCell)cdr(form));
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, how, "(" + OBJ + OBJS + ')' + OBJ);
+            }
 
-        + LISTSTAR+"@listStar" + "\n"
-        //+ "macroexpand-1@macroexpand1" + "\n"
-        + "lisp-implementation-type@implType" + "\n" + "lisp-implementation-version@implVersion" + "\n"
-        + "get-internal-real-time@getInternalRealTime" + "\n" + "get-internal-run-time@getInternalRunTime" + "\n"
-        + "sleep@sleep" + "\n" + "get-universal-time@getUniversalTime" + "\n" + "get-decoded-time@getDecodedTime" + "\n"
+            private void args(ConsCell args) {
+                m.intConst(listLength(args));
+                m.typeInsn(ClassFileWriter.ANEWARRAY, "java/lang/Object");
+                int i = 0;
+                if (args != null) for (Object arg: args) {
+                    m.insn(ClassFileWriter.DUP, 1); m.intConst(i++); value(arg); m.insn(ClassFileWriter.AASTORE, -3);
+                }
+            }
 
-        + "make-frame@makeFrame" + "\n" + "open-frame@openFrame" + "\n" + "close-frame@closeFrame" + "\n"
-        + "reset-frame@resetFrame" + "\n" + "clear-frame@clearFrame" + "\n" + "repaint-frame@repaintFrame" + "\n" + "flush-frame@flushFrame" + "\n"
-        + "current-frame@currentFrame" + "\n"
-        + "push-pos@pushPos" + "\n" + "pop-pos@popPos" + "\n" + "pen-up@penUp" + "\n" + "pen-down@penDown" + "\n"
-        + "color@color" + "\n" + "bgcolor@bgColor" + "\n" + "text@text" + "\n"
-        + "right@right" + "\n" + "left@left" + "\n" + "forward@forward" + "\n"
-        + "move-to@moveTo" + "\n" + "line-to@lineTo" + "\n" + "move-rel@moveRel" + "\n" + "line-rel@lineRel" + "\n"
-        + "make-bitmap@makeBitmap" + "\n" + "discard-bitmap@discardBitmap" + "\n"
-        + "set-pixel@setPixel" + "\n"
-        + "rgb-to-pixel@rgbToPixel" + "\n" + "hsb-to-pixel@hsbToPixel";
+            private void primitive(ConsCell form) {
+                final String prim = c.primitivesBySymbol.get(car(form));
+                final ConsCell args = (ConsCell)cdr(form);
+                final int nArgs = listLength(args);
+                switch (prim) {
+                case "add": case "sub": case "mul": case "quot":
+                    if (nArgs > 0) {
+                        doubleValue(form);
+                        m.methodInsn(ClassFileWriter.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+                        return;
+                    }
+                    break;
+                case "numbereq": case "lt": case "le": case "gt": case "ge": case "_eq": case "_null": {
+                    final ClassFileWriter.Label no = new ClassFileWriter.Label(), end = new ClassFileWriter.Label();
+                    test(form, no);
+                    m.fieldInsn(ClassFileWriter.GETSTATIC, RT, "_t", "L" + SYMBOL + ';');
+                    m.jump(ClassFileWriter.GOTO, end);
+                    m.mark(no);
+                    m.insn(ClassFileWriter.ACONST_NULL, 1);
+                    m.mark(end);
+                    return;
+                }
+                case "_car": case "_cdr": case "inc": case "dec": case "_consp": case "_atom":
+                    if (nArgs == 1) {
+                        m.varInsn(ClassFileWriter.ALOAD, 0);
+                        value(car(args));
+                        m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, prim, "(" + OBJ + ')' + (prim.equals("inc") || prim.equals("dec") ? "Ljava/lang/Number;" : OBJ));
+                        return;
+                    }
+                    break;
+                case "_cons":
+                    if (nArgs == 2) {
+                        m.varInsn(ClassFileWriter.ALOAD, 0);
+                        value(car(args)); value(cadr(args));
+                        m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, prim, "(" + OBJ + OBJ + ")Lio/github/jmurmel/LambdaJ$ConsCell;");
+                        return;
+                    }
+                    break;
+                default:
+                }
 
-        /** maps symbol -> javaNameAsString */
-        private final @NotNull Map<LambdaJSymbol, String> primitivesBySymbol;
+                final java.lang.reflect.Method method;
+                try { method = MurmelJavaProgram.class.getMethod(prim, Object[].class); }
+                catch (NoSuchMethodException e) { throw new UnsupportedForm("primitive " + car(form)); }
+                final Class<?> ret = method.getReturnType();
+                if (ret == void.class) throw new UnsupportedForm("primitive " + car(form));
+                m.varInsn(ClassFileWriter.ALOAD, 0);
+                args(args);
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, RT, prim, "(" + OBJS + ')' + descriptor(ret));
+                if (ret.isPrimitive()) {
+                    final String box = ret == double.class ? "java/lang/Double" : ret == long.class ? "java/lang/Long" : ret == int.class ? "java/lang/Integer"
+                                     : ret == boolean.class ? "java/lang/Boolean" : ret == char.class ? "java/lang/Character" : null;
+                    if (box == null) throw new UnsupportedForm("primitive " + car(form));
+                    // fixnums and characters are boxed by Boxes as in the interpreter and the Java backend so that eq works the same
+                    if (ret == long.class || ret == char.class) m.methodInsn(ClassFileWriter.INVOKESTATIC, BOXES, "box", "(" + descriptor(ret) + ")L" + box + ';');
+                    else m.methodInsn(ClassFileWriter.INVOKESTATIC, box, "valueOf", "(" + descriptor(ret) + ")L" + box + ';');
+                }
+            }
 
-        private Map<LambdaJSymbol, String>  makePrimitivesBySymbol() {
-            final String[] primitives = MurmelJavaCompiler.primitives.split("\n");
-            final String[][] aliasedPrimitives = Arrays.stream(MurmelJavaCompiler.aliasedPrimitives.split("\n"))
-                                                                   .map(s -> s.split("@"))
-                                                                   .collect(Collectors.toList())
-                                                       .toArray(new String[0][2]);
+            /** emit code that jumps to {@code no} if the comparison fails. Fixnums are compared as longs, other numbers,
+             *  Longs beyond the fixnum range and results of open coded arithmetic are compared as doubles using {@code dcmp}
+             *  the same as the interpreter does. */
+            private void compare(Object lhs, Object rhs, int dcmp, int jump, ClassFileWriter.Label no) {
+                if (isDouble(lhs) || isDouble(rhs) || isInexactLong(lhs) || isInexactLong(rhs)) {
+                    doubleValue(lhs); doubleValue(rhs); m.insn(dcmp, -3); m.jump(jump, no); return;
+                }
 
-            final Map<LambdaJSymbol, String> map = new IdentityHashMap<>(JavaUtil.hashMapCapacity(primitives.length + aliasedPrimitives.length));
+                final ClassFileWriter.Label doubles = new ClassFileWriter.Label(), end = new ClassFileWriter.Label();
+                final int lhsSlot = operand(lhs), rhsSlot = operand(rhs);
+                fixnumCheck(lhsSlot, doubles); fixnumCheck(rhsSlot, doubles);
+                longOperand(lhs, lhsSlot); longOperand(rhs, rhsSlot);
+                m.insn(ClassFileWriter.LCMP, -3); m.jump(jump, no);
+                m.jump(ClassFileWriter.GOTO, end);
+
+                m.mark(doubles);
+                doubleOperand(lhs, lhsSlot); doubleOperand(rhs, rhsSlot);
+                m.insn(dcmp, -3); m.jump(jump, no);
+                m.mark(end);
+            }
+
+            /** true if {@code form} is a double literal or is open coded as double arithmetic by {@link #doubleValue} */
+            private boolean isDouble(Object form) {
+                if (form instanceof Double) return true;
+                if (!consp(form) || !isPrimitive(car(form)) || cdr(form) == null) return false;
+                final String prim = c.primitivesBySymbol.get(car(form));
+                return "add".equals(prim) || "sub".equals(prim) || "mul".equals(prim) || "quot".equals(prim);
+            }
+
+            /** true if {@code form} is a Long literal that a double can't represent exactly */
+            private static boolean isInexactLong(Object form) {
+                return form instanceof Long && !MurmelJavaProgram.isExactLong(form);
+            }
+
+            /** store the value of a compare operand in a new local, return the slot or -1 if the operand is a fixnum literal */
+            private int operand(Object form) {
+                if (form instanceof Long) return -1;
+                value(form);
+                final int slot = m.newLocal();
+                m.varInsn(ClassFileWriter.ASTORE, slot);
+                return slot;
+            }
+
+            private void fixnumCheck(int slot, ClassFileWriter.Label notFixnum) {
+                if (slot < 0) return;
+                m.varInsn(ClassFileWriter.ALOAD, slot);
+                m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "isExactLong", "(" + OBJ + ")Z");
+                m.jump(ClassFileWriter.IFEQ, notFixnum);
+            }
+
+            private void longOperand(Object form, int slot) {
+                if (slot < 0) { m.longConst((Long)form); return; }
+                m.varInsn(ClassFileWriter.ALOAD, slot);
+                m.typeInsn(ClassFileWriter.CHECKCAST, "java/lang/Long");
+                m.methodInsn(ClassFileWriter.INVOKEVIRTUAL, "java/lang/Long", "longValue", "()J");
+            }
+
+            private void doubleOperand(Object form, int slot) {
+                if (slot < 0) { m.doubleConst((Long)form); return; }
+                m.varInsn(ClassFileWriter.ALOAD, slot);
+                m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "toDouble", "(" + OBJ + ")D");
+            }
+
+            /** push the value of a form as a double, arithmetic is open coded without boxing intermediate results */
+            private void doubleValue(Object form) {
+                if (form instanceof Long || form instanceof Double) { m.doubleConst(((Number)form).doubleValue()); return; }
+                if (consp(form) && isPrimitive(car(form))) {
+                    final String prim = c.primitivesBySymbol.get(car(form));
+                    final int op;
+                    switch (prim) {
+                    case "add":  op = ClassFileWriter.DADD; break;
+                    case "sub":  op = ClassFileWriter.DSUB; break;
+                    case "mul":  op = ClassFileWriter.DMUL; break;
+                    case "quot": op = ClassFileWriter.DDIV; break;
+                    default:     op = 0;
+                    }
+                    final ConsCell args = (ConsCell)cdr(form);
+                    if (op != 0 && args != null) {
+                        if (cdr(args) == null && (op == ClassFileWriter.DSUB || op == ClassFileWriter.DDIV)) {
+                            m.doubleConst(op == ClassFileWriter.DSUB ? 0.0 : 1.0);
+                            doubleValue(car(args));
+                            m.insn(op, -2);
+                            return;
+                        }
+                        doubleValue(car(args));
+                        for (Object arg: (ConsCell)cdr(args)) { doubleValue(arg); m.insn(op, -2); }
+                        return;
+                    }
+                }
+                value(form);
+                m.methodInsn(ClassFileWriter.INVOKESTATIC, RT, "toDouble", "(" + OBJ + ")D");
+            }
 
-            for (String prim: primitives) map.put(intern(prim), mangle(prim, 0));
-            for (String[] alias:  aliasedPrimitives) map.put(intern(alias[0]), alias[1]);
+            private static String methodDesc(int arity) {
+                final StringBuilder desc = new StringBuilder("(");
+                for (int i = 0; i < arity; i++) desc.append(OBJ);
+                return desc.append(')').append(OBJ).toString();
+            }
 
-            return map;
+            private static String descriptor(Class<?> c) {
+                if (c == double.class) return "D";
+                if (c == long.class) return "J";
+                if (c == int.class) return "I";
+                if (c == boolean.class) return "Z";
+                if (c == char.class) return "C";
+                if (c.isArray()) return c.getName().replace('.', '/');
+                return "L" + c.getName().replace('.', '/') + ';';
+            }
         }
 
-        private ConsCell customEnvironment;
-        /** {@code customEnvironment} must be an alist (symbol . CompilerPrimitive) or (symbol . Primitive) */
-        public void setCustomEnvironment(ConsCell customEnvironment) { this.customEnvironment = customEnvironment; }
+        private @NotNull Class<MurmelProgram> bytecodeToClass(String unitName, List<Object> forms, String jarFileName) throws Exception {
+            final short prevSpeed = intp.speed, prevDebug = intp.debug;
+            macroEnv = new MacroEnv();
+            final BytecodeBackend backend = new BytecodeBackend(this, unitName);
+            final byte[] bytes;
+            try { bytes = backend.compile(forms); }
+            catch (IllegalArgumentException e) { throw new UnsupportedForm(e.getMessage()); }
+            finally { intp.speed = prevSpeed;  intp.debug = prevDebug;  macroEnv = null; }
+            backend.evalDeferred();
+
+            final Map<String, byte[]> classes = Collections.singletonMap(unitName, bytes);
+            if (jarFileName != null) JavaCompilerHelper.writeJar(jarFileName, unitName, classes);
+            @SuppressWarnings("unchecked")
+            final Class<MurmelProgram> ret = (Class<MurmelProgram>)Class.forName(unitName, true, new MurmelClassLoader(classes));
+            return ret;
+        }
 
 
 
@@ -9999,6 +14084,15 @@ public class LambdaJ {
         }
 
         public @NotNull Class <MurmelProgram> formsToJavaClass(String unitName, ObjectReader forms, String jarFileName) throws Exception {
+            if (backend == Backend.BYTECODE && customEnvironment == null && !instrumentCalls) {
+                final List<Object> formList = new ArrayList<>();
+                final Object eof = "EOF";
+                for (Object form = forms.readObj(true, eof); form != eof; form = forms.readObj(true, eof)) formList.add(form);
+                try { return bytecodeToClass(unitName, formList, jarFileName); }
+                catch (UnsupportedForm e) { intp.clearMacros(); }
+                final Iterator<Object> it = formList.iterator();
+                forms = end -> it.hasNext() ? it.next() : end;
+            }
             final StringWriter w = new StringWriter();
             formsToJavaSource(w, unitName, forms);
             final Class<MurmelProgram> ret = javaCompiler.javaToClass(unitName, w.toString(), jarFileName);
@@ -10020,6 +14114,17 @@ public class LambdaJ {
 
         private MacroEnv macroEnv;
 
+        /** compile Java source that was created by {@link #formsToJavaSource} */
+        @NotNull Class<MurmelProgram> javaToClass(String unitName, String javaSource) throws Exception {
+            return javaCompiler.javaToClass(unitName, javaSource, null);
+        }
+
+        /** compile several Java sources that were created by {@link #formsToJavaSource} with one invocation of the Java compiler */
+        @SuppressWarnings("unchecked")
+        @NotNull List<Class<MurmelProgram>> javaToClasses(List<String> unitNames, List<String> javaSources) throws Exception {
+            return (List<Class<MurmelProgram>>)(List<?>)javaCompiler.javaToClasses(unitNames, javaSources);
+        }
+
         /** Compile the Murmel compilation unit to Java source for a standalone application class {@code unitName}
          *  with a "public static void main()" */
         public void formsToJavaSource(Writer w, String unitName, ObjectReader forms) {
@@ -10074,6 +14179,7 @@ public class LambdaJ {
 
             /// first pass: emit toplevel define/ defun forms
             final short prevSpeed = intp.speed, prevDebug = intp.debug;
+            final Map<Object, Object> prevDeclaimedTypes = new IdentityHashMap<>(intp.declaimedTypes);
             passTwo = false;
             implicitDecl = new HashSet<>();
             globalDecl = new HashSet<>();
@@ -10119,6 +14225,7 @@ public class LambdaJ {
 
             /// second pass: emit toplevel forms that are not define or defun as well as the actual assignments for define/ defun
             intp.speed = prevSpeed;  intp.debug = prevDebug;
+            intp.declaimedTypes.clear();  intp.declaimedTypes.putAll(prevDeclaimedTypes);
             passTwo = true;
             emitToplevelForms(ret, bodyForms, globalEnv, globalEnv);
 
@@ -10145,7 +14252,7 @@ public class LambdaJ {
                     switch (((LambdaJSymbol)op).wellknownSymbol) {
 
                     case sDefine: {
-                        if (!complexFormSeen) complexFormSeen = consp(caddr(ccForm)) && sJmethod != car(caddr(ccForm));
+                        if (!complexFormSeen) complexFormSeen = consp(caddr(ccForm)) && sJmethod != car(caddr(ccForm)) || pooledAtom(caddr(ccForm));
                         globalEnv = defineToJava(ret, ccForm, globalEnv, 0);
                         intp.eval(ccForm, null);
                         if (complexFormSeen) bodyForms.add(ccForm);
@@ -10268,7 +14375,7 @@ public class LambdaJ {
                         break;
                     }
 
-                    if (null != ((LambdaJSymbol)op).macro) {
+                    if (null != intp.macroOf((LambdaJSymbol)op)) {
                         errorInternal("unexpected unexpanded macrocall: %s", printSEx(form));
                     }
                 }
@@ -10346,14 +14453,14 @@ public class LambdaJ {
                     emitClearValues(sb, form);
                     sb.append("        try {\n"
                               + "        ").append(javasym).append(" = new CompilerGlobal(");
-                    emitForm(sb, caddr(form), env, env, 0, false);
+                    emitDefineValue(sb, symbol, caddr(form), env);
                     sb.append(");\n        }\n"
                               + "        catch (Exception e) { rterror(e); }\n");
                 }
                 else {
                     emitLoc(sb, form, 40);
                     sb.append("        ").append(javasym).append(" = new CompilerGlobal(");
-                    emitForm(sb, caddr(form), env, env, 0, false);
+                    emitDefineValue(sb, symbol, caddr(form), env);
                     sb.append(");\n");
                 }
                 sb.append("        return intern(\"").append(symbol).append("\");\n"
@@ -10361,7 +14468,7 @@ public class LambdaJ {
             }
             else {
                 sb.append("    public CompilerGlobal ").append(javasym).append(" = new CompilerGlobal(");
-                emitForm(sb, caddr(form), env, env, 0, false);
+                emitDefineValue(sb, symbol, caddr(form), env);
                 sb.append(");\n\n");
             }
             return env;
@@ -10452,8 +14559,50 @@ public class LambdaJ {
             return false;
         }
 
+        /** return true if none of {@code forms} will be emitted as Java code that contains a Java lambda or anonymous class,
+         *  i.e. local variables that are used in {@code forms} needn't be effectively final */
+        private boolean noClosures(Object forms) {
+            for (Object form: (ConsCell)forms) {
+                if (atom(form)) continue;
+                final Object op = car(form);
+                if (!symbolp(op)) return false;
+                final ConsCell args = (ConsCell)cdr(form);
+                switch (((LambdaJSymbol)op).wellknownSymbol) {
+                case sQuote: case sDeclare:
+                    continue;
+                case sSetQ:
+                    if (cddr(args) != null) return false; // more than one assignment is emitted as a Java lambda
+                    break;
+                case sIf:
+                    break;
+                case sProgn:
+                    if (cdr(args) != null) return false;
+                    break;
+                case sCond:
+                    if (args != null) for (Object clause: args) {
+                        if (!consp(clause) || cddr(clause) != null || !noClosures(clause)) return false;
+                    }
+                    continue;
+                default:
+                    if (((LambdaJSymbol)op).specialForm()) return false;
+                }
+                if (args != null && !noClosures(args)) return false;
+            }
+            return true;
+        }
+
+        /** {@code args} is either the name of an argument array or the prefix of parameter variables that ends with '_' */
+        private static String paramRef(String args, int n) {
+            return args.endsWith("_") ? args + n : args + '[' + n + ']';
+        }
+
         private String currentFunctionName = "_";
         private void emitNamedLambda(String func, WrappingWriter sb, LambdaJSymbol symbol, Object params, ConsCell body, ConsCell env, ConsCell topEnv, int rsfx, boolean emitSelf) {
+            emitNamedLambda(func, sb, symbol, params, body, env, topEnv, rsfx, emitSelf, null);
+        }
+
+        /** @param argForms the initial argument forms of a named let or null */
+        private void emitNamedLambda(String func, WrappingWriter sb, LambdaJSymbol symbol, Object params, ConsCell body, ConsCell env, ConsCell topEnv, int rsfx, boolean emitSelf, ConsCell argForms) {
             final String javasym = mangleFunctionName(symbol.toString(), rsfx);
             final String prevName = currentFunctionName;
             currentFunctionName = javasym + '_';
@@ -10486,31 +14635,498 @@ public class LambdaJ {
                 minParams = maxParams = listLength((ConsCell)params);
             }
 
-            sb.append("new ").append(intf).append("() {\n");
-            if (emitSelf) sb.append("        private final ").append(intf).append(" ").append(javasym).append(" = this;\n");
-            sb.append("        public final Object apply(Object... args").append(rsfx).append(") {\n"
-                    + "        return ").append(javasym).append("(args").append(rsfx).append(");\n        }\n" 
-                    + "        private Object ").append(javasym).append("(Object[] args").append(rsfx).append(") {\n");
-            final ConsCell extenv = params(func, sb, params, env, rsfx, symbol.toString(), true);
+            // functions with up to 4 parameters get an additional entry point that takes the arguments as Java parameters
+            // unless the parameters may be captured by a Java lambda which would need them to be effectively final
+            final boolean fixedArity = minParams == maxParams && minParams <= 4 && (minParams == 0 || noClosures(body));
+            final String fnIntf = fixedArity ? intf + minParams : intf;
+            final String args = "args" + rsfx;
+            sb.append("new ").append(fnIntf).append("() {\n");
+            if (emitSelf) sb.append("        private final ").append(fnIntf).append(" ").append(javasym).append(" = this;\n");
+            final ConsCell extenv;
+            if (fixedArity) {
+                sb.append("        public final Object apply(Object... ").append(args).append(") {\n"
+                        + "        argCheck(\"").append(symbol.toString()).append("\", ").append(minParams).append(", ").append(args).append(");\n"
+                        + "        return apply").append(minParams).append('(');
+                for (int i = 0; i < minParams; i++) sb.append(i == 0 ? "" : ", ").append(args).append('[').append(i).append(']');
+                sb.append(");\n        }\n"
+                        + "        public final Object apply").append(minParams).append('(');
+                for (int i = 0; i < minParams; i++) sb.append(i == 0 ? "" : ", ").append("Object ").append(args).append('_').append(i);
+                sb.append(") {\n");
+                extenv = fixedParams(func, (ConsCell)params, env, args + '_');
+            }
+            else {
+                sb.append("        public final Object apply(Object... ").append(args).append(") {\n"
+                        + "        return ").append(javasym).append('(').append(args).append(");\n        }\n"
+                        + "        private Object ").append(javasym).append("(Object[] ").append(args).append(") {\n");
+                extenv = params(func, sb, params, env, rsfx, symbol.toString(), true);
+            }
+            final String recurArgs = fixedArity ? args + '_' : args;
+            final char[] types = fixedArity ? paramTypes((ConsCell)params, body, symbol, argForms, env) : null;
+            final String label = Profiler.label(symbol, body);
+            final ConsCell declarations = body;
+            while (cdr(body) != null && consp(car(body)) && car(car(body)) == intern(DECLARE)) body = (ConsCell)cdr(body);
+            if (types != null) {
+                // some parameters were declared as fixnum or double-float: the body goes into a method with primitive parameters
+                sb.append("        return ").append(javasym).append('(');
+                for (int i = 0; i < minParams; i++) {
+                    sb.append(i == 0 ? "" : ", ");
+                    if (types[i] != 0) sb.append(requireFn(types[i])).append('(').append(args).append('_').append(i).append(')');
+                    else sb.append(args).append('_').append(i);
+                }
+                sb.append(");\n        }\n"
+                        + "        private Object ").append(javasym).append('(');
+                for (int i = 0; i < minParams; i++) {
+                    sb.append(i == 0 ? "" : ", ").append(javaType(types[i])).append(' ').append(args).append('_').append(i);
+                    if (types[i] != 0) primitiveLocals.put(args + '_' + i, types[i]);
+                }
+                sb.append(") {\n");
+            }
+            // leading declarations are checked on each iteration, i.e. whenever the parameters were bound
+            final List<String> checks = new ArrayList<>();
+            for (ConsCell d = declarations; d != body; d = (ConsCell)cdr(d)) checks.addAll(declareChecks((ConsCell)cdr(car(d)), extenv, topEnv));
 
             if (cdr(body) == null) {
                 if (maybeRecursive) sb.append("        ").append(javasym).append(": while (true) {\n");
-                emitStmts(sb, body, extenv, topEnv, rsfx, "        return ", symbol, "args" + rsfx, minParams, maxParams, false, false);
+                emitCallEnter(sb, label, rsfx);
+                for (String check: checks) sb.append("        ").append(check).append(";\n");
+                emitStmts(sb, body, extenv, topEnv, rsfx, "        return ", symbol, recurArgs, minParams, maxParams, false, false);
+                emitCallExit(sb, rsfx);
                 if (maybeRecursive) sb.append("        }\n");
             }
             else {
                 final String ret = "ret" + rsfx;
                 sb.append("        Object ").append(ret).append(";\n");
                 if (maybeRecursive) sb.append("        ").append(javasym).append(": while (true) {\n");
-                emitStmts(sb, body, extenv, topEnv, rsfx, "        " + ret + " = ", symbol, "args" + rsfx, minParams, maxParams, false, false);
-                if (maybeRecursive) sb.append("        break;\n        }\n");
+                emitCallEnter(sb, label, rsfx);
+                for (String check: checks) sb.append("        ").append(check).append(";\n");
+                emitStmts(sb, body, extenv, topEnv, rsfx, "        " + ret + " = ", symbol, recurArgs, minParams, maxParams, false, false);
+                if (maybeRecursive) sb.append("        break;\n");
+                emitCallExit(sb, rsfx);
+                if (maybeRecursive) sb.append("        }\n");
                 sb.append("        return ").append(ret).append(";\n");
             }
             sb.append("        } }");
 
+            if (types != null) for (int i = 0; i < minParams; i++) primitiveLocals.remove(args + '_' + i);
             currentFunctionName = prevName;
         }
 
+        /// call statistics
+        /** if {@link #instrumentCalls} is set: record the invocation of the function {@code label} until the code emitted by {@link #emitCallExit}.
+         *  Inside the loop of a self-recursive function so that a self tailcall counts as a call, as in the interpreter. */
+        private void emitCallEnter(WrappingWriter sb, String label, int rsfx) {
+            if (!instrumentCalls) return;
+            sb.append("        final int calls").append(rsfx).append(" = callEnter(\"");
+            stringToJava(sb, label, -1);
+            sb.append("\");\n        try {\n");
+        }
+
+        private void emitCallExit(WrappingWriter sb, int rsfx) {
+            if (instrumentCalls) sb.append("        }\n        finally { callExit(calls").append(rsfx).append("); }\n");
+        }
+
+        /// primitive locals
+        /** Java names of local variables that are Java {@code long} ('J'), {@code double} ('D') or {@code ConsCell} ('C') variables
+         *  because they were declared as fixnum or double-float or because their type was inferred */
+        private final Map<String, Character> primitiveLocals = new HashMap<>();
+
+        private static String javaType(char type) {
+            return type == 'D' ? "double" : type == 'J' ? "long" : type == 'C' ? "ConsCell" : "Object";
+        }
+
+        /** name of the runtime method that converts an Object to the Java type for {@code type} */
+        private static String requireFn(char type) {
+            return type == 'D' ? "requireDouble" : type == 'J' ? "requireFixnum" : "requireCons";
+        }
+
+        /** return the types of the parameters {@code params} as declared by leading {@code declare} forms in {@code body}
+         *  or by {@code (declaim (type ...))} or as inferred from {@code argForms} and the recursive calls in {@code body},
+         *  or null if none of the parameters has a known type */
+        private char[] paramTypes(ConsCell params, ConsCell body, LambdaJSymbol symbol, ConsCell argForms, ConsCell env) {
+            if (params == null) return null;
+            final int n = listLength(params);
+            final char[] types = new char[n];
+            final boolean[] declared = new boolean[n];
+            int i = 0;
+            for (Object param: params) {
+                declared[i] = (types[i] = primitiveType(declaredType(param, body))) != 0;
+                i++;
+            }
+            final boolean infer = argForms != null && inferTypes() && listLength(argForms) == n;
+            if (!infer && !typed(types)) return null;
+
+            final BodyInfo info = scanBody(body, symbol);
+            boolean checkCalls = infer && !info.labelEscapes;
+            if (checkCalls) {
+                // named let: the parameters get the types of the initial values if all recursive calls and assignments agree
+                i = 0;
+                Object p = params;
+                for (Object argForm: argForms) {
+                    if (!declared[i] && !info.bound.contains(car(p))) types[i] = inferType(argForm, env, Collections.emptyMap(), Collections.emptySet());
+                    i++;  p = cdr(p);
+                }
+                for (ConsCell call: info.calls) {
+                    if (listLength(call) != n) { // wrong argcount will be reported at runtime
+                        for (i = 0; i < n; i++) if (!declared[i]) types[i] = 0;
+                        checkCalls = false;
+                        break;
+                    }
+                }
+            }
+            // declared parameters as well as inferred parameters are primitives only if all assigned values are known to have that type
+            if (checkCalls && !info.calls.isEmpty() || !info.assignments.isEmpty()) {
+                final Map<Object, Character> assumed = new HashMap<>();
+                boolean changed;
+                do {
+                    changed = false;
+                    i = 0;
+                    for (Object param: params) assumed.put(param, types[i++]);
+                    if (checkCalls) for (ConsCell call: info.calls) {
+                        i = 0;
+                        for (Object arg: call) {
+                            changed |= checkInferred(types, declared, i++, arg, env, assumed, info.bound);
+                        }
+                    }
+                    for (ConsCell assignment: info.assignments) {
+                        final int idx = indexOf(car(assignment), params);
+                        if (idx >= 0) changed |= checkAssigned(types, idx, cadr(assignment), env, assumed, info.bound);
+                    }
+                } while (changed);
+            }
+            return typed(types) ? types : null;
+        }
+
+        /** return the types of the variables of a let or let* form as declared or as inferred from the initial values and the assignments in {@code body},
+         *  or null if none of the variables has a known type */
+        private char[] letTypes(boolean letStar, ConsCell bindings, ConsCell body, ConsCell env) {
+            final int n = listLength(bindings);
+            final char[] types = new char[n];
+            final boolean[] declared = new boolean[n];
+            final List<Object> vars = new ArrayList<>(n);
+            final Map<Object, Character> assumed = new HashMap<>();
+            final Set<Object> unknown = Collections.emptySet();
+            int i = 0;
+            for (Object binding: bindings) {
+                final Object var = car(binding), init = cadr(binding);
+                if (vars.contains(var)) return null;
+                vars.add(var);
+                if (init != null) {
+                    types[i] = primitiveType(declaredType(var, body));
+                    declared[i] = types[i] != 0;
+                    if (types[i] == 0 && inferTypes()) types[i] = inferType(init, env, letStar ? assumed : Collections.emptyMap(), unknown);
+                }
+                assumed.put(var, types[i++]);
+            }
+            if (!typed(types)) return null;
+
+            // let*: the initial values of the following variables may assign or capture a variable, too
+            final ConsCell forms = letStar ? initForms(bindings, body) : body;
+            final BodyInfo info = scanBody(forms, null);
+            boolean changed = false;
+            for (i = 0; i < n; i++) {
+                if (types[i] == 0) continue;
+                if (info.bound.contains(vars.get(i))) { types[i] = 0;  changed = true; }
+            }
+            if (!info.assignments.isEmpty()) {
+                final boolean noClosures = noClosures(forms);
+                do {
+                    if (changed) for (i = 0; i < n; i++) assumed.put(vars.get(i), types[i]);
+                    changed = false;
+                    for (ConsCell assignment: info.assignments) {
+                        final int idx = vars.indexOf(car(assignment));
+                        if (idx < 0 || types[idx] == 0) continue;
+                        if (!noClosures) { types[idx] = 0;  changed = true; } // assigned Java locals can't be captured by Java lambdas
+                        else changed |= checkAssigned(types, idx, cadr(assignment), env, assumed, info.bound);
+                    }
+                    if (letStar && changed) {
+                        // the initial value of a let* variable may depend on a preceeding variable whose type was reset
+                        final Map<Object, Character> preceeding = new HashMap<>();
+                        i = 0;
+                        for (Object binding: bindings) {
+                            changed |= checkInferred(types, declared, i, cadr(binding), env, preceeding, unknown);
+                            preceeding.put(car(binding), types[i++]);
+                        }
+                    }
+                } while (changed);
+            }
+            return typed(types) ? types : null;
+        }
+
+        /** return a list of the initial value forms of {@code bindings} followed by {@code tail} */
+        private static ConsCell initForms(ConsCell bindings, ConsCell tail) {
+            final ListBuilder ret = new ListBuilder();
+            for (Object binding: bindings) ret.append(cadr(binding));
+            ret.appendLast(tail);
+            return (ConsCell)ret.first();
+        }
+
+        private static boolean typed(char[] types) {
+            for (char type: types) if (type != 0) return true;
+            return false;
+        }
+
+        /** return true and reset the inferred type {@code types[idx]} if the type of {@code form} doesn't match */
+        private boolean checkInferred(char[] types, boolean[] declared, int idx, Object form, ConsCell env, Map<Object, Character> assumed, Set<Object> unknown) {
+            if (declared[idx]) return false;
+            return checkAssigned(types, idx, form, env, assumed, unknown);
+        }
+
+        /** return true and reset the type {@code types[idx]} if the type of the assigned value {@code form} doesn't match.
+         *  Applies to declared variables as well: {@code setq} doesn't check or convert, see {@link LambdaJ#evalDeclare} */
+        private boolean checkAssigned(char[] types, int idx, Object form, ConsCell env, Map<Object, Character> assumed, Set<Object> unknown) {
+            if (types[idx] == 0 || inferType(form, env, assumed, unknown) == types[idx]) return false;
+            types[idx] = 0;
+            return true;
+        }
+
+        private static int indexOf(Object sym, ConsCell symbols) {
+            int i = 0;
+            for (Object o: symbols) { if (o == sym) return i;  i++; }
+            return -1;
+        }
+
+        private Object declaredType(Object var, ConsCell body) {
+            if (body != null) for (Object form: body) {
+                if (!consp(form) || car(form) != intern(DECLARE)) break;
+                for (Object declSpec: listOrMalformed(DECLARE, cdr(form))) {
+                    if (!consp(declSpec)) errorMalformed(DECLARE, "a declaration specifier", declSpec);
+                    Object type = car(declSpec), vars = cdr(declSpec);
+                    if (type == intern(TYPE_DECL)) { type = cadr(declSpec); vars = cddr(declSpec); }
+                    if (consp(vars)) for (Object v: (ConsCell)vars) if (v == var) return type;
+                }
+            }
+            return null; // (declaim (type ...)) is about global variables and doesn't apply to local variables of the same name
+        }
+
+        /** return Java expressions that check and convert the local variables that are declared as fixnum or double-float
+         *  by {@code declSpecs} and that are not primitive locals, same as {@link LambdaJ#evalDeclare}.
+         *  Primitive locals were checked when they were bound. */
+        private List<String> declareChecks(ConsCell declSpecs, ConsCell env, ConsCell topEnv) {
+            final List<String> ret = new ArrayList<>();
+            if (declSpecs != null) for (Object declSpec: declSpecs) {
+                if (!consp(declSpec)) errorMalformed(DECLARE, "a declaration specifier", declSpec);
+                Object type = car(declSpec), vars = cdr(declSpec);
+                if (type == intern(TYPE_DECL)) { type = cadr(declSpec);  vars = cddr(declSpec); }
+                final char primitiveType = primitiveType(type);
+                if (primitiveType == 0) continue;
+                for (Object var: listOrMalformed(DECLARE, vars)) {
+                    final ConsCell entry = fastassq(var, env);
+                    if (entry == null || entry == fastassq(var, topEnv) || localType(var, env) != 0) continue;
+                    final String javaName = javasym(var, env);
+                    if (primitiveType == 'J') ret.add(javaName + " = Boxes.box(requireFixnum(" + javaName + "))");
+                    else ret.add("requireDouble(" + javaName + ')');
+                }
+            }
+            return ret;
+        }
+
+        private char primitiveType(Object type) {
+            if (type == intern(DOUBLE_FLOAT)) return 'D';
+            if (type == intern(FIXNUM)) return 'J';
+            return 0;
+        }
+
+        /** return 'J', 'D' or 'C' if {@code form} is a symbol that refers to a typed local variable, 0 otherwise */
+        private char localType(Object form, ConsCell env) {
+            if (primitiveLocals.isEmpty() || !(form instanceof LambdaJSymbol)) return 0;
+            final ConsCell entry = fastassq(form, env);
+            if (entry == null || !(cdr(entry) instanceof String)) return 0;
+            final Character type = primitiveLocals.get(cdr(entry));
+            return type == null ? 0 : type;
+        }
+
+        /** return true if {@code form} can be emitted as a Java {@code long} expression by {@link #emitFixnum} */
+        private boolean isFixnumForm(Object form, ConsCell env) {
+            if (form instanceof Long) return (Long)form >= MOST_NEGATIVE_FIXNUM_VAL && (Long)form <= MOST_POSITIVE_FIXNUM_VAL;
+            if (form instanceof LambdaJSymbol) return localType(form, env) == 'J';
+            if (consp(form) && intp.speed >= 1 && (wellknown(car(form)) == WellknownSymbol.sInc || wellknown(car(form)) == WellknownSymbol.sDec)
+                && consp(cdr(form)) && cddr(form) == null) return isFixnumForm(cadr(form), env);
+            return false;
+        }
+
+        private static WellknownSymbol wellknown(Object op) {
+            return op instanceof LambdaJSymbol ? ((LambdaJSymbol)op).wellknownSymbol : null;
+        }
+
+        private void emitFixnum(WrappingWriter sb, Object form, ConsCell env) {
+            if (form instanceof Long) sb.append(form.toString()).append('L');
+            else if (form instanceof LambdaJSymbol) sb.append(javasym(form, env));
+            else {
+                sb.append(wellknown(car(form)) == WellknownSymbol.sInc ? "incFixnum(" : "decFixnum(");
+                emitFixnum(sb, cadr(form), env);
+                sb.append(')');
+            }
+        }
+
+        /** if {@code form} is {@code (+ a b)}, {@code (- a b)}, {@code (- a)} or {@code (* a b)} with fixnum arguments then emit a Java {@code long}
+         *  expression that is checked to be in the fixnum range. Murmel arithmetic would compute the same value as a double-float
+         *  that would then be converted to a fixnum by {@code requireFixnum(double)}. */
+        private boolean emitFixnumArithmetic(WrappingWriter sb, Object form, ConsCell env) {
+            if (!consp(form) || intp.speed < 1) return false;
+            final WellknownSymbol ws = wellknown(car(form));
+            if (ws != WellknownSymbol.sAdd && ws != WellknownSymbol.sSub && ws != WellknownSymbol.sMul) return false;
+            final Object args = cdr(form);
+            if (!consp(args) || !isFixnumForm(car(args), env)) return false;
+            if (cdr(args) == null) {
+                if (ws != WellknownSymbol.sSub) return false;
+                sb.append("-(");  emitFixnum(sb, car(args), env);  sb.append(')'); // the fixnum range is symmetric
+                return true;
+            }
+            if (!consp(cdr(args)) || cddr(args) != null || !isFixnumForm(cadr(args), env)) return false;
+            if (ws == WellknownSymbol.sMul) {
+                sb.append("mulFixnum(");  emitFixnum(sb, car(args), env);  sb.append(", ");  emitFixnum(sb, cadr(args), env);  sb.append(')');
+            }
+            else {
+                // can't overflow a long: both operands are fixnums
+                sb.append("requireFixnum(");  emitFixnum(sb, car(args), env);  sb.append(ws == WellknownSymbol.sAdd ? " + " : " - ");  emitFixnum(sb, cadr(args), env);  sb.append(')');
+            }
+            return true;
+        }
+
+        /** emit {@code form} as a Java expression of the primitive type {@code type} that is checked at runtime if necessary */
+        private void emitPrimitive(WrappingWriter sb, char type, Object form, ConsCell env, ConsCell topEnv, int rsfx) {
+            if (type == 'J') {
+                if (isFixnumForm(form, env)) { emitFixnum(sb, form, env); return; }
+                if (emitFixnumArithmetic(sb, form, env)) return;
+                sb.append("requireFixnum(");  emitForm(sb, form, env, topEnv, rsfx, false);  sb.append(')');
+            }
+            else {
+                if (form instanceof Double) { emitAtom(sb, form); return; }
+                if (localType(form, env) == type) { sb.append(javasym(form, env)); return; }
+                // requireDouble(double) is a no-op, so opencoded arithmetic such as (+ a b) doesn't get boxed. Same for requireCons(ConsCell) and e.g. _cons()
+                sb.append(requireFn(type)).append('(');  emitForm(sb, form, env, topEnv, rsfx, false);  sb.append(')');
+            }
+        }
+
+
+        /// local type inference
+        /** whether the types of local variables should be inferred. With debug >= 2 all values are stored as Object and checked on use. */
+        private boolean inferTypes() {
+            return intp.debug < 2 && intp.speed >= 1;
+        }
+
+        /** return the type of the value of {@code form} if it is known at compiletime: 'D' for double-float, 'J' for fixnum, 'C' for a cons, 0 otherwise.
+         *  Symbols in {@code assumed} have the given type, symbols in {@code unknown} may refer to other variables than in {@code env}. */
+        private char inferType(Object form, ConsCell env, Map<Object, Character> assumed, Set<Object> unknown) {
+            if (form instanceof Double) return 'D';
+            if (form instanceof Long) return isFixnumForm(form, env) ? 'J' : 0;
+            if (form instanceof LambdaJSymbol) {
+                if (unknown.contains(form)) return 0;
+                final Character type = assumed.get(form);
+                return type != null ? type : localType(form, env);
+            }
+            if (!consp(form)) return 0;
+            final WellknownSymbol ws = wellknown(car(form));
+            if (ws == null) return 0;
+            final Object args = cdr(form);
+            switch (ws) {
+            case sAdd: case sSub: case sMul: case sDiv:
+                return 'D'; // Murmel arithmetic always returns double-float
+            case sInc: case sDec: {
+                final char type = inferType(car(args), env, assumed, unknown);
+                return type == 'J' || type == 'D' ? type : 0;
+            }
+            case sCons:
+                return 'C';
+            case sList:
+                return args != null ? 'C' : 0;
+            case sIf: {
+                final char type = inferType(cadr(args), env, assumed, unknown);
+                return type == inferType(caddr(args), env, assumed, unknown) ? type : 0;
+            }
+            case sProgn: {
+                Object lastForm = null;
+                for (Object o = args; consp(o); o = cdr(o)) lastForm = car(o);
+                return inferType(lastForm, env, assumed, unknown);
+            }
+            default:
+                return 0;
+            }
+        }
+
+        /** symbols that are bound and assigned in a body, and the calls of a local function */
+        private static final class BodyInfo {
+            final Set<Object> bound = new HashSet<>();
+            final List<ConsCell> assignments = new ArrayList<>(); // (symbol valueform)
+            final List<ConsCell> calls = new ArrayList<>();        // argument lists
+            boolean labelEscapes;                                 // the local function was used other than in a call
+        }
+
+        /** scan the fully macroexpanded {@code forms} for bindings, assignments and uses of the local function {@code label} which may be null */
+        private static BodyInfo scanBody(Object forms, LambdaJSymbol label) {
+            final BodyInfo info = new BodyInfo();
+            scanForms(forms, label, info);
+            return info;
+        }
+
+        private static void scanForms(Object forms, LambdaJSymbol label, BodyInfo info) {
+            for (Object o = forms; consp(o); o = cdr(o)) scanForm(car(o), label, info);
+        }
+
+        private static void scanForm(Object form, LambdaJSymbol label, BodyInfo info) {
+            if (label != null && form == label) { info.labelEscapes = true; return; }
+            if (!consp(form)) return;
+            final Object op = car(form);
+            Object args = cdr(form);
+            final WellknownSymbol ws = wellknown(op);
+            if (ws != null) switch (ws) {
+            case sQuote: case sDeclare: case sDeclaim:
+                return;
+            case sSetQ:
+                for (Object pairs = args; consp(pairs); pairs = cddr(pairs)) {
+                    if (label != null && car(pairs) == label) info.labelEscapes = true;
+                    info.assignments.add(ConsCell.cons(car(pairs), ConsCell.cons(cadr(pairs), null)));
+                    scanForm(cadr(pairs), label, info);
+                }
+                return;
+            case sLambda: case sLambdaDynamic:
+                addBound(car(args), info);
+                scanForms(cdr(args), label, info);
+                return;
+            case sLet: case sLetStar: case sLetrec:
+                if (car(args) instanceof LambdaJSymbol) { info.bound.add(car(args));  args = cdr(args); }
+                for (Object bindings = car(args); consp(bindings); bindings = cdr(bindings)) {
+                    final Object binding = car(bindings);
+                    if (consp(binding)) { info.bound.add(car(binding));  scanForms(cdr(binding), label, info); }
+                    else info.bound.add(binding);
+                }
+                scanForms(cdr(args), label, info);
+                return;
+            case sLabels:
+                for (Object fns = car(args); consp(fns); fns = cdr(fns)) {
+                    final Object fn = car(fns);
+                    info.bound.add(car(fn));
+                    addBound(cadr(fn), info);
+                    scanForms(cddr(fn), label, info);
+                }
+                scanForms(cdr(args), label, info);
+                return;
+            case sMultipleValueBind:
+                addBound(car(args), info);
+                scanForms(cdr(args), label, info);
+                return;
+            case sDefine: case sDefun: case sDefmacro:
+                info.bound.add(car(args));
+                if (ws != WellknownSymbol.sDefine) { addBound(cadr(args), info);  args = cdr(args); }
+                scanForms(cdr(args), label, info);
+                return;
+            case sCond:
+                for (Object clauses = args; consp(clauses); clauses = cdr(clauses)) scanForms(car(clauses), label, info);
+                return;
+            default:
+                break;
+            }
+            if (label != null && op == label) info.calls.add((ConsCell)args);
+            else scanForm(op, label, info);
+            scanForms(args, label, info);
+        }
+
+        private static void addBound(Object params, BodyInfo info) {
+            Object o = params;
+            for (; consp(o); o = cdr(o)) info.bound.add(car(o));
+            if (o != null) info.bound.add(o);
+        }
+
 
         /// emitToplevelForms - compile a list of Murmel forms to Java source
         /** generate Java code for a list of forms. Each form but the last will be emitted as an assignment
@@ -10581,6 +15197,11 @@ public class LambdaJ {
                     return; // ignore return value, must be dead code
                 }
             }
+            if (consp(form) && symbolEq(car(form), DECLARE)) {
+                for (String check: declareChecks((ConsCell)cdr(form), env, topEnv)) sb.append("        ").append(check).append(";\n");
+                if (!hasNext) sb.append(retLhs).append("null;\n");
+                return;
+            }
 
             if (atom(form)) {
                 if (clearValues) emitClearValues(sb);
@@ -10742,9 +15363,12 @@ public class LambdaJ {
                     }
                     final String vName = "v" + rsfx;
                     final int nVars = listLength(ccBindings);
-                    sb.append("        final Object[] ").append(vName);
-                    if (symop.wellknownSymbol == WellknownSymbol.sLetrec) sb.append(" = unassigned(").append(nVars).append(");\n");
-                    else sb.append(" = new Object[").append(nVars).append("];\n");
+                    final char[] types = symop.wellknownSymbol == WellknownSymbol.sLetrec ? null : letTypes(symop.wellknownSymbol == WellknownSymbol.sLetStar, ccBindings, ccBody, env);
+                    if (types == null || new String(types).indexOf(0) >= 0) { // some variables are stored in an array
+                        sb.append("        final Object[] ").append(vName);
+                        if (symop.wellknownSymbol == WellknownSymbol.sLetrec) sb.append(" = unassigned(").append(nVars).append(");\n");
+                        else sb.append(" = new Object[").append(nVars).append("];\n");
+                    }
 
                     ConsCell letrecEnv = env;
                     if (symop.wellknownSymbol == WellknownSymbol.sLetrec) {
@@ -10765,12 +15389,23 @@ public class LambdaJ {
                         final ConsCell ccBinding = (ConsCell)binding;
                         containingForm = ccBinding;
                         final Object sym = car(ccBinding);
+                        final ConsCell env1 = symop.wellknownSymbol == WellknownSymbol.sLet ? env : symop.wellknownSymbol == WellknownSymbol.sLetStar ? letStarEnv : letrecEnv;
+                        if (types != null && types[localCtr] != 0) {
+                            // typed variables are Java locals, there are no duplicate names if types != null
+                            final String name = vName + '_' + localCtr;
+                            sb.append("        ").append(javaType(types[localCtr])).append(' ').append(name).append(" = ");
+                            emitPrimitive(sb, types[localCtr], cadr(ccBinding), env1, topEnv, rsfx);
+                            sb.append(";\n");
+                            primitiveLocals.put(name, types[localCtr++]);
+                            extEnv = extenvIntern((LambdaJSymbol)sym, name, extEnv);
+                            letStarEnv = extEnv;
+                            continue;
+                        }
                         if (!varNames.contains(sym)) {
                             varNames.add(sym);
                             final String name = vName + '[' + localCtr++ + ']';
                             extEnv = extenvIntern((LambdaJSymbol)sym, name, extEnv);
                         }
-                        final ConsCell env1 = symop.wellknownSymbol == WellknownSymbol.sLet ? env : symop.wellknownSymbol == WellknownSymbol.sLetStar ? letStarEnv : letrecEnv;
                         if (cadr(ccBinding) != null) emitStmt(sb, cadr(ccBinding), env1, topEnv, rsfx, "        " + javasym(sym, extEnv) + " = ", null, null, -1, -1, true, false, false);
                         letStarEnv = extEnv;
                     }
@@ -10783,6 +15418,7 @@ public class LambdaJ {
                         emitStmts(sb, ccBody, extEnv, topEnv, rsfx, retLhs, recur, recurArgs, minParams, maxParams, toplevel, hasNext);
                         sb.append("        }\n");
                     }
+                    if (types != null) for (int i = 0; i < nVars; i++) primitiveLocals.remove(vName + '_' + i);
                     return;
                 }
 
@@ -10864,13 +15500,15 @@ public class LambdaJ {
                     sb.append("        {\n");
                     ConsCell args = ccArguments;
                     for (int i = 0; i < nArgs; ++i) {
-                        sb.append("        final Object tmp").append(i).append(" = ");
-                        emitForm(sb, car(args), env, topEnv, rsfx+1, false);
+                        final Character type = primitiveLocals.get(paramRef(recurArgs, i));
+                        sb.append("        final ").append(javaType(type == null ? 0 : type)).append(" tmp").append(i).append(" = ");
+                        if (type == null) emitForm(sb, car(args), env, topEnv, rsfx+1, false);
+                        else emitPrimitive(sb, type, car(args), env, topEnv, rsfx+1);
                         sb.append(";\n");
                         args = (ConsCell)cdr(args);
                     }
                     for (int i = 0; i < nArgs; ++i) {
-                        sb.append("        ").append(recurArgs).append('[').append(i).append("] = tmp").append(i).append(";\n");
+                        sb.append("        ").append(paramRef(recurArgs, i)).append(" = tmp").append(i).append(";\n");
                     }
                     sb.append("        }\n");
                 }
@@ -10893,7 +15531,11 @@ public class LambdaJ {
 
                 /// * symbols
                 if (symbolp(form)) {
-                    sb.append(javasym(form, env));  return;
+                    final char type = localType(form, env);
+                    if (type == 'J') sb.append("Boxes.box(").append(javasym(form, env)).append(')'); // box primitive locals
+                    else if (type == 'D') sb.append("((Object)").append(javasym(form, env)).append(')');
+                    else sb.append(javasym(form, env)); // ConsCell locals are not boxed so that e.g. _car(ConsCell) will be used
+                    return;
                 }
                 /// * atoms that are not symbols
                 if (atom(form)) {
@@ -10967,8 +15609,13 @@ public class LambdaJ {
                     ///     - setq
                     case sSetQ: {
                         if (ccArguments == null) sb.append("(Object)null"); // must cast to Object in case it will be used as the only argument to a vararg function
-                        else if (cddr(ccArguments) == null)
+                        else if (cddr(ccArguments) == null) {
+                            final char type = localType(car(ccArguments), env);
+                            if (type == 'J') sb.append("Boxes.box((");
+                            else if (type != 0) sb.append("((Object)(");
                             emitSetq(sb, ccArguments, env, topEnv, rsfx, true);
+                            if (type != 0) sb.append("))");
+                        }
                         else {
                             sb.append("((Supplier<Object>)(() -> {\n");
                             String javaName = null;
@@ -11115,9 +15762,16 @@ public class LambdaJ {
                         return;
                     }
 
+                    case sDeclare: {
+                        final List<String> checks = declareChecks(ccArguments, env, topEnv);
+                        if (checks.isEmpty()) sb.append("(Object)null");
+                        else sb.append("declared(").append(String.join(", ", checks)).append(')');
+                        return;
+                    }
+
                     default:
                         /// * macro expansion - all macros were already expanded
-                        if (null != symop.macro) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symop.toString());
+                        if (null != intp.macroOf(symop)) errorNotAFunction("function application: not a primitive or " + LAMBDA + ": %s is a macro not a function", symop.toString());
 
                         /// * special case (hack) for calling macroexpand-1: only quoted forms are supported which can be performed a compile time
                         if (symbolEq(symop, "macroexpand-1")) {
@@ -11235,10 +15889,10 @@ public class LambdaJ {
         private void emitAtom(WrappingWriter sb, Object form) {
             if (isNil(form)) sb.append("(Object)null");
             else if (form instanceof Integer) sb.append(Integer.toString((Integer) form));
-            else if (form instanceof Long) sb.append(Long.toString((Long) form)).append('L');
+            else if (form instanceof Long) emitLongConstant(sb, (Long)form);
             else if (form instanceof Double) sb.append(Double.toString((Double) form));
             else if (form instanceof Character) {
-                charToJava(sb, (Character) form);
+                emitCharConstant(sb, (Character) form);
             }
             //else if (form instanceof String) sb.append("new String(\"").append(form).append("\")"); // new Object so that (eql "a" "a") is nil (Common Lisp allows both nil and t). otherwise the reader must intern strings as well
             else if (vectorp(form)) emitVectorLiteral(sb, form);
@@ -11246,6 +15900,28 @@ public class LambdaJ {
             else errorInternal("emitAtom: atom %s is not implemented", form.toString());
         }
 
+        /** whether emitAtom() will emit a reference to the constant pool which can't be used in a field initializer before the pool */
+        private static boolean pooledAtom(Object form) {
+            if (form instanceof Long) return (Long)form < -128 || (Long)form > 127;
+            if (form instanceof Character) return (Character)form >= 128;
+            return form instanceof Object[] || form instanceof boolean[] || hashtablep(form);
+        }
+
+        /** fixnums outside of Java's box cache go into the constant pool so that they will be boxed only once */
+        private void emitLongConstant(WrappingWriter sb, long l) {
+            if (l >= -128 && l <= 127) sb.append(Long.toString(l)).append('L');
+            else emitReference(sb, "Boxes.box(" + l + "L)");
+        }
+
+        /** same as {@link #emitLongConstant} for characters */
+        private void emitCharConstant(WrappingWriter sb, char c) {
+            if (c < 128) { charToJava(sb, c); return; }
+            final StringWriter b = new StringWriter();
+            final WrappingWriter csb = new WrappingWriter(b);
+            csb.append("Boxes.box("); charToJava(csb, c); csb.append(')');
+            emitReference(sb, b.toString());
+        }
+
         private static void charToJava(WrappingWriter sb, char c) {
             switch (c) {
             case '\'': sb.append("'\\''"); break;
@@ -11317,14 +15993,30 @@ public class LambdaJ {
 
         /** paramsAndForms = ((sym...) form...) */
         private void emitLambda(WrappingWriter sb, final ConsCell paramsAndForms, ConsCell env, ConsCell topEnv, int rsfx, boolean argCheck) {
+            emitLambda(sb, paramsAndForms, env, topEnv, rsfx, argCheck, null);
+        }
+
+        /** @param label if non-null then the lambda will record its calls as {@code label}, see {@link #emitCallEnter} */
+        private void emitLambda(WrappingWriter sb, final ConsCell paramsAndForms, ConsCell env, ConsCell topEnv, int rsfx, boolean argCheck, String label) {
             sb.append("(MurmelFunction)(args").append(rsfx).append(" -> {\n");
             final Object params = car(paramsAndForms);
             final String expr = "(lambda " + printSEx(params) + " ...)";
             env = params(LAMBDA, sb, params, env, rsfx, expr, argCheck);
+            if (label != null) emitCallEnter(sb, label, rsfx);
             emitStmts(sb, (ConsCell)cdr(paramsAndForms), env, topEnv, rsfx, "        return ", false, false);
+            if (label != null) emitCallExit(sb, rsfx);
             sb.append("        })");
         }
 
+        /** emit the value form of (define symbol form), a lambda will record its calls as {@code symbol} if {@link #instrumentCalls} is set */
+        private void emitDefineValue(WrappingWriter sb, LambdaJSymbol symbol, Object form, ConsCell env) {
+            if (instrumentCalls && consp(form) && car(form) == sLambda && consp(cdr(form))) {
+                final ConsCell paramsAndForms = (ConsCell)cdr(form);
+                emitLambda(sb, paramsAndForms, env, env, 0, true, Profiler.label(symbol, cdr(paramsAndForms)));
+            }
+            else emitForm(sb, form, env, env, 0, false);
+        }
+
         private int ignoredCounter = 0;
 
         /** emit a list of forms as a single Java expression */
@@ -11445,7 +16137,14 @@ public class LambdaJ {
                 }
             }
             else {
-                sb.append(javaName).append(" = ").append(clrValues);  emitForm(sb, valueForm, env, topEnv, rsfx, false); sb.append(closingParen);
+                final char type = localType(symbol, env);
+                if (type == 0) { sb.append(javaName).append(" = ").append(clrValues);  emitForm(sb, valueForm, env, topEnv, rsfx, false); sb.append(closingParen); }
+                else if (clrValues.isEmpty()) { sb.append(javaName).append(" = ");  emitPrimitive(sb, type, valueForm, env, topEnv, rsfx); }
+                else {
+                    sb.append(javaName).append(" = ").append(requireFn(type)).append('(').append(clrValues);
+                    emitForm(sb, valueForm, env, topEnv, rsfx, false);
+                    sb.append(closingParen).append(')');
+                }
             }
             return javaName;
         }
@@ -11520,7 +16219,10 @@ public class LambdaJ {
             final ConsCell ccBindings = (ConsCell)bindings;
             final ConsCell params = paramList(op, ccBindings, false);
 
-            if (named) emitNamedLambda(op, sb, loopLabel, params, body, extenvIntern(loopLabel, mangleFunctionName(loopLabel.toString(), rsfx + 1), env), topEnv, rsfx + 1, true);
+            if (named) {
+                final ConsCell argForms = ccBindings == null ? null : initForms(ccBindings, null);
+                emitNamedLambda(op, sb, loopLabel, params, body, extenvIntern(loopLabel, mangleFunctionName(loopLabel.toString(), rsfx + 1), env), topEnv, rsfx + 1, true, argForms);
+            }
             else emitLambda(sb, cons(params, body), env, topEnv, rsfx + 1, false);
 
             if (ccBindings != null) {
@@ -11757,11 +16459,25 @@ public class LambdaJ {
             return env;
         }
 
+        /** extend the environment with the parameters of a function with a fixed number of parameters that are passed as Java parameters */
+        private static ConsCell fixedParams(String func, ConsCell paramList, ConsCell env, String prefix) {
+            if (paramList == null) return env;
+            final HashSet<Object> seen = new HashSet<>();
+            int n = 0;
+            for (Object p: paramList) {
+                final LambdaJSymbol param = LambdaJ.symbolOrMalformed(func, p);
+                if (!seen.add(param)) errorMalformedFmt(func, "duplicate symbol %s", param);
+                env = extenvIntern(param, prefix + n++, env);
+            }
+            return env;
+        }
+
         private ConsCell loadFile(String func, WrappingWriter sb, Object argument, ConsCell topEnv, List<Object> bodyForms, StringBuilder globals) {
             assert !passTwo;
             final LambdaJ intp = this.intp;
             final Path prev = intp.currentSource;
             final Path p = intp.findFile(func, argument);
+            loadedFiles.add(p);
             intp.currentSource = p;
             try {
                 final SExpressionReader parser = intp.makeReader(ReadSupplier.of(p), p);
@@ -11973,8 +16689,13 @@ public class LambdaJ {
             case sMakeStringWriter: {
                 sb.append("makeStringWriter()"); return true;
             }
-            case sInc: {
-                if (consp(car(args)) && caar(args) == intern("1+")) {
+            case sInc:
+            case sDec: {
+                if (isFixnumForm(car(args), env) && cdr(args) == null) {
+                    sb.append(op.wellknownSymbol == WellknownSymbol.sInc ? "inc(" : "dec(");  emitFixnum(sb, car(args), env);  sb.append(')');
+                    return true;
+                }
+                if (op.wellknownSymbol == WellknownSymbol.sInc && consp(car(args)) && caar(args) == intern("1+")) {
                     emitCallPrimitive(sb, "incinc", (ConsCell)cdar(args), env, topEnv, rsfx);
                     return true;
                 }
@@ -12048,15 +16769,25 @@ public class LambdaJ {
             sb.append(')');
         }
 
+        /** primitives whose second argument is an index, the runtime has an overload that takes the index as a {@code long} */
+        private static final Set<String> INDEX_PRIMITIVES = new HashSet<>(Arrays.asList("_svref", "_svset", "_bvref", "_bvset", "_seqref"));
+
         /** emit a call to the primitive {@code func} without going through the trampoline,
          *  if {@code wrapper} is non-null then it will be applied to each function argument  */
         private void emitCallPrimitive(WrappingWriter sb, String func, ConsCell args, ConsCell env, ConsCell topEnv, int rsfx) {
             sb.append(func).append('(');
             if (args != null) {
                 emitForm(sb, car(args), env, topEnv, rsfx, false);
+                final boolean longIndex = INDEX_PRIMITIVES.contains(func);
+                boolean index = true;
                 if (cdr(args) != null) for (Object arg: (ConsCell)cdr(args)) {
                     sb.append(", ");
-                    emitForm(sb, arg, env, topEnv, rsfx, false);
+                    // the runtime has overloads that take a long index, so that a fixnum local needn't be boxed.
+                    // Other arguments are passed as Object so that javac doesn't find e.g. _svset(Object, long, Object) and _svset(Object, Object, Object) equally applicable
+                    if (longIndex && (index || "_bvset".equals(func)) && localType(arg, env) == 'J') sb.append(javasym(arg, env));
+                    else if (longIndex) { sb.append("(Object)("); emitForm(sb, arg, env, topEnv, rsfx, false); sb.append(')'); }
+                    else emitForm(sb, arg, env, topEnv, rsfx, false);
+                    index = false;
                 }
             }
             else sb.append("NOARGS");
@@ -12068,9 +16799,16 @@ public class LambdaJ {
             if (cdr(args) == null || cddr(args) != null) return false;
             if (setRc) sb.append("setRc(");
             if (generalizedBoolean) sb.append('(');
-            emitFormAsDouble(sb, func, car(args), env, topEnv, rsfx);
-            sb.append(' ').append(func).append(' ');
-            emitFormAsDouble(sb, func, cadr(args), env, topEnv, rsfx);
+            if (isFixnumForm(car(args), env) && isFixnumForm(cadr(args), env)) {
+                emitFixnum(sb, car(args), env);
+                sb.append(' ').append(func).append(' ');
+                emitFixnum(sb, cadr(args), env);
+            }
+            else {
+                emitFormAsDouble(sb, func, car(args), env, topEnv, rsfx);
+                sb.append(' ').append(func).append(' ');
+                emitFormAsDouble(sb, func, cadr(args), env, topEnv, rsfx);
+            }
             if (generalizedBoolean) sb.append(" ? _t : null)");
             if (setRc) sb.append(')');
             return true;
@@ -12081,6 +16819,8 @@ public class LambdaJ {
             checkNonNumber(func, form);
             if (form instanceof Long) sb.append(form.toString()).append(".0");
             else if (form instanceof Double) sb.append(form.toString());
+            else if (localType(form, env) == 'D') sb.append(javasym(form, env));
+            else if (isFixnumForm(form, env)) { sb.append("(double)");  emitFixnum(sb, form, env); }
             else { sb.append("toDouble("); emitForm(sb, form, env, topEnv, rsfx, false); sb.append(')'); }
         }
 
@@ -12410,6 +17150,443 @@ public class LambdaJ {
 
 
 
+    /** <p>Sampling profiler for Murmel code: a daemon thread periodically records the Murmel call stack of the thread that started the profiler.
+     *  Interpreted closures are recorded by {@link LambdaJ#eval} and the node interpreter while the profiler is running,
+     *  compiled functions are found in the Java stacktrace of the sampled thread.
+     *
+     *  <p>Interpreted closures are reported as the name they were given by defun, labels or named let (or "lambda")
+     *  followed by the file and line of their body. Compiled functions are reported by the name of the global function,
+     *  labels and lambdas of compiled code are attributed to the enclosing global function.
+     *
+     *  <p>The samples can be written in the "collapsed stacks" format that is understood by flamegraph.pl, speedscope and other flamegraph tools:
+     *  one line per distinct call stack, frames from outermost to innermost separated by ';', followed by a space and the number of samples.
+     *
+     *  <p>Profilers are started with {@link LambdaJ#startProfiler}, the commandline flag {@code --profile <file>}
+     *  or with the Murmel function {@code profile-start}. */
+    public static final class Profiler {
+        public static final long DEFAULT_INTERVAL_MILLIS = 10;
+
+        private final @NotNull Thread target;
+        private final LambdaJ intp;
+        private volatile MurmelJavaProgram program;
+        private final long intervalMillis;
+        private final Thread sampler;
+        private volatile boolean running = true;
+
+        /** number of samples by collapsed stack */
+        private final Map<String, Long> stacks = new HashMap<>();
+        private long samples;
+
+        /** used by the sampler thread only: labels of interpreted closures by their body, labels of compiled functions by class or class and method */
+        private final Map<Object, String> closureLabels = new IdentityHashMap<>();
+        private final Map<String, String> compiledLabels = new HashMap<>();
+        private final StringBuilder sb = new StringBuilder();
+
+        private Profiler(@NotNull Thread target, LambdaJ intp, MurmelJavaProgram program, long intervalMillis) {
+            this.target = target;
+            this.intp = intp;
+            this.program = program;
+            this.intervalMillis = Math.max(1, intervalMillis);
+            sampler = new Thread(this::run, "JMurmel profiler");
+            sampler.setDaemon(true);
+        }
+
+        /** sample the interpreter {@code intp} or the compiled program {@code program} running in thread {@code target},
+         *  if both are null then the program can be set later with {@link #setProgram} */
+        static @NotNull Profiler start(@NotNull Thread target, LambdaJ intp, MurmelJavaProgram program, long intervalMillis) {
+            final Profiler ret = new Profiler(target, intp, program, intervalMillis);
+            ret.sampler.start();
+            return ret;
+        }
+
+        void setProgram(MurmelJavaProgram program) { this.program = program; }
+
+        public boolean isRunning() { return running; }
+
+        /** stop sampling, samples that were taken so far are kept */
+        public void stop() {
+            if (!running) return;
+            running = false;
+            sampler.interrupt();
+            if (Thread.currentThread() != sampler) {
+                try { sampler.join(); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+            }
+        }
+
+        public synchronized long sampleCount() { return samples; }
+
+        /** return a copy of the number of samples by collapsed stack */
+        public synchronized @NotNull Map<String, Long> collapsedStacks() { return new TreeMap<>(stacks); }
+
+        /** write the samples in the collapsed stacks format */
+        public void writeCollapsed(@NotNull Appendable out) throws IOException {
+            for (Map.Entry<String, Long> e: collapsedStacks().entrySet()) out.append(e.getKey()).append(' ').append(String.valueOf(e.getValue())).append('\n');
+        }
+
+        public void writeCollapsed(@NotNull Path file) throws IOException {
+            try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) { writeCollapsed(w); }
+        }
+
+        private void run() {
+            while (running) {
+                try { Thread.sleep(intervalMillis); }
+                catch (InterruptedException e) { break; }
+                if (!target.isAlive()) break;
+
+                sb.setLength(0);
+                if (intp != null) sampleInterpreter();
+                else if (program != null) sampleCompiled(program);
+                if (sb.length() == 0) continue;
+
+                final String stack = sb.toString();
+                synchronized (this) {
+                    stacks.merge(stack, 1L, Long::sum);
+                    samples++;
+                }
+            }
+        }
+
+        private void sampleInterpreter() {
+            final Closure[] stack = intp.profStack;
+            final int sp = Math.min(intp.profSp, stack.length);
+            for (int i = 0; i < sp; i++) {
+                final Closure closure = stack[i];
+                if (closure != null) frame(closureLabel(closure));
+            }
+        }
+
+        private void frame(String label) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(label);
+        }
+
+        private String closureLabel(Closure closure) {
+            final Object key = closure.body != null ? closure.body : closure;
+            String ret = closureLabels.get(key);
+            if (ret == null) {
+                Object name;
+                try { name = closureName(closure); }
+                catch (RuntimeException e) { name = null; } // the closure's environment may be changed by the sampled thread
+                ret = label(name, closure.body).replace(';', ',');
+                closureLabels.put(key, ret);
+            }
+            return ret;
+        }
+
+        /** return {@code name} (or "lambda" if {@code name} is null) followed by the file and line of {@code body} if known */
+        static String label(Object name, Object body) {
+            final String ret = name != null ? name.toString() : LAMBDA;
+            if (!(body instanceof SExpConsCell)) return ret;
+            final SExpConsCell sexp = (SExpConsCell)body;
+            final Path path = sexp.path();
+            return ret + " (" + (path != null && path.getFileName() != null ? path.getFileName() + ":" : "line ") + sexp.startLineNo + ')';
+        }
+
+        /** return the symbol that {@code closure} is bound to in its own environment, i.e. the name given by defun, labels or named let */
+        private static Object closureName(Closure closure) {
+            int n = 0;
+            for (Object env = closure.closure; env instanceof ConsCell && n < 64; n++) {
+                if (env instanceof Frame) {
+                    final Frame frame = (Frame)env;
+                    for (int slot = 0; slot < frame.size(); slot++) if (frame.value(slot) == closure) return frame.sym(slot);
+                    env = frame.parent;
+                }
+                else {
+                    final Object entry = ((ConsCell)env).car();
+                    if (entry instanceof ConsCell && ((ConsCell)entry).cdr() == closure) return ((ConsCell)entry).car();
+                    env = ((ConsCell)env).cdr();
+                }
+            }
+            return null;
+        }
+
+        /** Record the frames of the Java stacktrace of {@code target} that belong to {@code program}.
+         *  A Murmel function may span several Java frames (e.g. {@code apply()} calling {@code apply1()}), a Java frame
+         *  starts a new Murmel frame unless its caller is in the same class and calls a different method. */
+        private void sampleCompiled(MurmelJavaProgram program) {
+            final String programClass = program.getClass().getName();
+            final StackTraceElement[] trace = target.getStackTrace();
+            String prevKey = null, prevMethod = null, prevLabelKey = null, prevLabel = null;
+            for (int i = trace.length - 1; i >= 0; i--) {
+                final String cls = trace[i].getClassName(), method = trace[i].getMethodName();
+                if (!cls.startsWith(programClass) || cls.length() > programClass.length() && cls.charAt(programClass.length()) != '$') { prevKey = null;  continue; }
+
+                final String key = cls.length() == programClass.length() ? cls + '#' + method : cls;
+                final boolean sameCall = key.equals(prevKey) && !method.equals(prevMethod);
+                prevKey = key;  prevMethod = method;
+                if (sameCall) continue;
+
+                final String label = compiledLabel(program, key);
+                if (label == null) continue;
+                if (label.equals(prevLabel) && !key.equals(prevLabelKey)) continue; // a lambda or labels function in the same global function
+                prevLabelKey = key;  prevLabel = label;
+                frame(label);
+            }
+        }
+
+        private String compiledLabel(MurmelJavaProgram program, String key) {
+            String ret = compiledLabels.get(key);
+            if (ret == null) {
+                // the program's global functions may have been assigned since the last lookup
+                addCompiledLabels(program);
+                ret = compiledLabels.get(key);
+                if (ret == null) {
+                    // a lambda or labels function in a global function is an anonymous class nested in the global function's class
+                    ret = "";
+                    for (int dollar = key.lastIndexOf('$'); dollar > 0 && key.indexOf('#') < 0; dollar = key.lastIndexOf('$', dollar - 1)) {
+                        final String enclosing = compiledLabels.get(key.substring(0, dollar));
+                        if (enclosing != null && !enclosing.isEmpty()) { ret = enclosing;  break; }
+                    }
+                    compiledLabels.put(key, ret);
+                }
+            }
+            return ret.isEmpty() ? null : ret;
+        }
+
+        private void addCompiledLabels(MurmelJavaProgram program) {
+            final Class<?> programClass = program.getClass();
+            if (program instanceof MurmelJavaCompiler.BytecodeProgram) {
+                for (Map.Entry<String, String> e: ((MurmelJavaCompiler.BytecodeProgram)program).methodNames.entrySet())
+                    compiledLabels.put(programClass.getName() + '#' + e.getKey(), e.getValue());
+                return;
+            }
+            for (Field field: programClass.getFields()) {
+                if (field.getType() != MurmelJavaProgram.CompilerGlobal.class) continue;
+                try {
+                    final MurmelJavaProgram.CompilerGlobal global = (MurmelJavaProgram.CompilerGlobal)field.get(program);
+                    if (global == null || global == MurmelJavaProgram.UNASSIGNED_GLOBAL) continue;
+                    final Object value = global.get();
+                    if (value instanceof MurmelFunction && value.getClass().getName().startsWith(programClass.getName() + '$'))
+                        compiledLabels.putIfAbsent(value.getClass().getName(), demangle(field.getName()));
+                }
+                catch (IllegalAccessException | RuntimeException ignored) { }
+            }
+        }
+
+        /** reverse {@link MurmelJavaCompiler#mangle} */
+        static String demangle(String javaName) {
+            final StringBuilder ret = new StringBuilder();
+            for (int i = javaName.startsWith("_") ? 1 : 0; i < javaName.length(); i++) {
+                final char c = javaName.charAt(i);
+                if (c == '_') {
+                    int end = i + 1;
+                    while (end < javaName.length() && Character.isDigit(javaName.charAt(end))) end++;
+                    if (end > i + 1 && end <= i + 6 && end < javaName.length() && javaName.charAt(end) == '_') {
+                        ret.append((char)Integer.parseInt(javaName.substring(i + 1, end)));
+                        i = end;
+                        continue;
+                    }
+                }
+                ret.append(c);
+            }
+            return ret.toString().replace(';', ',');
+        }
+    }
+
+
+
+    /** <p>Per-function call statistics: for each function that was defined by defun, define, labels or named let
+     *  the number of calls, the time spent in the function itself ("self") and including the functions it called ("total"),
+     *  and the memory that was allocated by the function itself and including the functions it called.
+     *
+     *  <p>Interpreted code counts allocated cons cells and environment frames. Compiled code counts the bytes that were allocated
+     *  by the current thread if the JVM supports measuring this, else 0. A tailcall ends the invocation of the caller,
+     *  the invocations of a recursive function are added to its total only once by the outermost invocation.
+     *
+     *  <p>Calls are recorded in the thread that started the call statistics, the results should be read by the same thread
+     *  or after the call statistics were stopped. Call statistics are started with {@link LambdaJ#startCallStats},
+     *  {@link MurmelJavaProgram#startCallStats}, the commandline flag {@code --call-stats <file>} or with the Murmel function
+     *  {@code call-stats-start}. Compiled functions record their calls only if they were compiled with {@link MurmelJavaCompiler#setInstrumentCalls}. */
+    public static final class CallStats {
+        /** the statistics of one function */
+        public static final class Entry {
+            public final @NotNull String name;
+            private long calls, selfNanos, totalNanos, selfAlloc, totalAlloc;
+            private int active;
+
+            Entry(@NotNull String name) { this.name = name; }
+
+            public long calls()      { return calls; }
+            public long selfNanos()  { return selfNanos; }
+            public long totalNanos() { return totalNanos; }
+            public long selfAlloc()  { return selfAlloc; }
+            public long totalAlloc() { return totalAlloc; }
+        }
+
+        /** the interpreter whose cons cells are counted, or null for compiled code */
+        private final LambdaJ intp;
+        private final LongSupplier allocatedBytes;
+
+        private final Map<String, Entry> entries = new HashMap<>();
+        /** interpreter: entries by closure body, null for anonymous closures; compiled code: entries by label */
+        private final Map<Object, Entry> entriesByKey = new IdentityHashMap<>();
+
+        /** the running invocations: the entry and start time, time spent in callees, allocation counter at start, allocation in callees */
+        private Entry[] stack = new Entry[64];
+        private long[] frames = new long[64 * 4];
+        private int sp;
+
+        CallStats(LambdaJ intp) {
+            this.intp = intp;
+            allocatedBytes = intp == null ? allocatedBytes() : null;
+        }
+
+        private static LongSupplier allocatedBytes() {
+            try {
+                final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+                if (threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threadBean).isThreadAllocatedMemoryEnabled()) {
+                    final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threadBean;
+                    final long threadId = Thread.currentThread().getId();
+                    return () -> bean.getThreadAllocatedBytes(threadId);
+                }
+            }
+            catch (LinkageError | UnsupportedOperationException ignored) { }
+            return () -> 0L;
+        }
+
+        /** "cells" if interpreter cons cells are counted, else "bytes" */
+        public @NotNull String allocUnit() { return intp != null ? "cells" : "bytes"; }
+
+        /** the interpreter's counter wraps around, deltas are computed modulo 2^32 */
+        private long alloc() { return intp != null ? intp.nCells & 0xffffffffL : allocatedBytes.getAsLong(); }
+
+        private long delta(long from, long to) { return intp != null ? (to - from) & 0xffffffffL : to - from; }
+
+        int depth() { return sp; }
+
+        /** record the start of an invocation of {@code closure} unless it's an anonymous function */
+        void enter(Closure closure) {
+            final Object key = closure.body != null ? closure.body : closure;
+            Entry entry = entriesByKey.get(key);
+            if (entry == null) {
+                if (entriesByKey.containsKey(key)) return;
+                final Object name = functionName(closure);
+                entry = name == null ? null : entry(Profiler.label(name, closure.body));
+                entriesByKey.put(key, entry);
+                if (entry == null) return;
+            }
+            enter(entry);
+        }
+
+        /** record the start of an invocation of the compiled function {@code label}, return the depth for {@link #exitTo} */
+        int enter(String label) {
+            Entry entry = entriesByKey.get(label);
+            if (entry == null) entriesByKey.put(label, entry = entry(label));
+            final int ret = sp;
+            enter(entry);
+            return ret;
+        }
+
+        private Entry entry(String name) { return entries.computeIfAbsent(name, Entry::new); }
+
+        /** return the name given by defun, labels or named let, or the global name of a function that was defined with define */
+        private Object functionName(Closure closure) {
+            final Object ret = Profiler.closureName(closure);
+            if (ret != null) return ret;
+            for (ConsCell entry: intp.globals.values()) if (entry.cdr() == closure) return entry.car();
+            return null;
+        }
+
+        private void enter(Entry entry) {
+            if (sp == stack.length) {
+                stack = Arrays.copyOf(stack, sp * 2);
+                frames = Arrays.copyOf(frames, sp * 2 * 4);
+            }
+            entry.calls++;
+            entry.active++;
+            stack[sp] = entry;
+            final int f = sp++ * 4;
+            frames[f] = System.nanoTime();  frames[f + 1] = 0;  frames[f + 2] = alloc();  frames[f + 3] = 0;
+        }
+
+        /** record the end of all invocations above {@code depth} */
+        void exitTo(int depth) {
+            if (sp <= depth) return;
+            final long now = System.nanoTime(), alloc = alloc();
+            while (sp > depth) {
+                final Entry entry = stack[--sp];
+                stack[sp] = null;
+                final int f = sp * 4;
+                final long nanos = now - frames[f], allocated = delta(frames[f + 2], alloc);
+                entry.selfNanos += nanos - frames[f + 1];
+                entry.selfAlloc += allocated - frames[f + 3];
+                if (--entry.active == 0) { entry.totalNanos += nanos;  entry.totalAlloc += allocated; }
+                if (sp > 0) { frames[f - 4 + 1] += nanos;  frames[f - 4 + 3] += allocated; }
+            }
+        }
+
+        /** return the entries sorted by descending total time */
+        public @NotNull List<Entry> entries() {
+            final List<Entry> ret = new ArrayList<>(entries.values());
+            ret.sort((e1, e2) -> e1.totalNanos != e2.totalNanos ? Long.compare(e2.totalNanos, e1.totalNanos) : e1.name.compareTo(e2.name));
+            return ret;
+        }
+
+        /** return an equal hash-table with function names as keys, each value is an eql hash-table with the keys
+         *  calls, self-time, total-time (in internal time units), self-cells and total-cells (or self-bytes and total-bytes) */
+        Map<Object, Object> toHashTable(SymbolTable st) {
+            final Object calls = st.intern("calls"), selfTime = st.intern("self-time"), totalTime = st.intern("total-time"),
+                         selfAlloc = st.intern("self-" + allocUnit()), totalAlloc = st.intern("total-" + allocUnit());
+            final Map<Object, Object> ret = new Subr.EqualMap(entries.size());
+            for (Entry entry: entries.values()) {
+                final Map<Object, Object> values = new Subr.EqlMap(8);
+                values.put(calls, entry.calls);
+                values.put(selfTime, entry.selfNanos);
+                values.put(totalTime, entry.totalNanos);
+                values.put(selfAlloc, entry.selfAlloc);
+                values.put(totalAlloc, entry.totalAlloc);
+                ret.put(entry.name, values);
+            }
+            return ret;
+        }
+
+        /** write one line per function sorted by descending total time */
+        public void writeText(@NotNull Appendable out) throws IOException {
+            final String unit = allocUnit();
+            out.append(String.format(Locale.ROOT, "%12s %12s %12s %14s %14s  %s%n", "calls", "total ms", "self ms", "total " + unit, "self " + unit, "function"));
+            for (Entry e: entries()) {
+                out.append(String.format(Locale.ROOT, "%12d %12.3f %12.3f %14d %14d  %s%n", e.calls, e.totalNanos / 1e6, e.selfNanos / 1e6, e.totalAlloc, e.selfAlloc, e.name));
+            }
+        }
+
+        /** write a JSON object with the allocation unit and an array of functions sorted by descending total time */
+        public void writeJson(@NotNull Appendable out) throws IOException {
+            out.append("{\n  \"allocUnit\": \"").append(allocUnit()).append("\",\n  \"functions\": [");
+            boolean first = true;
+            for (Entry e: entries()) {
+                out.append(first ? "\n" : ",\n").append("    {\"name\": ");
+                jsonString(out, e.name);
+                out.append(", \"calls\": ").append(String.valueOf(e.calls))
+                   .append(", \"selfNanos\": ").append(String.valueOf(e.selfNanos)).append(", \"totalNanos\": ").append(String.valueOf(e.totalNanos))
+                   .append(", \"selfAlloc\": ").append(String.valueOf(e.selfAlloc)).append(", \"totalAlloc\": ").append(String.valueOf(e.totalAlloc)).append('}');
+                first = false;
+            }
+            out.append("\n  ]\n}\n");
+        }
+
+        private static void jsonString(Appendable out, String s) throws IOException {
+            out.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                final char c = s.charAt(i);
+                if (c == '"' || c == '\\') out.append('\\').append(c);
+                else if (c < 32) out.append(String.format("\\u%04x", (int)c));
+                else out.append(c);
+            }
+            out.append('"');
+        }
+
+        /** write JSON if the name of {@code file} ends with ".json", else text */
+        public void write(@NotNull Path file) throws IOException {
+            try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                if (file.toString().endsWith(".json")) writeJson(w);
+                else writeText(w);
+            }
+        }
+    }
+
+
+
     @SuppressWarnings("unused")
     public static final class JFRHelper {
 
@@ -12689,91 +17866,335 @@ final class InstallDir {
 }
 
 
+/// ## class ClassFileWriter
+/// class ClassFileWriter - a minimal writer for JVM classfiles, used by the bytecode backend of MurmelJavaCompiler.
+/// Classfile version 49 is written so that no StackMapTable attributes are needed.
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 1, ICONST_0 = 3, BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19, LDC2_W = 20, ALOAD = 25, AALOAD = 50, ASTORE = 58, AASTORE = 83,
+                     POP = 87, POP2 = 88, DUP = 89, DADD = 99, DSUB = 103, DMUL = 107, DDIV = 111, LCMP = 148, DCMPL = 151, DCMPG = 152,
+                     IFEQ = 153, IFNE = 154, IFLT = 155, IFGE = 156, IFGT = 157, IFLE = 158, IF_ACMPEQ = 165, IF_ACMPNE = 166, GOTO = 167,
+                     ARETURN = 176, RETURN = 177, GETSTATIC = 178, PUTSTATIC = 179, GETFIELD = 180, PUTFIELD = 181,
+                     INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184, NEW = 187, ANEWARRAY = 189, CHECKCAST = 192, WIDE = 196, IFNULL = 198, IFNONNULL = 199;
+
+    private static final int CONSTANT_Utf8 = 1, CONSTANT_Integer = 3, CONSTANT_Long = 5, CONSTANT_Double = 6, CONSTANT_Class = 7, CONSTANT_String = 8,
+                             CONSTANT_Fieldref = 9, CONSTANT_Methodref = 10, CONSTANT_NameAndType = 12;
+
+    /** a growable byte array that writes big endian values */
+    private static final class Bytes {
+        private byte[] buf = new byte[256];
+        private int len;
+
+        private void ensure(int n) { if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n)); }
+        void u1(int b) { ensure(1); buf[len++] = (byte)b; }
+        void u2(int s) { ensure(2); buf[len++] = (byte)(s >>> 8); buf[len++] = (byte)s; }
+        void u4(int i) { u2(i >>> 16); u2(i); }
+        void put(Bytes b) { ensure(b.len); System.arraycopy(b.buf, 0, buf, len, b.len); len += b.len; }
+        void patch2(int pos, int s) { buf[pos] = (byte)(s >>> 8); buf[pos + 1] = (byte)s; }
+        byte[] toByteArray() { return Arrays.copyOf(buf, len); }
+    }
+
+    private final Bytes pool = new Bytes();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass, superClass;
+    private final Bytes fields = new Bytes(), methods = new Bytes();
+    private int nFields, nMethods;
+
+    /** @param className the internal name of the class to write, e.g. "pkg/MyClass" */
+    ClassFileWriter(String className, String superName) {
+        thisClass = cls(className);
+        superClass = cls(superName);
+    }
+
+    void field(int access, String name, String desc) {
+        fields.u2(access); fields.u2(utf8(name)); fields.u2(utf8(desc)); fields.u2(0);
+        nFields++;
+    }
+
+    void method(Method m) {
+        if (m.code.len > 65535) throw new IllegalArgumentException("method " + m.name + " is too large");
+        methods.u2(m.access); methods.u2(utf8(m.name)); methods.u2(utf8(m.desc));
+        methods.u2(1);
+        methods.u2(utf8("Code")); methods.u4(12 + m.code.len);
+        methods.u2(m.maxStack); methods.u2(m.maxLocals);
+        methods.u4(m.code.len); methods.put(m.code);
+        methods.u2(0); // exception table
+        methods.u2(0); // attributes
+        nMethods++;
+    }
+
+    byte[] toByteArray() {
+        if (poolCount > 65535) throw new IllegalArgumentException("too many constants");
+        final Bytes b = new Bytes();
+        b.u4(0xCAFEBABE); b.u2(0); b.u2(49);
+        b.u2(poolCount); b.put(pool);
+        b.u2(ACC_PUBLIC | ACC_SUPER); b.u2(thisClass); b.u2(superClass);
+        b.u2(0); // interfaces
+        b.u2(nFields); b.put(fields);
+        b.u2(nMethods); b.put(methods);
+        b.u2(0); // attributes
+        return b.toByteArray();
+    }
+
+
+    /// constant pool
+    private int utf8(String s) {
+        final Integer idx = poolIndex.get("U" + s);
+        if (idx != null) return idx;
+        final Bytes b = new Bytes();
+        for (int i = 0; i < s.length(); i++) { // modified UTF-8 as used by classfiles
+            final char c = s.charAt(i);
+            if (c >= 1 && c <= 0x7f) b.u1(c);
+            else if (c <= 0x7ff) { b.u1(0xc0 | (c >> 6)); b.u1(0x80 | (c & 0x3f)); }
+            else { b.u1(0xe0 | (c >> 12)); b.u1(0x80 | ((c >> 6) & 0x3f)); b.u1(0x80 | (c & 0x3f)); }
+        }
+        if (b.len > 65535) throw new IllegalArgumentException("string constant is too long");
+        pool.u1(CONSTANT_Utf8); pool.u2(b.len); pool.put(b);
+        return add("U" + s, 1);
+    }
+
+    private int add(String key, int slots) {
+        final int idx = poolCount;
+        poolIndex.put(key, idx);
+        poolCount += slots;
+        return idx;
+    }
+
+    private int ref(int tag, String key, int a, int b) {
+        final Integer idx = poolIndex.get(key);
+        if (idx != null) return idx;
+        pool.u1(tag); pool.u2(a); if (b >= 0) pool.u2(b);
+        return add(key, 1);
+    }
+
+    private int cls(String internalName)     { return ref(CONSTANT_Class, "C" + internalName, utf8(internalName), -1); }
+    private int string(String s)             { return ref(CONSTANT_String, "S" + s, utf8(s), -1); }
+    private int nameAndType(String name, String desc) { return ref(CONSTANT_NameAndType, "N" + name + ' ' + desc, utf8(name), utf8(desc)); }
+    private int member(int tag, String owner, String name, String desc) { return ref(tag, "" + tag + owner + '.' + name + ' ' + desc, cls(owner), nameAndType(name, desc)); }
+
+    private int intConst(int i) {
+        final Integer idx = poolIndex.get("I" + i);
+        if (idx != null) return idx;
+        pool.u1(CONSTANT_Integer); pool.u4(i);
+        return add("I" + i, 1);
+    }
+
+    private int longConst(long l) {
+        final Integer idx = poolIndex.get("J" + l);
+        if (idx != null) return idx;
+        pool.u1(CONSTANT_Long); pool.u4((int)(l >>> 32)); pool.u4((int)l);
+        return add("J" + l, 2);
+    }
+
+    private int doubleConst(double d) {
+        final long bits = Double.doubleToRawLongBits(d);
+        final Integer idx = poolIndex.get("D" + bits);
+        if (idx != null) return idx;
+        pool.u1(CONSTANT_Double); pool.u4((int)(bits >>> 32)); pool.u4((int)bits);
+        return add("D" + bits, 2);
+    }
+
+
+    static final class Label {
+        private int pos = -1, stack = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+    }
+
+    /** The code of a method. The operand stack depth is tracked to compute max_stack,
+     *  after unconditional jumps and returns the depth is taken from the next label that is marked. */
+    static final class Method {
+        private final ClassFileWriter cw;
+        private final int access;
+        private final String name, desc;
+        private final Bytes code = new Bytes();
+        private int stack, maxStack, maxLocals;
+
+        /** @param argSlots number of local variable slots used by the arguments including {@code this} */
+        Method(ClassFileWriter cw, int access, String name, String desc, int argSlots) {
+            this.cw = cw; this.access = access; this.name = name; this.desc = desc; this.maxLocals = argSlots;
+        }
+
+        int newLocal() { return maxLocals++; }
+
+        private void stack(int delta) {
+            stack += delta;
+            assert stack >= 0 : "negative stack depth in " + name;
+            if (stack > maxStack) maxStack = stack;
+        }
+
+        void insn(int opcode, int stackDelta) { code.u1(opcode); stack(stackDelta); }
+
+        void varInsn(int opcode, int slot) {
+            if (slot > 255) { code.u1(WIDE); code.u1(opcode); code.u2(slot); }
+            else { code.u1(opcode); code.u1(slot); }
+            stack(opcode == ALOAD ? 1 : -1);
+        }
+
+        void intConst(int i) {
+            if (i >= -1 && i <= 5) code.u1(ICONST_0 + i);
+            else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) { code.u1(BIPUSH); code.u1(i); }
+            else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) { code.u1(SIPUSH); code.u2(i); }
+            else { ldc(cw.intConst(i)); return; }
+            stack(1);
+        }
+
+        void stringConst(String s) { ldc(cw.string(s)); }
+        void longConst(long l)     { code.u1(LDC2_W); code.u2(cw.longConst(l)); stack(2); }
+        void doubleConst(double d) { code.u1(LDC2_W); code.u2(cw.doubleConst(d)); stack(2); }
+
+        private void ldc(int idx) {
+            if (idx <= 255) { code.u1(LDC); code.u1(idx); }
+            else { code.u1(LDC_W); code.u2(idx); }
+            stack(1);
+        }
+
+        /** NEW, ANEWARRAY or CHECKCAST */
+        void typeInsn(int opcode, String internalName) {
+            code.u1(opcode); code.u2(cw.cls(internalName));
+            stack(opcode == NEW ? 1 : 0);
+        }
+
+        void fieldInsn(int opcode, String owner, String name, String desc) {
+            code.u1(opcode); code.u2(cw.member(CONSTANT_Fieldref, owner, name, desc));
+            final int size = desc.charAt(0) == 'J' || desc.charAt(0) == 'D' ? 2 : 1;
+            switch (opcode) {
+            case GETSTATIC: stack(size); break;
+            case PUTSTATIC: stack(-size); break;
+            case GETFIELD:  stack(size - 1); break;
+            default:        stack(-size - 1); break;
+            }
+        }
+
+        void methodInsn(int opcode, String owner, String name, String desc) {
+            code.u1(opcode); code.u2(cw.member(CONSTANT_Methodref, owner, name, desc));
+            int delta = opcode == INVOKESTATIC ? 0 : -1;
+            int i = 1;
+            while (desc.charAt(i) != ')') {
+                final char c = desc.charAt(i);
+                delta -= c == 'J' || c == 'D' ? 2 : 1;
+                while (desc.charAt(i) == '[') i++;
+                if (desc.charAt(i) == 'L') i = desc.indexOf(';', i);
+                i++;
+            }
+            final char ret = desc.charAt(i + 1);
+            delta += ret == 'V' ? 0 : ret == 'J' || ret == 'D' ? 2 : 1;
+            stack(delta);
+        }
+
+        void jump(int opcode, Label target) {
+            final int insnPos = code.len;
+            code.u1(opcode);
+            stack(opcode == GOTO ? 0 : opcode == IF_ACMPEQ || opcode == IF_ACMPNE ? -2 : -1);
+            if (target.stack < 0) target.stack = stack;
+            if (target.pos >= 0) code.u2(offset(insnPos, target.pos));
+            else { target.fixups.add(new int[] { insnPos, code.len }); code.u2(0); }
+            if (opcode == GOTO) stack = 0;
+        }
+
+        /** emit a return instruction, the code after it is only reachable through a label */
+        void ret(int opcode) { insn(opcode, opcode == RETURN ? 0 : -1); stack = 0; }
+
+        void mark(Label label) {
+            label.pos = code.len;
+            if (label.stack >= 0) stack = label.stack; else label.stack = stack;
+            for (int[] fixup: label.fixups) code.patch2(fixup[1], offset(fixup[0], label.pos));
+            label.fixups.clear();
+        }
+
+        private static int offset(int from, int to) {
+            final int offset = to - from;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) throw new IllegalArgumentException("jump offset is too large");
+            return offset;
+        }
+    }
+}
+
 /// ## class JavaCompilerHelper
 /// class JavaCompilerHelper - a helper class that wraps the Java system compiler in tools.jar,
-/// used by MurmelJavaCompiler to compile the generated Java to an in-memory class and optionally a .jar file.
+/// used by MurmelJavaCompiler to compile the generated Java to in-memory classes and optionally a .jar file.
+/// Compiled bytecode is kept in byte arrays, no files are written except the optional .jar file.
 final class JavaCompilerHelper {
-    private static final Map<String, String> ENV = Collections.singletonMap("create", "true");
-    private final @NotNull MurmelClassLoader murmelClassLoader;
+    private static final List<String> OPTIONS = Arrays.asList("-g", "-proc:none" /*, "-source", "1.8", "-target", "1.8"*/);
 
-    JavaCompilerHelper(@NotNull Path outPath) {
-        murmelClassLoader = new MurmelClassLoader(outPath);
-    }
+    private JavaCompiler comp;
 
     @SuppressWarnings("unchecked")
     @NotNull Class<LambdaJ.MurmelProgram> javaToClass(String className, String javaSource, String jarFileName) throws Exception {
-        final Class<LambdaJ.MurmelProgram> program = (Class<LambdaJ.MurmelProgram>) javaToClass(className, javaSource);
-        if (jarFileName == null) {
-            cleanup();
-            return program;
-        }
+        final MurmelClassLoader murmelClassLoader = compile(Collections.singletonList(className), Collections.singletonList(javaSource));
+        final Class<LambdaJ.MurmelProgram> program = (Class<LambdaJ.MurmelProgram>) Class.forName(className, true, murmelClassLoader);
+        if (jarFileName == null) return program;
+
+        writeJar(jarFileName, className, murmelClassLoader.getClasses());
+        return program;
+    }
 
+    /** Write a jarfile whose manifest makes {@code mainClass} runnable with jmurmel.jar in the same directory */
+    static void writeJar(String jarFileName, String mainClass, Map<String, byte[]> classes) throws IOException {
         final Manifest mf = new Manifest();
         mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
         mf.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, LambdaJ.ENGINE_NAME);
         mf.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, LambdaJ.ENGINE_VERSION);
-        mf.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+        mf.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
         mf.getMainAttributes().put(Attributes.Name.CLASS_PATH, new File(LambdaJ.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getName());
 
-        final Path zipPath = Paths.get(jarFileName);
-        final URI uri = URI.create("jar:" + zipPath.toUri());
-
-        Files.deleteIfExists(zipPath);
-
-        try (FileSystem zipfs = FileSystems.newFileSystem(uri, ENV)) {
-            Files.createDirectory(zipfs.getPath("META-INF/"));
-
-            try (OutputStream out = Files.newOutputStream(zipfs.getPath("META-INF/MANIFEST.MF"))) {
-                mf.write(out);
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(Paths.get(jarFileName)), mf)) {
+            for (Map.Entry<String, byte[]> entry: classes.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                jar.write(entry.getValue());
+                jar.closeEntry();
             }
-            copyFolder(murmelClassLoader.getOutPath(), zipfs.getPath("/"));
         }
-        finally { cleanup();} 
+    }
 
-        return program;
+    /** Compile Java sourcecode of class {@code className} to Java bytecode */
+    @NotNull Class<?> javaToClass(String className, String javaSource) throws Exception {
+        return Class.forName(className, true, compile(Collections.singletonList(className), Collections.singletonList(javaSource)));
     }
 
-    void cleanup() throws IOException {
-        //System.out.println("cleanup " + murmelClassLoader.getOutPath().toString());
-        try (Stream<Path> files = Files.walk(murmelClassLoader.getOutPath())) {
-            // delete directory including files and sub-folders
-            files.sorted(Comparator.reverseOrder())
-                 .map(Path::toFile)
-                 //.peek(f -> System.out.println("delete " + f.toString()))
-                 .forEach(File::deleteOnExit);
-        }
+    /** Compile several compilation units with one invocation of the Java compiler, return the classes in the same order as {@code classNames} */
+    @NotNull List<Class<?>> javaToClasses(List<String> classNames, List<String> javaSources) throws Exception {
+        final MurmelClassLoader murmelClassLoader = compile(classNames, javaSources);
+        final List<Class<?>> ret = new ArrayList<>(classNames.size());
+        for (String className: classNames) ret.add(Class.forName(className, true, murmelClassLoader));
+        return ret;
     }
 
-    private static void copyFolder(Path src, Path dest) throws IOException {
-        try (Stream<Path> stream = Files.walk(src)) {
-            stream.forEachOrdered(sourcePath -> {
-                try {
-                    final Path subSource = src.relativize(sourcePath);
-                    final Path dst = dest.resolve(subSource.toString());
-                    //System.out.println(sourcePath.toString() + " -> " + dst.toString());
-                    if (!sourcePath.equals(src)) {
-                        Files.copy(sourcePath, dst);
-                    }
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-            });
+    private MurmelClassLoader compile(List<String> classNames, List<String> javaSources) throws IOException {
+        if (comp == null) {
+            comp = ToolProvider.getSystemJavaCompiler();
+            if (comp == null) throw new LambdaJ.LambdaJError(true, "compilation of class %s failed. No compiler is provided in this environment. Perhaps you are running on a JRE rather than a JDK?", classNames.get(0));
         }
+
+        final List<JavaSourceFromString> units = new ArrayList<>(classNames.size());
+        for (int i = 0; i < classNames.size(); i++) units.add(new JavaSourceFromString(classNames.get(i), javaSources.get(i)));
+
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        // closing the MemoryFileManager will close the standard filemanager as well
+        try (MemoryFileManager fileManager = new MemoryFileManager(comp.getStandardFileManager(null, null, null), classes)) {
+            //                                     out   diag  opt      classes
+            final CompilationTask c = comp.getTask(null, fileManager, null, OPTIONS, null, units);
+            if (c.call()) return new MurmelClassLoader(classes);
+        }
+        throw new LambdaJ.LambdaJError(true, "compilation of class %s failed", String.join(", ", classNames));
     }
 
-    /** Compile Java sourcecode of class {@code className} to Java bytecode */
-    @NotNull Class<?> javaToClass(String className, String javaSource) throws Exception {
-        final JavaCompiler comp = ToolProvider.getSystemJavaCompiler();
-        if (comp == null) throw new LambdaJ.LambdaJError(true, "compilation of class %s failed. No compiler is provided in this environment. Perhaps you are running on a JRE rather than a JDK?", className);
-        try (StandardJavaFileManager fm = comp.getStandardFileManager(null, null, null)) {
-            final List<String> options = Arrays.asList("-g", "-proc:none" /*, "-source", "1.8", "-target", "1.8"*/);
-            fm.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(murmelClassLoader.getOutPath().toFile()));
-            //                                     out       diag  opt      classes
-            final CompilationTask c = comp.getTask(null, fm, null, options, null, Collections.singletonList(new JavaSourceFromString(className, javaSource)));
-            if (c.call()) {
-                return Class.forName(className, true, murmelClassLoader);
-            }
-            throw new LambdaJ.LambdaJError(true, "compilation of class %s failed", className);
+    /** A file manager that collects the generated classfiles in {@code classes} instead of writing them to disk */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        MemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes) { super(fileManager); this.classes = classes; }
+
+        @Override public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override public void close() { classes.put(className, toByteArray()); }
+                    };
+                }
+            };
         }
     }
 }
@@ -12800,30 +18221,18 @@ final class JavaSourceFromString extends SimpleJavaFileObject {
 }
 
 final class MurmelClassLoader extends ClassLoader {
-    private final @NotNull Path outPath;
+    private final @NotNull Map<String, byte[]> classes;
 
-    MurmelClassLoader(@NotNull Path outPath) { //noinspection ConstantConditions 
-                                               assert outPath != null; this.outPath = outPath; }
+    MurmelClassLoader(@NotNull Map<String, byte[]> classes) { //noinspection ConstantConditions
+                                                              assert classes != null; this.classes = classes; }
 
     @Override @NotNull public Class<?> findClass(String name) throws ClassNotFoundException {
-        try {
-            final byte[] ba = getBytes(name);
-            if (ba == null) return super.findClass(name);
-            return defineClass(name, ba, 0, ba.length);
-        }
-        catch (IOException e) {
-            throw new ClassNotFoundException(e.getMessage());
-        }
+        final byte[] ba = classes.get(name);
+        if (ba == null) return super.findClass(name);
+        return defineClass(name, ba, 0, ba.length);
     }
 
-    @NotNull Path getOutPath() { return outPath; }
-
-    private byte[] getBytes(String name) throws IOException {
-        final String path = name.replace('.', '/');
-        final Path p = outPath.resolve(Paths.get(path + ".class"));
-        if (!Files.isReadable(p)) return null;
-        return Files.readAllBytes(p);
-    }
+    @NotNull Map<String, byte[]> getClasses() { return classes; }
 }
 
 final class EolUtil {
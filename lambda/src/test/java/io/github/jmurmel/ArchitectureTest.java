@@ -46,7 +46,8 @@ public class ArchitectureTest {
 
         checkUsers(JavaCompilerHelper.class, LambdaJ.MurmelJavaCompiler.class);
         checkUsers(JavaSourceFromString.class, JavaCompilerHelper.class);
-        checkUsers(MurmelClassLoader.class, JavaCompilerHelper.class);
+        checkUsers(MurmelClassLoader.class, JavaCompilerHelper.class, LambdaJ.MurmelJavaCompiler.class);
+        checkUsers(ClassFileWriter.class, LambdaJ.MurmelJavaCompiler.class);
     }
 
     /** Utility classes whose methods are leafs in the call hierarchy, i.e. don't use any other Murmel classes (other than *Error) */
@@ -58,6 +59,7 @@ public class ArchitectureTest {
         checkLeaf("Null");
 
         // toplevel classes
+        checkLeaf("ClassFileWriter");
         checkLeaf("EolUtil");
         checkLeaf("InstallDir");
         //checkLeaf("JavaCompilerHelper"); // uses JavaSourceFromString, MurmelClassLoader
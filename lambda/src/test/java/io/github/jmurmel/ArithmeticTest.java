@@ -0,0 +1,57 @@
+package io.github.jmurmel;
+
+import org.junit.Test;
+
+import static io.github.jmurmel.LambdaJ.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ArithmeticTest {
+
+    private static ConsCell list(Object... elems) {
+        ConsCell ret = null;
+        for (int i = elems.length - 1; i >= 0; i--) ret = ConsCell.cons(elems[i], ret);
+        return ret;
+    }
+
+    @Test
+    public void testFixnums() {
+        assertEquals(0.0, Subr.add(null), 0.0);
+        assertEquals(6.0, Subr.add(list(1L, 2L, 3L)), 0.0);
+        assertEquals(-4.0, Subr.sub(list(1L, 2L, 3L)), 0.0);
+        assertEquals(-1.0, Subr.sub(list(1L)), 0.0);
+        assertEquals(24.0, Subr.mul(list(2L, 3L, 4L)), 0.0);
+        assertEquals(1.0, Subr.mul(null), 0.0);
+    }
+
+    @Test
+    public void testMixed() {
+        assertEquals(6.5, Subr.add(list(1L, 2.5, 3L)), 0.0);
+        assertEquals(-4.5, Subr.sub(list(1L, 2.5, 3L)), 0.0);
+        assertEquals(-4.5, Subr.sub(list(1.0, 2.5, 3L)), 0.0);
+        assertEquals(15.0, Subr.mul(list(2L, 2.5, 3L)), 0.0);
+    }
+
+    /** results that leave the fixnum range must be the same as with double arithmetic */
+    @Test
+    public void testOutsideFixnumRange() {
+        final long max = MOST_POSITIVE_FIXNUM_VAL;
+        assertEquals((double)max + (double)max + 1.0, Subr.add(list(max, max, 1L)), 0.0);
+        assertEquals((double)-max - (double)max - 3.0, Subr.sub(list(-max, max, 3L)), 0.0);
+        assertEquals((double)max * (double)max * 3.0, Subr.mul(list(max, max, 3L)), 0.0);
+        assertEquals((double)Long.MAX_VALUE + 1.0, Subr.add(list(Long.MAX_VALUE, 1L)), 0.0);
+    }
+
+    @Test
+    public void testBoxCache() {
+        assertSame(Boxes.box(1000L), Subr.inc(999L));
+        assertSame(Boxes.box(-1000L), Subr.dec(-999L));
+        assertSame(Boxes.box('\u00e4'), Boxes.box((char)228));
+        assertEquals(Long.valueOf(1L << 40), Boxes.box(1L << 40));
+    }
+
+    @Test(expected = LambdaJ.SimpleTypeError.class)
+    public void testNotANumber() {
+        Subr.add(list(1L, "a"));
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.jmurmel;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CallStatsTest {
+
+    private static final String PROG = "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))\n"
+                                       + "(define sq (lambda (x) (* x x)))\n"
+                                       + "(defun outer (n) (labels ((inner (k) (cons (fib k) (sq k)))) (inner n)))\n"
+                                       + "(defun run (n) (let loop ((i 0) (acc nil)) (if (< i n) (loop (1+ i) (outer 10)) acc)))\n";
+
+    @Test
+    public void interpreted() {
+        for (LambdaJ.Engine engine: LambdaJ.Engine.values()) {
+            final LambdaJ intp = new LambdaJ();
+            intp.setEngine(engine);
+            intp.evalString(PROG);
+            assertNotNull(intp.startCallStats());
+            assertNull(intp.startCallStats());
+            intp.evalString("(run 5)", false, null, null);
+            final LambdaJ.CallStats stats = intp.stopCallStats();
+            assertNull(intp.stopCallStats());
+
+            assertEquals("cells", stats.allocUnit());
+            assertCalls(engine.toString(), stats);
+            final LambdaJ.CallStats.Entry fib = stats.entries().stream().filter(e -> e.name.startsWith("fib ")).findFirst().get();
+            assertEquals(fib.selfNanos(), fib.totalNanos());
+            assertTrue(engine.toString(), fib.selfAlloc() > 0);
+        }
+    }
+
+    @Test
+    public void compiled() throws Exception {
+        final LambdaJ.MurmelJavaProgram program = compile(PROG + "(run 5)");
+        assertFalse(program instanceof LambdaJ.MurmelJavaCompiler.BytecodeProgram);
+        assertNotNull(program.startCallStats());
+        program.body();
+        final LambdaJ.CallStats stats = program.stopCallStats();
+        assertEquals("bytes", stats.allocUnit());
+        assertCalls("compiled", stats);
+    }
+
+    @Test
+    public void compiledPrimitives() throws Exception {
+        final LambdaJ.MurmelJavaProgram program = compile(PROG + "(call-stats-start) (run 5) (call-stats-stop)");
+        final Map<?, ?> stats = (Map<?, ?>)program.body();
+        assertEquals(6, stats.size());
+        assertEquals(5L, ((Map<?, ?>)stats.get("outer (line 3)")).get(program.intern("calls")));
+    }
+
+    private static LambdaJ.MurmelJavaProgram compile(String source) throws Exception {
+        final LambdaJ.MurmelJavaCompiler c = new LambdaJ.MurmelJavaCompiler(null, null, TestUtils.getTmpDir());
+        c.setBackend(LambdaJ.MurmelJavaCompiler.Backend.BYTECODE); // instrumented programs are compiled by javac
+        c.setInstrumentCalls(true);
+        final LambdaJ.ReadSupplier reader = new StringReader(source)::read;
+        return (LambdaJ.MurmelJavaProgram)c.formsToJavaClass("Test", reader, null).getDeclaredConstructor().newInstance();
+    }
+
+    @Test
+    public void primitives() {
+        LambdaJTest.runTest("callstats.lisp", PROG + "(call-stats-start) (run 2) (let ((h (call-stats-stop))) (list (hash-table-count h) (hashref (hashref h \"sq (line 2)\") 'calls) (call-stats-stop)))",
+                "(6 2 nil)", null);
+    }
+
+    @Test
+    public void nonlocalExit() {
+        LambdaJTest.runTest("callstats.lisp", "(defun f (n) (if (= n 0) (throw 'done 1) (+ 1 (f (1- n)))))"
+                                              + "(call-stats-start) (catch 'done (f 10)) (catch 'done (f 3)) (hashref (hashref (call-stats-stop) \"f (line 1)\") 'calls)",
+                "15", null);
+    }
+
+    @Test
+    public void writeText() throws Exception {
+        final LambdaJ intp = new LambdaJ();
+        intp.evalString(PROG);
+        intp.startCallStats();
+        intp.evalString("(run 1)", false, null, null);
+        final LambdaJ.CallStats stats = intp.stopCallStats();
+
+        final StringBuilder text = new StringBuilder(), json = new StringBuilder();
+        stats.writeText(text);
+        stats.writeJson(json);
+        assertTrue(text.toString(), text.toString().contains("total cells") && text.toString().contains("fib (line 1)"));
+        assertTrue(json.toString(), json.toString().contains("\"allocUnit\": \"cells\"") && json.toString().contains("{\"name\": \"sq (line 2)\", \"calls\": 1,"));
+    }
+
+    /** 5 iterations of the named let each call outer, inner, sq once and fib(10) which recursively invokes fib 177 times */
+    private static void assertCalls(String msg, LambdaJ.CallStats stats) {
+        final Map<String, Long> calls = new HashMap<>();
+        for (LambdaJ.CallStats.Entry e: stats.entries()) calls.put(e.name, e.calls());
+        final Map<String, Long> expected = new HashMap<>();
+        expected.put("run (line 4)", 1L);
+        expected.put("loop (line 4)", 6L);
+        expected.put("outer (line 3)", 5L);
+        expected.put("inner (line 3)", 5L);
+        expected.put("sq (line 2)", 5L);
+        expected.put("fib (line 1)", 5 * 177L);
+        assertEquals(msg, expected, calls);
+    }
+}
@@ -2,6 +2,8 @@ package io.github.jmurmel;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 public class ClosureTest {
 
     @Test
@@ -16,4 +18,88 @@ public class ClosureTest {
         LambdaJTest.runTest("defineLambda.lisp", "(define x (lambda (p1 p2) (write 1) (write 2))) (x 3 4)",
                 "2.0", "1.02.0");
     }
+
+    @Test
+    public void redefinedGlobal() {
+        LambdaJTest.runTest("redefinedGlobal.lisp", "(define g 1) (defun f () g) (define g 2) (f)",
+                "2.0", null);
+    }
+
+    @Test
+    public void forwardReference() {
+        LambdaJTest.runTest("forwardReference.lisp", "(defun f (x) (g x)) (defun g (x) (cons x x)) (f 'a)",
+                "(a . a)", null);
+    }
+
+    @Test
+    public void localShadowsGlobal() {
+        LambdaJTest.runTest("localShadowsGlobal.lisp", "(define x 'global) (defun f () (let ((x 'local)) (labels ((y () x)) (y)))) (f)",
+                "local", null);
+    }
+
+    @Test
+    public void primitiveCallSites() {
+        LambdaJTest.runTest("primitiveCallSites.lisp", "(defun f (l n) (list (car l) (cdr l) (cons n n) (- n) (- n 1) (+ n 1) (< n 2) (1+ n) (eq l l) (null l))) (f '(1 2) 3)",
+                "(1.0 (2.0) (3.0 . 3.0) -3.0 2.0 4.0 nil 4.0 t nil)", null);
+    }
+
+    @Test
+    public void fixedArityCalls() {
+        LambdaJTest.runTest("fixedArityCalls.lisp", "(defun f (a b c) (list a b c)) (defun g (x) (f x (car x) ((lambda (y) y) x))) (g '(1))",
+                "((1.0) 1.0 (1.0))", null);
+    }
+
+    @Test
+    public void fixedArityCallNotEnoughArgs() {
+        LambdaJTest.runErrorTest("fixedArityCallNotEnoughArgs.lisp", "(defun f (a b) a) (defun g () (f 1)) (g)",
+                "function application: not enough arguments");
+    }
+
+    @Test
+    public void unboundGlobal() {
+        LambdaJTest.runErrorTest("unboundGlobal.lisp", "(defun f () undefined-var) (f)",
+                "eval: 'undefined-var' is not bound");
+    }
+
+    @Test
+    public void setqParameter() {
+        LambdaJTest.runTest("setqParameter.lisp", "(defun f (a b c) (setq b (+ a b c)) (lambda () (setq c 1) (list a b c))) ((f 1 2 3))",
+                "(1.0 6.0 1.0)", null);
+    }
+
+    @Test
+    public void varargsFrame() {
+        LambdaJTest.runTest("varargsFrame.lisp", "(defun f (a b . c) (lambda () (list a b c))) ((f 1 2 3 4))",
+                "(1.0 2.0 (3.0 4.0))", null);
+    }
+
+    @Test
+    public void redefinedFunction() {
+        LambdaJTest.runTest("redefinedFunction.lisp", "(defun g (x) x) (defun f (x) (g x)) (f 1) (define g car) (f '(2))",
+                "2.0", null);
+    }
+
+    @Test
+    public void localRefs() {
+        // references to parameters and let variables are resolved to environment positions, the results must be the same as with speed 0
+        final String prog = "(defun f1 (a) (list a (let ((a (+ a 1)) (b a)) (list a b (let ((c (* a b))) (list a b c))))))"
+                            + "(defun f4 (a b c d) (list d c b a (let ((b 0)) (list a b))))"
+                            + "(defun fv (a . r) (list a r))"
+                            + "(defun mk (a) (let ((b (* a 2))) (lambda (c) (setq a (+ a 1)) (list a b c))))"
+                            + "(define clo (mk 1))"
+                            + "(defun lab (x) (labels ((ev (n) (if (= n 0) x (od (1- n)))) (od (n) (if (= n 0) (list x) (ev (1- n))))) (list (ev 4) (od 3))))"
+                            + "(defun st (x) (let* ((y (* x 2)) (x (+ y 1))) (list x y)))"
+                            + "(defun nl (n) (let loop ((i 0) (acc nil)) (if (< i n) (loop (1+ i) (cons (list i n) acc)) acc)))"
+                            + "(defun mv (x) (multiple-value-bind (a b) (values x (* x 2)) (list a b x)))"
+                            + "(defun outer (x) (defun inner (y) (list y)) (inner x))"
+                            + "(defun fact (n) (if (<= n 1) 1 (* n (fact (1- n)))))"
+                            + "(list (f1 1) (f4 1 2 3 4) (fv 1 2 3) (clo 5) (clo 6) (lab 7) (st 1) (nl 2) (mv 3) (outer 8) (fact 5))";
+        final String expected = "((1 (2.0 1 (2.0 1 2.0))) (4 3 2 1 (1 0)) (1 (2 3)) (2.0 2.0 5) (3.0 2.0 6) (7 7) (3.0 2.0) ((1 2) (0 2)) (3 6.0 3) (8) 120.0)";
+        for (LambdaJ.Engine engine: LambdaJ.Engine.values()) {
+            final LambdaJ intp = new LambdaJ();
+            intp.setEngine(engine);
+            assertEquals(engine.toString(), expected, TestUtils.sexp(intp.evalString(prog)));
+        }
+        assertEquals(expected, TestUtils.sexp(new LambdaJ().evalString("(declaim (optimize (speed 0)))" + prog)));
+    }
 }
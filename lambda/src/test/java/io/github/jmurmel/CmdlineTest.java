@@ -43,6 +43,8 @@ public class CmdlineTest {
             { "run one file", new String[] { "--run", "./src/test/lisp/hello.lisp" }, "", 0, re("|Hello, World!|", "==> |Hello, World!|\n"), "" },
             { "run two files", new String[] { "--run", "./src/test/lisp/empty.lisp", "./src/test/lisp/hello.lisp" }, "", 0, re("|Hello, World!|", "==> |Hello, World!|\n"), "" },
             { "run add 1+2", new String[] { "--run" }, "(+ 1 2)", 0, "\n==> 3.0\n", "" },
+            { "run cache miss", new String[] { "--run", "--cachedir", "target/jmurmel-cache", "./src/test/lisp/hello.lisp" }, "", 0, re("|Hello, World!|", "==> |Hello, World!|\n"), "" },
+            { "run cache hit",  new String[] { "--run", "--cachedir", "target/jmurmel-cache", "./src/test/lisp/hello.lisp" }, "", 0, re("|Hello, World!|", "==> |Hello, World!|\n"), "" },
 
             { "nulltest --repl", new String[] { "--repl" }, ":q", 0, STDOUT_WELCOME_OUTPUT_BYE, ""},
             { "error --repl",    new String[] { "--repl" }, "errorform", 255, STDOUT_WELCOME_OUTPUT, STDERR_ERROR },
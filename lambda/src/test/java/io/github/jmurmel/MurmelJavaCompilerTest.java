@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Function;
 
 import org.junit.Test;
@@ -14,10 +16,20 @@ public class MurmelJavaCompilerTest {
 
     @Test
     public void testSimpleClass() throws Exception {
-        final JavaCompilerHelper c = new JavaCompilerHelper(TestUtils.getTmpDir());
+        final JavaCompilerHelper c = new JavaCompilerHelper();
         final Class<?> clazz = c.javaToClass("Test", "class Test { int i; }");
         assertNotNull("failed to compile Java to class", clazz);
-        c.cleanup();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final JavaCompilerHelper c = new JavaCompilerHelper();
+        final List<Class<?>> classes = c.javaToClasses(Arrays.asList("A", "B"),
+                                                       Arrays.asList("public class A { public static int f() { return B.g() + 1; } }",
+                                                                     "class B { static int g() { return 41; } }"));
+        assertEquals(2, classes.size());
+        assertEquals(42, classes.get(0).getMethod("f").invoke(null));
+        assertSame(classes.get(0).getClassLoader(), classes.get(1).getClassLoader());
     }
 
     @Test
@@ -797,6 +809,181 @@ public class MurmelJavaCompilerTest {
     }
 
 
+    @Test
+    public void testFixedArity() throws Exception {
+        final MurmelProgram program = compile("(defun f (a b) (setq a (+ a b)) (if (< a 10) (f a b) a)) (defun g (x) (let ((y x)) y)) (list (f 1 2) (g 3))");
+        assertEquals("(11.0 3)", TestUtils.sexp(program.body()));
+        assertTrue(program.getValue("f") instanceof MurmelJavaProgram.MurmelFunction2);
+        assertFalse(program.getValue("g") instanceof MurmelJavaProgram.MurmelFunction1); // y captures x, the parameter stays in an array
+        assertEquals(11.0, program.getFunction("f").apply(1L, 2L));
+    }
+
+    @Test
+    public void testFixedArityArgCount() throws Exception {
+        runtimeError("(defun f (a b) (+ a b)) (apply f (list 1))", "f: not enough arguments");
+    }
+
+    @Test
+    public void testFixedArityTailcalls() throws Exception {
+        final String source = "(defun even? (n) (if (= n 0) t (odd? (1- n))))"
+                              + "(defun odd? (n) (if (= n 0) nil (even? (1- n))))"
+                              + "(labels ((loop (i acc) (if (= i 0) acc (loop (1- i) (+ acc 1))))) (list (even? 1000000) (odd? 7) (loop 100000 0)))";
+        assertEquals("(t t 100000.0)", TestUtils.sexp(compile(source).body()));
+    }
+
+    @Test
+    public void testDeclaredTypes() throws Exception {
+        final String source = "(defun sum (n) (let loop ((i 0) (acc 0.0)) (declare (fixnum i) (double-float acc)) (if (< i n) (loop (1+ i) (+ acc i)) acc)))"
+                              + "(declaim (type fixnum x))"
+                              + "(defun sq (x) (setq x (* x x)) x)"
+                              + "(defun isum (n) (let loop ((i 0) (s 0)) (declare (fixnum i s)) (if (< i n) (loop (1+ i) (+ s i)) s)))"
+                              + "(defun fact (n) (let loop ((i n) (acc 1)) (declare (fixnum i acc)) (if (<= i 1) acc (loop (- i 1) (* acc i)))))"
+                              + "(defun elem (v i) (declare (fixnum i)) (svref v i))"
+                              + "(defun prod (a b) (let ((c 0)) (declare (fixnum c)) (setq c (* a b)) c))"
+                              + "(defun assign (a) (declare (fixnum a)) (setq a 'x) a)"
+                              + "(list (sum 4) (sq 1.5) (isum 10) (fact 10) (elem #(1 2 3) 2) (prod 3 4) (assign 1) (prod 94906267 94906267))";
+        // declaim is about global variables, the parameter x of sq is not a fixnum. Declarations are checked when a variable is bound, not by setq
+        final String expected = "(6.0 2.25 45 3628800 3 12.0 x 9.007199515875288E15)";
+        assertEquals(expected, TestUtils.sexp(compile(source).body()));
+        assertEquals(expected, TestUtils.sexp(compileBytecode(source).body()));
+        assertEquals(expected, TestUtils.sexp(new LambdaJ().evalString(source)));
+    }
+
+    @Test
+    public void testIndexArgs() throws Exception {
+        // primitive index or value arguments must not make the long index overloads ambiguous
+        final String source = "(define v (make-array 3)) (define b (make-array 3 'bit))"
+                              + "(defun fill (i) (declare (fixnum i)) (svset v i 1) (svset v (1- i) 1.5) (bvset b i 1) (bvset b (1- i) 1))"
+                              + "(fill 2) (list v b (svref v (+ 0 0)))";
+        assertEquals("(#(nil 1.5 1) #*011 nil)", TestUtils.sexp(compile(source).body()));
+    }
+
+    @Test
+    public void testDeclaredTypeError() throws Exception {
+        runtimeError("(defun f (a) (declare (double-float a)) a) (f 1)", "not a double-float: 1");
+        runtimeError("(defun f (a) (declare (fixnum a)) a) (f 1.5)", "not a fixnum: 1.5");
+        runtimeError("(defun f (a b) (declare (fixnum a b)) (let loop ((i a)) (declare (fixnum i)) (loop (* i b)))) (f 4294967296 4194304)", "not a fixnum: 1.8014398509481984E16");
+    }
+
+    @Test
+    public void testInferredTypes() throws Exception {
+        final String source = "(declaim (optimize (debug 1)))"
+                              + "(defun sum (n) (let loop ((i 0) (acc 0.0)) (if (< i n) (loop (1+ i) (+ acc i)) acc)))"
+                              + "(defun isum (n) (let loop ((i 0) (acc 0)) (if (< i n) (loop (1+ i) (+ acc i)) acc)))"
+                              + "(defun f (n) (let* ((a 1.5) (b (+ a n)) (c (cons a b)) (d 0)) (setq d (1+ d)) (setq a 'x) (list a b (car c) d)))"
+                              + "(defun g (x) (let ((x 1) (y x)) (let ((x 'a)) (list x y))))"
+                              + "(list (sum 4) (isum 4) (f 2) (g 3))";
+        assertEquals("(6.0 6.0 (x 3.5 1.5 1) (a 3))", TestUtils.sexp(compile(source).body()));
+    }
+
+    @Test
+    public void testBoxCache() throws Exception {
+        final String source = "(define x 1000) (define v #(1 2))"
+                              + "(list (eq x (1+ 999)) (eq (1- 1001) 1000) (eq (char-code #\\\u00e4) (char-code #\\\u00e4))"
+                              + " (eq #\\\u00e4 (code-char 228)) (eq #\\\u00e4 (sref \"\u00e4\" 0)) v)";
+        assertEquals("(t t t t t #(1 2))", TestUtils.sexp(compile(source).body()));
+    }
+
+    @Test
+    public void testBoxCacheBackends() throws Exception {
+        final String source = "(define x 200) (defun f () 200)"
+                              + "(list (eq 200 200) (eq x 200) (eq (f) 200) (eq (char-code #\\\u00e4) 228) (eq #\\\u00e4 #\\\u00e4))";
+        final MurmelProgram bytecode = compileBytecode(source);
+        assertEquals("BytecodeProgram", bytecode.getClass().getSuperclass().getSimpleName());
+        assertEquals("(t t t t t)", TestUtils.sexp(bytecode.body()));
+        assertEquals("(t t t t t)", TestUtils.sexp(compile(source).body()));
+        assertEquals("(t t t t t)", TestUtils.sexp(new LambdaJ().evalString(source)));
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final String source = "(defun sq (x) (* x x)) (define v #(1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16))"
+                              + "(list (pmap sq v) (pfilter (lambda (x) (> x 14)) v) (preduce + v 10) (pmap 1+ '(1 2)))";
+        final String expected = "(#(1.0 4.0 9.0 16.0 25.0 36.0 49.0 64.0 81.0 100.0 121.0 144.0 169.0 196.0 225.0 256.0) #(15 16) 146.0 (2 3))";
+        assertEquals(expected, TestUtils.sexp(compile(source).body()));
+        assertEquals(expected, TestUtils.sexp(compileBytecode(source).body()));
+    }
+
+    @Test
+    public void testBytecodeFib() throws Exception {
+        final MurmelProgram program = compileBytecode("(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2))))) (fib 20)");
+        assertTrue(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(6765.0, program.body());
+        assertEquals(55.0, program.getFunction("fib").apply(10L));
+    }
+
+    @Test
+    public void testBytecodeLoop() throws Exception {
+        final MurmelProgram program = compileBytecode("(defun count (n acc) (cond ((= n 0) acc) (t (count (1- n) (1+ acc))))) (count 1000000 0)");
+        assertTrue(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(1000000L, program.body());
+    }
+
+    @Test
+    public void testBytecodeForms() throws Exception {
+        final MurmelProgram program = compileBytecode("(define x 1)\n"
+                                                      + "(defun f (a) (let* ((b (+ a 1)) (c (* b 2))) (setq x (list a b c)) (if (null x) 'no (cons 'yes x))))\n"
+                                                      + "(defun g (l) (cond ((car l)) (t 'none)))\n"
+                                                      + "(list (f 1) (g '(nil)) (g '(2 3)) x '(\"s\" #\\c 1.5))");
+        assertTrue(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals("((yes 1 2.0 4.0) none 2 (1 2.0 4.0) (\"s\" #\\c 1.5))", TestUtils.sexp(program.body()));
+        assertEquals("(1 2.0 4.0)", TestUtils.sexp(program.getValue("x")));
+    }
+
+    @Test
+    public void testBytecodeFuncall() throws Exception {
+        final MurmelProgram program = compileBytecode("(defun twice (f x) (f (f x))) (defun inc (x) (1+ x)) (twice inc 3)");
+        assertTrue(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(5L, program.body());
+    }
+
+    @Test
+    public void testBytecodeFallback() throws Exception {
+        final MurmelProgram program = compileBytecode("(defmacro twice (x) `(* 2 ,x)) (define f (lambda (x) (twice x))) (f 21)");
+        assertFalse(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(42.0, program.body());
+    }
+
+    @Test
+    public void testBytecodeFallbackEvalsOnce() throws Exception {
+        // the named let is only rejected after all toplevel forms were seen, the defines must not be evaluated twice at compiletime
+        final MurmelJavaCompiler c = new MurmelJavaCompiler(null, null);
+        c.setBackend(MurmelJavaCompiler.Backend.BYTECODE);
+        final ReadSupplier reader = new StringReader("(define l (list 0)) (define n (rplaca l (1+ (car l)))) (defun f (x) (let loop ((i x)) i)) (f 1)")::read;
+        final MurmelProgram program = c.formsToJavaClass("Test", reader, null).getDeclaredConstructor().newInstance();
+        assertFalse(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals("(1)", TestUtils.sexp(c.intp.getValue("l")));
+        assertEquals(1L, program.body());
+
+        final MurmelProgram macro = compileBytecode("(define l (list 1)) (defmacro m () (car l)) (m)");
+        assertFalse(macro instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(1L, macro.body());
+
+        final MurmelProgram bytecode = compileBytecode("(define l (list 1)) (defun f () (car l)) (f)");
+        assertTrue(bytecode instanceof MurmelJavaCompiler.BytecodeProgram);
+        assertEquals(1L, bytecode.body());
+    }
+
+    @Test
+    public void testBytecodeCompare() throws Exception {
+        final String source = "(defun cmp (a b) (list (< a b) (<= a b) (= a b) (> a b) (>= a b)))"
+                              + "(list (cmp 1 2) (cmp 2 2) (cmp 9007199254740991 9007199254740990) (cmp 1.5 1) (cmp 2 2.0) (cmp -1 (- 0.5 1.5))"
+                              + " (if (< 1 2) 'lt 'ge) (if (> (1+ 1) 2) 'gt 'le) (cmp (/ 0.0 0.0) 1)"
+                              + " (cmp 9007199254740993 9007199254740992) (if (= 9007199254740993 9007199254740992) 'eq 'ne))";
+        final MurmelProgram program = compileBytecode(source);
+        assertTrue(program instanceof MurmelJavaCompiler.BytecodeProgram);
+        final String expected = TestUtils.sexp(new LambdaJ().evalString(source));
+        assertEquals("((t t nil nil nil) (nil t t nil t) (nil nil nil t t) (nil nil nil t t) (nil t t nil t) (nil t t nil t) lt le (nil nil nil nil nil) (nil t t nil t) eq)", expected);
+        assertEquals(expected, TestUtils.sexp(program.body()));
+    }
+
+    private static MurmelProgram compileBytecode(String source) throws Exception {
+        final MurmelJavaCompiler c = new MurmelJavaCompiler(null, null);
+        c.setBackend(MurmelJavaCompiler.Backend.BYTECODE);
+        final ReadSupplier reader = new StringReader(source)::read;
+        return c.formsToJavaClass("Test", reader, null).getDeclaredConstructor().newInstance();
+    }
+
 
     static void compileAndRun(String source, Object expectedResult) throws Exception {
         final MurmelProgram program = compile(source);
@@ -0,0 +1,64 @@
+package io.github.jmurmel;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelTest {
+
+    @Test
+    public void pmapKeepsOrder() {
+        LambdaJTest.runTest("pmap.lisp", "(let ((v (pmap 1+ (list->simple-vector (let loop ((i 999) (acc nil)) (if (< i 0) acc (loop (1- i) (cons i acc))))))))"
+                                         + " (list (svref v 0) (svref v 500) (svref v 999) (preduce + v)))",
+                "(1.0 501.0 1000.0 500500.0)", null);
+        LambdaJTest.runTest("pmap.lisp", "(list (pmap 1+ '(1 2 3)) (pmap car #((1) (2))) (pmap (lambda (x) (* x x)) #(1 2 3)))",
+                "((2.0 3.0 4.0) #(1.0 2.0) #(1.0 4.0 9.0))", null);
+    }
+
+    @Test
+    public void pfilter() {
+        LambdaJTest.runTest("pfilter.lisp", "(list (pfilter consp '(1 (2) 3 (4))) (pfilter (lambda (x) (> x 2)) #(1 2 3 4)) (pfilter null nil))",
+                "(((2.0) (4.0)) #(3.0 4.0) nil)", null);
+    }
+
+    @Test
+    public void preduce() {
+        LambdaJTest.runTest("preduce.lisp", "(list (preduce + #(1 2 3 4)) (preduce + '() 7) (preduce + '()) (preduce + '(1 2 3) 10))",
+                "(10.0 7.0 0.0 16.0)", null);
+    }
+
+    @Test
+    public void pmapError() {
+        LambdaJTest.runErrorTest("pmapError.lisp", "(pmap car #(1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16))", "car: expected a list argument but got 1");
+        LambdaJTest.runErrorTest("pmapError.lisp", "(pmap 1+ 3)", "pmap: expected a list or vector argument but got 3");
+    }
+
+    /** square calls itself non-leaf sq and blocks until both elements are being processed, this would time out if pmap applied it sequentially */
+    private static final String AWAIT = "(define barrier ((jmethod \"java.util.concurrent.CyclicBarrier\" \"new\" \"int\") 2))"
+                                        + "(define seconds ((jmethod \"java.util.concurrent.TimeUnit\" \"valueOf\" \"String\") \"SECONDS\"))"
+                                        + "(define await (jmethod \"java.util.concurrent.CyclicBarrier\" \"await\" \"long\" \"java.util.concurrent.TimeUnit\"))"
+                                        + "(defun sq (x) (* x x))"
+                                        + "(defun square (x) (await barrier 10 seconds) (sq x))";
+
+    @Test
+    public void pmapInterpretedIsParallel() {
+        final LambdaJ intp = new LambdaJ();
+        intp.evalString(AWAIT);
+        assertEquals("(1.0 4.0)", intp.evalString("(pmap square '(1 2))", false, null, null).toString());
+        assertEquals("#(9.0 16.0)", LambdaJ.printSEx(intp.evalString("(pmap (lambda (x) (square x)) #(3 4))", false, null, null)).toString());
+    }
+
+    /** compiled functions share the program's globals and dynamic bindings and therefore are applied in the calling thread */
+    @Test
+    public void pmapCompiledInCallingThread() throws Exception {
+        final LambdaJ.MurmelJavaCompiler c = new LambdaJ.MurmelJavaCompiler(null, null, TestUtils.getTmpDir());
+        final LambdaJ.ReadSupplier source = new StringReader("(define current-thread (jmethod \"java.lang.Thread\" \"currentThread\"))"
+                                                             + "(define caller (current-thread)) (defun f (e) (eq (current-thread) caller))"
+                                                             + "(define v (list->simple-vector (let loop ((i 9999) (acc nil)) (if (< i 0) acc (loop (1- i) (cons i acc))))))"
+                                                             + "(list (pfilter null (pmap f v)) (preduce + v))")::read;
+        final Class<LambdaJ.MurmelProgram> cls = c.formsToJavaClass("Test", source, null);
+        assertEquals("(#() 4.9995E7)", LambdaJ.printSEx(cls.getDeclaredConstructor().newInstance().body()).toString());
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.jmurmel;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ProfilerTest {
+
+    private static final String FIB = "(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))\n";
+
+    @Test
+    public void interpreted() {
+        final LambdaJ intp = new LambdaJ();
+        intp.evalString(FIB);
+        assertNotNull(intp.startProfiler(1));
+        assertNull(intp.startProfiler(1));
+
+        // sampling depends on timing: run until there are samples, give up after 60s
+        final long deadline = System.currentTimeMillis() + 60_000;
+        LambdaJ.Profiler profiler = null;
+        while (profiler == null || profiler.sampleCount() == 0 && System.currentTimeMillis() < deadline) {
+            if (profiler != null) assertNotNull(intp.startProfiler(1));
+            intp.evalString("(fib 20)", false, null, null);
+            profiler = intp.stopProfiler();
+            assertNotNull(profiler);
+            assertNull(intp.stopProfiler());
+        }
+
+        assertTrue(profiler.sampleCount() > 0);
+        for (String stack: profiler.collapsedStacks().keySet()) assertTrue(stack, stack.startsWith("fib ("));
+    }
+
+    @Test
+    public void primitives() {
+        LambdaJTest.runTest("profile.lisp", FIB + "(profile-start 1) (fib 20) (let ((s (profile-stop))) (list (stringp s) (profile-stop)))", "(t nil)", null);
+    }
+
+    @Test
+    public void compiled() throws Exception {
+        final LambdaJ.MurmelJavaCompiler c = new LambdaJ.MurmelJavaCompiler(null, null, TestUtils.getTmpDir());
+        final LambdaJ.ReadSupplier reader = new StringReader(FIB + "(defun profile-fib () (profile-start 1) (fib 20) (profile-stop))")::read;
+        final LambdaJ.MurmelProgram program = c.formsToJavaClass("Test", reader, null).getDeclaredConstructor().newInstance();
+        program.body();
+
+        // sampling depends on timing: run until the profile contains fib, give up after 60s
+        final long deadline = System.currentTimeMillis() + 60_000;
+        Object result;
+        do {
+            result = program.getFunction("profile-fib").apply();
+            assertTrue(result instanceof String);
+        } while (!((String)result).contains("fib") && System.currentTimeMillis() < deadline);
+
+        assertTrue((String)result, ((String)result).contains("fib"));
+    }
+
+    @Test
+    public void demangle() {
+        assertEquals("loop-it", LambdaJ.Profiler.demangle("_loop_45_it"));
+    }
+}
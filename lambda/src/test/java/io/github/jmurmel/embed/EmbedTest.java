@@ -5,6 +5,7 @@ import org.junit.Test;
 import io.github.jmurmel.LambdaJ;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class EmbedTest {
 
@@ -30,4 +31,263 @@ public class EmbedTest {
         Object result5 = prog.body();
         assertEquals(3.0, result5);
     }
+
+    @Test
+    public void testNodeInterpreter() throws Exception {
+        LambdaJ interpreter = new LambdaJ();
+        interpreter.setEngine(LambdaJ.Engine.NODES);
+
+        String source = "(defun count-down (n acc) (if (<= n 0) acc (count-down (1- n) (1+ acc))))\n"
+                        + "(defun two-values (a b) (values a b))\n"
+                        + "(list (count-down 100000 0)\n"
+                        + "      (multiple-value-bind (x y) (two-values 1 2) (+ x y))\n"
+                        + "      (catch 'tag (let loop ((i 0)) (if (= i 3) (throw 'tag i) (loop (1+ i))))))";
+        LambdaJ.MurmelProgram prog = interpreter.formsToInterpretedProgram(source, () -> -1, s -> {});
+
+        assertEquals("(100000 3.0 3)", prog.body().toString());
+
+        LambdaJ.MurmelFunction countDown = prog.getFunction("count-down");
+        assertEquals(10L, countDown.apply(10L, 0L));
+    }
+
+    @Test
+    public void testSharedSymbolTable() throws Exception {
+        LambdaJ a = new LambdaJ();
+        LambdaJ b = new LambdaJ(a.getSymbolTable());
+        a.evalString("(define x 1) (defun f () x)");
+        b.evalString("(define x 2) (defun f () (* x 10))");
+
+        assertEquals(1L, a.evalString("(f)", false, null, null));
+        assertEquals(20.0, b.evalString("(f)", false, null, null));
+        a.evalString("(setq x 3)");
+        assertEquals(3L, a.getValue("x"));
+        assertEquals(2L, b.getValue("x"));
+        assertEquals(30.0, b.evalString("(setq x 3) (f)", false, null, null));
+    }
+
+    @Test
+    public void testCustomEnvironment() {
+        final LambdaJ interpreter = new LambdaJ();
+        final LambdaJ.ConsCell entry = LambdaJ.ConsCell.cons(interpreter.getSymbolTable().intern("x"), 1L);
+        final LambdaJ.ConsCell customEnv = LambdaJ.ConsCell.list(entry);
+
+        for (int i = 0; i < 2; i++) {
+            final LambdaJ.ObjectReader program = LambdaJ.makeReader(new java.io.StringReader("(define y x) (setq x 2) (list y x)")::read, interpreter.getSymbolTable(), null);
+            assertEquals("(1 2)", interpreter.interpretExpressions(program, null, null, symtab -> customEnv).toString());
+            assertEquals(1L, entry.cdr()); // the interpreter must not modify the caller's environment
+        }
+    }
+
+    @Test
+    public void testContexts() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(define *n* 0) (defmacro twice (x) `(* 2 ,x))"
+                         + "(defun count-up (n acc) (if (<= n 0) acc (count-up (1- n) (1+ acc))))"
+                         + "(defun work (k) (setq *n* k) (multiple-value-bind (a b) (values (twice k) (count-up 2000 0)) (list *n* a b)))");
+
+        final int nThreads = 8;
+        final java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(nThreads);
+        try {
+            final java.util.List<java.util.concurrent.Future<String>> results = new java.util.ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                final int k = t;
+                results.add(pool.submit(() -> {
+                    final LambdaJ ctx = image.newContext();
+                    if (k % 2 == 0) ctx.setEngine(LambdaJ.Engine.NODES);
+                    String ret = null;
+                    for (int i = 0; i < 100; i++) ret = ctx.evalString("(work " + k + ")", false, null, null).toString();
+                    return ret;
+                }));
+            }
+            for (int t = 0; t < nThreads; t++) assertEquals("(" + t + " " + 2.0 * t + " 2000)", results.get(t).get());
+        }
+        finally { pool.shutdown(); }
+
+        assertEquals(0L, image.getValue("*n*"));
+    }
+
+    @Test
+    public void testSymbolOfOtherSymbolTable() throws Exception {
+        // both interpreters number their symbols starting at 1, so a-sym and b-sym get the same slot index
+        final LambdaJ a = new LambdaJ(), b = new LambdaJ();
+        final Object aSym = a.evalString("(define a-sym 1) 'a-sym");
+        b.evalString("(define b-sym 2) (defun ev (form) (eval form))");
+
+        final LambdaJ.MurmelFunction ev = b.getFunction("ev");
+        ev.apply(b.getFunction("list").apply(b.evalString("'define", false, null, null), aSym, 3L));
+        assertEquals(3L, ev.apply(aSym));
+        assertEquals(2L, b.getValue("b-sym"));
+        assertEquals(1L, a.getValue("a-sym"));
+    }
+
+    @Test
+    public void testContextsShareCallSites() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(defun g () 1) (defun f () (g))");
+        final LambdaJ a = image.newContext(), b = image.newContext();
+        b.evalString("(defun g () 2)", false, null, null);
+
+        // the call site (g) in f is shared by the contexts but each context calls its own g
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1L, a.evalString("(f)", false, null, null));
+            assertEquals(2L, b.evalString("(f)", false, null, null));
+            assertEquals(1L, image.evalString("(f)", false, null, null));
+        }
+    }
+
+    @Test
+    public void testContextMacros() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(defmacro m () 1)");
+        final LambdaJ a = image.newContext(), b = image.newContext();
+        a.evalString("(defmacro m () 2)", false, null, null);
+        b.evalString("(defmacro m)", false, null, null);
+
+        assertEquals(2L, a.evalString("(m)", false, null, null));
+        assertEquals(1L, image.evalString("(m)", false, null, null));
+        assertEquals(1L, image.newContext().evalString("(m)", false, null, null));
+        assertEquals(2L, a.snapshot().fork().evalString("(defmacro m2 () (m)) (m2)", false, null, null));
+        assertEquals("(m)", b.evalString("(macroexpand-1 '(m))", false, null, null).toString());
+    }
+
+    @Test
+    public void testNewContextSeesChanges() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(define *x* 1)");
+        assertEquals(1L, image.newContext().evalString("*x*", false, null, null));
+
+        image.evalString("(setq *x* 2)", false, null, null);
+        assertEquals(2L, image.newContext().evalString("*x*", false, null, null));
+        image.evalString("(define *y* 3) (defmacro m () '(+ *x* *y*))", false, null, null);
+        assertEquals(5.0, image.newContext().evalString("(m)", false, null, null));
+        image.evalString("(defun get-x () *x*) (let dynamic ((*x* 10)) (get-x))", false, null, null);
+        assertEquals(2L, image.newContext().evalString("*x*", false, null, null));
+    }
+
+    @Test
+    public void testForkReaderPrinter() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        final StringBuilder imageOut = new StringBuilder();
+        image.evalString("(defun say (x) (write x nil))", true, null, imageOut::append);
+        final LambdaJ.Snapshot snapshot = image.snapshot();
+
+        // forks don't share the reader/ printer of the interpreter they were forked from
+        assertEquals(null, snapshot.fork().getLispPrinter());
+        final StringBuilder forkOut = new StringBuilder();
+        snapshot.fork(null, LambdaJ.makeWriter(forkOut::append)).getFunction("say").apply("hello");
+        assertEquals("hello", forkOut.toString());
+        assertEquals("", imageOut.toString());
+
+        // pmap workers write to the caller's printer
+        image.evalString("(pmap (lambda (x) (say x)) '(1 2 3 4 5 6 7 8))", false, null, imageOut::append);
+        final char[] written = imageOut.toString().toCharArray();
+        java.util.Arrays.sort(written);
+        assertEquals("12345678", new String(written));
+    }
+
+    @Test
+    public void testSnapshotFork() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(define *x* 1) (define my-car car) (defmacro inc-x () '(setq *x* (1+ *x*))) (defun get-x () *x*)");
+        final LambdaJ.Snapshot snapshot = image.snapshot();
+        image.evalString("(setq *x* 100)", false, null, null);
+
+        final LambdaJ a = snapshot.fork(), b = snapshot.fork();
+        assertEquals(2L, a.evalString("(inc-x) (get-x)", false, null, null));
+        assertEquals(1L, b.evalString("(get-x)", false, null, null));
+        assertEquals(100L, image.getValue("*x*"));
+        assertEquals("(t 1 3.0 3)", a.evalString("(list (eq my-car car) (my-car '(1)) (apply + '(1 2)) (eval '(1+ 2)))", false, null, null).toString());
+
+        // a snapshot of a fork starts out with the fork's image, macros survive a reset of the original interpreter
+        final LambdaJ.Snapshot snapshot2 = a.snapshot();
+        image.evalString("(define y 1)");
+        assertEquals(3L, snapshot2.fork().evalString("(inc-x) *x*", false, null, null));
+
+        // saving a snapshot of a fork writes the globals and macros of the whole chain of snapshots
+        final java.nio.file.Path imageFile = java.nio.file.Files.createTempFile("embedtest", ".img");
+        try {
+            snapshot2.save(imageFile);
+            assertEquals("(3 3 1)", LambdaJ.Snapshot.load(imageFile).fork().evalString("(list (inc-x) *x* (my-car '(1)))", false, null, null).toString());
+        }
+        finally { java.nio.file.Files.delete(imageFile); }
+    }
+
+    @Test
+    public void testImage() throws Exception {
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(define *x* 1) (define my-apply apply) (defmacro inc-x () '(setq *x* (1+ *x*)))"
+                         + "(define counter (let ((n 0)) (lambda () (setq n (1+ n)))))"
+                         + "(defun even-odd (n) (labels ((ev (n) (if (= n 0) t (od (1- n)))) (od (n) (if (= n 0) nil (ev (1- n))))) (ev n)))"
+                         + "(define v (vector 1 \"two\" 'three)) (define h (make-hash-table)) (hashset h 'k \"value\")"
+                         + "(define l '(1 2 3)) (rplacd (cdr (cdr l)) l) (define g (gensym)) (define gg (list g g))"
+                         + "(define up (jmethod \"String\" \"toUpperCase\"))");
+        image.evalString("(counter)", false, null, null);
+
+        final java.nio.file.Path imageFile = java.nio.file.Files.createTempFile("embedtest", ".img");
+        try {
+            assertEquals(0, image.snapshot().save(imageFile).size());
+            final LambdaJ a = LambdaJ.Snapshot.load(imageFile).fork();
+            assertEquals(2L, a.evalString("(inc-x) *x*", false, null, null));
+            assertEquals("(2 3)", a.evalString("(list (counter) (counter))", false, null, null).toString());
+            assertEquals("(t nil)", a.evalString("(list (even-odd 10) (even-odd 7))", false, null, null).toString());
+            assertEquals("(two three value 1 t t)", a.evalString("(list (svref v 1) (svref v 2) (hashref h 'k) (car (cdr (cdr (cdr l)))) (eq (car gg) (car (cdr gg))) (eq (car gg) g))", false, null, null).toString());
+            assertEquals("(ABC 3.0 3)", a.evalString("(list (up \"abc\") (my-apply + '(1 2)) (eval '(1+ 2)))", false, null, null).toString());
+        }
+        finally { java.nio.file.Files.delete(imageFile); }
+    }
+
+    @Test
+    public void testImageSkipsUnwritable() throws Exception {
+        // java.util.Date is Serializable but is not one of the classes that may be read from an image file
+        final LambdaJ image = new LambdaJ();
+        image.evalString("(define l (list 1 2)) (define date (list l ((jmethod \"java.util.Date\" \"new\")))) (define l2 (cons 0 l))"
+                         + "(define th (list l (jmethod \"java.lang.Thread\" \"currentThread\") (jmethod \"java.lang.Thread\" \"currentThread\")))");
+
+        final java.nio.file.Path imageFile = java.nio.file.Files.createTempFile("embedtest", ".img");
+        try {
+            final java.util.List<Object> skipped = image.snapshot().save(imageFile);
+            assertEquals("[date]", skipped.toString());
+            final LambdaJ a = LambdaJ.Snapshot.load(imageFile).fork();
+            assertEquals("((1 2) t t)", a.evalString("(list l (eq l (cdr l2)) (eq l (car th)))", false, null, null).toString());
+        }
+        finally { java.nio.file.Files.delete(imageFile); }
+    }
+
+    @Test
+    public void testJit() throws Exception {
+        LambdaJ interpreter = new LambdaJ();
+        interpreter.setJitThreshold(10);
+        interpreter.evalString("(defun fib (n) (if (< n 2) n (+ (fib (- n 1)) (fib (- n 2)))))");
+
+        final long deadline = System.currentTimeMillis() + 60_000;
+        while (!(interpreter.getValue("fib") instanceof LambdaJ.MurmelFunction) && System.currentTimeMillis() < deadline) {
+            assertEquals(55.0, interpreter.evalString("(fib 10)", false, null, null));
+            Thread.sleep(10);
+        }
+
+        assertTrue("fib should have been compiled", interpreter.getValue("fib") instanceof LambdaJ.MurmelFunction);
+        assertEquals(6765.0, interpreter.evalString("(fib 20)", false, null, null));
+        assertEquals(55.0, interpreter.getFunction("fib").apply(10L));
+    }
+
+    @Test
+    public void testJitOutput() throws Exception {
+        LambdaJ interpreter = new LambdaJ();
+        interpreter.setJitThreshold(10);
+        interpreter.evalString("(defun pr (x) (write x) x)");
+
+        final long deadline = System.currentTimeMillis() + 60_000;
+        while (!(interpreter.getValue("pr") instanceof LambdaJ.MurmelFunction) && System.currentTimeMillis() < deadline) {
+            interpreter.evalString("(pr 1)", false, null, s -> {});
+            Thread.sleep(10);
+        }
+
+        // the compiled function writes to the printer of the current eval
+        assertTrue("pr should have been compiled", interpreter.getValue("pr") instanceof LambdaJ.MurmelFunction);
+        for (String out: new String[] { "a", "b" }) {
+            final StringBuilder sb = new StringBuilder();
+            interpreter.evalString("(pr '" + out + ")", false, null, sb::append);
+            assertEquals(out, sb.toString());
+        }
+    }
 }
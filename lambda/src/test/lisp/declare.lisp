@@ -0,0 +1,35 @@
+; result: (6.0 nil t nil t 45 12.0 x 1.5 3)
+; output: (empty)
+
+(declaim (type double-float acc))
+
+(defun sum (n)
+  (labels ((loop (i acc)
+             (declare (type fixnum i) (double-float acc))
+             (if (< i n) (loop (1+ i) (+ acc i)) acc)))
+    (loop 0 0.0)))
+
+; a fixnum variable may be bound to an integral double-float such as the result of +, and holds a fixnum
+(defun isum (n)
+  (let loop ((i 0) (s 0))
+    (declare (fixnum i s))
+    (if (< i n) (loop (1+ i) (+ s i)) s)))
+
+; declarations are checked when the variables are bound, setq doesn't check or convert
+(defun prod (a b)
+  (let ((c 0))
+    (declare (fixnum c))
+    (setq c (* a b))
+    c))
+
+(defun assign (a v)
+  (declare (fixnum a))
+  (setq a v)
+  a)
+
+(defun convert (a)
+  (declare (fixnum a))
+  a)
+
+(list (sum 4) (typep 'a 'fixnum) (typep 1.0 'double-float) (typep "1.0" 'double-float) (typep (isum 10) 'fixnum) (isum 10)
+      (prod 3 4) (assign 1 'x) (assign 1 1.5) (convert 3.0))
@@ -0,0 +1,134 @@
+package io.github.jmurmel;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compare two JMH result files that were written with {@code -rf csv} and report the change of each benchmark's score.
+ * Exits with status 1 if a benchmark got slower by more than the threshold percentage (default 10%).
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar ReaderBenchmark PrinterBenchmark -rf csv -rff baseline.csv
+ * ... aendern, neu bauen ...
+ * java -jar target/benchmarks.jar ReaderBenchmark PrinterBenchmark -rf csv -rff current.csv
+ * java -cp target/benchmarks.jar io.github.jmurmel.BenchmarkCompare baseline.csv current.csv 5
+ */
+public final class BenchmarkCompare {
+    private BenchmarkCompare() {}
+
+    /** one line of a JMH csv result file */
+    static final class Result {
+        final String name, mode, unit;
+        final double score, error;
+
+        Result(String name, String mode, double score, double error, String unit) { this.name = name; this.mode = mode; this.score = score; this.error = error; this.unit = unit; }
+
+        /** for throughput higher is better, for all other modes (avgt, sample, ss) lower is better */
+        boolean higherIsBetter() { return "thrpt".equals(mode); }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BenchmarkCompare <baseline.csv> <current.csv> [threshold percent]");
+            System.exit(2);
+        }
+        final double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 10.0;
+        final Map<String, Result> baseline = read(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8));
+        final Map<String, Result> current = read(Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8));
+
+        final int regressions = compare(baseline, current, threshold, System.out);
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /** print a report comparing {@code baseline} and {@code current}, return the number of regressions */
+    static int compare(Map<String, Result> baseline, Map<String, Result> current, double threshold, PrintStream out) {
+        int width = 10;
+        for (String name: current.keySet()) width = Math.max(width, name.length());
+        for (String name: baseline.keySet()) width = Math.max(width, name.length());
+        final String fmt = "%-" + width + "s  %14s  %14s  %-9s %8s  %s%n";
+
+        out.printf(Locale.ROOT, fmt, "Benchmark", "Baseline", "Current", "Unit", "Change", "");
+        int regressions = 0, improvements = 0;
+        for (Map.Entry<String, Result> entry: current.entrySet()) {
+            final Result cur = entry.getValue(), base = baseline.get(entry.getKey());
+            if (base == null) { out.printf(Locale.ROOT, fmt, entry.getKey(), "", fmt(cur.score), cur.unit, "", "new");  continue; }
+
+            final double change = (cur.score - base.score) / base.score * 100.0;
+            final double worse = cur.higherIsBetter() ? -change : change;
+            final String verdict;
+            if (!cur.unit.equals(base.unit) || !cur.mode.equals(base.mode)) verdict = "units differ";
+            else if (worse > threshold) { verdict = "REGRESSION";  regressions++; }
+            else if (worse < -threshold) { verdict = "improved";  improvements++; }
+            else verdict = "";
+            out.printf(Locale.ROOT, fmt, entry.getKey(), fmt(base.score), fmt(cur.score), cur.unit, String.format(Locale.ROOT, "%+.1f%%", change), verdict);
+        }
+        for (String name: baseline.keySet()) if (!current.containsKey(name)) out.printf(Locale.ROOT, fmt, name, fmt(baseline.get(name).score), "", baseline.get(name).unit, "", "missing");
+
+        out.printf(Locale.ROOT, "%n%d benchmark(s), %d regression(s), %d improvement(s), threshold %.1f%%%n", current.size(), regressions, improvements, threshold);
+        return regressions;
+    }
+
+    private static String fmt(double d) { return String.format(Locale.ROOT, "%.3f", d); }
+
+    /** parse the lines of a JMH csv result file, the key is the benchmark name followed by its parameters */
+    static Map<String, Result> read(List<String> lines) {
+        final Map<String, Result> ret = new LinkedHashMap<>();
+        if (lines.isEmpty()) return ret;
+        final List<String> header = split(lines.get(0));
+        final int name = header.indexOf("Benchmark"), mode = header.indexOf("Mode"), score = header.indexOf("Score"), unit = header.indexOf("Unit");
+        int error = -1;
+        for (int i = 0; i < header.size(); i++) if (header.get(i).startsWith("Score Error")) error = i;
+        if (name < 0 || mode < 0 || score < 0 || unit < 0) throw new IllegalArgumentException("not a JMH csv result file, header is " + lines.get(0));
+
+        for (String line: lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) continue;
+            final List<String> fields = split(line);
+            final StringBuilder key = new StringBuilder(shortName(fields.get(name)));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty())
+                    key.append(' ').append(header.get(i).substring("Param: ".length())).append('=').append(fields.get(i));
+            }
+            ret.put(key.toString(), new Result(key.toString(), fields.get(mode), number(fields.get(score)), error < 0 ? Double.NaN : number(fields.get(error)), fields.get(unit)));
+        }
+        return ret;
+    }
+
+    private static String shortName(String benchmark) {
+        final String pkg = BenchmarkCompare.class.getPackage().getName() + '.';
+        return benchmark.startsWith(pkg) ? benchmark.substring(pkg.length()) : benchmark;
+    }
+
+    /** JMH may write numbers with the default locale's decimal separator */
+    private static double number(String s) {
+        if (s.isEmpty() || "NaN".equals(s)) return Double.NaN;
+        return Double.parseDouble(s.replace(',', '.'));
+    }
+
+    /** split a csv line, fields may be enclosed in double quotes */
+    static List<String> split(String line) {
+        final List<String> ret = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') { field.append('"');  i++; }
+                else if (c == '"') quoted = false;
+                else field.append(c);
+            }
+            else if (c == '"') quoted = true;
+            else if (c == ',') { ret.add(field.toString());  field.setLength(0); }
+            else field.append(c);
+        }
+        ret.add(field.toString());
+        return ret;
+    }
+}
@@ -0,0 +1,343 @@
+package io.github.jmurmel;
+
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Run the benchmark programs in samples.murmel-mlib/benchmark interpreted and compiled, write a report as CSV and/ or JSON
+ * and optionally compare the results with a baseline report.
+ *
+ * <p>Instead of bench.lisp's {@code bench} macro that times a form for several seconds and prints the results the harness
+ * provides its own module "bench": each {@code (bench name form ref)} registers {@code form} as a benchmark,
+ * and after the file was loaded the harness runs each registered form a number of times and measures
+ * wall time, bytes allocated by the current thread and (interpreted only) cons cells allocated by the interpreter.
+ *
+ * <p>Aufruf z.B. mit
+ * <pre>
+ * java -cp target/benchmarks.jar io.github.jmurmel.BenchmarkHarness --csv baseline.csv
+ * ... aendern, neu bauen ...
+ * java -cp target/benchmarks.jar io.github.jmurmel.BenchmarkHarness --csv current.csv --json current.json --baseline baseline.csv --threshold 5
+ * </pre>
+ *
+ * <p>or {@code mvn -Pregression verify} from the directory lambdajbm, see pom.xml.
+ *
+ * <p>Exit status is 0 if all benchmarks ran and no regression was found, 1 if a metric got worse by more than the threshold,
+ * 2 in case of errors.
+ */
+public final class BenchmarkHarness {
+
+    /** replaces bench.lisp */
+    static final String PRELUDE =
+              "(define *harness-benches* nil)\n"
+            + "(defun harness-register (name f) (setq *harness-benches* (append *harness-benches* (list (cons name f)))) name)\n"
+            + "(defmacro bench (name form ref) `(harness-register ,name (lambda () ,form)))\n"
+            + "(defun harness-run-bench (n) (let loop ((l *harness-benches*) (n n)) (if (= n 0) (let ((f (cdr (car l)))) (f)) (loop (cdr l) (1- n)))))\n"
+            + "(provide \"bench\")\n";
+
+    /** the results of one benchmark in one mode */
+    static final class Result {
+        final String file, name, mode;
+        final int runs;
+        final double setupMillis, meanMillis, minMillis, maxMillis, stddevMillis;
+        final long allocBytes, cells;
+        final String result;
+
+        Result(String file, String name, String mode, int runs, double setupMillis, double meanMillis, double minMillis, double maxMillis, double stddevMillis,
+               long allocBytes, long cells, String result) {
+            this.file = file;  this.name = name;  this.mode = mode;  this.runs = runs;  this.setupMillis = setupMillis;
+            this.meanMillis = meanMillis;  this.minMillis = minMillis;  this.maxMillis = maxMillis;  this.stddevMillis = stddevMillis;
+            this.allocBytes = allocBytes;  this.cells = cells;  this.result = result;
+        }
+
+        String key() { return file + ':' + name + ' ' + mode; }
+    }
+
+    static final String[] CSV_COLUMNS = { "file", "benchmark", "mode", "runs", "setup_ms", "mean_ms", "min_ms", "max_ms", "stddev_ms", "alloc_bytes", "cells", "result" };
+
+    private Path dir = Paths.get("../samples.murmel-mlib/benchmark");
+    private Path libDir;
+    private List<String> modes = Arrays.asList("interpreted", "compiled");
+    private LambdaJ.MurmelJavaCompiler.Backend backend = LambdaJ.MurmelJavaCompiler.Backend.JAVAC;
+    private int warmup = 3, runs = 10;
+    private final List<String> files = new ArrayList<>();
+    private final PrintStream out;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    BenchmarkHarness(PrintStream out) {
+        this.out = out;
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadBean = bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()
+                     ? (com.sun.management.ThreadMXBean)bean : null;
+    }
+
+    public static void main(String[] args) {
+        final BenchmarkHarness harness = new BenchmarkHarness(System.out);
+        String csv = null, json = null, baseline = null;
+        double threshold = 10.0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                case "--dir":       harness.dir = Paths.get(args[++i]);  break;
+                case "--libdir":    harness.libDir = Paths.get(args[++i]);  break;
+                case "--modes":     harness.modes = Arrays.asList(args[++i].split(","));  break;
+                case "--bytecode":  harness.backend = LambdaJ.MurmelJavaCompiler.Backend.BYTECODE;  break;
+                case "--warmup":    harness.warmup = Integer.parseInt(args[++i]);  break;
+                case "--runs":      harness.runs = Integer.parseInt(args[++i]);  break;
+                case "--csv":       csv = args[++i];  break;
+                case "--json":      json = args[++i];  break;
+                case "--baseline":  baseline = args[++i];  break;
+                case "--threshold": threshold = Double.parseDouble(args[++i]);  break;
+                default:
+                    if (args[i].startsWith("-")) { usage();  System.exit(2); }
+                    harness.files.add(args[i]);
+                }
+            }
+            if (harness.runs < 1) throw new IllegalArgumentException("--runs must be >= 1");
+            for (String mode: harness.modes) if (!"interpreted".equals(mode) && !"compiled".equals(mode)) throw new IllegalArgumentException("unknown mode " + mode);
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("BenchmarkHarness: " + (e instanceof ArrayIndexOutOfBoundsException ? "missing argument" : e.getMessage()));
+            usage();
+            System.exit(2);
+        }
+
+        try {
+            final List<Result> results = harness.runAll();
+            if (csv != null) Files.write(Paths.get(csv), toCsv(results).getBytes(StandardCharsets.UTF_8));
+            if (json != null) Files.write(Paths.get(json), toJson(results).getBytes(StandardCharsets.UTF_8));
+
+            int regressions = 0;
+            if (baseline != null) {
+                final Path baselineFile = Paths.get(baseline);
+                if (Files.isReadable(baselineFile)) regressions = compare(readCsv(Files.readAllLines(baselineFile, StandardCharsets.UTF_8)), results, threshold, System.out);
+                else System.out.println("baseline " + baseline + " not found, nothing to compare");
+            }
+            System.exit(regressions == 0 ? 0 : 1);
+        }
+        catch (Exception e) {
+            System.err.println("BenchmarkHarness: " + e);
+            System.exit(2);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BenchmarkHarness [--dir <benchmark dir>] [--libdir <dir>] [--modes interpreted,compiled] [--bytecode]\n"
+                           + "                        [--warmup <n>] [--runs <n>] [--csv <file>] [--json <file>]\n"
+                           + "                        [--baseline <csv file>] [--threshold <percent>] [files...]");
+    }
+
+    /** run all benchmark files in all modes */
+    List<Result> runAll() throws Exception {
+        final List<Path> paths = new ArrayList<>();
+        if (files.isEmpty()) {
+            try (Stream<Path> s = Files.list(dir)) {
+                paths.addAll(s.filter(p -> p.toString().endsWith(".lisp"))
+                              .filter(p -> !p.getFileName().toString().equals("bench.lisp") && !p.getFileName().toString().equals("all.lisp"))
+                              .sorted().collect(Collectors.toList()));
+            }
+        }
+        else for (String file: files) paths.add(dir.resolve(file));
+
+        final List<Result> results = new ArrayList<>();
+        for (Path path: paths) {
+            for (String mode: modes) {
+                out.printf(Locale.ROOT, "%s (%s)%n", path.getFileName(), mode);
+                final List<Result> fileResults = "compiled".equals(mode) ? runCompiled(path) : runInterpreted(path);
+                for (Result r: fileResults)
+                    out.printf(Locale.ROOT, "    %-20s %10.3f ms/run (min %.3f, max %.3f), %,d bytes/run%s%n", r.name, r.meanMillis, r.minMillis, r.maxMillis, r.allocBytes,
+                               r.cells >= 0 ? String.format(Locale.ROOT, ", %,d cells/run", r.cells) : "");
+                results.addAll(fileResults);
+            }
+        }
+        return results;
+    }
+
+    /** the benchmarks require "mlib", by default it is searched in the parent directory of the benchmark files */
+    private Path libDir() {
+        return libDir != null ? libDir : dir.toAbsolutePath().getParent();
+    }
+
+    List<Result> runInterpreted(Path path) throws Exception {
+        final long tStart = System.nanoTime();
+        final LambdaJ intp = new LambdaJ(LambdaJ.Features.HAVE_ALL_LEXC.bits(), LambdaJ.TraceLevel.TRC_NONE, null, null, null, null, null, libDir());
+        intp.evalString(PRELUDE, true, null, s -> {});
+        intp.interpretExpressions(intp.makeReader(LambdaJ.ReadSupplier.of(path), path), null, LambdaJ.makeWriter(s -> {}), null, false);
+        final double setupMillis = (System.nanoTime() - tStart) / 1e6;
+
+        return measure(path, "interpreted", setupMillis, intp.getValue("*harness-benches*"), intp.getFunction("harness-run-bench"), intp);
+    }
+
+    List<Result> runCompiled(Path path) throws Exception {
+        final long tStart = System.nanoTime();
+        final LambdaJ.MurmelJavaCompiler compiler = new LambdaJ.MurmelJavaCompiler(null, libDir(), LambdaJBenchmark.getTmpDir());
+        compiler.setBackend(backend);
+        final LambdaJ.ObjectReader prelude = new LambdaJ.SExpressionReader(new StringReader(PRELUDE)::read, compiler.getSymbolTable(), compiler.intp.featuresEnvEntry, null);
+        final LambdaJ.ObjectReader file = new LambdaJ.SExpressionReader(LambdaJ.ReadSupplier.of(path), compiler.getSymbolTable(), compiler.intp.featuresEnvEntry, path);
+        final LambdaJ.ObjectReader forms = eof -> {
+            final Object form = prelude.readObj(true, eof);
+            return form != eof ? form : file.readObj(true, eof);
+        };
+        final LambdaJ.MurmelProgram program = compiler.formsToJavaClass("Benchmark", forms, null).getDeclaredConstructor().newInstance();
+        program.setReaderPrinter(null, s -> {});
+        program.body();
+        final double setupMillis = (System.nanoTime() - tStart) / 1e6;
+
+        return measure(path, "compiled", setupMillis, program.getValue("*harness-benches*"), program.getFunction("harness-run-bench"), null);
+    }
+
+    private List<Result> measure(Path path, String mode, double setupMillis, Object benches, LambdaJ.MurmelFunction runBench, LambdaJ intp) throws Exception {
+        final List<Result> ret = new ArrayList<>();
+        final long threadId = Thread.currentThread().getId();
+        long n = 0;
+        for (Object bench: (LambdaJ.ConsCell)benches) {
+            final String name = LambdaJ.printSEx(((LambdaJ.ConsCell)bench).car(), false).toString();
+            final Long idx = n++;
+
+            String result = null;
+            for (int i = 0; i < warmup; i++) result = LambdaJ.printSEx(runBench.apply(idx)).toString();
+
+            final double[] millis = new double[runs];
+            long allocTotal = 0, cellsTotal = 0;
+            for (int i = 0; i < runs; i++) {
+                final long alloc0 = threadBean != null ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+                final int cells0 = intp != null ? intp.cellCount() : 0;
+                final long t0 = System.nanoTime();
+                final Object value = runBench.apply(idx);
+                millis[i] = (System.nanoTime() - t0) / 1e6;
+                if (intp != null) cellsTotal += intp.cellCount() - cells0;
+                if (threadBean != null) allocTotal += threadBean.getThreadAllocatedBytes(threadId) - alloc0;
+                if (result == null) result = LambdaJ.printSEx(value).toString();
+            }
+
+            double sum = 0, min = Double.MAX_VALUE, max = 0;
+            for (double m: millis) { sum += m;  min = Math.min(min, m);  max = Math.max(max, m); }
+            final double mean = sum / runs;
+            double sq = 0;
+            for (double m: millis) sq += (m - mean) * (m - mean);
+
+            ret.add(new Result(path.getFileName().toString(), name, mode, runs, setupMillis, mean, min, max, Math.sqrt(sq / runs),
+                               threadBean != null ? allocTotal / runs : -1, intp != null ? cellsTotal / runs : -1, result));
+        }
+        return ret;
+    }
+
+
+    /// Reports
+
+    static String toCsv(List<Result> results) {
+        final StringBuilder sb = new StringBuilder(String.join(",", CSV_COLUMNS)).append('\n');
+        for (Result r: results) {
+            sb.append(csvField(r.file)).append(',').append(csvField(r.name)).append(',').append(r.mode).append(',').append(r.runs).append(',')
+              .append(fmt(r.setupMillis)).append(',').append(fmt(r.meanMillis)).append(',').append(fmt(r.minMillis)).append(',')
+              .append(fmt(r.maxMillis)).append(',').append(fmt(r.stddevMillis)).append(',').append(r.allocBytes).append(',').append(r.cells).append(',')
+              .append(csvField(r.result)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static String toJson(List<Result> results) {
+        final StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            final Result r = results.get(i);
+            sb.append("  { \"file\": ").append(jsonString(r.file)).append(", \"benchmark\": ").append(jsonString(r.name)).append(", \"mode\": ").append(jsonString(r.mode))
+              .append(", \"runs\": ").append(r.runs).append(", \"setup_ms\": ").append(fmt(r.setupMillis))
+              .append(", \"mean_ms\": ").append(fmt(r.meanMillis)).append(", \"min_ms\": ").append(fmt(r.minMillis)).append(", \"max_ms\": ").append(fmt(r.maxMillis))
+              .append(", \"stddev_ms\": ").append(fmt(r.stddevMillis)).append(", \"alloc_bytes\": ").append(r.allocBytes).append(", \"cells\": ").append(r.cells)
+              .append(", \"result\": ").append(jsonString(r.result)).append(" }").append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    static List<Result> readCsv(List<String> lines) {
+        final List<Result> ret = new ArrayList<>();
+        if (lines.isEmpty()) return ret;
+        final List<String> header = BenchmarkCompare.split(lines.get(0));
+        final Map<String, Integer> col = new LinkedHashMap<>();
+        for (String column: CSV_COLUMNS) {
+            final int idx = header.indexOf(column);
+            if (idx < 0) throw new IllegalArgumentException("not a benchmark report, column " + column + " is missing");
+            col.put(column, idx);
+        }
+        for (String line: lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) continue;
+            final List<String> f = BenchmarkCompare.split(line);
+            ret.add(new Result(f.get(col.get("file")), f.get(col.get("benchmark")), f.get(col.get("mode")), Integer.parseInt(f.get(col.get("runs"))),
+                               Double.parseDouble(f.get(col.get("setup_ms"))), Double.parseDouble(f.get(col.get("mean_ms"))),
+                               Double.parseDouble(f.get(col.get("min_ms"))), Double.parseDouble(f.get(col.get("max_ms"))), Double.parseDouble(f.get(col.get("stddev_ms"))),
+                               Long.parseLong(f.get(col.get("alloc_bytes"))), Long.parseLong(f.get(col.get("cells"))), f.get(col.get("result"))));
+        }
+        return ret;
+    }
+
+    /** print the changes of mean time and allocated bytes vs. the baseline, return the number of metrics that got worse by more than {@code threshold} percent */
+    static int compare(List<Result> baseline, List<Result> current, double threshold, PrintStream out) {
+        final Map<String, Result> base = new LinkedHashMap<>();
+        for (Result r: baseline) base.put(r.key(), r);
+
+        int width = 10;
+        for (Result r: current) width = Math.max(width, r.key().length());
+        for (Result r: baseline) width = Math.max(width, r.key().length());
+        final String fmt = "%-" + width + "s  %12s  %12s  %8s  %14s  %14s  %8s  %s%n";
+        out.printf(Locale.ROOT, fmt, "Benchmark", "Base ms", "Current ms", "Change", "Base bytes", "Current bytes", "Change", "");
+
+        int regressions = 0;
+        for (Result cur: current) {
+            final Result b = base.remove(cur.key());
+            if (b == null) { out.printf(Locale.ROOT, fmt, cur.key(), "", fmt(cur.meanMillis), "", "", cur.allocBytes, "", "new");  continue; }
+
+            final double timeChange = change(b.meanMillis, cur.meanMillis);
+            final double allocChange = b.allocBytes > 0 && cur.allocBytes >= 0 ? change(b.allocBytes, cur.allocBytes) : 0.0;
+            final List<String> verdict = new ArrayList<>();
+            if (timeChange > threshold) verdict.add("SLOWER");
+            if (allocChange > threshold) verdict.add("MORE ALLOCATION");
+            if (!b.result.equals(cur.result)) verdict.add("RESULT CHANGED");
+            if (!verdict.isEmpty()) regressions++;
+            out.printf(Locale.ROOT, fmt, cur.key(), fmt(b.meanMillis), fmt(cur.meanMillis), String.format(Locale.ROOT, "%+.1f%%", timeChange),
+                       b.allocBytes, cur.allocBytes, String.format(Locale.ROOT, "%+.1f%%", allocChange), String.join(", ", verdict));
+        }
+        for (Result missing: base.values()) out.printf(Locale.ROOT, fmt, missing.key(), fmt(missing.meanMillis), "", "", missing.allocBytes, "", "", "missing");
+
+        out.printf(Locale.ROOT, "%n%d benchmark(s), %d regression(s), threshold %.1f%%%n", current.size(), regressions, threshold);
+        return regressions;
+    }
+
+    private static double change(double base, double current) { return base == 0 ? 0.0 : (current - base) / base * 100.0; }
+
+    private static String fmt(double d) { return String.format(Locale.ROOT, "%.3f", d); }
+
+    private static String csvField(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String s) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c: s.toCharArray()) {
+            switch (c) {
+            case '"':  sb.append("\\\"");  break;
+            case '\\': sb.append("\\\\");  break;
+            case '\n': sb.append("\\n");  break;
+            case '\r': sb.append("\\r");  break;
+            case '\t': sb.append("\\t");  break;
+            default:
+                if (c < 0x20) sb.append(String.format("\\u%04x", (int)c));
+                else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.jmurmel;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compile latency of MurmelJavaCompiler: Murmel to Java source only, Murmel to a loaded class via javac,
+ * and Murmel to a loaded class via the bytecode backend.
+ *
+ * Hilfe zum Aufruf:
+ * java -jar target/benchmarks.jar -h
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar CompilerBenchmark
+ *
+ * oder:
+ * java -jar target/benchmarks.jar CompilerBenchmark.javaSource -p prog=gabriel -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(value = Scope.Thread)
+public class CompilerBenchmark {
+
+    @Param({
+        "fact",     // LambdaJBenchmark.FACT
+        "tak",      // LambdaJBenchmark.TAK
+        "gabriel",  // samples.murmel/gabriel/all.lisp, loads the other gabriel files
+    })
+    private String prog;
+
+    private String source;
+    private Path path;
+    private Path outDir;
+    private LambdaJ.MurmelJavaCompiler compiler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch (prog) {
+        case "fact": source = LambdaJBenchmark.FACT;  break;
+        case "tak":  source = LambdaJBenchmark.TAK;  break;
+        case "gabriel":
+            path = Paths.get("../samples.murmel/gabriel/all.lisp");
+            source = JavaUtil.readString(path, StandardCharsets.UTF_8);
+            break;
+        default: throw new IllegalArgumentException("unknown prog " + prog);
+        }
+        outDir = LambdaJBenchmark.getTmpDir();
+    }
+
+    /** each compilation starts with a fresh compiler, i.e. macros and defuns from the previous invocation are gone */
+    @Setup(Level.Invocation)
+    public void newCompiler() {
+        compiler = new LambdaJ.MurmelJavaCompiler(null, null, outDir);
+    }
+
+    /** Murmel to Java source */
+    @Benchmark
+    public int javaSource() {
+        final StringWriter w = new StringWriter();
+        compiler.formsToJavaSource(w, "Test", reader());
+        return w.getBuffer().length();
+    }
+
+    /** Murmel to Java source, then javac and load the class */
+    @Benchmark
+    public Class<LambdaJ.MurmelProgram> javac() throws Exception {
+        compiler.setBackend(LambdaJ.MurmelJavaCompiler.Backend.JAVAC);
+        return compiler.formsToJavaClass("Test", reader(), null);
+    }
+
+    /** Murmel to bytecode and load the class, falls back to javac if the program uses forms that the bytecode backend doesn't support */
+    @Benchmark
+    public Class<LambdaJ.MurmelProgram> bytecode() throws Exception {
+        compiler.setBackend(LambdaJ.MurmelJavaCompiler.Backend.BYTECODE);
+        return compiler.formsToJavaClass("Test", reader(), null);
+    }
+
+    private LambdaJ.ObjectReader reader() {
+        return new LambdaJ.SExpressionReader(new StringReader(source)::read, compiler.getSymbolTable(), compiler.intp.featuresEnvEntry, path);
+    }
+}
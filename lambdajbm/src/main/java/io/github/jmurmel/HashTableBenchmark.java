@@ -0,0 +1,100 @@
+package io.github.jmurmel;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Murmel hash tables as created by {@code make-hash-table}: filling a table and looking up keys.
+ *
+ * Hilfe zum Aufruf:
+ * java -jar target/benchmarks.jar -h
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar HashTableBenchmark
+ *
+ * oder:
+ * java -jar target/benchmarks.jar HashTableBenchmark -p test=eql,equal -p keys=fixnum
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(value = Scope.Thread)
+public class HashTableBenchmark {
+
+    @Param({ "eq", "eql", "equal", "compare-eql", "compare-equal", "t" })
+    private String test;
+
+    @Param({
+        "fixnum",  // numbers
+        "string",  // strings, lookups use a copy of the key
+        "list",    // short lists, lookups use a copy of the key
+    })
+    private String keys;
+
+    @Param({ "16", "1024", "65536" })
+    private int size;
+
+    private LambdaJ.SymbolTable symtab;
+    private Object testSym;
+    private Object[] keyArray, lookupKeys;
+    private Map<Object, Object> filled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        symtab = new LambdaJ().getSymbolTable();
+        testSym = "t".equals(test) ? LambdaJ.sT : symtab.intern(test);
+        keyArray = makeKeys(keys, size);
+        lookupKeys = makeKeys(keys, size);
+        filled = fill();
+    }
+
+    @Benchmark
+    public Map<Object, Object> fill() {
+        final Map<Object, Object> map = LambdaJ.Subr.makeHashTable(symtab, testSym, LambdaJ.Subr.DEFAULT_HASH_SIZE);
+        final Object[] keyArray = this.keyArray;
+        for (int i = 0; i < keyArray.length; i++) map.put(keyArray[i], (long)i);
+        return map;
+    }
+
+    /** look up keys that are {@code equal} but not {@code eq} to the keys in the table, i.e. eq and eql tables will find only fixnums (if at all) */
+    @Benchmark
+    public int lookup() {
+        final Map<Object, Object> map = filled;
+        int found = 0;
+        for (Object key: lookupKeys) if (map.get(key) != null) found++;
+        return found;
+    }
+
+    /** look up the keys that were used to fill the table */
+    @Benchmark
+    public int lookupSame() {
+        final Map<Object, Object> map = filled;
+        int found = 0;
+        for (Object key: keyArray) if (map.get(key) != null) found++;
+        return found;
+    }
+
+    @Benchmark
+    public int iterate() {
+        int n = 0;
+        for (Map.Entry<Object, Object> entry: filled.entrySet()) if (entry.getValue() != null) n++;
+        return n;
+    }
+
+    static Object[] makeKeys(String keys, int size) {
+        final Object[] ret = new Object[size];
+        for (int i = 0; i < size; i++) {
+            switch (keys) {
+            case "fixnum": ret[i] = (long)i * 31;  break;
+            case "string": ret[i] = new String("key" + i);  break;
+            case "list":   ret[i] = LambdaJ.ConsCell.list("key", (long)i, (double)i);  break;
+            default: throw new IllegalArgumentException("unknown keys " + keys);
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.jmurmel;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of macroexpansion: expanding all macros of a defun whose body contains nested macro calls as the interpreter does
+ * before evaluating a toplevel form, and expanding a single macro call with {@code macroexpand-1}.
+ *
+ * Hilfe zum Aufruf:
+ * java -jar target/benchmarks.jar -h
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar MacroexpandBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(value = Scope.Thread)
+public class MacroexpandBenchmark {
+
+    static final String MACROS =
+              "(defmacro my-when (c . body) `(if ,c (progn ,@body)))\n"
+            + "(defmacro my-inc (v . delta) `(setq ,v (+ ,v ,(if delta (car delta) 1))))\n"
+            + "(defmacro my-dolist (var lst . body) (let ((l (gensym))) `(let loop ((,l ,lst)) (if ,l (let ((,var (car ,l))) ,@body (loop (cdr ,l)))))))\n";
+
+    /** number of nested macro calls in the defun */
+    @Param({ "1", "10", "100" })
+    private int depth;
+
+    private LambdaJ interpreter;
+    private Object defun, macroCall;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        interpreter = new LambdaJ();
+        interpreter.evalString(MACROS);
+        defun = read(interpreter, generate(depth));
+        macroCall = LambdaJ.ConsCell.list(read(interpreter, "(my-dolist x '(1 2 3) (my-inc x 2) (my-when x (write x)))"));
+    }
+
+    /** expand all macros of the defun */
+    @Benchmark
+    public Object expandForm() {
+        return interpreter.expandForm(defun, new LambdaJ.MacroEnv());
+    }
+
+    /** expand the outermost macro call of a form once */
+    @Benchmark
+    public Object macroexpand1() {
+        return LambdaJ.Subr.macroexpand1(interpreter, (LambdaJ.ConsCell)macroCall);
+    }
+
+    static String generate(int depth) {
+        final StringBuilder sb = new StringBuilder("(defun f (x lst)");
+        for (int i = 0; i < depth; i++) {
+            switch (i % 3) {
+            case 0: sb.append(" (my-when (< x ").append(i).append(") (my-inc x)");  break;
+            case 1: sb.append(" (my-dolist y lst (my-inc x y)");  break;
+            default: sb.append(" (my-when (> x ").append(i).append(") (my-inc x ").append(i).append(')');
+            }
+        }
+        for (int i = 0; i < depth; i++) sb.append(')');
+        return sb.append(" x)").toString();
+    }
+
+    static Object read(LambdaJ interpreter, String source) {
+        return interpreter.makeReader(new StringReader(source)::read, null).readObj(null);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.jmurmel;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of printing S-expressions, the input is the same as {@link ReaderBenchmark}'s.
+ *
+ * Hilfe zum Aufruf:
+ * java -jar target/benchmarks.jar -h
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar PrinterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(value = Scope.Thread)
+public class PrinterBenchmark {
+
+    @Param({ "atoms", "nested", "source" })
+    private String kind;
+
+    @Param({ "10", "1000", "100000" })
+    private int size;
+
+    private List<Object> forms;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        forms = read(ReaderBenchmark.generate(kind, size));
+    }
+
+    /** like {@code write}: strings and characters are escaped */
+    @Benchmark
+    public int printEscaped() {
+        int len = 0;
+        for (Object form: forms) len += LambdaJ.printSEx(form, true).length();
+        return len;
+    }
+
+    /** like {@code princ}: no escaping */
+    @Benchmark
+    public int printPlain() {
+        int len = 0;
+        for (Object form: forms) len += LambdaJ.printSEx(form, false).length();
+        return len;
+    }
+
+    /** print through the SExpressionWriter that is used for the interpreter's output */
+    @Benchmark
+    public int sexpWriter() {
+        final StringWriter w = new StringWriter();
+        final LambdaJ.ObjectWriter writer = LambdaJ.makeWriter(w::append);
+        for (Object form: forms) { writer.printObj(form, true);  writer.printEol(); }
+        return w.getBuffer().length();
+    }
+
+    static List<Object> read(String source) {
+        final LambdaJ.ObjectReader reader = LambdaJ.makeReader(new StringReader(source)::read, new LambdaJ().getSymbolTable(), null);
+        final List<Object> forms = new ArrayList<>();
+        final Object eof = new Object();
+        for (Object form = reader.readObj(eof); form != eof; form = reader.readObj(eof)) forms.add(form);
+        return forms;
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.jmurmel;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the S-expression reader for different kinds and sizes of input.
+ *
+ * Hilfe zum Aufruf:
+ * java -jar target/benchmarks.jar -h
+ *
+ * Aufruf z.B. mit
+ * java -jar target/benchmarks.jar ReaderBenchmark
+ *
+ * oder:
+ * java -jar target/benchmarks.jar ReaderBenchmark -p kind=source -p size=1000 -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(value = Scope.Thread)
+public class ReaderBenchmark {
+
+    @Param({
+        "atoms",   // lists of numbers, symbols, strings and characters
+        "nested",  // one deeply nested tree
+        "source",  // defuns with backquote, let and if
+    })
+    private String kind;
+
+    @Param({ "10", "1000", "100000" })
+    private int size;
+
+    private String source;
+    private LambdaJ.SymbolTable symtab;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = generate(kind, size);
+        symtab = new LambdaJ().getSymbolTable();
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) {
+        readAll(LambdaJ.makeReader(new StringReader(source)::read, symtab, null), false, bh);
+    }
+
+    /** same as {@link #read} but record line numbers, i.e. create SExpConsCells as the interpreter does when loading a file */
+    @Benchmark
+    public void readWithPos(Blackhole bh) {
+        readAll(LambdaJ.makeReader(new StringReader(source)::read, symtab, null), true, bh);
+    }
+
+    static int readAll(LambdaJ.ObjectReader reader, boolean recordPos, Blackhole bh) {
+        final Object eof = new Object();
+        int n = 0;
+        for (Object form = reader.readObj(recordPos, eof); form != eof; form = reader.readObj(recordPos, eof)) {
+            if (bh != null) bh.consume(form);
+            n++;
+        }
+        return n;
+    }
+
+    /** generate Murmel source text with approx. {@code size} atoms */
+    static String generate(String kind, int size) {
+        final StringBuilder sb = new StringBuilder();
+        switch (kind) {
+        case "atoms":
+            for (int i = 0; i < size; i++) {
+                if (i % 10 == 0) sb.append(i == 0 ? "(" : ")\n(");
+                switch (i % 5) {
+                case 0: sb.append(i);  break;
+                case 1: sb.append(i).append(".5");  break;
+                case 2: sb.append("sym").append(i % 100);  break;
+                case 3: sb.append("\"str").append(i).append('"');  break;
+                default: sb.append("#\\").append((char)('a' + i % 26));
+                }
+                sb.append(' ');
+            }
+            if (size > 0) sb.append(")\n");
+            break;
+
+        case "nested":
+            tree(sb, size, 0);
+            sb.append('\n');
+            break;
+
+        case "source":
+            for (int i = 0; i < size; i += 20) {
+                sb.append("(defun f").append(i).append(" (x y)\n")
+                  .append("  (let ((z (+ x y ").append(i).append(")))\n")
+                  .append("    (if (< z ").append(i).append(") `(,x ,@y z) (list \"s").append(i).append("\" #\\c 1.5 'sym))))\n");
+            }
+            break;
+
+        default: throw new IllegalArgumentException("unknown kind " + kind);
+        }
+        return sb.toString();
+    }
+
+    private static void tree(StringBuilder sb, int leaves, int n) {
+        if (leaves <= 1) { sb.append("leaf").append(n % 10);  return; }
+        sb.append("(node ");
+        tree(sb, leaves / 2, n);
+        sb.append(' ');
+        tree(sb, leaves - leaves / 2, n + 1);
+        sb.append(')');
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.jmurmel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkHarnessTest {
+
+    @Test
+    public void runInterpreted() throws Exception {
+        final BenchmarkHarness harness = new BenchmarkHarness(new PrintStream(new ByteArrayOutputStream()));
+        final List<BenchmarkHarness.Result> results = harness.runInterpreted(Paths.get("../samples.murmel-mlib/benchmark/3.01_tak.lisp"));
+        assertEquals(1, results.size());
+        assertEquals("tak", results.get(0).name);
+        assertEquals("7", results.get(0).result);
+        assertTrue(results.get(0).cells > 0);
+    }
+
+    @Test
+    public void csvAndCompare() {
+        final List<BenchmarkHarness.Result> baseline = Arrays.asList(
+                new BenchmarkHarness.Result("q.lisp", "q2*", "interpreted", 10, 100.0, 50.0, 45.0, 55.0, 2.0, 1000, 100, "(1 \"a,b\")"),
+                new BenchmarkHarness.Result("q.lisp", "q2*", "compiled", 10, 100.0, 20.0, 15.0, 25.0, 2.0, 1000, -1, "(1 \"a,b\")"));
+        final List<BenchmarkHarness.Result> read = BenchmarkHarness.readCsv(Arrays.asList(BenchmarkHarness.toCsv(baseline).split("\n")));
+        assertEquals(2, read.size());
+        assertEquals("(1 \"a,b\")", read.get(0).result);
+        assertEquals(50.0, read.get(0).meanMillis, 0.0);
+
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        final List<BenchmarkHarness.Result> current = Collections.singletonList(
+                new BenchmarkHarness.Result("q.lisp", "q2*", "compiled", 10, 100.0, 20.0, 15.0, 25.0, 2.0, 1200, -1, "(1 \"a,b\")"));
+        assertEquals(1, BenchmarkHarness.compare(read, current, 10.0, new PrintStream(report, true)));
+        assertTrue(report.toString(), report.toString().contains("MORE ALLOCATION"));
+        assertTrue(report.toString(), report.toString().contains("missing"));
+
+        assertEquals(0, BenchmarkHarness.compare(read, current, 25.0, new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.jmurmel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Check that the inputs of the reader, printer, hash table and macroexpansion benchmarks are valid, and check the results comparison. */
+public class SubsystemBenchmarksTest {
+
+    @Test
+    public void readAndPrint() {
+        for (String kind: new String[] { "atoms", "nested", "source" }) {
+            final String source = ReaderBenchmark.generate(kind, 1000);
+            final List<Object> forms = PrinterBenchmark.read(source);
+            assertFalse(kind, forms.isEmpty());
+
+            // printing and reading back the printed forms should give the same forms
+            final StringBuilder printed = new StringBuilder();
+            for (Object form: forms) printed.append(LambdaJ.printSEx(form, true)).append('\n');
+            assertEquals(kind, forms.toString(), PrinterBenchmark.read(printed.toString()).toString());
+
+            final LambdaJ.SymbolTable symtab = new LambdaJ().getSymbolTable();
+            assertEquals(kind, forms.size(), ReaderBenchmark.readAll(LambdaJ.makeReader(new StringReader(source)::read, symtab, null), true, null));
+        }
+    }
+
+    @Test
+    public void hashTables() {
+        final LambdaJ.SymbolTable symtab = new LambdaJ().getSymbolTable();
+        for (String keys: new String[] { "fixnum", "string", "list" }) {
+            final Map<Object, Object> equal = LambdaJ.Subr.makeHashTable(symtab, symtab.intern("equal"), 16);
+            final Map<Object, Object> eq = LambdaJ.Subr.makeHashTable(symtab, symtab.intern("eq"), 16);
+            for (Object key: HashTableBenchmark.makeKeys(keys, 100)) { equal.put(key, key);  eq.put(key, key); }
+            int foundEqual = 0, foundEq = 0;
+            for (Object key: HashTableBenchmark.makeKeys(keys, 100)) { if (equal.get(key) != null) foundEqual++;  if (eq.get(key) != null) foundEq++; }
+            assertEquals(keys, 100, foundEqual);
+            assertTrue(keys, foundEq < 100);
+        }
+    }
+
+    @Test
+    public void macroexpand() {
+        final LambdaJ interpreter = new LambdaJ();
+        interpreter.evalString(MacroexpandBenchmark.MACROS);
+        final Object expanded = interpreter.expandForm(MacroexpandBenchmark.read(interpreter, MacroexpandBenchmark.generate(10)), new LambdaJ.MacroEnv());
+        final String s = LambdaJ.printSEx(expanded).toString();
+        assertFalse(s, s.contains("my-when") || s.contains("my-inc") || s.contains("my-dolist"));
+    }
+
+    @Test
+    public void compareResults() {
+        final List<String> baseline = Arrays.asList(
+                "\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\",\"Score Error (99.9%)\",\"Unit\",\"Param: kind\",\"Param: size\"",
+                "\"io.github.jmurmel.ReaderBenchmark.read\",\"avgt\",1,15,100.0,1.5,\"us/op\",atoms,10",
+                "\"io.github.jmurmel.ReaderBenchmark.read\",\"avgt\",1,15,\"200,5\",1.5,\"us/op\",nested,10",
+                "\"io.github.jmurmel.ReaderBenchmark.readWithPos\",\"avgt\",1,15,300.0,1.5,\"us/op\",atoms,10");
+        final List<String> current = Arrays.asList(
+                baseline.get(0),
+                "\"io.github.jmurmel.ReaderBenchmark.read\",\"avgt\",1,15,125.0,1.5,\"us/op\",atoms,10",
+                "\"io.github.jmurmel.ReaderBenchmark.read\",\"avgt\",1,15,100.0,1.5,\"us/op\",nested,10",
+                "\"io.github.jmurmel.ReaderBenchmark.readWithPos\",\"avgt\",1,15,305.0,1.5,\"us/op\",atoms,10");
+
+        final Map<String, BenchmarkCompare.Result> base = BenchmarkCompare.read(baseline);
+        assertEquals(200.5, base.get("ReaderBenchmark.read kind=nested size=10").score, 0.0);
+
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertEquals(1, BenchmarkCompare.compare(base, BenchmarkCompare.read(current), 10.0, new PrintStream(report, true)));
+        assertTrue(report.toString(), report.toString().contains("1 regression(s), 1 improvement(s)"));
+    }
+}
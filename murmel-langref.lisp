@@ -473,7 +473,7 @@ pi ; ==> 3.141592653589793
 ;     lambda, quote, cond, labels, if, define, defun, let, let*, letrec,
 ;     setq, progn, catch, thwrow, unwind-protect, try,
 ;     multiple-value-bind, multiple-value-call,
-;     macrolet, defmacro, declaim, load, require, provide
+;     macrolet, defmacro, declaim, declare, load, require, provide
 
 
 ;;; == Variables and Scope ============
@@ -824,9 +824,46 @@ pi ; ==> 3.141592653589793
 
 
 ;;; = (declaim (optimize ...
+;;; = (declaim (type typespec symbol...
 ;
-; `declaim` currently only supports `optimize`, others will be ignored.
-; `optimize` only supports speed, others will be ignored.
+; `declaim` currently only supports `optimize` and `type`, others will be ignored.
+; `optimize` only supports speed and debug, others will be ignored.
+;
+; Since: 1.5.1 with `(debug 0)` or `(debug 1)` the compiler infers
+; the types of local variables from their initial values and assignments,
+; and variables that are known to hold a fixnum, double-float or cons
+; are stored without repeated runtime type checks. The default is `(debug 3)`.
+;
+; Since: 1.5.1 `type` proclaims the type of the global variables named
+; by the symbols. Type proclamations are accepted but currently not used,
+; they don't apply to local variables or parameters of the same name.
+
+
+;;; = (declare declspec...)
+;
+; Since: 1.5.1
+;
+; `declare` forms at the beginning of the body of a `defun`,
+; `labels` function, `lambda` or `let` are accepted and evaluate to `nil`.
+; Supported declaration specifiers are `(type fixnum var...)`,
+; `(type double-float var...)` and the abbreviations `(fixnum var...)`,
+; `(double-float var...)`, others will be ignored.
+;
+; A variable that is declared as `fixnum` may be bound to an integral
+; number in the fixnum range, e.g. the result of `(+ i 1)`, and will hold
+; a fixnum. A type error is signalled for other values, and for values
+; other than double-floats if the variable is declared as `double-float`.
+; The declared variables are checked when the `declare` form
+; is evaluated, i.e. when they are bound. `setq` doesn't check or convert
+; the new value of a declared variable.
+;
+; The compiler uses type declarations of the parameters of functions
+; and named `let`s with a fixed number of parameters that don't create
+; closures: these parameters will be stored as unboxed Java `long`
+; or `double` variables unless they are assigned values of other types.
+; Type declarations of variables bound by `let` or `let*` are used as well.
+; `+`, `-` and `*` of fixnums that are bound to a fixnum variable
+; are computed as fixnums.
 
 
 ;;; == Function application ===========
@@ -1087,6 +1124,32 @@ pi ; ==> 3.141592653589793
 ;
 ; Since: 1.3
 
+; = pmap, pfilter, preduce
+;     (pmap function seq) -> list-or-simple-vector
+;     (pfilter predicate seq) -> list-or-simple-vector
+;     (preduce function seq [initial-value]) -> result
+;
+; Since: 1.5.1
+;
+; `pmap` applies `function` to each element of the list or vector `seq`,
+; `pfilter` returns the elements that satisfy `predicate`,
+; `preduce` combines the elements using the associative function `function`.
+; `pmap` and `pfilter` return a list if `seq` is a list, otherwise a fresh simple vector.
+; The results are always in the order of the elements of `seq`.
+;
+; The elements are split into chunks which are processed on multiple cores
+; if `function` is a pure primitive such as `car` or `+` or an interpreted function,
+; other primitives and functions in compiled programs are applied in the calling thread.
+; An interpreted function is applied by a copy of the interpreter per thread
+; that starts out with the global definitions at the time of the call,
+; changes of global variables by `function` are not visible to the caller.
+; `preduce` reduces the chunks from left to right and then combines the chunk results in order,
+; an empty sequence reduces to `initial-value` or to `(function)` if there is none.
+
+(pmap 1+ '(1 2 3)) ; ==> (2 3 4)
+(pfilter consp #(1 (2) 3)) ; ==> #((2))
+(preduce + #(1 2 3 4)) ; ==> 10.0
+
 
 ; = string
 ;     (string X) -> string
@@ -1496,6 +1559,66 @@ pi ; ==> 3.141592653589793
 (get-decoded-time)
 
 
+;;; == Profiler
+
+; = profile-start, profile-stop
+;     (profile-start [interval-ms]) -> boolean
+;     (profile-stop [filespec]) -> string-or-number
+;
+; Since: 1.5.1
+;
+; `profile-start` starts sampling the Murmel call stack of the current thread
+; every `interval-ms` milliseconds (default 10) and returns `t`,
+; or `nil` if the profiler is already running.
+; `profile-stop` stops the profiler and returns the samples as a string,
+; or writes them to the file `filespec` and returns the number of samples.
+; `profile-stop` returns `nil` if the profiler wasn't running.
+;
+; Samples are in the "collapsed stacks" format that flamegraph tools accept:
+; one line per distinct call stack, function names from outermost to innermost
+; separated by ';', followed by the number of samples.
+; Interpreted functions are listed with file and line,
+; lambdas and labels of compiled code are listed as the enclosing global function.
+;
+; The commandline flag `--profile <file>` will profile the whole program.
+
+(profile-start)
+(profile-stop)
+
+
+;;; == Call statistics
+
+; = call-stats-start, call-stats-stop
+;     (call-stats-start) -> boolean
+;     (call-stats-stop [filespec]) -> hash-table-or-number
+;
+; Since: 1.5.1
+;
+; `call-stats-start` starts recording the calls of functions that were
+; defined by `defun`, `define`, `labels` or named `let` in the current thread
+; and returns `t`, or `nil` if call statistics are already recorded.
+; `call-stats-stop` stops recording and returns an `equal` hash-table
+; with function names (including file and line) as keys,
+; or writes the call statistics to the file `filespec` and returns the number
+; of functions. The file will contain JSON if `filespec` ends with ".json",
+; else a text table. `call-stats-stop` returns `nil` if no call statistics
+; were recorded.
+;
+; Each value of the hash-table is a hash-table with the keys `calls`,
+; `self-time` and `total-time` (in internal time units, see
+; `internal-time-units-per-second`), and `self-cells` and `total-cells`
+; (interpreted code, cons cells and environment frames) or `self-bytes`
+; and `total-bytes` (compiled code, as measured by the JVM).
+; "self" excludes and "total" includes the functions that were called.
+; A tailcall ends the caller's invocation.
+;
+; Compiled code records calls only if it was compiled with the commandline
+; flag `--call-stats <file>`, which also records the whole program.
+
+(call-stats-start)
+(call-stats-stop)
+
+
 ;;; == Predefined Numeric Primitives ==
 
 ;;; Murmel's two numeric datatypes are implemented as `long` (54 bit signed integer)